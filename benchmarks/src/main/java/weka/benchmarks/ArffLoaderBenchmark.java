@@ -0,0 +1,96 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ArffLoaderBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+/**
+ * Measures the time for parsing an ARFF file (held in memory, so that
+ * disk I/O does not distort the results) with ArffLoader.
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArffLoaderBenchmark {
+
+  /** the type of the dataset */
+  @Param({BenchmarkData.NUMERIC, BenchmarkData.MIXED})
+  public String dataset;
+
+  /** the number of instances */
+  @Param({"1000", "10000"})
+  public int numInstances;
+
+  /** the number of attributes */
+  @Param({"10", "100"})
+  public int numAttributes;
+
+  /** the dataset in ARFF format */
+  protected byte[] m_Arff;
+
+  /**
+   * Generates the dataset and turns it into ARFF.
+   *
+   * @throws Exception	if generation fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    m_Arff = BenchmarkData.generate(dataset, numInstances, numAttributes)
+      .toString().getBytes("UTF-8");
+  }
+
+  /**
+   * Parses the dataset.
+   *
+   * @return		the parsed dataset
+   * @throws Exception	if parsing fails
+   */
+  @Benchmark
+  public Instances load() throws Exception {
+    ArffLoader	loader;
+
+    loader = new ArffLoader();
+    loader.setSource(new ByteArrayInputStream(m_Arff));
+
+    return loader.getDataSet();
+  }
+}
@@ -0,0 +1,348 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BaselineReport.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import weka.core.Utils;
+
+/**
+ * Compares the results of a benchmark run with those of a baseline run,
+ * e.g., of the previous WEKA version. Both runs have to store their
+ * results in CSV format:<p/>
+ *
+ * java -jar target/benchmarks.jar -rf csv -rff baseline.csv<br/>
+ * java -jar target/benchmarks.jar -rf csv -rff current.csv<br/>
+ * java -cp target/benchmarks.jar weka.benchmarks.BaselineReport
+ *   -baseline baseline.csv -current current.csv<p/>
+ *
+ * For every benchmark and parameter combination the report lists the
+ * scores and the relative change, where a positive change always means
+ * slower (i.e., a higher time or a lower throughput). A change counts as a
+ * regression if it exceeds the threshold as well as the combined error of
+ * the two scores. The program exits with status 1 if there are
+ * regressions, so that it can be used in a build.<p/>
+ *
+ * Valid options are: <p/>
+ *
+ * -baseline &lt;file&gt; <br/>
+ *  The CSV file with the results of the baseline. <p/>
+ *
+ * -current &lt;file&gt; <br/>
+ *  The CSV file with the current results. <p/>
+ *
+ * -threshold &lt;percent&gt; <br/>
+ *  The change (in percent) above which a slowdown is reported as a
+ *  regression (default: 10). <p/>
+ *
+ * @version $Revision: 9500 $
+ */
+public class BaselineReport {
+
+  /**
+   * A single result of a benchmark run.
+   */
+  public static class Result {
+
+    /** the benchmark, including the parameters */
+    public String name;
+
+    /** the mode (thrpt, avgt, sample, ss) */
+    public String mode;
+
+    /** the score */
+    public double score;
+
+    /** the error of the score (NaN if not available) */
+    public double error;
+
+    /** the unit of the score */
+    public String unit;
+
+    /**
+     * Returns whether a higher score is better (throughput).
+     *
+     * @return		true if higher is better
+     */
+    public boolean higherIsBetter() {
+      return mode.equals("thrpt");
+    }
+  }
+
+  /**
+   * Splits a line of a CSV file into its cells.
+   *
+   * @param line	the line to split
+   * @return		the cells
+   */
+  protected static List<String> split(String line) {
+    List<String>	result;
+    StringBuilder	cell;
+    boolean		quoted;
+    char		c;
+    int			i;
+
+    result = new ArrayList<String>();
+    cell   = new StringBuilder();
+    quoted = false;
+    for (i = 0; i < line.length(); i++) {
+      c = line.charAt(i);
+      if (quoted) {
+	if (c == '"') {
+	  if ((i + 1 < line.length()) && (line.charAt(i + 1) == '"')) {
+	    cell.append(c);
+	    i++;
+	  }
+	  else {
+	    quoted = false;
+	  }
+	}
+	else {
+	  cell.append(c);
+	}
+      }
+      else if (c == '"') {
+	quoted = true;
+      }
+      else if (c == ',') {
+	result.add(cell.toString());
+	cell.setLength(0);
+      }
+      else {
+	cell.append(c);
+      }
+    }
+    result.add(cell.toString());
+
+    return result;
+  }
+
+  /**
+   * Parses a number, as written by JMH.
+   *
+   * @param s		the number
+   * @return		the number, NaN if not a number
+   */
+  protected static double parse(String s) {
+    try {
+      return Double.parseDouble(s.trim());
+    }
+    catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Reads the results from a CSV file written by JMH.
+   *
+   * @param filename	the file to read
+   * @return		the results, with the names as keys
+   * @throws Exception	if reading fails or the file is not a JMH result
+   */
+  public static Map<String,Result> read(String filename) throws Exception {
+    Map<String,Result>	result;
+    BufferedReader	reader;
+    List<String>	header;
+    List<String>	cells;
+    String		line;
+    Result		res;
+    StringBuilder	name;
+    int			i;
+
+    result = new LinkedHashMap<String,Result>();
+    reader = new BufferedReader(new FileReader(filename));
+    try {
+      line = reader.readLine();
+      if (line == null)
+	throw new Exception("Empty file: " + filename);
+      header = split(line);
+      if ((header.size() < 7) || !header.get(0).equals("Benchmark"))
+	throw new Exception("Not a JMH result in CSV format: " + filename);
+
+      while ((line = reader.readLine()) != null) {
+	if (line.trim().length() == 0)
+	  continue;
+	cells = split(line);
+	name  = new StringBuilder();
+	for (i = 7; i < cells.size() && i < header.size(); i++) {
+	  if (cells.get(i).length() == 0)
+	    continue;
+	  name.append(name.length() == 0 ? "(" : ", ");
+	  name.append(header.get(i).replaceFirst("^Param: ", ""));
+	  name.append("=");
+	  name.append(cells.get(i));
+	}
+	if (name.length() > 0)
+	  name.append(")");
+	res       = new Result();
+	res.name  = cells.get(0) + name;
+	res.mode  = cells.get(1);
+	res.score = parse(cells.get(4));
+	res.error = parse(cells.get(5));
+	res.unit  = cells.get(6);
+	result.put(res.name + "/" + res.mode, res);
+      }
+    }
+    finally {
+      reader.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the relative change of the current score against the baseline,
+   * positive if the current score is worse.
+   *
+   * @param baseline	the baseline result
+   * @param current	the current result
+   * @return		the change (0.1 = 10% worse)
+   */
+  public static double change(Result baseline, Result current) {
+    if (baseline.higherIsBetter())
+      return (baseline.score - current.score) / current.score;
+    else
+      return (current.score - baseline.score) / baseline.score;
+  }
+
+  /**
+   * Returns whether the difference of the two scores is larger than their
+   * combined error. If no errors are available, the difference counts as
+   * significant.
+   *
+   * @param baseline	the baseline result
+   * @param current	the current result
+   * @return		true if significant
+   */
+  public static boolean isSignificant(Result baseline, Result current) {
+    if (Double.isNaN(baseline.error) || Double.isNaN(current.error))
+      return true;
+    return Math.abs(current.score - baseline.score) > baseline.error + current.error;
+  }
+
+  /**
+   * Generates the report.
+   *
+   * @param baseline	the baseline results
+   * @param current	the current results
+   * @param threshold	the threshold for regressions (0.1 = 10%)
+   * @param report	the buffer to write the report to
+   * @return		the number of regressions
+   */
+  public static int report(Map<String,Result> baseline,
+      Map<String,Result> current, double threshold, StringBuilder report) {
+
+    int		result;
+    Result	base;
+    Result	curr;
+    double	change;
+    String	status;
+
+    result = 0;
+    for (String key: current.keySet()) {
+      curr = current.get(key);
+      base = baseline.get(key);
+      if (base == null) {
+	report.append("new         " + curr.name + " [" + curr.mode + "]: "
+	    + Utils.doubleToString(curr.score, 3) + " " + curr.unit + "\n");
+	continue;
+      }
+      if (!base.unit.equals(curr.unit)) {
+	report.append("incomparable " + curr.name + " [" + curr.mode + "]: "
+	    + base.unit + " vs " + curr.unit + "\n");
+	continue;
+      }
+
+      change = change(base, curr);
+      if (!isSignificant(base, curr) || (Math.abs(change) <= threshold)) {
+	status = "ok         ";
+      }
+      else if (change > 0) {
+	status = "REGRESSION ";
+	result++;
+      }
+      else {
+	status = "improvement";
+      }
+      report.append(status + " " + curr.name + " [" + curr.mode + "]: "
+	  + Utils.doubleToString(base.score, 3) + " -> "
+	  + Utils.doubleToString(curr.score, 3) + " " + curr.unit + " ("
+	  + (change > 0 ? "+" : "") + Utils.doubleToString(change * 100, 1)
+	  + "%)\n");
+    }
+
+    for (String key: baseline.keySet()) {
+      if (!current.containsKey(key)) {
+	base = baseline.get(key);
+	report.append("missing     " + base.name + " [" + base.mode + "]\n");
+      }
+    }
+
+    report.append("\n" + result + " regression(s), threshold "
+	+ Utils.doubleToString(threshold * 100, 1) + "%\n");
+
+    return result;
+  }
+
+  /**
+   * Compares the results of two benchmark runs.
+   *
+   * @param args	the options
+   * @throws Exception	if reading the results fails
+   */
+  public static void main(String[] args) throws Exception {
+    String		baseline;
+    String		current;
+    String		tmpStr;
+    double		threshold;
+    StringBuilder	report;
+    int			regressions;
+
+    if (args.length == 0) {
+      System.err.println(
+	  "Usage: " + BaselineReport.class.getName()
+	  + " -baseline <file> -current <file> [-threshold <percent>]");
+      System.exit(2);
+    }
+
+    baseline = Utils.getOption("baseline", args);
+    current  = Utils.getOption("current", args);
+    tmpStr   = Utils.getOption("threshold", args);
+    if (tmpStr.length() != 0)
+      threshold = Double.parseDouble(tmpStr) / 100;
+    else
+      threshold = 0.1;
+    if ((baseline.length() == 0) || (current.length() == 0))
+      throw new Exception("Both -baseline and -current must be provided!");
+
+    report      = new StringBuilder();
+    regressions = report(read(baseline), read(current), threshold, report);
+    System.out.print(report);
+
+    if (regressions > 0)
+      System.exit(1);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BenchmarkData.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.ArrayList;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.datagenerators.classifiers.classification.RDG1;
+import weka.datagenerators.classifiers.classification.RandomRBF;
+
+/**
+ * Generates the synthetic datasets that the benchmarks run on, using the
+ * data generators of WEKA with a fixed seed, so that every run (and every
+ * WEKA version) sees the same data.
+ *
+ * @version $Revision: 9500 $
+ */
+public class BenchmarkData {
+
+  /** dataset with numeric attributes (RandomRBF) */
+  public final static String NUMERIC = "numeric";
+
+  /** dataset with nominal attributes (RDG1) */
+  public final static String NOMINAL = "nominal";
+
+  /** dataset with numeric and nominal attributes (RDG1) */
+  public final static String MIXED = "mixed";
+
+  /** the number of classes of the generated datasets */
+  public final static int NUM_CLASSES = 3;
+
+  /** the seed for the generators */
+  public final static int SEED = 1;
+
+  /**
+   * Generates a dataset with numeric attributes (RandomRBF). The class is
+   * the last attribute.
+   *
+   * @param numInstances	the number of instances
+   * @param numAttributes	the number of attributes, without the class
+   * @return			the dataset
+   * @throws Exception		if generation fails
+   */
+  public static Instances numeric(int numInstances, int numAttributes)
+    throws Exception {
+
+    RandomRBF	generator;
+
+    generator = new RandomRBF();
+    generator.setSeed(SEED);
+    generator.setNumExamples(numInstances);
+    generator.setNumAttributes(numAttributes);
+    generator.setNumClasses(NUM_CLASSES);
+    generator.setNumCentroids(Math.max(50, NUM_CLASSES * 10));
+
+    generator.defineDataFormat();
+
+    return withClass(generator.generateExamples());
+  }
+
+  /**
+   * Generates a dataset with nominal and (optionally) numeric attributes
+   * (RDG1). The class is the last attribute.
+   *
+   * @param numInstances	the number of instances
+   * @param numAttributes	the number of attributes, without the class
+   * @param numNumeric		the number of numeric attributes
+   * @return			the dataset
+   * @throws Exception		if generation fails
+   */
+  public static Instances nominal(int numInstances, int numAttributes,
+      int numNumeric) throws Exception {
+
+    RDG1	generator;
+
+    generator = new RDG1();
+    generator.setSeed(SEED);
+    generator.setNumExamples(numInstances);
+    generator.setNumAttributes(numAttributes);
+    generator.setNumNumeric(numNumeric);
+    generator.setNumClasses(NUM_CLASSES);
+
+    generator.defineDataFormat();
+
+    return withClass(generator.generateExamples());
+  }
+
+  /**
+   * Generates the dataset of the given type.
+   *
+   * @param type		the type (NUMERIC, NOMINAL or MIXED)
+   * @param numInstances	the number of instances
+   * @param numAttributes	the number of attributes, without the class
+   * @return			the dataset
+   * @throws Exception		if generation fails or the type is unknown
+   */
+  public static Instances generate(String type, int numInstances,
+      int numAttributes) throws Exception {
+
+    if (type.equals(NUMERIC))
+      return numeric(numInstances, numAttributes);
+    else if (type.equals(NOMINAL))
+      return nominal(numInstances, numAttributes, 0);
+    else if (type.equals(MIXED))
+      return nominal(numInstances, numAttributes, numAttributes / 2);
+    else
+      throw new IllegalArgumentException("Unknown dataset type: " + type);
+  }
+
+  /**
+   * Generates a text dataset with a string attribute and a nominal class,
+   * derived from a nominal RDG1 dataset: every attribute that is "true" for
+   * an instance becomes a word of the document, so the documents carry the
+   * rules of the generator.
+   *
+   * @param numInstances	the number of documents
+   * @param numWords		the size of the vocabulary
+   * @return			the dataset
+   * @throws Exception		if generation fails
+   */
+  public static Instances text(int numInstances, int numWords)
+    throws Exception {
+
+    Instances			nominal;
+    Instances			result;
+    ArrayList<Attribute>	atts;
+    Instance			inst;
+    StringBuilder		doc;
+    double[]			values;
+    int				i;
+    int				n;
+
+    nominal = nominal(numInstances, numWords, 0);
+
+    atts = new ArrayList<Attribute>();
+    atts.add(new Attribute("text", (ArrayList<String>) null));
+    atts.add((Attribute) nominal.classAttribute().copy());
+    result = new Instances(nominal.relationName() + "-text", atts, numInstances);
+    result.setClassIndex(1);
+
+    for (i = 0; i < nominal.numInstances(); i++) {
+      inst = nominal.instance(i);
+      doc  = new StringBuilder();
+      for (n = 0; n < nominal.numAttributes(); n++) {
+	if (n == nominal.classIndex())
+	  continue;
+	if (inst.stringValue(n).equals("true")) {
+	  if (doc.length() > 0)
+	    doc.append(' ');
+	  doc.append(nominal.attribute(n).name());
+	}
+      }
+      values    = new double[2];
+      values[0] = result.attribute(0).addStringValue(doc.toString());
+      values[1] = inst.classValue();
+      result.add(new DenseInstance(1.0, values));
+    }
+
+    return result;
+  }
+
+  /**
+   * Ensures that the class of the generated data is set.
+   *
+   * @param data	the generated data
+   * @return		the data
+   */
+  protected static Instances withClass(Instances data) {
+    if (data.classIndex() < 0)
+      data.setClassIndex(data.numAttributes() - 1);
+    return data;
+  }
+}
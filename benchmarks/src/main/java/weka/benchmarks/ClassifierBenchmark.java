@@ -0,0 +1,144 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ClassifierBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.Utils;
+
+/**
+ * Measures training and prediction of commonly used classifiers.
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifierBenchmark {
+
+  /** the classifier (classname and options) */
+  @Param({
+    "weka.classifiers.trees.J48",
+    "weka.classifiers.trees.RandomForest",
+    "weka.classifiers.functions.SMO",
+    "weka.classifiers.functions.MultilayerPerceptron -N 20",
+    "weka.classifiers.bayes.NaiveBayes"
+  })
+  public String classifier;
+
+  /** the type of the dataset */
+  @Param({BenchmarkData.NUMERIC, BenchmarkData.NOMINAL})
+  public String dataset;
+
+  /** the number of instances */
+  @Param({"1000", "10000"})
+  public int numInstances;
+
+  /** the number of attributes */
+  @Param({"20"})
+  public int numAttributes;
+
+  /** the dataset */
+  protected Instances m_Data;
+
+  /** the classifier, trained on the dataset */
+  protected Classifier m_Trained;
+
+  /**
+   * Generates the dataset and trains the classifier on it.
+   *
+   * @throws Exception	if generation or training fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    m_Data    = BenchmarkData.generate(dataset, numInstances, numAttributes);
+    m_Trained = train();
+  }
+
+  /**
+   * Returns a new instance of the classifier.
+   *
+   * @return		the classifier
+   * @throws Exception	if instantiation fails
+   */
+  protected Classifier newClassifier() throws Exception {
+    String[]	options;
+    String	classname;
+
+    options    = Utils.splitOptions(classifier);
+    classname  = options[0];
+    options[0] = "";
+
+    return AbstractClassifier.forName(classname, options);
+  }
+
+  /**
+   * Trains the classifier on the dataset.
+   *
+   * @return		the trained classifier
+   * @throws Exception	if training fails
+   */
+  @Benchmark
+  public Classifier train() throws Exception {
+    Classifier	result;
+
+    result = newClassifier();
+    result.buildClassifier(m_Data);
+
+    return result;
+  }
+
+  /**
+   * Computes the class distributions for all instances of the dataset.
+   *
+   * @return		the sum of the probabilities of the first class
+   * @throws Exception	if prediction fails
+   */
+  @Benchmark
+  public double predict() throws Exception {
+    double	result;
+    int		i;
+
+    result = 0;
+    for (i = 0; i < m_Data.numInstances(); i++)
+      result += m_Trained.distributionForInstance(m_Data.instance(i))[0];
+
+    return result;
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CompiledClassifierBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.misc.CompiledClassifier;
+import weka.core.Instances;
+
+/**
+ * Compares the predictions of a tree with those of the same tree compiled
+ * by CompiledClassifier. "interpreted" classifies with the tree itself,
+ * "compiled" with the bytecode generated from its source code.
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompiledClassifierBenchmark {
+
+  /** the base classifier */
+  @Param({"weka.classifiers.trees.J48", "weka.classifiers.trees.REPTree"})
+  public String classifier;
+
+  /** whether to classify with the base classifier or the compiled model */
+  @Param({"interpreted", "compiled"})
+  public String model;
+
+  /** the type of the dataset */
+  @Param({BenchmarkData.NUMERIC, BenchmarkData.MIXED})
+  public String dataset;
+
+  /** the number of instances */
+  @Param({"10000"})
+  public int numInstances;
+
+  /** the number of attributes */
+  @Param({"20"})
+  public int numAttributes;
+
+  /** the dataset */
+  protected Instances m_Data;
+
+  /** the classifier, trained on the dataset */
+  protected Classifier m_Trained;
+
+  /**
+   * Generates the dataset and trains the classifier on it.
+   *
+   * @throws Exception	if generation, training or compilation fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    CompiledClassifier	compiled;
+
+    m_Data = BenchmarkData.generate(dataset, numInstances, numAttributes);
+
+    compiled = new CompiledClassifier();
+    compiled.setClassifier(AbstractClassifier.forName(classifier, null));
+    compiled.buildClassifier(m_Data);
+    if (!compiled.isCompiled())
+      throw new IllegalStateException("Model not compiled:\n" + compiled);
+
+    if (model.equals("compiled"))
+      m_Trained = compiled;
+    else
+      m_Trained = compiled.getClassifier();
+  }
+
+  /**
+   * Classifies all instances of the dataset.
+   *
+   * @return		the sum of the predictions
+   * @throws Exception	if prediction fails
+   */
+  @Benchmark
+  public double classify() throws Exception {
+    double	result;
+    int		i;
+
+    result = 0;
+    for (i = 0; i < m_Data.numInstances(); i++)
+      result += m_Trained.classifyInstance(m_Data.instance(i));
+
+    return result;
+  }
+}
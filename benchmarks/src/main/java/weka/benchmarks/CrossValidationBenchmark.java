@@ -0,0 +1,109 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CrossValidationBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+
+/**
+ * Measures a 10-fold cross-validation with Evaluation.crossValidateModel,
+ * which includes the stratification of the data, training and the
+ * collection of the statistics.
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrossValidationBenchmark {
+
+  /** the classifier */
+  @Param({
+    "weka.classifiers.trees.J48",
+    "weka.classifiers.bayes.NaiveBayes"
+  })
+  public String classifier;
+
+  /** the type of the dataset */
+  @Param({BenchmarkData.NUMERIC, BenchmarkData.MIXED})
+  public String dataset;
+
+  /** the number of instances */
+  @Param({"1000", "10000"})
+  public int numInstances;
+
+  /** the number of attributes */
+  @Param({"20"})
+  public int numAttributes;
+
+  /** the number of folds */
+  public final static int NUM_FOLDS = 10;
+
+  /** the dataset */
+  protected Instances m_Data;
+
+  /**
+   * Generates the dataset.
+   *
+   * @throws Exception	if generation fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    m_Data = BenchmarkData.generate(dataset, numInstances, numAttributes);
+  }
+
+  /**
+   * Cross-validates the classifier.
+   *
+   * @return		the evaluation
+   * @throws Exception	if the cross-validation fails
+   */
+  @Benchmark
+  public Evaluation crossValidate() throws Exception {
+    Evaluation	result;
+
+    result = new Evaluation(m_Data);
+    result.crossValidateModel(
+	AbstractClassifier.forName(classifier, new String[0]),
+	m_Data, NUM_FOLDS, new Random(BenchmarkData.SEED));
+
+    return result;
+  }
+}
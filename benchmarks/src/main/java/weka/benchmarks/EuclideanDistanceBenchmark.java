@@ -0,0 +1,113 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EuclideanDistanceBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Measures the computation of the (normalized) Euclidean distance between
+ * one instance and all instances of a dataset.
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EuclideanDistanceBenchmark {
+
+  /** the type of the dataset */
+  @Param({BenchmarkData.NUMERIC, BenchmarkData.MIXED})
+  public String dataset;
+
+  /** the number of instances */
+  @Param({"10000"})
+  public int numInstances;
+
+  /** the number of attributes */
+  @Param({"10", "100"})
+  public int numAttributes;
+
+  /** the dataset */
+  protected Instances m_Data;
+
+  /** the distance function, initialized with the dataset */
+  protected EuclideanDistance m_Distance;
+
+  /**
+   * Generates the dataset and initializes the distance function.
+   *
+   * @throws Exception	if generation fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    m_Data     = BenchmarkData.generate(dataset, numInstances, numAttributes);
+    m_Distance = new EuclideanDistance(m_Data);
+  }
+
+  /**
+   * Computes the distances from the first instance to all others.
+   *
+   * @return		the sum of the distances
+   */
+  @Benchmark
+  public double distance() {
+    Instance	first;
+    double	result;
+    int		i;
+
+    first  = m_Data.instance(0);
+    result = 0;
+    for (i = 0; i < m_Data.numInstances(); i++)
+      result += m_Distance.distance(first, m_Data.instance(i));
+
+    return result;
+  }
+
+  /**
+   * Initializes the distance function with the dataset (determines the
+   * ranges of the attributes).
+   *
+   * @return		the distance function
+   */
+  @Benchmark
+  public EuclideanDistance initialize() {
+    return new EuclideanDistance(m_Data);
+  }
+}
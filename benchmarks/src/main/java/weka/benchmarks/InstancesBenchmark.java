@@ -0,0 +1,122 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * InstancesBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.core.Instances;
+
+/**
+ * Measures copying, sorting and resampling of datasets.
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstancesBenchmark {
+
+  /** the type of the dataset */
+  @Param({BenchmarkData.NUMERIC, BenchmarkData.NOMINAL})
+  public String dataset;
+
+  /** the number of instances */
+  @Param({"1000", "100000"})
+  public int numInstances;
+
+  /** the number of attributes */
+  @Param({"10", "100"})
+  public int numAttributes;
+
+  /** the dataset */
+  protected Instances m_Data;
+
+  /**
+   * Generates the dataset.
+   *
+   * @throws Exception	if generation fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    m_Data = BenchmarkData.generate(dataset, numInstances, numAttributes);
+  }
+
+  /**
+   * Copies the dataset (shallow copy of the instances).
+   *
+   * @return		the copy
+   */
+  @Benchmark
+  public Instances copy() {
+    return new Instances(m_Data);
+  }
+
+  /**
+   * Copies the dataset and sorts it on the first attribute.
+   *
+   * @return		the sorted copy
+   */
+  @Benchmark
+  public Instances sort() {
+    Instances	result;
+
+    result = new Instances(m_Data);
+    result.sort(0);
+
+    return result;
+  }
+
+  /**
+   * Draws a bootstrap sample of the dataset.
+   *
+   * @return		the sample
+   */
+  @Benchmark
+  public Instances resample() {
+    return m_Data.resample(new Random(BenchmarkData.SEED));
+  }
+
+  /**
+   * Draws a bootstrap sample of the dataset, using the weights.
+   *
+   * @return		the sample
+   */
+  @Benchmark
+  public Instances resampleWithWeights() {
+    return m_Data.resampleWithWeights(new Random(BenchmarkData.SEED));
+  }
+}
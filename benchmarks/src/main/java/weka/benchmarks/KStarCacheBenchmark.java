@@ -0,0 +1,279 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * KStarCacheBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.classifiers.lazy.kstar.KStarCache;
+
+/**
+ * Compares the open-addressing KStarCache with the chained hashtable that
+ * KStar used before (one TableEntry object per cached value, kept here as
+ * ChainedCache). "store" fills an empty cache and "lookup" retrieves all
+ * values from a filled one. Run with "-prof gc": the normalized allocation
+ * rate (gc.alloc.rate.norm) of "store" is the memory a filled cache
+ * takes (plus the garbage of growing it).
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KStarCacheBenchmark {
+
+  /** the cache implementation */
+  @Param({"chained", "open"})
+  public String cache;
+
+  /** the number of distinct attribute values */
+  @Param({"10000", "1000000"})
+  public int numKeys;
+
+  /** the attribute values */
+  protected double[] m_Keys;
+
+  /** the filled KStarCache */
+  protected KStarCache m_Open;
+
+  /** the filled chained cache */
+  protected ChainedCache m_Chained;
+
+  /**
+   * The chained hashtable of the previous KStarCache.
+   */
+  public static class ChainedCache {
+
+    /** an entry of the table */
+    public static class TableEntry {
+
+      /** attribute value hash code */
+      public int hash;
+
+      /** attribute value */
+      public double key;
+
+      /** scale factor or stop parameter */
+      public double value;
+
+      /** transformation probability to missing value */
+      public double pmiss;
+
+      /** next table entry (separate chaining) */
+      public TableEntry next;
+
+      /**
+       * Initializes the entry.
+       *
+       * @param hash	the hash code
+       * @param key		the key
+       * @param value	the value
+       * @param pmiss	the missing probability
+       * @param next	the next entry in the chain
+       */
+      public TableEntry(int hash, double key, double value, double pmiss,
+	  TableEntry next) {
+	this.hash  = hash;
+	this.key   = key;
+	this.value = value;
+	this.pmiss = pmiss;
+	this.next  = next;
+      }
+    }
+
+    /** the table */
+    protected TableEntry[] m_Table = new TableEntry[101];
+
+    /** the number of entries */
+    protected int m_Count;
+
+    /** rehashes the table when the count exceeds this threshold */
+    protected int m_Threshold = (int) (101 * 0.75f);
+
+    /**
+     * Returns the hash code of the key.
+     *
+     * @param key	the key
+     * @return		the hash code
+     */
+    protected int hashCode(double key) {
+      long bits = Double.doubleToLongBits(key);
+      return (int) (bits ^ (bits >> 32));
+    }
+
+    /**
+     * Returns the entry of the key.
+     *
+     * @param key	the key
+     * @return		the entry, null if not found
+     */
+    public TableEntry getEntry(double key) {
+      int hash = hashCode(key);
+      int index = (hash & 0x7FFFFFFF) % m_Table.length;
+      for (TableEntry e = m_Table[index]; e != null; e = e.next) {
+	if ((e.hash == hash) && (Math.abs(e.key - key) < 1.0E-5))
+	  return e;
+      }
+      return null;
+    }
+
+    /**
+     * Stores the values, unless the key is present already.
+     *
+     * @param key	the key
+     * @param value	the value
+     * @param pmiss	the missing probability
+     */
+    public void store(double key, double value, double pmiss) {
+      if (getEntry(key) != null)
+	return;
+      int hash = hashCode(key);
+      int index = (hash & 0x7FFFFFFF) % m_Table.length;
+      m_Table[index] = new TableEntry(hash, key, value, pmiss, m_Table[index]);
+      m_Count++;
+      if (m_Count >= m_Threshold)
+	rehash();
+    }
+
+    /**
+     * Doubles the size of the table.
+     */
+    protected void rehash() {
+      TableEntry[] oldTable = m_Table;
+      int newCapacity = oldTable.length * 2 + 1;
+      m_Table = new TableEntry[newCapacity];
+      m_Threshold = (int) (newCapacity * 0.75f);
+      for (int i = oldTable.length; i-- > 0; ) {
+	for (TableEntry old = oldTable[i]; old != null; ) {
+	  TableEntry e = old;
+	  old = old.next;
+	  int index = (e.hash & 0x7FFFFFFF) % newCapacity;
+	  e.next = m_Table[index];
+	  m_Table[index] = e;
+	}
+      }
+    }
+  }
+
+  /**
+   * Generates the attribute values and fills the caches.
+   */
+  @Setup
+  public void setUp() {
+    Random	rand;
+    int		i;
+
+    rand   = new Random(BenchmarkData.SEED);
+    m_Keys = new double[numKeys];
+    for (i = 0; i < numKeys; i++)
+      m_Keys[i] = rand.nextGaussian();
+
+    m_Open    = fillOpen();
+    m_Chained = fillChained();
+  }
+
+  /**
+   * Fills a new KStarCache with all values.
+   *
+   * @return		the cache
+   */
+  protected KStarCache fillOpen() {
+    KStarCache	result;
+    int		i;
+
+    result = new KStarCache();
+    for (i = 0; i < m_Keys.length; i++)
+      result.store(m_Keys[i], i, 0.5);
+
+    return result;
+  }
+
+  /**
+   * Fills a new chained cache with all values.
+   *
+   * @return		the cache
+   */
+  protected ChainedCache fillChained() {
+    ChainedCache	result;
+    int			i;
+
+    result = new ChainedCache();
+    for (i = 0; i < m_Keys.length; i++)
+      result.store(m_Keys[i], i, 0.5);
+
+    return result;
+  }
+
+  /**
+   * Fills an empty cache.
+   *
+   * @return		the cache
+   */
+  @Benchmark
+  public Object store() {
+    if (cache.equals("open"))
+      return fillOpen();
+    else
+      return fillChained();
+  }
+
+  /**
+   * Looks up all values in the filled cache.
+   *
+   * @return		the sum of the values
+   */
+  @Benchmark
+  public double lookup() {
+    double	result;
+    double[]	values;
+    int		i;
+
+    result = 0;
+    if (cache.equals("open")) {
+      values = new double[2];
+      for (i = 0; i < m_Keys.length; i++) {
+	if (m_Open.lookup(m_Keys[i], values))
+	  result += values[0];
+      }
+    }
+    else {
+      for (i = 0; i < m_Keys.length; i++)
+	result += m_Chained.getEntry(m_Keys[i]).value;
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * MatrixBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.core.matrix.CholeskyDecomposition;
+import weka.core.matrix.LUDecomposition;
+import weka.core.matrix.Matrix;
+import weka.core.matrix.ParallelOperations;
+import weka.core.matrix.QRDecomposition;
+
+/**
+ * Compares the sequential JAMA code of weka.core.matrix with the blocked
+ * and multi-threaded implementations of ParallelOperations ("threads" = 0
+ * means the sequential code).
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixBenchmark {
+
+  /** the dimension of the (square) matrices */
+  @Param({"200", "1000"})
+  public int size;
+
+  /** the number of threads, 0 for the sequential code */
+  @Param({"0", "1", "4"})
+  public int threads;
+
+  /** a random matrix */
+  protected Matrix m_A;
+
+  /** another random matrix */
+  protected Matrix m_B;
+
+  /** a symmetric, positive definite matrix */
+  protected Matrix m_SPD;
+
+  /** the threshold before the benchmark */
+  protected int m_Threshold;
+
+  /** the number of threads before the benchmark */
+  protected int m_NumThreads;
+
+  /**
+   * Generates the matrices and selects the implementation.
+   */
+  @Setup
+  public void setUp() {
+    Random	rand;
+    int		i;
+    int		j;
+
+    rand = new Random(BenchmarkData.SEED);
+    m_A  = new Matrix(size, size);
+    m_B  = new Matrix(size, size);
+    for (i = 0; i < size; i++) {
+      for (j = 0; j < size; j++) {
+	m_A.set(i, j, rand.nextGaussian());
+	m_B.set(i, j, rand.nextGaussian());
+      }
+    }
+    m_SPD = m_A.times(m_A.transpose()).plus(Matrix.identity(size, size).times(size));
+
+    m_Threshold  = ParallelOperations.getThreshold();
+    m_NumThreads = ParallelOperations.getNumThreads();
+    if (threads == 0) {
+      ParallelOperations.setThreshold(Integer.MAX_VALUE);
+    }
+    else {
+      ParallelOperations.setThreshold(0);
+      ParallelOperations.setNumThreads(threads);
+    }
+  }
+
+  /**
+   * Restores the settings of ParallelOperations.
+   */
+  @TearDown
+  public void tearDown() {
+    ParallelOperations.setThreshold(m_Threshold);
+    ParallelOperations.setNumThreads(m_NumThreads);
+  }
+
+  /**
+   * Multiplies two matrices.
+   *
+   * @return		the product
+   */
+  @Benchmark
+  public Matrix times() {
+    return m_A.times(m_B);
+  }
+
+  /**
+   * Computes the Cholesky decomposition.
+   *
+   * @return		the decomposition
+   */
+  @Benchmark
+  public CholeskyDecomposition cholesky() {
+    return m_SPD.chol();
+  }
+
+  /**
+   * Computes the LU decomposition.
+   *
+   * @return		the decomposition
+   */
+  @Benchmark
+  public LUDecomposition lu() {
+    return m_A.lu();
+  }
+
+  /**
+   * Computes the QR decomposition.
+   *
+   * @return		the decomposition
+   */
+  @Benchmark
+  public QRDecomposition qr() {
+    return m_A.qr();
+  }
+
+  /**
+   * Inverts a matrix (LU decomposition and solving with n right-hand sides).
+   *
+   * @return		the inverse
+   */
+  @Benchmark
+  public Matrix inverse() {
+    return m_A.inverse();
+  }
+}
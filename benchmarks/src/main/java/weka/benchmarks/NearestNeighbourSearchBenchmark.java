@@ -0,0 +1,150 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NearestNeighbourSearchBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import weka.core.Instances;
+import weka.core.neighboursearch.BallTree;
+import weka.core.neighboursearch.CoverTree;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.LinearNNSearch;
+import weka.core.neighboursearch.NearestNeighbourSearch;
+
+/**
+ * Measures building the nearest neighbour search structures and querying
+ * them for the k nearest neighbours. LinearNNSearch is included as the
+ * reference.
+ *
+ * @version $Revision: 9500 $
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NearestNeighbourSearchBenchmark {
+
+  /** the search algorithm */
+  @Param({"KDTree", "BallTree", "CoverTree", "LinearNNSearch"})
+  public String search;
+
+  /** the number of instances */
+  @Param({"1000", "10000"})
+  public int numInstances;
+
+  /** the number of (numeric) attributes */
+  @Param({"5", "20"})
+  public int numAttributes;
+
+  /** the number of neighbours */
+  @Param({"10"})
+  public int k;
+
+  /** the number of queries per invocation */
+  public final static int NUM_QUERIES = 100;
+
+  /** the dataset */
+  protected Instances m_Data;
+
+  /** the queries */
+  protected Instances m_Queries;
+
+  /** the search, built on the dataset */
+  protected NearestNeighbourSearch m_Search;
+
+  /**
+   * Returns a new instance of the search algorithm.
+   *
+   * @return		the search
+   */
+  protected NearestNeighbourSearch newSearch() {
+    if (search.equals("KDTree"))
+      return new KDTree();
+    else if (search.equals("BallTree"))
+      return new BallTree();
+    else if (search.equals("CoverTree"))
+      return new CoverTree();
+    else if (search.equals("LinearNNSearch"))
+      return new LinearNNSearch();
+    else
+      throw new IllegalArgumentException("Unknown search: " + search);
+  }
+
+  /**
+   * Generates the dataset and the queries and builds the search.
+   *
+   * @throws Exception	if generation fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    Instances	all;
+
+    all       = BenchmarkData.numeric(numInstances + NUM_QUERIES, numAttributes);
+    m_Data    = new Instances(all, 0, numInstances);
+    m_Queries = new Instances(all, numInstances, NUM_QUERIES);
+    m_Search  = build();
+  }
+
+  /**
+   * Builds the search on the dataset.
+   *
+   * @return		the search
+   * @throws Exception	if building fails
+   */
+  @Benchmark
+  public NearestNeighbourSearch build() throws Exception {
+    NearestNeighbourSearch	result;
+
+    result = newSearch();
+    result.setInstances(m_Data);
+
+    return result;
+  }
+
+  /**
+   * Queries the search for the k nearest neighbours of the queries.
+   *
+   * @param bh		consumes the neighbours
+   * @throws Exception	if the search fails
+   */
+  @Benchmark
+  public void kNearestNeighbours(Blackhole bh) throws Exception {
+    int		i;
+
+    for (i = 0; i < m_Queries.numInstances(); i++)
+      bh.consume(m_Search.kNearestNeighbours(m_Queries.instance(i), k));
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StringToWordVectorBenchmark.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.StringToWordVector;
+
+/**
+ * Measures turning documents into word vectors with StringToWordVector.
+ *
+ * @version $Revision: 9500 $
+ * @see BenchmarkData#text(int, int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringToWordVectorBenchmark {
+
+  /** the number of documents */
+  @Param({"1000", "10000"})
+  public int numInstances;
+
+  /** the size of the vocabulary */
+  @Param({"100", "1000"})
+  public int numWords;
+
+  /** whether to output word counts and use TF-IDF */
+  @Param({"false", "true"})
+  public boolean tfidf;
+
+  /** the documents */
+  protected Instances m_Data;
+
+  /**
+   * Generates the documents.
+   *
+   * @throws Exception	if generation fails
+   */
+  @Setup
+  public void setUp() throws Exception {
+    m_Data = BenchmarkData.text(numInstances, numWords);
+  }
+
+  /**
+   * Filters the documents.
+   *
+   * @return		the word vectors
+   * @throws Exception	if filtering fails
+   */
+  @Benchmark
+  public Instances filter() throws Exception {
+    StringToWordVector	filter;
+
+    filter = new StringToWordVector();
+    filter.setWordsToKeep(numWords);
+    if (tfidf) {
+      filter.setOutputWordCounts(true);
+      filter.setTFTransform(true);
+      filter.setIDFTransform(true);
+    }
+    filter.setInputFormat(m_Data);
+
+    return Filter.useFilter(m_Data, filter);
+  }
+}
@@ -22,9 +22,11 @@
 package weka.attributeSelection;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
 
 import weka.core.FastVector;
@@ -65,6 +67,10 @@ import weka.core.Utils;
  *  Expressed as a multiple of the number of
  *  attributes in the data set. (default = 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -297,6 +303,9 @@ public class BestFirst
 
   /** holds the maximum size of the lookup cache for evaluated subsets */
   protected int m_cacheSize;
+
+  /** the number of threads used to evaluate the children of a node */
+  protected int m_numExecutionSlots;
   
   /**
    * Returns a string describing this search method
@@ -328,7 +337,7 @@ public class BestFirst
    *
    **/
   public Enumeration listOptions () {
-    Vector newVector = new Vector(4);
+    Vector newVector = new Vector(5);
     
     newVector.addElement(new Option("\tSpecify a starting set of attributes." 
 				    + "\n\tEg. 1,3,5-7."
@@ -345,7 +354,10 @@ public class BestFirst
 				    +"\n\tExpressed as a multiple of the number of"
 				    +"\n\tattributes in the data set. (default = 1)",
 				    "S", 1, "-S <num>"));
-				    
+    newVector.addElement(new Option("\tNumber of execution slots.\n"
+				    + "\t(default 1 - i.e. no parallelism)",
+				    "num-slots", 1, "-num-slots <num>"));
+
     return  newVector.elements();
   }
 
@@ -372,6 +384,10 @@ public class BestFirst
    *  Expressed as a multiple of the number of
    *  attributes in the data set. (default = 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -408,6 +424,11 @@ public class BestFirst
       setLookupCacheSize(Integer.parseInt(optionString));
     }
 
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
+
     m_debug = Utils.getFlag('Z', options);
   }
 
@@ -445,6 +466,39 @@ public class BestFirst
       +"(default = 1).";
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for evaluating "
+      +"the children of a node. Each thread uses a copy of the evaluator. "
+      +"The result does not depend on it.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for evaluating
+   * the children of a node.
+   *
+   * @param slots the number of slots
+   */
+  public void setNumExecutionSlots(int slots) {
+    if (slots >= 1) {
+      m_numExecutionSlots = slots;
+    }
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for evaluating
+   * the children of a node.
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -549,7 +603,7 @@ public class BestFirst
    * @return an array of strings suitable for passing to setOptions()
    */
   public String[] getOptions () {
-    String[] options = new String[6];
+    String[] options = new String[8];
     int current = 0;
 
     if (!(getStartSet().equals(""))) {
@@ -560,6 +614,10 @@ public class BestFirst
     options[current++] = "" + m_searchDirection;
     options[current++] = "-N";
     options[current++] = "" + m_maxStale;
+    if (m_numExecutionSlots != 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + m_numExecutionSlots;
+    }
 
     while (current < options.length) {
       options[current++] = "";
@@ -695,7 +753,11 @@ public class BestFirst
     boolean z;
     boolean added;
     Link2 tl;
-    Hashtable lookup = new Hashtable(m_cacheSize * m_numAttribs);
+    HashMap<BitSet, Double> lookup = new HashMap<BitSet, Double>(m_cacheSize * m_numAttribs);
+    List<Integer> children;
+    List<BitSet> subsets;
+    double[] merits;
+    Double cached;
     int insertCount = 0;
     int cacheHits = 0;
     LinkedList2 bfList = new LinkedList2(m_maxStale);
@@ -742,50 +804,74 @@ public class BestFirst
     best[0] = best_group.clone();
     bfList.addToList(best, best_merit);
     BitSet tt = (BitSet)best_group.clone();
-    String hashC = tt.toString();
-    lookup.put(hashC, new Double(best_merit));
-
-    while (stale < m_maxStale) {
-      added = false;
-
-      if (m_searchDirection == SELECTION_BIDIRECTIONAL) {
-	// bi-directional search
-        done = 2;
-        sd = SELECTION_FORWARD;
-      } else {
-	done = 1;
-      }
+    lookup.put(tt, new Double(best_merit));
+
+    ParallelSubsetEvaluation evaluator = 
+      new ParallelSubsetEvaluation(ASEvaluator, m_numExecutionSlots);
+    try {
+      while (stale < m_maxStale) {
+	added = false;
+
+	if (m_searchDirection == SELECTION_BIDIRECTIONAL) {
+	  // bi-directional search
+	  done = 2;
+	  sd = SELECTION_FORWARD;
+	} else {
+	  done = 1;
+	}
 
-      // finished search?
-      if (bfList.size() == 0) {
-	stale = m_maxStale;
-	break;
-      }
+	// finished search?
+	if (bfList.size() == 0) {
+	  stale = m_maxStale;
+	  break;
+	}
 
-      // copy the attribute set at the head of the list
-      tl = bfList.getLinkAt(0);
-      temp_group = (BitSet)(tl.getData()[0]);
-      temp_group = (BitSet)temp_group.clone();
-      // remove the head of the list
-      bfList.removeLinkAt(0);
-      // count the number of bits set (attributes)
-      int kk;
-
-      for (kk = 0, size = 0; kk < m_numAttribs; kk++) {
-	if (temp_group.get(kk)) {
-	  size++;
+	// copy the attribute set at the head of the list
+	tl = bfList.getLinkAt(0);
+	temp_group = (BitSet)(tl.getData()[0]);
+	temp_group = (BitSet)temp_group.clone();
+	// remove the head of the list
+	bfList.removeLinkAt(0);
+	// count the number of bits set (attributes)
+	int kk;
+
+	for (kk = 0, size = 0; kk < m_numAttribs; kk++) {
+	  if (temp_group.get(kk)) {
+	    size++;
+	  }
 	}
-      }
 
-      do {
-	for (i = 0; i < m_numAttribs; i++) {
-	  if (sd == SELECTION_FORWARD) {
-	    z = ((i != m_classIndex) && (!temp_group.get(i)));
-	  } else {
-	    z = ((i != m_classIndex) && (temp_group.get(i)));
+	do {
+	  // collect the children (single attribute additions/deletions) of
+	  // this node and evaluate the ones that are not in the cache
+	  children = new ArrayList<Integer>();
+	  subsets = new ArrayList<BitSet>();
+	  for (i = 0; i < m_numAttribs; i++) {
+	    if (sd == SELECTION_FORWARD) {
+	      z = ((i != m_classIndex) && (!temp_group.get(i)));
+	    } else {
+	      z = ((i != m_classIndex) && (temp_group.get(i)));
+	    }
+
+	    if (z) {
+	      children.add(i);
+	      tt = (BitSet)temp_group.clone();
+	      if (sd == SELECTION_FORWARD) {
+		tt.set(i);
+	      } else {
+		tt.clear(i);
+	      }
+	      if (lookup.containsKey(tt) == false) {
+		subsets.add(tt);
+	      }
+	    }
 	  }
-          
-	  if (z) {
+	  merits = evaluator.evaluateSubsets(subsets);
+
+	  // process the children in order, exactly as if they had been
+	  // evaluated one after another
+	  for (int c = 0, e = 0; c < children.size(); c++) {
+	    i = children.get(c);
 	    // set the bit (attribute to add/delete)
 	    if (sd == SELECTION_FORWARD) {
 	      temp_group.set(i);
@@ -798,30 +884,34 @@ public class BestFirst
 	    /* if this subset has been seen before, then it is already 
 	       in the list (or has been fully expanded) */
 	    tt = (BitSet)temp_group.clone();
-	    hashC = tt.toString();
-	    
-	    if (lookup.containsKey(hashC) == false) {
-	      merit = ASEvaluator.evaluateSubset(temp_group);
+	    cached = lookup.get(tt);
+
+	    if (cached == null) {
+	      if ((e < subsets.size()) && tt.equals(subsets.get(e))) {
+		merit = merits[e++];
+	      } else {
+		// dropped from the cache while processing this node
+		merit = ASEvaluator.evaluateSubset(temp_group);
+	      }
 	      m_totalEvals++;
-	      
+
 	      // insert this one in the hashtable
 	      if (insertCount > m_cacheSize * m_numAttribs) {
-		lookup = new Hashtable(m_cacheSize * m_numAttribs);
+		lookup = new HashMap<BitSet, Double>(m_cacheSize * m_numAttribs);
 		insertCount = 0;
 	      }
-	      hashC = tt.toString();
-    	      lookup.put(hashC, new Double(merit));
-    	      insertCount++;
+	      lookup.put(tt, new Double(merit));
+	      insertCount++;
 	    } else {
-	      merit = ((Double)lookup.get(hashC)).doubleValue();
+	      merit = cached.doubleValue();
 	      cacheHits++;  
 	    }
-	    
+	  
 	    // insert this one in the list
 	    Object[] add = new Object[1];
 	    add[0] = tt.clone();
 	    bfList.addToList(add, merit);
-	    
+	  
 	    if (m_debug) {
 	      System.out.print("Group: ");
 	      printGroup(tt, m_numAttribs);
@@ -857,20 +947,22 @@ public class BestFirst
 	      size++;
 	    }
 	  }
-	}
 
-	if (done == 2) {
-	  sd = SELECTION_BACKWARD;
-	}
+	  if (done == 2) {
+	    sd = SELECTION_BACKWARD;
+	  }
 
-	done--;
-      } while (done > 0);
+	  done--;
+	} while (done > 0);
 
-      /* if we haven't added a new attribute subset then full expansion 
-	 of this node hasen't resulted in anything better */
-      if (!added) {
-	stale++;
+	/* if we haven't added a new attribute subset then full expansion 
+	   of this node hasen't resulted in anything better */
+	if (!added) {
+	  stale++;
+	}
       }
+    } finally {
+      evaluator.shutdown();
     }
 
     m_bestMerit = best_merit;
@@ -889,6 +981,7 @@ public class BestFirst
     m_classIndex = -1;
     m_totalEvals = 0;
     m_cacheSize = 1;
+    m_numExecutionSlots = 1;
     m_debug = false;
   }
 
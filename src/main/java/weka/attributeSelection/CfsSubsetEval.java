@@ -21,9 +21,18 @@
 
 package  weka.attributeSelection;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
@@ -78,6 +87,19 @@ import weka.filters.supervised.attribute.Discretize;
  * <pre> -L
  *  Don't include locally predictive attributes.</pre>
  * 
+ * <pre> -Z
+ *  Precompute the correlations at the outset, rather than
+ *  computing them as needed during the search.</pre>
+ * 
+ * <pre> -S &lt;num&gt;
+ *  Keep at most this many correlations between attributes in
+ *  a hash table, rather than using a full correlation matrix.
+ *  For very wide data. (default 0 = full matrix)</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for precomputing correlations.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -86,7 +108,7 @@ import weka.filters.supervised.attribute.Discretize;
  */
 public class CfsSubsetEval
   extends ASEvaluation
-  implements SubsetEvaluator, 
+  implements ThreadSafeSubsetEvaluator, 
              OptionHandler, 
              TechnicalInformationHandler {
   
@@ -109,13 +131,23 @@ public class CfsSubsetEval
   private boolean m_missingSeparate;
   /** Include locally predictive attributes */
   private boolean m_locallyPredictive;
-  /** Holds the matrix of attribute correlations */
+  /** Holds the matrix of attribute correlations (null if m_cacheSize > 0) */
   //  private Matrix m_corr_matrix;
   private float [][] m_corr_matrix;
+  /** Holds the attribute correlations if the matrix is not used */
+  private ConcurrentHashMap<Long, Float> m_corr_cache;
+  /** Holds the correlations of the attributes with the class */
+  private float [] m_class_corr;
   /** Standard deviations of attributes (when using pearsons correlation) */
   private double[] m_std_devs;
   /** Threshold for admitting locally predictive features */
   private double m_c_Threshold;
+  /** Precompute the correlations in buildEvaluator */
+  private boolean m_preComputeCorrelations;
+  /** Maximum number of cached attribute correlations (0 = full matrix) */
+  private int m_cacheSize;
+  /** Number of threads used for precomputing the correlations */
+  private int m_numExecutionSlots;
 
   /**
    * Returns a string describing this attribute evaluator
@@ -166,11 +198,22 @@ public class CfsSubsetEval
    *
    **/
   public Enumeration listOptions () {
-    Vector newVector = new Vector(3);
+    Vector newVector = new Vector(5);
     newVector.addElement(new Option("\tTreat missing values as a separate " 
                                     + "value.", "M", 0, "-M"));
     newVector.addElement(new Option("\tDon't include locally predictive attributes" 
                                     + ".", "L", 0, "-L"));
+    newVector.addElement(new Option("\tPrecompute the correlations at the outset, "
+                                    + "rather than\n\tcomputing them as needed "
+                                    + "during the search.", "Z", 0, "-Z"));
+    newVector.addElement(new Option("\tKeep at most this many correlations between "
+                                    + "attributes in\n\ta hash table, rather than "
+                                    + "using a full correlation matrix.\n\tFor very "
+                                    + "wide data. (default 0 = full matrix)",
+                                    "S", 1, "-S <num>"));
+    newVector.addElement(new Option("\tNumber of execution slots for precomputing "
+                                    + "correlations.\n\t(default 1 - i.e. no "
+                                    + "parallelism)", "num-slots", 1, "-num-slots <num>"));
     return  newVector.elements();
   }
 
@@ -187,6 +230,19 @@ public class CfsSubsetEval
    * <pre> -L
    *  Don't include locally predictive attributes.</pre>
    * 
+   * <pre> -Z
+   *  Precompute the correlations at the outset, rather than
+   *  computing them as needed during the search.</pre>
+   * 
+   * <pre> -S &lt;num&gt;
+   *  Keep at most this many correlations between attributes in
+   *  a hash table, rather than using a full correlation matrix.
+   *  For very wide data. (default 0 = full matrix)</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for precomputing correlations.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -196,9 +252,22 @@ public class CfsSubsetEval
   public void setOptions (String[] options)
     throws Exception {
 
+    String optionString;
+
     resetOptions();
     setMissingSeparate(Utils.getFlag('M', options));
     setLocallyPredictive(!Utils.getFlag('L', options));
+    setPreComputeCorrelations(Utils.getFlag('Z', options));
+
+    optionString = Utils.getOption('S', options);
+    if (optionString.length() != 0) {
+      setCacheSize(Integer.parseInt(optionString));
+    }
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
   }
 
   /**
@@ -262,6 +331,104 @@ public class CfsSubsetEval
     return  m_missingSeparate;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String preComputeCorrelationsTipText() {
+    return "Precompute the correlations when the evaluator is built, rather "
+      +"than computing them as needed during the search. Uses the given "
+      +"number of execution slots. With a full correlation matrix all "
+      +"correlations are computed, otherwise only those with the class.";
+  }
+
+  /**
+   * Set whether to precompute the correlations
+   *
+   * @param b true if the correlations are to be precomputed
+   */
+  public void setPreComputeCorrelations (boolean b) {
+    m_preComputeCorrelations = b;
+  }
+
+
+  /**
+   * Return true if the correlations are precomputed
+   *
+   * @return true if the correlations are to be precomputed
+   */
+  public boolean getPreComputeCorrelations () {
+    return  m_preComputeCorrelations;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String cacheSizeTipText() {
+    return "The maximum number of correlations between attributes to keep in "
+      +"a hash table (the table is emptied when full). 0 means that a full "
+      +"correlation matrix is used, which needs memory quadratic in the "
+      +"number of attributes. Use a positive value for very wide data, on "
+      +"which the search only touches a small part of the matrix.";
+  }
+
+  /**
+   * Set the maximum number of cached correlations between attributes
+   *
+   * @param size the maximum number, 0 for a full matrix
+   */
+  public void setCacheSize (int size) {
+    if (size >= 0) {
+      m_cacheSize = size;
+    }
+  }
+
+
+  /**
+   * Return the maximum number of cached correlations between attributes
+   *
+   * @return the maximum number, 0 for a full matrix
+   */
+  public int getCacheSize () {
+    return  m_cacheSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for precomputing "
+      +"the correlations.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for precomputing
+   * the correlations
+   *
+   * @param slots the number of slots
+   */
+  public void setNumExecutionSlots (int slots) {
+    if (slots >= 1) {
+      m_numExecutionSlots = slots;
+    }
+  }
+
+
+  /**
+   * Return the number of execution slots (threads) to use for precomputing
+   * the correlations
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots () {
+    return  m_numExecutionSlots;
+  }
+
 
   /**
    * Gets the current settings of CfsSubsetEval
@@ -269,7 +436,7 @@ public class CfsSubsetEval
    * @return an array of strings suitable for passing to setOptions()
    */
   public String[] getOptions () {
-    String[] options = new String[2];
+    String[] options = new String[7];
     int current = 0;
 
     if (getMissingSeparate()) {
@@ -280,6 +447,20 @@ public class CfsSubsetEval
       options[current++] = "-L";
     }
 
+    if (getPreComputeCorrelations()) {
+      options[current++] = "-Z";
+    }
+
+    if (getCacheSize() != 0) {
+      options[current++] = "-S";
+      options[current++] = "" + getCacheSize();
+    }
+
+    if (getNumExecutionSlots() != 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + getNumExecutionSlots();
+    }
+
     while (current < options.length) {
       options[current++] = "";
     }
@@ -344,24 +525,174 @@ public class CfsSubsetEval
     }
 
     m_std_devs = new double[m_numAttribs];
-    m_corr_matrix = new float [m_numAttribs][];
     for (int i = 0; i < m_numAttribs; i++) {
-      m_corr_matrix[i] = new float [i+1];
+      m_std_devs[i] = (m_isNumeric) ? stdDev(i) : 1.0;
     }
 
-    for (int i = 0; i < m_corr_matrix.length; i++) {
-      m_corr_matrix[i][i] = 1.0f;
-      m_std_devs[i] = 1.0;
+    m_class_corr = new float [m_numAttribs];
+    Arrays.fill(m_class_corr, -999);
+
+    if (m_cacheSize > 0) {
+      m_corr_matrix = null;
+      m_corr_cache = new ConcurrentHashMap<Long, Float>();
+    } else {
+      m_corr_cache = null;
+      m_corr_matrix = new float [m_numAttribs][];
+      for (int i = 0; i < m_numAttribs; i++) {
+        m_corr_matrix[i] = new float [i];
+        Arrays.fill(m_corr_matrix[i], -999);
+      }
     }
 
-    for (int i = 0; i < m_numAttribs; i++) {
-      for (int j = 0; j < m_corr_matrix[i].length - 1; j++) {
-        m_corr_matrix[i][j] = -999;
+    if (m_preComputeCorrelations) {
+      preComputeCorrelations();
+    }
+  }
+
+
+  /**
+   * Computes the correlations of the attributes with the class and, if
+   * the full correlation matrix is used, between all attributes. Pairs of
+   * rows of the matrix with the same total length (the first and the
+   * last, the second and the second last, etc.) are processed together,
+   * in parallel if more than one execution slot is used.
+   *
+   * @throws Exception if a correlation cannot be computed
+   */
+  private void preComputeCorrelations () throws Exception {
+    final int half = (m_numAttribs + 1) / 2;
+
+    if ((m_numExecutionSlots == 1) || (half < 2)) {
+      fillRows(0, half);
+      return;
+    }
+
+    int numTasks = Math.min(half, 4 * m_numExecutionSlots);
+    ExecutorService pool = Executors.newFixedThreadPool(m_numExecutionSlots);
+    try {
+      List<Future<Object>> results = new ArrayList<Future<Object>>();
+      for (int t = 0; t < numTasks; t++) {
+        final int from = (int) ((long) half * t / numTasks);
+        final int to = (int) ((long) half * (t + 1) / numTasks);
+        results.add(pool.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            fillRows(from, to);
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> result : results) {
+        try {
+          result.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          }
+          throw e;
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+
+  /**
+   * Computes the correlations of the given rows and their counterparts
+   * at the other end of the correlation matrix.
+   *
+   * @param from the first row (inclusive)
+   * @param to the last row (exclusive)
+   */
+  private void fillRows (int from, int to) {
+    for (int k = from; k < to; k++) {
+      fillRow(k);
+      if (m_numAttribs - 1 - k != k) {
+        fillRow(m_numAttribs - 1 - k);
       }
     }
   }
 
 
+  /**
+   * Computes the correlation of an attribute with the class and, if the
+   * full correlation matrix is used, with all attributes that have a
+   * smaller index.
+   *
+   * @param i the attribute
+   */
+  private void fillRow (int i) {
+    if (i == m_classIndex) {
+      return;
+    }
+
+    getCorrelation(i, m_classIndex);
+    if (m_corr_matrix != null) {
+      for (int j = 0; j < i; j++) {
+        if (j != m_classIndex) {
+          getCorrelation(i, j);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Returns the correlation between two attributes (one of them may be the
+   * class), computing and storing it if it is not known yet. The
+   * correlation of two attributes is always computed with the larger index
+   * first and the correlation with the class with the class second, so the
+   * result does not depend on the order in which the correlations are
+   * requested. Can be called by several threads at once: a correlation
+   * may then get computed more than once, but always with the same result.
+   *
+   * @param att1 the first attribute
+   * @param att2 the second attribute
+   * @return the correlation
+   */
+  private float getCorrelation (int att1, int att2) {
+    float corr;
+
+    if (att1 == att2) {
+      return 1.0f;
+    }
+
+    if ((att1 == m_classIndex) || (att2 == m_classIndex)) {
+      int att = (att1 == m_classIndex) ? att2 : att1;
+      corr = m_class_corr[att];
+      if (corr == -999) {
+        corr = correlate(att, m_classIndex);
+        m_class_corr[att] = corr;
+      }
+      return corr;
+    }
+
+    int larger = Math.max(att1, att2);
+    int smaller = Math.min(att1, att2);
+
+    if (m_corr_matrix != null) {
+      corr = m_corr_matrix[larger][smaller];
+      if (corr == -999) {
+        corr = correlate(larger, smaller);
+        m_corr_matrix[larger][smaller] = corr;
+      }
+      return corr;
+    }
+
+    Long key = Long.valueOf((long) larger * m_numAttribs + smaller);
+    Float cached = m_corr_cache.get(key);
+    if (cached != null) {
+      return cached.floatValue();
+    }
+    corr = correlate(larger, smaller);
+    if (m_corr_cache.size() >= m_cacheSize) {
+      m_corr_cache.clear();
+    }
+    m_corr_cache.put(key, Float.valueOf(corr));
+    return corr;
+  }
+
+
   /**
    * evaluates a subset of attributes
    *
@@ -374,49 +705,21 @@ public class CfsSubsetEval
     throws Exception {
     double num = 0.0;
     double denom = 0.0;
-    float corr;
-    int larger, smaller;
     // do numerator
-    for (int i = 0; i < m_numAttribs; i++) {
+    for (int i = subset.nextSetBit(0); i >= 0; i = subset.nextSetBit(i + 1)) {
       if (i != m_classIndex) {
-        if (subset.get(i)) {
-          if (i > m_classIndex) {
-            larger = i; smaller = m_classIndex;
-          } else {
-            smaller = i; larger = m_classIndex;
-          }
-          /*      int larger = (i > m_classIndex ? i : m_classIndex);
-                  int smaller = (i > m_classIndex ? m_classIndex : i); */
-          if (m_corr_matrix[larger][smaller] == -999) {
-            corr = correlate(i, m_classIndex);
-            m_corr_matrix[larger][smaller] = corr;
-            num += (m_std_devs[i] * corr);
-          }
-          else {
-            num += (m_std_devs[i] * m_corr_matrix[larger][smaller]);
-          }
-        }
+        num += (m_std_devs[i] * getCorrelation(i, m_classIndex));
       }
     }
 
     // do denominator
-    for (int i = 0; i < m_numAttribs; i++) {
+    for (int i = subset.nextSetBit(0); i >= 0; i = subset.nextSetBit(i + 1)) {
       if (i != m_classIndex) {
-        if (subset.get(i)) {
-          denom += (1.0 * m_std_devs[i] * m_std_devs[i]);
-
-          for (int j = 0; j < m_corr_matrix[i].length - 1; j++) {
-            if (subset.get(j)) {
-              if (m_corr_matrix[i][j] == -999) {
-                corr = correlate(i, j);
-                m_corr_matrix[i][j] = corr;
-                denom += (2.0 * m_std_devs[i] * m_std_devs[j] * corr);
-              }
-              else {
-                denom += (2.0 * m_std_devs[i] * m_std_devs[j] * m_corr_matrix[i][j]);
-              }
-            }
-          }
+        denom += (1.0 * m_std_devs[i] * m_std_devs[i]);
+
+        for (int j = subset.nextSetBit(0); (j >= 0) && (j < i); 
+             j = subset.nextSetBit(j + 1)) {
+          denom += (2.0 * m_std_devs[i] * m_std_devs[j] * getCorrelation(i, j));
         }
       }
     }
@@ -617,6 +920,84 @@ public class CfsSubsetEval
   }
 
 
+  /**
+   * Computes the standard deviation of an attribute that is used to weight
+   * its correlations when the class is numeric: the standard deviation of
+   * a numeric attribute, the weighted standard deviation of the indicator
+   * variables of the values of a nominal one. Missing values count as the
+   * mean or mode (or as a separate value). Returns 1.0 if the deviation
+   * is zero.
+   *
+   * @param att the attribute
+   * @return the standard deviation
+   */
+  private double stdDev (int att) {
+    int i, k, ii;
+    double temp, diff;
+    Instance inst;
+
+    if (m_trainInstances.attribute(att).isNumeric()) {
+      double mx = m_trainInstances.meanOrMode(m_trainInstances.attribute(att));
+      double sx = 0.0;
+
+      for (k = 0; k < m_numInstances; k++) {
+        inst = m_trainInstances.instance(k);
+        diff = (inst.isMissing(att))? 0.0 : (inst.value(att) - mx);
+        sx += (diff*diff);
+      }
+
+      return (sx != 0.0) ? Math.sqrt((sx/m_numInstances)) : 1.0;
+    }
+
+    int mx = (int)m_trainInstances.
+      meanOrMode(m_trainInstances.attribute(att));
+    int nx = (!m_missingSeparate) 
+      ? m_trainInstances.attribute(att).numValues() 
+      : m_trainInstances.attribute(att).numValues() + 1;
+    double[] prior_nom = new double[nx];
+    double[] stdvs_nom = new double[nx];
+
+    for (k = 0; k < m_numInstances; k++) {
+      inst = m_trainInstances.instance(k);
+
+      if (inst.isMissing(att)) {
+        ii = (!m_missingSeparate) ? mx : nx - 1;
+      }
+      else {
+        ii = (int)inst.value(att);
+      }
+      prior_nom[ii]++;
+    }
+
+    for (k = 0; k < m_numInstances; k++) {
+      inst = m_trainInstances.instance(k);
+
+      for (i = 0; i < nx; i++) {
+        if (inst.isMissing(att)) {
+          if (!m_missingSeparate) {
+            temp = (i == mx)? 1.0 : 0.0;
+          }
+          else {
+            temp = (i == (nx - 1))? 1.0 : 0.0;
+          }
+        }
+        else {
+          temp = (i == inst.value(att))? 1.0 : 0.0;
+        }
+
+        diff = (temp - (prior_nom[i]/m_numInstances));
+        stdvs_nom[i] += (diff*diff);
+      }
+    }
+
+    for (i = 0, temp = 0.0; i < nx; i++) {
+      temp += ((prior_nom[i]/m_numInstances)*(stdvs_nom[i]/m_numInstances));
+    }
+
+    return (temp != 0.0) ? Math.sqrt(temp) : 1.0;
+  }
+
+
   private double num_num (int att1, int att2) {
     int i;
     Instance inst;
@@ -633,18 +1014,6 @@ public class CfsSubsetEval
       sy += (diff2*diff2);
     }
 
-    if (sx != 0.0) {
-      if (m_std_devs[att1] == 1.0) {
-        m_std_devs[att1] = Math.sqrt((sx/m_numInstances));
-      }
-    }
-
-    if (sy != 0.0) {
-      if (m_std_devs[att2] == 1.0) {
-        m_std_devs[att2] = Math.sqrt((sy/m_numInstances));
-      }
-    }
-
     if ((sx*sy) > 0.0) {
       r = (num/(Math.sqrt(sx*sy)));
       return  ((r < 0.0)? -r : r);
@@ -755,20 +1124,6 @@ public class CfsSubsetEval
       }
     }
 
-    // set the standard deviations for these attributes if necessary
-    // if ((att1 != classIndex) && (att2 != classIndex)) // =============
-    if (temp != 0.0) {
-      if (m_std_devs[att1] == 1.0) {
-        m_std_devs[att1] = Math.sqrt(temp);
-      }
-    }
-
-    if (stdv_num != 0.0) {
-      if (m_std_devs[att2] == 1.0) {
-        m_std_devs[att2] = Math.sqrt((stdv_num/m_numInstances));
-      }
-    }
-
     if (r == 0.0) {
       if (att1 != m_classIndex && att2 != m_classIndex) {
         r = 1.0;
@@ -933,28 +1288,6 @@ public class CfsSubsetEval
       }
     }
 
-    // calculate weighted standard deviations for these attributes
-    // (if necessary)
-    for (i = 0, temp1 = 0.0; i < nx; i++) {
-      temp1 += ((sumx[i]/m_numInstances)*(stdvsx[i]/m_numInstances));
-    }
-
-    if (temp1 != 0.0) {
-      if (m_std_devs[att1] == 1.0) {
-        m_std_devs[att1] = Math.sqrt(temp1);
-      }
-    }
-
-    for (j = 0, temp2 = 0.0; j < ny; j++) {
-      temp2 += ((sumy[j]/m_numInstances)*(stdvsy[j]/m_numInstances));
-    }
-
-    if (temp2 != 0.0) {
-      if (m_std_devs[att2] == 1.0) {
-        m_std_devs[att2] = Math.sqrt(temp2);
-      }
-    }
-
     if (r == 0.0) {
       if (att1 != m_classIndex && att2 != m_classIndex) {
         r = 1.0;
@@ -1000,28 +1333,17 @@ public class CfsSubsetEval
     float corr;
     j = 0;
     BitSet temp_group = (BitSet)best_group.clone();
-    int larger, smaller;
 
     while (!done) {
       temp_best = -1.0;
 
       // find best not already in group
       for (i = 0; i < m_numAttribs; i++) {
-        if (i > m_classIndex) {
-          larger = i; smaller = m_classIndex;
-        } else {
-          smaller = i; larger = m_classIndex;
-        }
-        /*      int larger = (i > m_classIndex ? i : m_classIndex);
-                int smaller = (i > m_classIndex ? m_classIndex : i); */
         if ((!temp_group.get(i)) && (i != m_classIndex)) {
-          if (m_corr_matrix[larger][smaller] == -999) {
-            corr = correlate(i, m_classIndex);
-            m_corr_matrix[larger][smaller] = corr;
-          }
+          corr = getCorrelation(i, m_classIndex);
 
-          if (m_corr_matrix[larger][smaller]  > temp_best) {
-            temp_best = m_corr_matrix[larger][smaller];
+          if (corr > temp_best) {
+            temp_best = corr;
             j = i;
           }
         }
@@ -1037,20 +1359,8 @@ public class CfsSubsetEval
         // check the best against correlations with others already
         // in group 
         for (i = 0; i < m_numAttribs; i++) {
-          if (i > j) {
-            larger = i; smaller = j;
-          } else {
-            larger = j; smaller = i;
-          }
-          /*  int larger = (i > j ? i : j);
-              int smaller = (i > j ? j : i); */
           if (best_group.get(i)) {
-            if (m_corr_matrix[larger][smaller] == -999) {
-              corr = correlate(i, j);
-              m_corr_matrix[larger][smaller] = corr;
-            }
-
-            if (m_corr_matrix[larger][smaller] > temp_best - m_c_Threshold) {
+            if (getCorrelation(i, j) > temp_best - m_c_Threshold) {
               ok = false;
               break;
             }
@@ -1117,6 +1427,9 @@ public class CfsSubsetEval
     m_missingSeparate = false;
     m_locallyPredictive = true;
     m_c_Threshold = 0.0;
+    m_preComputeCorrelations = false;
+    m_cacheSize = 0;
+    m_numExecutionSlots = 1;
   }
   
   /**
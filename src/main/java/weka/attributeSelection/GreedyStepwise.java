@@ -21,8 +21,10 @@
 
 package weka.attributeSelection;
 
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
 
 import weka.core.Instances;
@@ -65,6 +67,10 @@ import weka.core.Utils;
  * <pre> -N &lt;num to select&gt;
  *  Specify number of attributes to select</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Mark Hall
@@ -136,6 +142,9 @@ public class GreedyStepwise
       search as long as the merit does not degrade */
   protected boolean m_conservativeSelection = false;
 
+  /** the number of threads used to evaluate the candidate subsets of a step */
+  protected int m_numExecutionSlots = 1;
+
   /**
    * Constructor
    */
@@ -350,12 +359,45 @@ public class GreedyStepwise
     return m_conservativeSelection;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for evaluating "
+      +"the candidate subsets of a step. Each thread uses a copy of the "
+      +"evaluator. The result does not depend on it.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for evaluating
+   * the candidate subsets of a step.
+   *
+   * @param slots the number of slots
+   */
+  public void setNumExecutionSlots(int slots) {
+    if (slots >= 1) {
+      m_numExecutionSlots = slots;
+    }
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for evaluating
+   * the candidate subsets of a step.
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Returns an enumeration describing the available options.
    * @return an enumeration of all the available options.
    **/
   public Enumeration listOptions () {
-    Vector newVector = new Vector(5);
+    Vector newVector = new Vector(7);
 
     newVector.addElement(new Option("\tUse conservative forward search"
 				    ,"-C", 0, "-C"));
@@ -382,6 +424,10 @@ public class GreedyStepwise
 			     ,"N",1
 			     , "-N <num to select>"));
 
+    newVector.addElement(new Option("\tNumber of execution slots.\n"
+				    + "\t(default 1 - i.e. no parallelism)",
+				    "num-slots", 1, "-num-slots <num>"));
+
     return newVector.elements();
 
   }
@@ -414,6 +460,10 @@ public class GreedyStepwise
    * <pre> -N &lt;num to select&gt;
    *  Specify number of attributes to select</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -446,6 +496,11 @@ public class GreedyStepwise
     if (optionString.length() != 0) {
       setNumToSelect(Integer.parseInt(optionString));
     }
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
   }
 
   /**
@@ -454,7 +509,7 @@ public class GreedyStepwise
    * @return an array of strings suitable for passing to setOptions()
    */
   public String[] getOptions () {
-    String[] options = new String[9];
+    String[] options = new String[11];
     int current = 0;
     
     if (getSearchBackwards()) {
@@ -479,6 +534,11 @@ public class GreedyStepwise
     options[current++] = "-N";
     options[current++] = ""+getNumToSelect();
 
+    if (getNumExecutionSlots() != 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + getNumExecutionSlots();
+    }
+
     while (current < options.length) {
       options[current++] = "";
     }
@@ -651,67 +711,83 @@ public class GreedyStepwise
     boolean done = false;
     boolean addone = false;
     boolean z;
-    while (!done) {
-      temp_group = (BitSet)m_best_group.clone();
-      temp_best = best_merit;
-      if (m_doRank) {
-	temp_best = -Double.MAX_VALUE;
-      }
-      done = true;
-      addone = false;
-      for (i=0;i<m_numAttribs;i++) {
-	if (m_backward) {
-	  z = ((i != m_classIndex) && (temp_group.get(i)));
-	} else {
-	  z = ((i != m_classIndex) && (!temp_group.get(i)));
+    List<Integer> candidates;
+    List<BitSet> subsets;
+    double[] merits;
+    ParallelSubsetEvaluation evaluator = 
+      new ParallelSubsetEvaluation(ASEvaluator, m_numExecutionSlots);
+    try {
+      while (!done) {
+	temp_group = (BitSet)m_best_group.clone();
+	temp_best = best_merit;
+	if (m_doRank) {
+	  temp_best = -Double.MAX_VALUE;
 	}
-	if (z) {
-	  // set/unset the bit
+	done = true;
+	addone = false;
+
+	// evaluate all single attribute additions/deletions
+	candidates = new ArrayList<Integer>();
+	subsets = new ArrayList<BitSet>();
+	for (i=0;i<m_numAttribs;i++) {
 	  if (m_backward) {
-	    temp_group.clear(i);
+	    z = ((i != m_classIndex) && (temp_group.get(i)));
 	  } else {
-	    temp_group.set(i);
+	    z = ((i != m_classIndex) && (!temp_group.get(i)));
+	  }
+	  if (z) {
+	    // set/unset the bit
+	    BitSet subset = (BitSet)temp_group.clone();
+	    if (m_backward) {
+	      subset.clear(i);
+	    } else {
+	      subset.set(i);
+	    }
+	    candidates.add(i);
+	    subsets.add(subset);
 	  }
-	  temp_merit = ASEvaluator.evaluateSubset(temp_group);
+	}
+	merits = evaluator.evaluateSubsets(subsets);
+
+	// compare them in order, exactly as if they had been evaluated
+	// one after another
+	for (int c = 0; c < candidates.size(); c++) {
+	  temp_merit = merits[c];
 	  if (m_backward) {
 	    z = (temp_merit >= temp_best);
 	  } else {
-            if (m_conservativeSelection) {
-              z = (temp_merit >= temp_best);
-            } else {
-              z = (temp_merit > temp_best);
-            }
+	    if (m_conservativeSelection) {
+	      z = (temp_merit >= temp_best);
+	    } else {
+	      z = (temp_merit > temp_best);
+	    }
 	  }
 
 	  if (z) {
-            temp_best = temp_merit;
-            temp_index = i;
-            addone = true;
-            done = false;
+	    temp_best = temp_merit;
+	    temp_index = candidates.get(c);
+	    addone = true;
+	    done = false;
 	  }
 
-	  // unset this addition/deletion
-	  if (m_backward) {
-	    temp_group.set(i);
-	  } else {
-	    temp_group.clear(i);
-	  }
 	  if (m_doRank) {
 	    done = false;
 	  }
 	}
-      }
-      if (addone) {
-	if (m_backward) {
-	  m_best_group.clear(temp_index);
-	} else {
-	  m_best_group.set(temp_index);
+	if (addone) {
+	  if (m_backward) {
+	    m_best_group.clear(temp_index);
+	  } else {
+	    m_best_group.set(temp_index);
+	  }
+	  best_merit = temp_best;
+	  m_rankedAtts[m_rankedSoFar][0] = temp_index;
+	  m_rankedAtts[m_rankedSoFar][1] = best_merit;
+	  m_rankedSoFar++;
 	}
-	best_merit = temp_best;
-	m_rankedAtts[m_rankedSoFar][0] = temp_index;
-	m_rankedAtts[m_rankedSoFar][1] = best_merit;
-	m_rankedSoFar++;
       }
+    } finally {
+      evaluator.shutdown();
     }
     m_bestMerit = best_merit;
     return attributeList(m_best_group);
@@ -0,0 +1,179 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ParallelSubsetEvaluation.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.attributeSelection;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Helper for search methods that evaluate several attribute subsets at a
+ * time, e.g., all the children of a node in the search space. With more than
+ * one execution slot the subsets are evaluated concurrently. Evaluators
+ * that implement ThreadSafeSubsetEvaluator are shared by the threads. Other
+ * evaluators are not safe to be used by several threads at once (they
+ * re-use classifiers and filters, etc.), so each thread works with an
+ * evaluator of its own: the evaluator passed in plus serialized copies of
+ * it, created when first needed. The merits are returned in the
+ * order of the subsets, so a search that processes them in that order
+ * behaves exactly like one that evaluates them one after another. <p/>
+ *
+ * The threads are released with shutdown().
+ *
+ * @version $Revision: 9500 $
+ * @see ThreadSafeSubsetEvaluator
+ */
+public class ParallelSubsetEvaluation
+  implements RevisionHandler {
+
+  /** the evaluator used by the search */
+  protected SubsetEvaluator m_Evaluator;
+
+  /** the number of execution slots */
+  protected int m_NumSlots;
+
+  /** the evaluators that are currently not in use, created when first needed */
+  protected BlockingQueue<SubsetEvaluator> m_Idle = null;
+
+  /** the threads, created when first needed */
+  protected ExecutorService m_Pool = null;
+
+  /**
+   * Initializes the helper.
+   *
+   * @param evaluator	the evaluator to use (and to copy)
+   * @param numSlots	the number of execution slots (threads)
+   */
+  public ParallelSubsetEvaluation(SubsetEvaluator evaluator, int numSlots) {
+    m_Evaluator = evaluator;
+    m_NumSlots  = Math.max(1, numSlots);
+  }
+
+  /**
+   * Creates the threads and, unless the evaluator is thread-safe, the
+   * copies of the evaluator.
+   *
+   * @throws Exception	if the evaluator cannot be copied
+   */
+  protected void initialize() throws Exception {
+    ASEvaluation[]	copies;
+    int			i;
+
+    m_Idle = new LinkedBlockingQueue<SubsetEvaluator>();
+    m_Idle.add(m_Evaluator);
+    if (m_Evaluator instanceof ThreadSafeSubsetEvaluator) {
+      for (i = 1; i < m_NumSlots; i++)
+	m_Idle.add(m_Evaluator);
+    }
+    else {
+      copies = ASEvaluation.makeCopies((ASEvaluation) m_Evaluator, m_NumSlots - 1);
+      for (i = 0; i < copies.length; i++)
+	m_Idle.add((SubsetEvaluator) copies[i]);
+    }
+
+    m_Pool = Executors.newFixedThreadPool(m_NumSlots);
+  }
+
+  /**
+   * Evaluates the subsets. The subsets must not be modified before this
+   * method returns.
+   *
+   * @param subsets	the subsets to evaluate
+   * @return		the merits, in the order of the subsets
+   * @throws Exception	if an evaluation fails
+   */
+  public double[] evaluateSubsets(List<BitSet> subsets) throws Exception {
+    double[]			result;
+    List<Future<Double>>	futures;
+    int				i;
+
+    result = new double[subsets.size()];
+
+    if ((m_NumSlots == 1) || (subsets.size() < 2)) {
+      for (i = 0; i < result.length; i++)
+	result[i] = m_Evaluator.evaluateSubset(subsets.get(i));
+      return result;
+    }
+
+    if (m_Pool == null)
+      initialize();
+
+    futures = new ArrayList<Future<Double>>();
+    for (final BitSet subset: subsets) {
+      futures.add(m_Pool.submit(new Callable<Double>() {
+	public Double call() throws Exception {
+	  SubsetEvaluator evaluator = m_Idle.take();
+	  try {
+	    return evaluator.evaluateSubset(subset);
+	  }
+	  finally {
+	    m_Idle.put(evaluator);
+	  }
+	}
+      }));
+    }
+
+    try {
+      for (i = 0; i < result.length; i++)
+	result[i] = futures.get(i).get();
+    }
+    catch (ExecutionException e) {
+      for (Future<Double> future: futures)
+	future.cancel(true);
+      if (e.getCause() instanceof Exception)
+	throw (Exception) e.getCause();
+      throw e;
+    }
+
+    return result;
+  }
+
+  /**
+   * Releases the threads and the copies of the evaluator.
+   */
+  public void shutdown() {
+    if (m_Pool != null) {
+      m_Pool.shutdownNow();
+      m_Pool = null;
+      m_Idle = null;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
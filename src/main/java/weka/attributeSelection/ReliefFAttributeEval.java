@@ -21,9 +21,16 @@
 
 package weka.attributeSelection;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Attribute;
 import weka.core.Capabilities;
@@ -33,11 +40,14 @@ import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SerializedObject;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.NearestNeighbourSearch;
 
 /** 
  <!-- globalinfo-start -->
@@ -121,6 +131,20 @@ import weka.core.Utils;
  *  number of nearest neighbours.
  *  (Default = 2)</pre>
  * 
+ * <pre> -N
+ *  Find the nearest neighbours with a search
+ *  structure rather than a linear scan over
+ *  all instances (approximate).</pre>
+ * 
+ * <pre> -S &lt;spec&gt;
+ *  The nearest neighbour search algorithm to
+ *  use, implies -N.
+ *  (Default = weka.core.neighboursearch.KDTree)</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Mark Hall (mhall@cs.waikato.ac.nz)
@@ -186,23 +210,11 @@ public class ReliefFAttributeEval
   /** The number of nearest hits/misses */
   private int m_Knn;
 
-  /** k nearest scores + instance indexes for n classes */
-  private double[][][] m_karray;
-
   /** Upper bound for numeric attributes */
   private double[] m_maxArray;
 
   /** Lower bound for numeric attributes */
   private double[] m_minArray;
-
-  /** Keep track of the farthest instance for each class */
-  private double[] m_worst;
-
-  /** Index in the m_karray of the farthest instance for each class */
-  private int[] m_index;
-
-  /** Number of nearest neighbours stored of each class */
-  private int[] m_stored;
  
   /** Random number seed used for sampling instances */
   private int m_seed;
@@ -220,6 +232,15 @@ public class ReliefFAttributeEval
   /** Weight by distance rather than equal weights */
   private boolean m_weightByDistance;
 
+  /** Find the neighbours with a search structure rather than a linear scan */
+  private boolean m_useNNSearch;
+
+  /** The search algorithm (copied for each class and thread) */
+  private NearestNeighbourSearch m_NNSearch;
+
+  /** The number of threads used to process the sampled instances */
+  private int m_numExecutionSlots;
+
   /**
    * Constructor
    */
@@ -287,7 +308,7 @@ public class ReliefFAttributeEval
    * @return an enumeration of all the available options.
    **/
   public Enumeration listOptions () {
-    Vector newVector = new Vector(4);
+    Vector newVector = new Vector(8);
     newVector
       .addElement(new Option("\tSpecify the number of instances to\n" 
                              + "\tsample when estimating attributes.\n" 
@@ -314,6 +335,20 @@ public class ReliefFAttributeEval
                             + "\tSensible value=1/5 to 1/10 of the\n" 
                             + "\tnumber of nearest neighbours.\n" 
                             + "\t(Default = 2)", "A", 1, "-A <num>"));
+    newVector.
+      addElement(new Option("\tFind the nearest neighbours with a search\n" 
+                            + "\tstructure rather than a linear scan over\n" 
+                            + "\tall instances (approximate).", "N"
+                            , 0, "-N"));
+    newVector.
+      addElement(new Option("\tThe nearest neighbour search algorithm to\n" 
+                            + "\tuse, implies -N.\n" 
+                            + "\t(Default = weka.core.neighboursearch.KDTree)"
+                            , "S", 1, "-S <spec>"));
+    newVector.
+      addElement(new Option("\tNumber of execution slots.\n" 
+                            + "\t(default 1 - i.e. no parallelism)"
+                            , "num-slots", 1, "-num-slots <num>"));
     return  newVector.elements();
   }
 
@@ -351,6 +386,20 @@ public class ReliefFAttributeEval
    *  number of nearest neighbours.
    *  (Default = 2)</pre>
    * 
+   * <pre> -N
+   *  Find the nearest neighbours with a search
+   *  structure rather than a linear scan over
+   *  all instances (approximate).</pre>
+   * 
+   * <pre> -S &lt;spec&gt;
+   *  The nearest neighbour search algorithm to
+   *  use, implies -N.
+   *  (Default = weka.core.neighboursearch.KDTree)</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -385,6 +434,28 @@ public class ReliefFAttributeEval
       setWeightByDistance(true); // turn on weighting by distance
       setSigma(Integer.parseInt(optionString));
     }
+
+    setUseNearestNeighbourSearch(Utils.getFlag('N', options));
+    optionString = Utils.getOption('S', options);
+
+    if (optionString.length() != 0) {
+      String[] nnSearchSpec = Utils.splitOptions(optionString);
+      if (nnSearchSpec.length == 0) {
+        throw new Exception("Invalid NearestNeighbourSearch algorithm " 
+                            + "specification string.");
+      }
+      String className = nnSearchSpec[0];
+      nnSearchSpec[0] = "";
+      setUseNearestNeighbourSearch(true); // turn on the search structure
+      setNearestNeighbourSearchAlgorithm((NearestNeighbourSearch)
+        Utils.forName(NearestNeighbourSearch.class, className, nnSearchSpec));
+    }
+
+    optionString = Utils.getOption("num-slots", options);
+
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
   }
 
   /**
@@ -538,13 +609,105 @@ public class ReliefFAttributeEval
   }
 
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String useNearestNeighbourSearchTipText() {
+    return "Find the nearest hits and misses with the nearest neighbour "
+      +"search algorithm rather than a linear scan over all instances. "
+      +"The instances of each class are searched separately, with the "
+      +"distance function of the algorithm (normalized over the class). "
+      +"ReliefF itself uses the Manhattan distance, whereas the tree "
+      +"structures only support the Euclidean distance, so the neighbours "
+      +"found differ somewhat from those of the scan.";
+  }
+
+  /**
+   * Set whether to use a nearest neighbour search structure.
+   *
+   * @param b true if the search structure is to be used
+   */
+  public void setUseNearestNeighbourSearch (boolean b) {
+    m_useNNSearch = b;
+  }
+
+  /**
+   * Get whether a nearest neighbour search structure is used.
+   *
+   * @return true if the search structure is used
+   */
+  public boolean getUseNearestNeighbourSearch () {
+    return  m_useNNSearch;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String nearestNeighbourSearchAlgorithmTipText() {
+    return "The nearest neighbour search algorithm to use if "
+      +"useNearestNeighbourSearch is set (Default: "
+      +"weka.core.neighboursearch.KDTree). KDTree and CoverTree cannot "
+      +"handle missing values.";
+  }
+
+  /**
+   * Set the nearest neighbour search algorithm.
+   *
+   * @param search the search algorithm
+   */
+  public void setNearestNeighbourSearchAlgorithm (NearestNeighbourSearch search) {
+    m_NNSearch = search;
+  }
+
+  /**
+   * Get the nearest neighbour search algorithm.
+   *
+   * @return the search algorithm
+   */
+  public NearestNeighbourSearch getNearestNeighbourSearchAlgorithm () {
+    return  m_NNSearch;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads that process the sampled instances. "
+      +"Each thread accumulates the weights of its share of the instances "
+      +"and the shares are added up at the end.";
+  }
+
+  /**
+   * Set the number of execution slots (threads).
+   *
+   * @param n the number of slots
+   */
+  public void setNumExecutionSlots (int n) {
+    m_numExecutionSlots = n;
+  }
+
+  /**
+   * Get the number of execution slots (threads).
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots () {
+    return  m_numExecutionSlots;
+  }
+
   /**
    * Gets the current settings of ReliefFAttributeEval.
    *
    * @return an array of strings suitable for passing to setOptions()
    */
   public String[] getOptions () {
-    String[] options = new String[9];
+    String[] options = new String[14];
     int current = 0;
 
     if (getWeightByDistance()) {
@@ -563,6 +726,17 @@ public class ReliefFAttributeEval
       options[current++] = "" + getSigma();
     }
 
+    if (getUseNearestNeighbourSearch()) {
+      options[current++] = "-S";
+      options[current++] = m_NNSearch.getClass().getName() + " " 
+        + Utils.joinOptions(m_NNSearch.getOptions());
+    }
+
+    if (getNumExecutionSlots() != 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + getNumExecutionSlots();
+    }
+
     while (current < options.length) {
       options[current++] = "";
     }
@@ -604,6 +778,12 @@ public class ReliefFAttributeEval
       else {
         text.append("\tEqual influence nearest neighbours\n");
       }
+
+      if (m_useNNSearch) {
+        text.append("\tNearest neighbour search: " 
+                    + m_NNSearch.getClass().getName() + " " 
+                    + Utils.joinOptions(m_NNSearch.getOptions()) + "\n");
+      }
     }
 
     return  text.toString();
@@ -644,7 +824,10 @@ public class ReliefFAttributeEval
   public void buildEvaluator (Instances data)
     throws Exception {
     
-    int z, totalInstances;
+    int z, totalInstances, numParts;
+    int[] sample;
+    Instances[] classData = null;
+    List<ReliefFTask> tasks;
     Random r = new Random(m_seed);
 
     // can evaluator handle data?
@@ -666,10 +849,7 @@ public class ReliefFAttributeEval
       m_numClasses = m_trainInstances.attribute(m_classIndex).numValues();
     }
     else {
-      m_ndc = 0;
       m_numClasses = 1;
-      m_nda = new double[m_numAttribs];
-      m_ndcda = new double[m_numAttribs];
     }
 
     if (m_weightByDistance) // set up the rank based weights
@@ -682,12 +862,6 @@ public class ReliefFAttributeEval
         }
       }
 
-    // the final attribute weights
-    m_weights = new double[m_numAttribs];
-    // num classes (1 for numeric class) knn neighbours, 
-    // and 0 = distance, 1 = instance index
-    m_karray = new double[m_numClasses][m_Knn][2];
-
     if (!m_numericClass) {
       m_classProbs = new double[m_numClasses];
 
@@ -700,9 +874,6 @@ public class ReliefFAttributeEval
       }
     }
 
-    m_worst = new double[m_numClasses];
-    m_index = new int[m_numClasses];
-    m_stored = new int[m_numClasses];
     m_minArray = new double[m_numAttribs];
     m_maxArray = new double[m_numAttribs];
 
@@ -721,7 +892,9 @@ public class ReliefFAttributeEval
       totalInstances = m_sampleM;
     }
 
-    // process each instance, updating attribute weights
+    // draw the instances to process
+    sample = new int[totalInstances];
+
     for (int i = 0; i < totalInstances; i++) {
       if (totalInstances == m_numInstances) {
         z = i;
@@ -734,23 +907,62 @@ public class ReliefFAttributeEval
         z *= -1;
       }
 
-      if (!(m_trainInstances.instance(z).isMissing(m_classIndex))) {
-        // first clear the knn and worst index stuff for the classes
-        for (int j = 0; j < m_numClasses; j++) {
-          m_index[j] = m_stored[j] = 0;
+      sample[i] = z;
+    }
 
-          for (int k = 0; k < m_Knn; k++) {
-            m_karray[j][k][0] = m_karray[j][k][1] = 0;
-          }
-        }
+    // split the instances by class (as findKHitMiss does), the nearest
+    // neighbour search algorithm searches each class separately
+    if (m_useNNSearch) {
+      classData = new Instances[m_numClasses];
+
+      for (int i = 0; i < m_numClasses; i++) {
+        classData[i] = new Instances(m_trainInstances, 0);
+      }
 
-        findKHitMiss(z);
+      for (int i = 0; i < m_numInstances; i++) {
+        Instance inst = m_trainInstances.instance(i);
+        classData[(m_numericClass) ? 0 : (int)inst.value(m_classIndex)].add(inst);
+      }
+    }
 
-        if (m_numericClass) {
-          updateWeightsNumericClass(z);
-        }
-        else {
-          updateWeightsDiscreteClass(z);
+    // process each instance, updating attribute weights. Each thread
+    // processes a contiguous share of the sample and accumulates its own
+    // weights, which are added up in the order of the shares
+    numParts = Math.max(1, Math.min(m_numExecutionSlots, totalInstances));
+    tasks = new ArrayList<ReliefFTask>();
+
+    for (int i = 0; i < numParts; i++) {
+      tasks.add(new ReliefFTask(sample, 
+                                (int)((long)totalInstances*i/numParts), 
+                                (int)((long)totalInstances*(i + 1)/numParts),
+                                classData));
+    }
+
+    if (numParts == 1) {
+      tasks.get(0).call();
+    }
+    else {
+      runTasks(tasks);
+    }
+
+    m_weights = tasks.get(0).m_weights;
+    m_ndc = tasks.get(0).m_ndc;
+    m_nda = tasks.get(0).m_nda;
+    m_ndcda = tasks.get(0).m_ndcda;
+
+    for (int i = 1; i < numParts; i++) {
+      ReliefFTask task = tasks.get(i);
+
+      for (int j = 0; j < m_numAttribs; j++) {
+        m_weights[j] += task.m_weights[j];
+      }
+
+      if (m_numericClass) {
+        m_ndc += task.m_ndc;
+
+        for (int j = 0; j < m_numAttribs; j++) {
+          m_nda[j] += task.m_nda[j];
+          m_ndcda[j] += task.m_ndcda[j];
         }
       }
     }
@@ -773,6 +985,41 @@ public class ReliefFAttributeEval
   }
 
 
+  /**
+   * Runs the tasks concurrently, using as many threads as there are tasks.
+   *
+   * @param tasks the tasks to run
+   * @throws Exception if a task fails
+   */
+  private void runTasks (List<ReliefFTask> tasks)
+    throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+
+    try {
+      List<Future<ReliefFTask>> futures = new ArrayList<Future<ReliefFTask>>();
+
+      for (ReliefFTask task: tasks) {
+        futures.add(pool.submit(task));
+      }
+
+      for (Future<ReliefFTask> future: futures) {
+        try {
+          future.get();
+        }
+        catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception) {
+            throw (Exception)e.getCause();
+          }
+          throw e;
+        }
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+
   /**
    * Evaluates an individual attribute using ReliefF's instance based approach.
    * The actual work is done by buildEvaluator which evaluates all features.
@@ -796,6 +1043,9 @@ public class ReliefFAttributeEval
     m_sigma = 2;
     m_weightByDistance = false;
     m_seed = 1;
+    m_useNNSearch = false;
+    m_NNSearch = new KDTree();
+    m_numExecutionSlots = 1;
   }
 
 
@@ -953,374 +1203,579 @@ public class ReliefFAttributeEval
 
 
   /**
-   * update attribute weights given an instance when the class is numeric
-   *
-   * @param instNum the index of the instance to use when updating weights
+   * Processes a contiguous share of the sampled instances. Holds the
+   * nearest hits and misses of the instance being processed and
+   * accumulates the weights (or the probabilities, in the numeric class
+   * case) of its share, so that the shares can be processed by separate
+   * threads.
    */
-  private void updateWeightsNumericClass (int instNum) {
-    int i, j;
-    double temp,temp2;
-    int[] tempSorted = null;
-    double[] tempDist = null;
-    double distNorm = 1.0;
-    int firstI, secondI;
+  private class ReliefFTask
+    implements Callable<ReliefFTask> {
 
-    Instance inst = m_trainInstances.instance(instNum);
-   
-    // sort nearest neighbours and set up normalization variable
-    if (m_weightByDistance) {
-      tempDist = new double[m_stored[0]];
-
-      for (j = 0, distNorm = 0; j < m_stored[0]; j++) {
-        // copy the distances
-        tempDist[j] = m_karray[0][j][0];
-        // sum normalizer
-        distNorm += m_weightsByRank[j];
-      }
+    /** The sampled instances */
+    private int[] m_sample;
 
-      tempSorted = Utils.sort(tempDist);
-    }
+    /** The first sampled instance of the share (inclusive) */
+    private int m_from;
 
-    for (i = 0; i < m_stored[0]; i++) {
-      // P diff prediction (class) given nearest instances
-      if (m_weightByDistance) {
-        temp = difference(m_classIndex, 
-                          inst.value(m_classIndex),
-                          m_trainInstances.
-                          instance((int)m_karray[0][tempSorted[i]][1]).
-                          value(m_classIndex));
-        temp *= (m_weightsByRank[i]/distNorm);
+    /** The last sampled instance of the share (exclusive) */
+    private int m_to;
+
+    /** The instances of each class, null if the neighbours are found by a scan */
+    private Instances[] m_classData;
+
+    /** The search structure for each class */
+    private NearestNeighbourSearch[] m_search;
+
+    /** Probability of a different class val (numeric class) */
+    private double m_ndc;
+
+    /** Prob of different value of an attribute (numeric class) */
+    private double[] m_nda;
+
+    /** Prob of a different class val and different att val (numeric class) */
+    private double[] m_ndcda;
+
+    /** The weights accumulated over the share */
+    private double[] m_weights;
+
+    /** k nearest scores for n classes */
+    private double[][] m_karray;
+
+    /** k nearest instances for n classes */
+    private Instance[][] m_neighbours;
+
+    /** Keep track of the farthest instance for each class */
+    private double[] m_worst;
+
+    /** Index in the m_karray of the farthest instance for each class */
+    private int[] m_index;
+
+    /** Number of nearest neighbours stored of each class */
+    private int[] m_stored;
+
+    /**
+     * Sets up the task.
+     *
+     * @param sample the sampled instances
+     * @param from the first sampled instance to process (inclusive)
+     * @param to the last sampled instance to process (exclusive)
+     * @param classData the instances of each class, null for a linear scan
+     * @throws Exception if the search algorithm cannot be copied
+     */
+    public ReliefFTask (int[] sample, int from, int to, Instances[] classData)
+      throws Exception {
+      m_sample = sample;
+      m_from = from;
+      m_to = to;
+      m_classData = classData;
+
+      if (m_classData != null) {
+        m_search = new NearestNeighbourSearch[m_numClasses];
+
+        for (int j = 0; j < m_numClasses; j++) {
+          m_search[j] = (NearestNeighbourSearch)
+            new SerializedObject(m_NNSearch).getObject();
+        }
       }
-      else {
-        temp = difference(m_classIndex, 
-                          inst.value(m_classIndex), 
-                          m_trainInstances.
-                          instance((int)m_karray[0][i][1]).
-                          value(m_classIndex));
-        temp *= (1.0/(double)m_stored[0]); // equal influence
+
+      if (m_numericClass) {
+        m_nda = new double[m_numAttribs];
+        m_ndcda = new double[m_numAttribs];
       }
 
-      m_ndc += temp;
+      m_weights = new double[m_numAttribs];
+      // num classes (1 for numeric class) knn neighbours
+      m_karray = new double[m_numClasses][m_Knn];
+      m_neighbours = new Instance[m_numClasses][m_Knn];
+      m_worst = new double[m_numClasses];
+      m_index = new int[m_numClasses];
+      m_stored = new int[m_numClasses];
+    }
 
-      Instance cmp;
-      cmp = (m_weightByDistance) 
-        ? m_trainInstances.instance((int)m_karray[0][tempSorted[i]][1])
-        : m_trainInstances.instance((int)m_karray[0][i][1]);
- 
-      double temp_diffP_diffA_givNearest = 
-        difference(m_classIndex, inst.value(m_classIndex),
-                   cmp.value(m_classIndex));
-      // now the attributes
-      for (int p1 = 0, p2 = 0; 
-           p1 < inst.numValues() || p2 < cmp.numValues();) {
-        if (p1 >= inst.numValues()) {
-          firstI = m_trainInstances.numAttributes();
-        } else {
-          firstI = inst.index(p1); 
+    /**
+     * Processes the share of the sampled instances.
+     *
+     * @return this task
+     * @throws Exception if the neighbours could not be found
+     */
+    public ReliefFTask call ()
+      throws Exception {
+      int z;
+
+      if (m_search != null) {
+        for (int j = 0; j < m_numClasses; j++) {
+          if (m_classData[j].numInstances() > 0) {
+            m_search[j].setInstances(m_classData[j]);
+          }
         }
-        if (p2 >= cmp.numValues()) {
-          secondI = m_trainInstances.numAttributes();
-        } else {
-          secondI = cmp.index(p2);
+      }
+
+      for (int i = m_from; i < m_to; i++) {
+        z = m_sample[i];
+
+        if (!(m_trainInstances.instance(z).isMissing(m_classIndex))) {
+          // first clear the knn and worst index stuff for the classes
+          clearNeighbours();
+
+          if (m_search == null) {
+            findKHitMiss(z);
+          }
+          else {
+            findKHitMissSearch(z);
+          }
+
+          if (m_numericClass) {
+            updateWeightsNumericClass(z);
+          }
+          else {
+            updateWeightsDiscreteClass(z);
+          }
         }
-        if (firstI == m_trainInstances.classIndex()) {
-          p1++; continue;
-        } 
-        if (secondI == m_trainInstances.classIndex()) {
-          p2++; continue;
-        } 
-        temp = 0.0;
-        temp2 = 0.0;
-      
-        if (firstI == secondI) {
-          j = firstI;
-          temp = difference(j, inst.valueSparse(p1), cmp.valueSparse(p2)); 
-          p1++;p2++;
-        } else if (firstI > secondI) {
-          j = secondI;
-          temp = difference(j, 0, cmp.valueSparse(p2));
-          p2++;
-        } else {
-          j = firstI;
-          temp = difference(j, inst.valueSparse(p1), 0);
-          p1++;
-        } 
-       
-        temp2 = temp_diffP_diffA_givNearest * temp; 
-        // P of different prediction and different att value given
-        // nearest instances
-        if (m_weightByDistance) {
-          temp2 *= (m_weightsByRank[i]/distNorm);
+      }
+
+      return this;
+    }
+
+    /**
+     * Clears the knn and worst index stuff for the classes.
+     */
+    private void clearNeighbours () {
+      for (int j = 0; j < m_numClasses; j++) {
+        m_index[j] = m_stored[j] = 0;
+
+        for (int k = 0; k < m_Knn; k++) {
+          m_karray[j][k] = 0;
+          m_neighbours[j][k] = null;
         }
-        else {
-          temp2 *= (1.0/(double)m_stored[0]); // equal influence
+      }
+    }
+
+    /**
+     * update attribute weights given an instance when the class is numeric
+     *
+     * @param instNum the index of the instance to use when updating weights
+     */
+    private void updateWeightsNumericClass (int instNum) {
+      int i, j;
+      double temp,temp2;
+      int[] tempSorted = null;
+      double[] tempDist = null;
+      double distNorm = 1.0;
+      int firstI, secondI;
+
+      Instance inst = m_trainInstances.instance(instNum);
+   
+      // sort nearest neighbours and set up normalization variable
+      if (m_weightByDistance) {
+        tempDist = new double[m_stored[0]];
+
+        for (j = 0, distNorm = 0; j < m_stored[0]; j++) {
+          // copy the distances
+          tempDist[j] = m_karray[0][j];
+          // sum normalizer
+          distNorm += m_weightsByRank[j];
         }
 
-        m_ndcda[j] += temp2;
-       
-        // P of different attribute val given nearest instances
+        tempSorted = Utils.sort(tempDist);
+      }
+
+      for (i = 0; i < m_stored[0]; i++) {
+        // P diff prediction (class) given nearest instances
         if (m_weightByDistance) {
+          temp = difference(m_classIndex, 
+                            inst.value(m_classIndex),
+                            m_neighbours[0][tempSorted[i]].
+                            value(m_classIndex));
           temp *= (m_weightsByRank[i]/distNorm);
         }
         else {
+          temp = difference(m_classIndex, 
+                            inst.value(m_classIndex), 
+                            m_neighbours[0][i].
+                            value(m_classIndex));
           temp *= (1.0/(double)m_stored[0]); // equal influence
         }
 
-        m_nda[j] += temp;
-      }
-    }
-  }
-
+        m_ndc += temp;
 
-  /**
-   * update attribute weights given an instance when the class is discrete
-   *
-   * @param instNum the index of the instance to use when updating weights
-   */
-  private void updateWeightsDiscreteClass (int instNum) {
-    int i, j, k;
-    int cl;
-    double temp_diff, w_norm = 1.0;
-    double[] tempDistClass;
-    int[] tempSortedClass = null;
-    double distNormClass = 1.0;
-    double[] tempDistAtt;
-    int[][] tempSortedAtt = null;
-    double[] distNormAtt = null;
-    int firstI, secondI;
+        Instance cmp;
+        cmp = (m_weightByDistance) 
+          ? m_neighbours[0][tempSorted[i]]
+          : m_neighbours[0][i];
+ 
+        double temp_diffP_diffA_givNearest = 
+          difference(m_classIndex, inst.value(m_classIndex),
+                     cmp.value(m_classIndex));
+        // now the attributes
+        for (int p1 = 0, p2 = 0; 
+             p1 < inst.numValues() || p2 < cmp.numValues();) {
+          if (p1 >= inst.numValues()) {
+            firstI = m_trainInstances.numAttributes();
+          } else {
+            firstI = inst.index(p1); 
+          }
+          if (p2 >= cmp.numValues()) {
+            secondI = m_trainInstances.numAttributes();
+          } else {
+            secondI = cmp.index(p2);
+          }
+          if (firstI == m_trainInstances.classIndex()) {
+            p1++; continue;
+          } 
+          if (secondI == m_trainInstances.classIndex()) {
+            p2++; continue;
+          } 
+          temp = 0.0;
+          temp2 = 0.0;
+      
+          if (firstI == secondI) {
+            j = firstI;
+            temp = difference(j, inst.valueSparse(p1), cmp.valueSparse(p2)); 
+            p1++;p2++;
+          } else if (firstI > secondI) {
+            j = secondI;
+            temp = difference(j, 0, cmp.valueSparse(p2));
+            p2++;
+          } else {
+            j = firstI;
+            temp = difference(j, inst.valueSparse(p1), 0);
+            p1++;
+          } 
+       
+          temp2 = temp_diffP_diffA_givNearest * temp; 
+          // P of different prediction and different att value given
+          // nearest instances
+          if (m_weightByDistance) {
+            temp2 *= (m_weightsByRank[i]/distNorm);
+          }
+          else {
+            temp2 *= (1.0/(double)m_stored[0]); // equal influence
+          }
 
-    // store the indexes (sparse instances) of non-zero elements
-    Instance inst = m_trainInstances.instance(instNum);
+          m_ndcda[j] += temp2;
+       
+          // P of different attribute val given nearest instances
+          if (m_weightByDistance) {
+            temp *= (m_weightsByRank[i]/distNorm);
+          }
+          else {
+            temp *= (1.0/(double)m_stored[0]); // equal influence
+          }
 
-    // get the class of this instance
-    cl = (int)m_trainInstances.instance(instNum).value(m_classIndex);
+          m_nda[j] += temp;
+        }
+      }
+    }
 
-    // sort nearest neighbours and set up normalization variables
-    if (m_weightByDistance) {
-      // do class (hits) first
-      // sort the distances
-      tempDistClass = new double[m_stored[cl]];
 
-      for (j = 0, distNormClass = 0; j < m_stored[cl]; j++) {
-        // copy the distances
-        tempDistClass[j] = m_karray[cl][j][0];
-        // sum normalizer
-        distNormClass += m_weightsByRank[j];
-      }
+    /**
+     * update attribute weights given an instance when the class is discrete
+     *
+     * @param instNum the index of the instance to use when updating weights
+     */
+    private void updateWeightsDiscreteClass (int instNum) {
+      int i, j, k;
+      int cl;
+      double temp_diff, w_norm = 1.0;
+      double[] tempDistClass;
+      int[] tempSortedClass = null;
+      double distNormClass = 1.0;
+      double[] tempDistAtt;
+      int[][] tempSortedAtt = null;
+      double[] distNormAtt = null;
+      int firstI, secondI;
+
+      // store the indexes (sparse instances) of non-zero elements
+      Instance inst = m_trainInstances.instance(instNum);
+
+      // get the class of this instance
+      cl = (int)m_trainInstances.instance(instNum).value(m_classIndex);
+
+      // sort nearest neighbours and set up normalization variables
+      if (m_weightByDistance) {
+        // do class (hits) first
+        // sort the distances
+        tempDistClass = new double[m_stored[cl]];
+
+        for (j = 0, distNormClass = 0; j < m_stored[cl]; j++) {
+          // copy the distances
+          tempDistClass[j] = m_karray[cl][j];
+          // sum normalizer
+          distNormClass += m_weightsByRank[j];
+        }
 
-      tempSortedClass = Utils.sort(tempDistClass);
-      // do misses (other classes)
-      tempSortedAtt = new int[m_numClasses][1];
-      distNormAtt = new double[m_numClasses];
+        tempSortedClass = Utils.sort(tempDistClass);
+        // do misses (other classes)
+        tempSortedAtt = new int[m_numClasses][1];
+        distNormAtt = new double[m_numClasses];
+
+        for (k = 0; k < m_numClasses; k++) {
+          if (k != cl) // already done cl
+            {
+              // sort the distances
+              tempDistAtt = new double[m_stored[k]];
+
+              for (j = 0, distNormAtt[k] = 0; j < m_stored[k]; j++) {
+                // copy the distances
+                tempDistAtt[j] = m_karray[k][j];
+                // sum normalizer
+                distNormAtt[k] += m_weightsByRank[j];
+              }
 
-      for (k = 0; k < m_numClasses; k++) {
-        if (k != cl) // already done cl
-          {
-            // sort the distances
-            tempDistAtt = new double[m_stored[k]];
-
-            for (j = 0, distNormAtt[k] = 0; j < m_stored[k]; j++) {
-              // copy the distances
-              tempDistAtt[j] = m_karray[k][j][0];
-              // sum normalizer
-              distNormAtt[k] += m_weightsByRank[j];
+              tempSortedAtt[k] = Utils.sort(tempDistAtt);
             }
-
-            tempSortedAtt[k] = Utils.sort(tempDistAtt);
-          }
+        }
       }
-    }
 
-    if (m_numClasses > 2) {
-      // the amount of probability space left after removing the
-      // probability of this instance's class value
-      w_norm = (1.0 - m_classProbs[cl]);
-    }
+      if (m_numClasses > 2) {
+        // the amount of probability space left after removing the
+        // probability of this instance's class value
+        w_norm = (1.0 - m_classProbs[cl]);
+      }
     
-    // do the k nearest hits of the same class
-    for (j = 0, temp_diff = 0.0; j < m_stored[cl]; j++) {
-      Instance cmp;
-      cmp = (m_weightByDistance) 
-        ? m_trainInstances.
-        instance((int)m_karray[cl][tempSortedClass[j]][1])
-        : m_trainInstances.instance((int)m_karray[cl][j][1]);
-
-      for (int p1 = 0, p2 = 0; 
-           p1 < inst.numValues() || p2 < cmp.numValues();) {
-        if (p1 >= inst.numValues()) {
-          firstI = m_trainInstances.numAttributes();
-        } else {
-          firstI = inst.index(p1); 
-        }
-        if (p2 >= cmp.numValues()) {
-          secondI = m_trainInstances.numAttributes();
-        } else {
-          secondI = cmp.index(p2);
-        }
-        if (firstI == m_trainInstances.classIndex()) {
-          p1++; continue;
-        } 
-        if (secondI == m_trainInstances.classIndex()) {
-          p2++; continue;
-        } 
-        if (firstI == secondI) {
-          i = firstI;
-          temp_diff = difference(i, inst.valueSparse(p1), 
-                                 cmp.valueSparse(p2)); 
-          p1++;p2++;
-        } else if (firstI > secondI) {
-          i = secondI;
-          temp_diff = difference(i, 0, cmp.valueSparse(p2));
-          p2++;
-        } else {
-          i = firstI;
-          temp_diff = difference(i, inst.valueSparse(p1), 0);
-          p1++;
-        } 
+      // do the k nearest hits of the same class
+      for (j = 0, temp_diff = 0.0; j < m_stored[cl]; j++) {
+        Instance cmp;
+        cmp = (m_weightByDistance) 
+          ? m_neighbours[cl][tempSortedClass[j]]
+          : m_neighbours[cl][j];
+
+        for (int p1 = 0, p2 = 0; 
+             p1 < inst.numValues() || p2 < cmp.numValues();) {
+          if (p1 >= inst.numValues()) {
+            firstI = m_trainInstances.numAttributes();
+          } else {
+            firstI = inst.index(p1); 
+          }
+          if (p2 >= cmp.numValues()) {
+            secondI = m_trainInstances.numAttributes();
+          } else {
+            secondI = cmp.index(p2);
+          }
+          if (firstI == m_trainInstances.classIndex()) {
+            p1++; continue;
+          } 
+          if (secondI == m_trainInstances.classIndex()) {
+            p2++; continue;
+          } 
+          if (firstI == secondI) {
+            i = firstI;
+            temp_diff = difference(i, inst.valueSparse(p1), 
+                                   cmp.valueSparse(p2)); 
+            p1++;p2++;
+          } else if (firstI > secondI) {
+            i = secondI;
+            temp_diff = difference(i, 0, cmp.valueSparse(p2));
+            p2++;
+          } else {
+            i = firstI;
+            temp_diff = difference(i, inst.valueSparse(p1), 0);
+            p1++;
+          } 
         
-        if (m_weightByDistance) {
-          temp_diff *=
-            (m_weightsByRank[j]/distNormClass);
-        } else {
-          if (m_stored[cl] > 0) {
-            temp_diff /= (double)m_stored[cl];
+          if (m_weightByDistance) {
+            temp_diff *=
+              (m_weightsByRank[j]/distNormClass);
+          } else {
+            if (m_stored[cl] > 0) {
+              temp_diff /= (double)m_stored[cl];
+            }
           }
-        }
-        m_weights[i] -= temp_diff;
+          m_weights[i] -= temp_diff;
 
+        }
       }
-    }
       
 
-    // now do k nearest misses from each of the other classes
-    temp_diff = 0.0;
+      // now do k nearest misses from each of the other classes
+      temp_diff = 0.0;
 
-    for (k = 0; k < m_numClasses; k++) {
-      if (k != cl) // already done cl
-        {
-          for (j = 0; j < m_stored[k]; j++) {
-            Instance cmp;
-            cmp = (m_weightByDistance) 
-              ? m_trainInstances.
-              instance((int)m_karray[k][tempSortedAtt[k][j]][1])
-              : m_trainInstances.instance((int)m_karray[k][j][1]);
+      for (k = 0; k < m_numClasses; k++) {
+        if (k != cl) // already done cl
+          {
+            for (j = 0; j < m_stored[k]; j++) {
+              Instance cmp;
+              cmp = (m_weightByDistance) 
+                ? m_neighbours[k][tempSortedAtt[k][j]]
+                : m_neighbours[k][j];
         
-            for (int p1 = 0, p2 = 0; 
-                 p1 < inst.numValues() || p2 < cmp.numValues();) {
-              if (p1 >= inst.numValues()) {
-                firstI = m_trainInstances.numAttributes();
-              } else {
-                firstI = inst.index(p1); 
-              }
-              if (p2 >= cmp.numValues()) {
-                secondI = m_trainInstances.numAttributes();
-              } else {
-                secondI = cmp.index(p2);
-              }
-              if (firstI == m_trainInstances.classIndex()) {
-                p1++; continue;
-              } 
-              if (secondI == m_trainInstances.classIndex()) {
-                p2++; continue;
-              } 
-              if (firstI == secondI) {
-                i = firstI;
-                temp_diff = difference(i, inst.valueSparse(p1), 
-                                       cmp.valueSparse(p2)); 
-                p1++;p2++;
-              } else if (firstI > secondI) {
-                i = secondI;
-                temp_diff = difference(i, 0, cmp.valueSparse(p2));
-                p2++;
-              } else {
-                i = firstI;
-                temp_diff = difference(i, inst.valueSparse(p1), 0);
-                p1++;
-              } 
-
-              if (m_weightByDistance) {
-                temp_diff *=
-                  (m_weightsByRank[j]/distNormAtt[k]);
-              }
-              else {
-                if (m_stored[k] > 0) {
-                  temp_diff /= (double)m_stored[k];
+              for (int p1 = 0, p2 = 0; 
+                   p1 < inst.numValues() || p2 < cmp.numValues();) {
+                if (p1 >= inst.numValues()) {
+                  firstI = m_trainInstances.numAttributes();
+                } else {
+                  firstI = inst.index(p1); 
+                }
+                if (p2 >= cmp.numValues()) {
+                  secondI = m_trainInstances.numAttributes();
+                } else {
+                  secondI = cmp.index(p2);
+                }
+                if (firstI == m_trainInstances.classIndex()) {
+                  p1++; continue;
+                } 
+                if (secondI == m_trainInstances.classIndex()) {
+                  p2++; continue;
+                } 
+                if (firstI == secondI) {
+                  i = firstI;
+                  temp_diff = difference(i, inst.valueSparse(p1), 
+                                         cmp.valueSparse(p2)); 
+                  p1++;p2++;
+                } else if (firstI > secondI) {
+                  i = secondI;
+                  temp_diff = difference(i, 0, cmp.valueSparse(p2));
+                  p2++;
+                } else {
+                  i = firstI;
+                  temp_diff = difference(i, inst.valueSparse(p1), 0);
+                  p1++;
+                } 
+
+                if (m_weightByDistance) {
+                  temp_diff *=
+                    (m_weightsByRank[j]/distNormAtt[k]);
+                }
+                else {
+                  if (m_stored[k] > 0) {
+                    temp_diff /= (double)m_stored[k];
+                  }
+                }
+                if (m_numClasses > 2) {
+                  m_weights[i] += ((m_classProbs[k]/w_norm)*temp_diff);
+                } else {
+                  m_weights[i] += temp_diff;
                 }
-              }
-              if (m_numClasses > 2) {
-                m_weights[i] += ((m_classProbs[k]/w_norm)*temp_diff);
-              } else {
-                m_weights[i] += temp_diff;
               }
             }
           }
-        }
+      }
     }
-  }
-
 
-  /**
-   * Find the K nearest instances to supplied instance if the class is numeric,
-   * or the K nearest Hits (same class) and Misses (K from each of the other
-   * classes) if the class is discrete.
-   *
-   * @param instNum the index of the instance to find nearest neighbours of
-   */
-  private void findKHitMiss (int instNum) {
-    int i, j;
-    int cl;
-    double ww;
-    double temp_diff = 0.0;
-    Instance thisInst = m_trainInstances.instance(instNum);
-
-    for (i = 0; i < m_numInstances; i++) {
-      if (i != instNum) {
-        Instance cmpInst = m_trainInstances.instance(i);
-        temp_diff = distance(cmpInst, thisInst);
-
-        // class of this training instance or 0 if numeric
-        if (m_numericClass) {
-          cl = 0;
+    /**
+     * Find the K nearest instances to supplied instance if the class is numeric,
+     * or the K nearest Hits (same class) and Misses (K from each of the other
+     * classes) if the class is discrete.
+     *
+     * @param instNum the index of the instance to find nearest neighbours of
+     */
+    private void findKHitMiss (int instNum) {
+      int i;
+      double temp_diff = 0.0;
+      Instance thisInst = m_trainInstances.instance(instNum);
+
+      for (i = 0; i < m_numInstances; i++) {
+        if (i != instNum) {
+          Instance cmpInst = m_trainInstances.instance(i);
+          temp_diff = distance(cmpInst, thisInst);
+          addNeighbour(cmpInst, temp_diff);
         }
-        else {
-          cl = (int)m_trainInstances.instance(i).value(m_classIndex);
+      }
+    }
+
+    /**
+     * Find the nearest hits and misses like findKHitMiss, but only among the
+     * candidates retrieved with the nearest neighbour search algorithm, K
+     * from each class.
+     *
+     * @param instNum the index of the instance to find nearest neighbours of
+     * @throws Exception if the neighbours could not be retrieved
+     */
+    private void findKHitMissSearch (int instNum)
+      throws Exception {
+      int i, j, k, cl;
+      boolean self;
+      double temp_diff;
+      Instances candidates;
+      Instance thisInst = m_trainInstances.instance(instNum);
+
+      // class of this instance or 0 if numeric
+      cl = (m_numericClass) ? 0 : (int)thisInst.value(m_classIndex);
+
+      for (j = 0; j < m_numClasses; j++) {
+        // one more from the class of this instance, which includes itself
+        k = (j == cl) ? m_Knn + 1 : m_Knn;
+        k = Math.min(k, m_classData[j].numInstances());
+
+        if ((k == 0) || ((j == cl) && (k == 1))) {
+          continue;
         }
 
-        // add this diff to the list for the class of this instance
-        if (m_stored[cl] < m_Knn) {
-          m_karray[cl][m_stored[cl]][0] = temp_diff;
-          m_karray[cl][m_stored[cl]][1] = i;
-          m_stored[cl]++;
-
-          // note the worst diff for this class
-          for (j = 0, ww = -1.0; j < m_stored[cl]; j++) {
-            if (m_karray[cl][j][0] > ww) {
-              ww = m_karray[cl][j][0];
-              m_index[cl] = j;
-            }
+        // query with a copy, so that no algorithm leaves the instance out
+        candidates = m_search[j].kNearestNeighbours((Instance)thisInst.copy(), k);
+
+        for (i = 0, self = (j != cl); i < candidates.numInstances(); i++) {
+          Instance cmpInst = candidates.instance(i);
+          temp_diff = distance(cmpInst, thisInst);
+
+          // the candidates are copies, skip the first one that is
+          // indistinguishable from this instance
+          if (!self && (temp_diff == 0) 
+              && (cmpInst.value(m_classIndex) == thisInst.value(m_classIndex))) {
+            self = true;
+            continue;
           }
 
-          m_worst[cl] = ww;
+          addNeighbour(cmpInst, temp_diff);
         }
-        else 
-          /* if we already have stored knn for this class then check to
-             see if this instance is better than the worst */
-          {
-            if (temp_diff < m_karray[cl][m_index[cl]][0]) {
-              m_karray[cl][m_index[cl]][0] = temp_diff;
-              m_karray[cl][m_index[cl]][1] = i;
-
-              for (j = 0, ww = -1.0; j < m_stored[cl]; j++) {
-                if (m_karray[cl][j][0] > ww) {
-                  ww = m_karray[cl][j][0];
-                  m_index[cl] = j;
-                }
-              }
+      }
+    }
 
-              m_worst[cl] = ww;
-            }
+    /**
+     * Adds an instance to the nearest neighbours of its class if there is
+     * room, or if it is nearer than the farthest one stored.
+     *
+     * @param cmpInst the instance
+     * @param temp_diff the distance of the instance
+     */
+    private void addNeighbour (Instance cmpInst, double temp_diff) {
+      int j;
+      int cl;
+      double ww;
+
+      // class of this training instance or 0 if numeric
+      if (m_numericClass) {
+        cl = 0;
+      }
+      else {
+        cl = (int)cmpInst.value(m_classIndex);
+      }
+
+      // add this diff to the list for the class of this instance
+      if (m_stored[cl] < m_Knn) {
+        m_karray[cl][m_stored[cl]] = temp_diff;
+        m_neighbours[cl][m_stored[cl]] = cmpInst;
+        m_stored[cl]++;
+
+        // note the worst diff for this class
+        for (j = 0, ww = -1.0; j < m_stored[cl]; j++) {
+          if (m_karray[cl][j] > ww) {
+            ww = m_karray[cl][j];
+            m_index[cl] = j;
           }
+        }
+
+        m_worst[cl] = ww;
       }
+      else 
+        /* if we already have stored knn for this class then check to
+           see if this instance is better than the worst */
+        {
+          if (temp_diff < m_karray[cl][m_index[cl]]) {
+            m_karray[cl][m_index[cl]] = temp_diff;
+            m_neighbours[cl][m_index[cl]] = cmpInst;
+
+            for (j = 0, ww = -1.0; j < m_stored[cl]; j++) {
+              if (m_karray[cl][j] > ww) {
+                ww = m_karray[cl][j];
+                m_index[cl] = j;
+              }
+            }
+
+            m_worst[cl] = ww;
+          }
+        }
     }
   }
   
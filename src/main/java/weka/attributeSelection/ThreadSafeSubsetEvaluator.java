@@ -0,0 +1,35 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ThreadSafeSubsetEvaluator.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.attributeSelection;
+
+/**
+ * Marker interface for subset evaluators whose evaluateSubset method can
+ * be called by several threads at once, once the evaluator has been built.
+ * Search methods that evaluate subsets concurrently can share such an
+ * evaluator instead of working with copies of it.
+ *
+ * @version $Revision: 9500 $
+ * @see ParallelSubsetEvaluation
+ */
+public interface ThreadSafeSubsetEvaluator
+  extends SubsetEvaluator {
+}
@@ -26,9 +26,12 @@ import java.util.Enumeration;
 import java.util.Vector;
 
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.CapabilitiesHandler;
+import weka.core.Environment;
 import weka.core.Instance;
+import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionHandler;
@@ -55,6 +58,12 @@ public abstract class AbstractClassifier
   /** Whether the classifier is run in debug mode. */
   protected boolean m_Debug = false;
 
+  /** The default batch size for batch prediction. */
+  public static final String DEFAULT_BATCH_SIZE = "100";
+
+  /** The preferred number of instances for batch prediction. */
+  protected String m_BatchSize = DEFAULT_BATCH_SIZE;
+
   /**
    * Classifies the given test instance. The instance has to belong to a
    * dataset when it's being classified. Note that a classifier MUST
@@ -183,6 +192,87 @@ public abstract class AbstractClassifier
     return classifiers;
   }
 
+  /**
+   * Returns the batch size preferred by the given batch predictor, with
+   * environment variables substituted.
+   *
+   * @param predictor the batch predictor
+   * @return the batch size, -1 if none or an invalid one is set
+   */
+  public static int getBatchSize(BatchPredictor predictor) {
+
+    String batchSize = predictor.getBatchSize();
+    if ((batchSize == null) || (batchSize.length() == 0)) {
+      return -1;
+    }
+    try {
+      batchSize = Environment.getSystemWide().substitute(batchSize);
+    } catch (Exception ex) {
+      // ignore
+    }
+    try {
+      return Integer.parseInt(batchSize.trim());
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  /**
+   * Computes the class distributions of the given instances with the batch
+   * predictor, passing at most as many instances to the predictor at a
+   * time as its batch size asks for. All instances are passed at once if
+   * the batch size is not a positive number.
+   *
+   * @param predictor the batch predictor
+   * @param insts the instances to get the distributions for
+   * @return the class distributions, one for each instance
+   * @exception Exception if the distributions can't be computed
+   */
+  public static double[][] distributionsForInstances(BatchPredictor predictor,
+                                                     Instances insts)
+    throws Exception {
+
+    int batchSize = getBatchSize(predictor);
+    if ((batchSize <= 0) || (batchSize >= insts.numInstances())) {
+      return predictor.distributionsForInstances(insts);
+    }
+
+    double[][] result = new double[insts.numInstances()][];
+    for (int i = 0; i < insts.numInstances(); i += batchSize) {
+      int size = Math.min(batchSize, insts.numInstances() - i);
+      double[][] dists =
+        predictor.distributionsForInstances(new Batch(insts, i, size));
+      System.arraycopy(dists, 0, result, i, size);
+    }
+    return result;
+  }
+
+  /**
+   * A range of instances of a dataset that is passed to a batch predictor.
+   * Unlike the instances added to a copy of a dataset, the instances are
+   * not copied, i.e., the batch holds the same instances as the dataset.
+   */
+  protected static class Batch
+    extends Instances {
+
+    /** for serialization */
+    private static final long serialVersionUID = -1950371545183713519L;
+
+    /**
+     * Creates a batch of the given range of instances.
+     *
+     * @param source the dataset to take the instances from
+     * @param first the index of the first instance
+     * @param size the number of instances
+     */
+    public Batch(Instances source, int first, int size) {
+      super(source, size);
+      for (int i = first; i < first + size; i++) {
+        m_Instances.add(source.instance(i));
+      }
+    }
+  }
+
   /**
    * Returns an enumeration describing the available options.
    *
@@ -261,6 +351,85 @@ public abstract class AbstractClassifier
       "the console.";
   }
 
+  /**
+   * Set the preferred batch size for batch prediction. Only used by
+   * classifiers that implement BatchPredictor, which make this method
+   * public, so that the property only shows up for them.
+   *
+   * @param size the batch size to use
+   */
+  protected void setBatchSize(String size) {
+
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction. Made public by the
+   * classifiers that implement BatchPredictor.
+   *
+   * @return the preferred batch size
+   */
+  protected String getBatchSize() {
+
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for the batchSize property of the classifiers
+   * that implement BatchPredictor.
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The preferred number of instances to process if batch prediction "
+      + "is being performed.";
+  }
+
+  /**
+   * Returns the description of the -batch-size option, for classifiers
+   * that implement BatchPredictor.
+   *
+   * @return the option
+   */
+  protected Option batchSizeOption() {
+
+    return new Option(
+          "\tThe desired batch size for batch prediction (default "
+          + DEFAULT_BATCH_SIZE + ").",
+          "batch-size", 1, "-batch-size <size>");
+  }
+
+  /**
+   * Sets the batch size from the -batch-size option, or to the default if
+   * the option is not present.
+   *
+   * @param options the list of options as an array of strings
+   * @exception Exception if the option can't be parsed
+   */
+  protected void setBatchSizeOption(String[] options) throws Exception {
+
+    String batchSize = Utils.getOption("batch-size", options);
+    if (batchSize.length() != 0) {
+      setBatchSize(batchSize);
+    } else {
+      setBatchSize(DEFAULT_BATCH_SIZE);
+    }
+  }
+
+  /**
+   * Returns the -batch-size option with the current batch size, or no
+   * option at all if it is the default.
+   *
+   * @return the option and its value, or an empty array
+   */
+  protected String[] getBatchSizeOptions() {
+
+    if (getBatchSize().equals(DEFAULT_BATCH_SIZE)) {
+      return new String[0];
+    }
+    return new String[]{"-batch-size", getBatchSize()};
+  }
+
   /**
    * Returns the Capabilities of this classifier. Maximally permissive
    * capabilities are allowed by default. Derived classifiers should
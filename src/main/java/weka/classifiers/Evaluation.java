@@ -299,6 +299,26 @@ public class Evaluation implements Serializable, Summarizable, RevisionHandler {
     return m_delegate.getDiscardPredictions();
   }
 
+  /**
+   * Sets the number of execution slots (threads) to use for building and
+   * evaluating the folds in crossValidateModel().
+   *
+   * @param value the number of slots, 1 for sequential execution
+   */
+  public void setNumExecutionSlots(int value) {
+    m_delegate.setNumExecutionSlots(value);
+  }
+
+  /**
+   * Returns the number of execution slots (threads) used for
+   * crossValidateModel().
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_delegate.getNumExecutionSlots();
+  }
+
   /**
    * Returns the area under ROC for those predictions that have been collected
    * in the evaluateClassifier(Classifier, Instances) method. Returns
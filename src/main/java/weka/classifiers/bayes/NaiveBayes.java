@@ -26,6 +26,7 @@ import java.util.Vector;
 
 import weka.classifiers.AbstractClassifier;
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
@@ -85,6 +86,9 @@ import weka.estimators.NormalEstimator;
  *  Display model in old format (good when there are many classes)
  * </pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100).</pre>
+ * 
  <!-- options-end -->
  *
  * @author Len Trigg (trigg@cs.waikato.ac.nz)
@@ -93,7 +97,7 @@ import weka.estimators.NormalEstimator;
  */
 public class NaiveBayes extends AbstractClassifier 
 implements OptionHandler, WeightedInstancesHandler, 
-           TechnicalInformationHandler {
+           TechnicalInformationHandler, BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = 5995231201785697655L;
@@ -382,6 +386,94 @@ implements OptionHandler, WeightedInstancesHandler,
     return probs;
   }
 
+  /**
+   * Calculates the class membership probabilities for the given test 
+   * instances. The instances are processed attribute by attribute and, for
+   * nominal attributes, the (weighted) conditional probabilities are looked
+   * up rather than recomputed for every instance.
+   *
+   * @param insts the instances to be classified
+   * @return predicted class probability distributions, one per instance
+   * @exception Exception if there is a problem generating the predictions
+   */
+  public double [][] distributionsForInstances(Instances insts) 
+    throws Exception { 
+
+    int numInsts = insts.numInstances();
+    Instance [] instances = new Instance[numInsts];
+    for (int i = 0; i < numInsts; i++) {
+      instances[i] = insts.instance(i);
+      if (m_UseDiscretization) {
+	m_Disc.input(instances[i]);
+	instances[i] = m_Disc.output();
+      }
+    }
+    double [][] probs = new double[numInsts][m_NumClasses];
+    for (int i = 0; i < numInsts; i++) {
+      for (int j = 0; j < m_NumClasses; j++) {
+	probs[i][j] = m_ClassDistribution.getProbability(j);
+      }
+    }
+    if (numInsts == 0) {
+      return probs;
+    }
+
+    Enumeration enumAtts = instances[0].enumerateAttributes();
+    int attIndex = 0;
+    while (enumAtts.hasMoreElements()) {
+      Attribute attribute = (Attribute) enumAtts.nextElement();
+      double weight = m_Instances.attribute(attIndex).weight();
+      double [][] lookup = null;
+      if (attribute.isNominal() && (attribute.numValues() < numInsts)) {
+	lookup = new double[attribute.numValues()][m_NumClasses];
+	for (int v = 0; v < lookup.length; v++) {
+	  for (int j = 0; j < m_NumClasses; j++) {
+	    lookup[v][j] = Math.max(1e-75, Math.pow(m_Distributions[attIndex][j].
+                                                    getProbability(v), weight));
+	  }
+	}
+      }
+      for (int i = 0; i < numInsts; i++) {
+	Instance instance = instances[i];
+	if (instance.isMissing(attribute)) {
+	  continue;
+	}
+	double [] p = probs[i];
+	double value = instance.value(attribute);
+	double temp, max = 0;
+	for (int j = 0; j < m_NumClasses; j++) {
+	  if (lookup != null) {
+	    temp = lookup[(int) value][j];
+	  } else {
+	    temp = Math.max(1e-75, Math.pow(m_Distributions[attIndex][j].
+                                            getProbability(value), weight));
+	  }
+	  p[j] *= temp;
+	  if (p[j] > max) {
+	    max = p[j];
+	  }
+	  if (Double.isNaN(p[j])) {
+	    throw new Exception("NaN returned from estimator for attribute "
+                                + attribute.name() + ":\n"
+                                + m_Distributions[attIndex][j].toString());
+	  }
+	}
+	if ((max > 0) && (max < 1e-75)) { // Danger of probability underflow
+	  for (int j = 0; j < m_NumClasses; j++) {
+	    p[j] *= 1e75;
+	  }
+	}
+      }
+      attIndex++;
+    }
+
+    // Display probabilities
+    for (int i = 0; i < numInsts; i++) {
+      Utils.normalize(probs[i]);
+    }
+    return probs;
+  }
+
   /**
    * Returns an enumeration describing the available options.
    *
@@ -389,7 +481,7 @@ implements OptionHandler, WeightedInstancesHandler,
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(3);
+    Vector newVector = new Vector(4);
 
     newVector.addElement(
               new Option("\tUse kernel density estimator rather than normal\n"
@@ -403,6 +495,8 @@ implements OptionHandler, WeightedInstancesHandler,
               new Option("\tDisplay model in old format (good when there are "
                          + "many classes)\n",
                          "O", 0, "-O"));
+
+    newVector.addElement(batchSizeOption());
     
     return newVector.elements();
   }
@@ -425,6 +519,9 @@ implements OptionHandler, WeightedInstancesHandler,
    *  Display model in old format (good when there are many classes)
    * </pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100).</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -441,6 +538,7 @@ implements OptionHandler, WeightedInstancesHandler,
     setUseSupervisedDiscretization(d);
     setUseKernelEstimator(k);
     setDisplayModelInOldFormat(Utils.getFlag('O', options));
+    setBatchSizeOption(options);
     Utils.checkForRemainingOptions(options);
   }
 
@@ -451,7 +549,7 @@ implements OptionHandler, WeightedInstancesHandler,
    */
   public String [] getOptions() {
 
-    String [] options = new String [3];
+    String [] options = new String [5];
     int current = 0;
 
     if (m_UseKernelEstimator) {
@@ -466,6 +564,10 @@ implements OptionHandler, WeightedInstancesHandler,
       options[current++] = "-O";
     }
 
+    for (String option : getBatchSizeOptions()) {
+      options[current++] = option;
+    }
+
     while (current < options.length) {
       options[current++] = "";
     }
@@ -924,7 +1026,25 @@ implements OptionHandler, WeightedInstancesHandler,
   public boolean getDisplayModelInOldFormat() {
     return m_displayModelInOldFormat;
   }
-  
+
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
   /**
    * Returns the revision string.
    * 
@@ -43,6 +43,12 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -123,6 +129,11 @@ import weka.estimators.UnivariateKernelEstimator;
  * 1).
  * <p/>
  * 
+ * -cv-slots number <br/>
+ * Number of execution slots (threads) for the cross-validation (default: 1,
+ * i.e., no parallelism).
+ * <p/>
+ * 
  * -m filename <br/>
  * The name of a file containing a cost matrix.
  * <p/>
@@ -380,6 +391,9 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
   /** whether to discard predictions (and save memory). */
   protected boolean m_DiscardPredictions;
 
+  /** the number of execution slots (threads) to use for cross-validation. */
+  protected int m_NumExecutionSlots = 1;
+
   /** Holds plugin evaluation metrics */
   protected List<AbstractEvaluationMetric> m_pluginMetrics;
 
@@ -535,6 +549,27 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
     return m_DiscardPredictions;
   }
 
+  /**
+   * Sets the number of execution slots (threads) to use for building and
+   * evaluating the folds in crossValidateModel().
+   * 
+   * @param value the number of slots, 1 for sequential execution
+   * @see #crossValidateModel(Classifier, Instances, int, Random, Object...)
+   */
+  public void setNumExecutionSlots(int value) {
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Returns the number of execution slots (threads) used for
+   * crossValidateModel().
+   * 
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Returns the list of plugin metrics in use (or null if there are none)
    * 
@@ -756,13 +791,18 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
     }
 
     // Do the folds
-    for (int i = 0; i < numFolds; i++) {
-      Instances train = data.trainCV(numFolds, i, random);
-      setPriors(train);
-      Classifier copiedClassifier = AbstractClassifier.makeCopy(classifier);
-      copiedClassifier.buildClassifier(train);
-      Instances test = data.testCV(numFolds, i);
-      evaluateModel(copiedClassifier, test, forPredictionsPrinting);
+    if ((m_NumExecutionSlots > 1) && (numFolds > 1)) {
+      crossValidateFolds(classifier, data, numFolds, random,
+          forPredictionsPrinting);
+    } else {
+      for (int i = 0; i < numFolds; i++) {
+        Instances train = data.trainCV(numFolds, i, random);
+        setPriors(train);
+        Classifier copiedClassifier = AbstractClassifier.makeCopy(classifier);
+        copiedClassifier.buildClassifier(train);
+        Instances test = data.testCV(numFolds, i);
+        evaluateModel(copiedClassifier, test, forPredictionsPrinting);
+      }
     }
     m_NumFolds = numFolds;
 
@@ -770,6 +810,160 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
       classificationOutput.printFooter();
   }
 
+  /**
+   * Builds the folds of an already randomized (and stratified) dataset using
+   * getNumExecutionSlots() threads and evaluates the models in fold order,
+   * i.e., the results and the output are the same as the sequential ones.
+   * Training and test sets are generated in fold order, so that the random
+   * number generator is used exactly as in the sequential case. A training
+   * set is only generated once an execution slot is free and is released as
+   * soon as its model is built, keeping only the class priors of the fold.
+   * 
+   * @param classifier the classifier with any options set.
+   * @param data the randomized data to cross-validate on
+   * @param numFolds the number of folds for the cross-validation
+   * @param random random number generator for generating the training sets
+   * @param forPredictionsPrinting varargs parameter that, if supplied, is
+   *          expected to hold a
+   *          weka.classifiers.evaluation.output.prediction.AbstractOutput
+   *          object
+   * @throws Exception if a classifier could not be generated successfully or
+   *           the class is not defined
+   */
+  protected void crossValidateFolds(Classifier classifier, Instances data,
+      int numFolds, Random random, Object... forPredictionsPrinting)
+      throws Exception {
+
+    int numSlots = Math.min(m_NumExecutionSlots, numFolds);
+    Semaphore freeSlots = new Semaphore(numSlots);
+    Instances[] test = new Instances[numFolds];
+    Classifier[] classifiers = new Classifier[numFolds];
+    List<Future<Evaluation>> results = new ArrayList<Future<Evaluation>>();
+    ExecutorService executorPool = Executors.newFixedThreadPool(numSlots);
+
+    try {
+      int next = 0;
+      for (int i = 0; i < numFolds; i++) {
+        // evaluate the folds that are already finished while waiting
+        while ((next < i) && results.get(next).isDone()) {
+          evaluateFold(results.get(next), classifiers[next], test[next],
+              forPredictionsPrinting);
+          results.set(next, null);
+          classifiers[next] = null;
+          test[next] = null;
+          next++;
+        }
+        freeSlots.acquire();
+        Instances train = data.trainCV(numFolds, i, random);
+        test[i] = data.testCV(numFolds, i);
+        classifiers[i] = AbstractClassifier.makeCopy(classifier);
+        results.add(executorPool.submit(new CrossValidationFoldTask(
+            classifiers[i], train, freeSlots)));
+      }
+
+      // evaluate the remaining folds in fold order
+      for (int i = next; i < numFolds; i++) {
+        evaluateFold(results.get(i), classifiers[i], test[i],
+            forPredictionsPrinting);
+        results.set(i, null);
+        classifiers[i] = null;
+        test[i] = null;
+      }
+    } finally {
+      executorPool.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for the model of a fold and evaluates it on the test set of the
+   * fold, using the class priors of the fold's training set.
+   * 
+   * @param result the result of the fold's CrossValidationFoldTask
+   * @param classifier the classifier of the fold
+   * @param test the test set of the fold
+   * @param forPredictionsPrinting the optional output for the predictions
+   * @throws Exception if building or evaluating the model fails
+   */
+  protected void evaluateFold(Future<Evaluation> result,
+      Classifier classifier, Instances test, Object... forPredictionsPrinting)
+      throws Exception {
+
+    Evaluation fold;
+    try {
+      fold = result.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+
+    // same state as after setPriors(train)
+    m_NoPriors = fold.m_NoPriors;
+    m_NumTrainClassVals = fold.m_NumTrainClassVals;
+    m_TrainClassVals = fold.m_TrainClassVals;
+    m_TrainClassWeights = fold.m_TrainClassWeights;
+    m_PriorEstimator = fold.m_PriorEstimator;
+    m_MinTarget = fold.m_MinTarget;
+    m_MaxTarget = fold.m_MaxTarget;
+    System.arraycopy(fold.m_ClassPriors, 0, m_ClassPriors, 0,
+        m_ClassPriors.length);
+    m_ClassPriorsSum = fold.m_ClassPriorsSum;
+
+    evaluateModel(classifier, test, forPredictionsPrinting);
+  }
+
+  /**
+   * Builds the classifier of a single fold and determines the class priors
+   * of the fold's training set. The training set is released once the task
+   * has finished.
+   */
+  protected class CrossValidationFoldTask implements Callable<Evaluation> {
+
+    /** the classifier to build. */
+    protected Classifier m_Classifier;
+
+    /** the training set of the fold. */
+    protected Instances m_Train;
+
+    /** the execution slot to release when done. */
+    protected Semaphore m_Slot;
+
+    /**
+     * Initializes the task.
+     * 
+     * @param classifier the (unbuilt) copy of the classifier
+     * @param train the training set of the fold
+     * @param slot the execution slot to release when done
+     */
+    public CrossValidationFoldTask(Classifier classifier, Instances train,
+        Semaphore slot) {
+      m_Classifier = classifier;
+      m_Train = train;
+      m_Slot = slot;
+    }
+
+    /**
+     * Builds the classifier.
+     * 
+     * @return an evaluation holding the class priors of the fold
+     * @throws Exception if building fails
+     */
+    @Override
+    public Evaluation call() throws Exception {
+      try {
+        Evaluation result = new Evaluation(m_Header, m_CostMatrix);
+        result.setPriors(m_Train);
+        m_Classifier.buildClassifier(m_Train);
+        return result;
+      } finally {
+        m_Train = null;
+        m_Classifier = null;
+        m_Slot.release();
+      }
+    }
+  }
+
   /**
    * Performs a (stratified if class is nominal) cross-validation for a
    * classifier on a set of instances.
@@ -832,6 +1026,11 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
    * 1).
    * <p/>
    * 
+   * -cv-slots number <br/>
+   * Number of execution slots (threads) for the cross-validation (default: 1,
+   * i.e., no parallelism).
+   * <p/>
+   * 
    * -m filename <br/>
    * The name of a file containing a cost matrix.
    * <p/>
@@ -999,6 +1198,11 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
    * 1).
    * <p/>
    * 
+   * -cv-slots number <br/>
+   * Number of execution slots (threads) for the cross-validation (default: 1,
+   * i.e., no parallelism).
+   * <p/>
+   * 
    * -m file with cost matrix <br/>
    * The name of a file containing a cost matrix.
    * <p/>
@@ -1099,6 +1303,8 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
     boolean trainSetPresent = false;
     boolean testSetPresent = false;
     boolean discardPredictions = false;
+    String numSlotsString = "";
+    int numSlots = 1;
     String thresholdFile;
     String thresholdLabel;
     StringBuffer predsBuff = null; // predictions from cross-validation
@@ -1188,6 +1394,10 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
       if (seedString.length() != 0) {
         seed = Integer.parseInt(seedString);
       }
+      numSlotsString = Utils.getOption("cv-slots", options);
+      if (numSlotsString.length() != 0) {
+        numSlots = Integer.parseInt(numSlotsString);
+      }
       if (trainFileName.length() == 0) {
         if (objectInputFileName.length() == 0) {
           throw new Exception(
@@ -1432,6 +1642,7 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
     trainingEvaluation.dontDisplayMetrics(disableList);
     testingEvaluation.setDiscardPredictions(discardPredictions);
     testingEvaluation.dontDisplayMetrics(disableList);
+    testingEvaluation.setNumExecutionSlots(numSlots);
 
     // disable use of priors if no training file given
     if (!trainSetPresent)
@@ -1797,8 +2008,8 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
     }
 
     if (classifier instanceof BatchPredictor) {
-      double[][] preds = ((BatchPredictor) classifier)
-          .distributionsForInstances(data);
+      double[][] preds = AbstractClassifier.distributionsForInstances(
+          (BatchPredictor) classifier, data);
       for (int i = 0; i < data.numInstances(); i++) {
         double[] p = preds[i];
 
@@ -3933,6 +4144,9 @@ public class Evaluation implements Summarizable, RevisionHandler, Serializable {
     optionsText
         .append("\tSets random number seed for cross-validation or percentage split\n");
     optionsText.append("\t(default: 1).\n");
+    optionsText.append("-cv-slots <number of execution slots>\n");
+    optionsText.append("\tNumber of execution slots (threads) for cross-validation.\n");
+    optionsText.append("\t(default 1 - i.e. no parallelism).\n");
     optionsText.append("-m <name of file with cost matrix>\n");
     optionsText.append("\tSets file with cost matrix.\n");
     optionsText
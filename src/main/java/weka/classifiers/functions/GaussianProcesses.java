@@ -22,6 +22,7 @@ package weka.classifiers.functions;
 
 
 import java.util.Enumeration;
+import java.util.Random;
 import java.util.Vector;
 
 import weka.classifiers.AbstractClassifier;
@@ -30,12 +31,15 @@ import weka.classifiers.IntervalEstimator;
 import weka.classifiers.functions.supportVector.CachedKernel;
 import weka.classifiers.functions.supportVector.Kernel;
 import weka.classifiers.functions.supportVector.PolyKernel;
+import weka.clusterers.SimpleKMeans;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
 import weka.core.OptionHandler;
+import weka.core.Randomizable;
 import weka.core.SelectedTag;
 import weka.core.Statistics;
 import weka.core.Tag;
@@ -45,22 +49,22 @@ import weka.core.TechnicalInformation.Type;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
+import weka.core.matrix.CholeskyDecomposition;
 import weka.core.matrix.Matrix;
+import weka.core.matrix.ParallelOperations;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.NominalToBinary;
 import weka.filters.unsupervised.attribute.Normalize;
+import weka.filters.unsupervised.attribute.Remove;
 import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 import weka.filters.unsupervised.attribute.Standardize;
 
 /**
- * <!-- globalinfo-start --> 
- * Implements Gaussian processes for
- * regression without hyperparameter-tuning. To make choosing an
- * appropriate noise level easier, this implementation applies
- * normalization/standardization to the target attribute as well (if
- * normalization/standardizaton is turned on). Missing values
- * are replaced by the global mean/mode. Nominal attributes are
- * converted to binary ones. 
+ * <!-- globalinfo-start -->
+ * Implements Gaussian processes for regression without hyperparameter-tuning. To make choosing an appropriate noise level easier, this implementation applies normalization/standardization to the target attribute as well as the other attributes (if  normalization/standardizaton is turned on). Missing values are replaced by the global mean/mode. Nominal attributes are converted to binary ones. Note that kernel caching is turned off if the kernel used implements CachedKernel.<br/>
+ * <br/>
+ * For large datasets, a subset of regressors approximation based on a number of inducing points (randomly selected training instances or k-means cluster centroids) can be used instead, which requires O(n*m^2) time and O(m^2) memory for n training instances and m inducing points. Standard deviations are computed as for the projected process approximation.
+ * <p/>
  * <!-- globalinfo-end -->
  * 
  * <!-- technical-bibtex-start --> BibTeX:
@@ -77,58 +81,64 @@ import weka.filters.unsupervised.attribute.Standardize;
  * 
  * <p/> <!-- technical-bibtex-end -->
  * 
- * <!-- options-start --> Valid options are: <p/>
+ * <!-- options-start -->
+ * Valid options are: <p/>
  * 
- * <pre>
- *       -D
- *        If set, classifier is run in debug mode and
- *        may output additional info to the console
- * </pre>
+ * <pre> -D
+ *  If set, classifier is run in debug mode and
+ *  may output additional info to the console</pre>
  * 
- * <pre>
- *       -L &lt;double&gt;
- *        Level of Gaussian Noise. (default 0.1)
- * </pre>
+ * <pre> -L &lt;double&gt;
+ *  Level of Gaussian Noise wrt transformed target. (default 1)</pre>
  * 
- * <pre>
- *       -N
- *        Whether to 0=normalize/1=standardize/2=neither. (default 0=normalize)
- * </pre>
+ * <pre> -N
+ *  Whether to 0=normalize/1=standardize/2=neither. (default 0=normalize)</pre>
  * 
- * <pre>
- *       -K &lt;classname and parameters&gt;
- *        The Kernel to use.
- *        (default: weka.classifiers.functions.supportVector.PolyKernel)
- * </pre>
+ * <pre> -K &lt;classname and parameters&gt;
+ *  The Kernel to use.
+ *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
  * 
- * <pre>
- *       
- *       Options specific to kernel weka.classifiers.functions.supportVector.RBFKernel:
- * </pre>
+ * <pre> -M &lt;num&gt;
+ *  The number of inducing points for the subset of regressors
+ *  approximation. (default 0 = exact Gaussian process)</pre>
  * 
- * <pre>
- *       -D
- *        Enables debugging output (if available) to be printed.
- *        (default: off)
- * </pre>
+ * <pre> -P &lt;num&gt;
+ *  How to select the inducing points: 0=random training instances/
+ *  1=k-means cluster centroids. (default 0=random)</pre>
  * 
- * <pre>
- *       -no-checks
- *        Turns off all checks - use with caution!
- *        (default: checks on)
- * </pre>
+ * <pre> -S &lt;num&gt;
+ *  The seed for selecting the inducing points. (default 1)</pre>
  * 
- * <pre>
- *       -C &lt;num&gt;
- *        The size of the cache (a prime number).
- *        (default: 250007)
+ * <pre> 
+ * Options specific to kernel weka.classifiers.functions.supportVector.PolyKernel:
  * </pre>
  * 
- * <pre>
- *       -G &lt;num&gt;
- *        The Gamma parameter.
- *        (default: 0.01)
- * </pre>
+ * <pre> -D
+ *  Enables debugging output (if available) to be printed.
+ *  (default: off)</pre>
+ * 
+ * <pre> -no-checks
+ *  Turns off all checks - use with caution!
+ *  (default: checks on)</pre>
+ * 
+ * <pre> -C &lt;num&gt;
+ *  The size of the cache (a prime number), 0 for full cache and 
+ *  -1 to turn it off.
+ *  (default: 250007)</pre>
+ * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The size of the kernel cache in megabytes, replaces the cache
+ *  set with -C if greater than 0. This cache can be shared by
+ *  classifiers that build several kernels on the same data.
+ *  (default: 0)</pre>
+ * 
+ * <pre> -E &lt;num&gt;
+ *  The Exponent to use.
+ *  (default: 1.0)</pre>
+ * 
+ * <pre> -L
+ *  Use lower-order terms.
+ *  (default: no)</pre>
  * 
  * <!-- options-end -->
  * 
@@ -138,7 +148,8 @@ import weka.filters.unsupervised.attribute.Standardize;
  */
 public class GaussianProcesses extends AbstractClassifier implements OptionHandler, IntervalEstimator,
                                                                      ConditionalDensityEstimator,
-                                                                     TechnicalInformationHandler, WeightedInstancesHandler {
+                                                                     TechnicalInformationHandler, WeightedInstancesHandler,
+                                                                     Randomizable {
 
   /** for serialization */
   static final long serialVersionUID = -8620066949967678545L;
@@ -201,6 +212,43 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
   /** The vector of target values. */
   protected Matrix m_t;
 
+  /** selects the inducing points randomly */
+  public static final int SELECTION_RANDOM = 0;
+
+  /** uses the cluster centroids of k-means as inducing points */
+  public static final int SELECTION_KMEANS = 1;
+
+  /** The methods for selecting the inducing points */
+  public static final Tag[] TAGS_SELECTION = { new Tag(SELECTION_RANDOM, "Random training instances"),
+                                               new Tag(SELECTION_KMEANS, "k-means cluster centroids"), };
+
+  /** the maximum number of iterations of k-means for selecting the inducing points */
+  public static final int KMEANS_ITERATIONS = 10;
+
+  /** the number of training instances processed at once by the approximation */
+  public static final int APPROXIMATION_BLOCK_SIZE = 256;
+
+  /** the jitter added to the diagonal of the kernel matrix of the inducing points */
+  public static final double JITTER = 1e-6;
+
+  /** The number of inducing points (0 for the exact Gaussian process) */
+  protected int m_numInducingPoints = 0;
+
+  /** How to select the inducing points */
+  protected int m_inducingPointSelection = SELECTION_RANDOM;
+
+  /** The seed for selecting the inducing points */
+  protected int m_Seed = 1;
+
+  /** The kernel built on the inducing points (null for the exact Gaussian process) */
+  protected Kernel m_inducingKernel;
+
+  /** Cholesky decomposition of the kernel matrix of the inducing points */
+  protected CholeskyDecomposition m_inducingCholesky;
+
+  /** Cholesky decomposition of K_mm + K_mn K_nm / noise^2 */
+  protected CholeskyDecomposition m_sigmaCholesky;
+
   /**
    * Returns a string describing classifier
    * 
@@ -217,7 +265,13 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
       + " normalization/standardizaton is turned on). Missing values "
       + "are replaced by the global mean/mode. Nominal attributes are "
       + "converted to binary ones. Note that kernel caching is turned off "
-      + "if the kernel used implements CachedKernel.";
+      + "if the kernel used implements CachedKernel.\n\n"
+      + "For large datasets, a subset of regressors approximation based on a "
+      + "number of inducing points (randomly selected training instances or "
+      + "k-means cluster centroids) can be used instead, which requires "
+      + "O(n*m^2) time and O(m^2) memory for n training instances and m "
+      + "inducing points. Standard deviations are computed as for the "
+      + "projected process approximation.";
   }
 
   /**
@@ -354,6 +408,15 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
       m_Blin = 0.0;
     }
 
+    // use an approximation?
+    if ((m_numInducingPoints > 0) && (m_numInducingPoints < insts.numInstances())) {
+      buildApproximation(insts);
+      return;
+    }
+    m_inducingKernel   = null;
+    m_inducingCholesky = null;
+    m_sigmaCholesky    = null;
+
     // Initialize kernel
     try {
       CachedKernel cachedKernel = (CachedKernel) m_kernel;
@@ -389,8 +452,9 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
     // Calculate inverse matrix exploiting symmetry of covariance matrix
     // NB this replaces the kernel matrix with (the negative of) its inverse and does
     // not require any extra memory for a solution matrix
-    double [] tmprow = new double [n];
+    final double [] tmprow = new double [n];
     double tmp2 = 0, tmp = 0;
+    boolean parallel = ParallelOperations.useFor((double) n * n * n);
     for (int i = 0; i < n; i++) {
       tmp = -m_L[i][i];
       m_L[i][i] = 1.0 / tmp;
@@ -410,22 +474,17 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
         }
       }
 
-      for (int j = 0; j < n; j++) {
-        if (j != i) {
-          if (i < j) {
-            for (int k = 0; k < i; k++) {
-              m_L[j][k] += tmprow[j] * m_L[i][k];
-            }
-          } else {
-            for (int k = 0; k < j; k++) {
-              m_L[j][k] += tmprow[j] * m_L[i][k];
-            }
-						
-          }
-          for (int k = i + 1; k < j; k++) {
-            m_L[j][k] += tmprow[j] * m_L[k][i];
+      // the rows are updated independently of each other
+      if (parallel) {
+        final int row = i;
+        ParallelOperations.forRange(0, n, n, new ParallelOperations.RangeTask() {
+          public void run(int from, int to) {
+            updateInverseRows(row, from, to, tmprow);
           }
-        }
+        });
+      }
+      else {
+        updateInverseRows(i, 0, n, tmprow);
       }
     }
 		
@@ -449,6 +508,202 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
 		
   } // buildClassifier
 
+  /**
+   * Performs the update of the given rows of the covariance matrix for the
+   * i-th step of the inversion in buildClassifier.
+   *
+   * @param i		the current step
+   * @param from	the first row to update
+   * @param to		the row after the last one
+   * @param tmprow	the row/column i before the step
+   */
+  protected void updateInverseRows(int i, int from, int to, double[] tmprow) {
+    for (int j = from; j < to; j++) {
+      if (j != i) {
+        if (i < j) {
+          for (int k = 0; k < i; k++) {
+            m_L[j][k] += tmprow[j] * m_L[i][k];
+          }
+        } else {
+          for (int k = 0; k < j; k++) {
+            m_L[j][k] += tmprow[j] * m_L[i][k];
+          }
+        }
+        for (int k = i + 1; k < j; k++) {
+          m_L[j][k] += tmprow[j] * m_L[k][i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Selects the inducing points for the approximation.
+   * 
+   * @param insts
+   *            the (filtered) training instances
+   * @return the inducing points, in the format of the training instances
+   * @throws Exception
+   *             if k-means fails or cannot be applied
+   */
+  protected Instances selectInducingPoints(Instances insts) throws Exception {
+
+    Instances result = new Instances(insts, m_numInducingPoints);
+
+    if (m_inducingPointSelection == SELECTION_KMEANS) {
+      for (int i = 0; i < insts.numAttributes(); i++) {
+        if ((i != insts.classIndex()) && !insts.attribute(i).isNumeric()) {
+          throw new Exception("Selecting the inducing points with k-means requires numeric attributes!");
+        }
+      }
+      Remove remove = new Remove();
+      remove.setAttributeIndicesArray(new int[]{insts.classIndex()});
+      remove.setInputFormat(insts);
+      Instances data = Filter.useFilter(insts, remove);
+
+      SimpleKMeans kmeans = new SimpleKMeans();
+      kmeans.setNumClusters(m_numInducingPoints);
+      kmeans.setSeed(m_Seed);
+      kmeans.setMaxIterations(KMEANS_ITERATIONS);
+      kmeans.buildClusterer(data);
+
+      Instances centroids = kmeans.getClusterCentroids();
+      for (int i = 0; i < centroids.numInstances(); i++) {
+        double[] values = new double[insts.numAttributes()];
+        int n = 0;
+        for (int j = 0; j < values.length; j++) {
+          if (j != insts.classIndex()) {
+            values[j] = centroids.instance(i).value(n++);
+          }
+        }
+        result.add(new DenseInstance(1.0, values));
+      }
+    } else {
+      // partial Fisher-Yates shuffle
+      int[] indices = new int[insts.numInstances()];
+      for (int i = 0; i < indices.length; i++) {
+        indices[i] = i;
+      }
+      Random random = new Random(m_Seed);
+      for (int i = 0; i < m_numInducingPoints; i++) {
+        int j = i + random.nextInt(indices.length - i);
+        int tmp = indices[i];
+        indices[i] = indices[j];
+        indices[j] = tmp;
+        result.add(insts.instance(indices[i]));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Builds the subset of regressors approximation. Only the m x m kernel
+   * matrix of the inducing points and the m x m product K_mn K_nm are held
+   * in memory; the kernel values of the training instances are computed in
+   * blocks of rows while streaming over the data.
+   * 
+   * @param insts
+   *            the (filtered) training instances
+   * @throws Exception
+   *             if the approximation can't be built
+   */
+  protected void buildApproximation(Instances insts) throws Exception {
+
+    // Compute average target value
+    double sum = 0.0;
+    for (int i = 0; i < insts.numInstances(); i++) {
+      sum += insts.instance(i).classValue();
+    }
+    m_avg_target = sum / insts.numInstances();
+
+    // kernel on the inducing points
+    Instances inducing = selectInducingPoints(insts);
+    int m = inducing.numInstances();
+    m_inducingKernel = Kernel.makeCopy(m_kernel);
+    if (m_inducingKernel instanceof CachedKernel) {
+      ((CachedKernel) m_inducingKernel).setCacheSize(0);
+    }
+    m_inducingKernel.buildKernel(inducing);
+
+    // kernel matrix of the inducing points, with some jitter for stability
+    Matrix kmm = new Matrix(m, m);
+    double trace = 0;
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j <= i; j++) {
+        double kv = m_inducingKernel.eval(i, j, inducing.instance(i));
+        kmm.set(i, j, kv);
+        kmm.set(j, i, kv);
+      }
+      trace += kmm.get(i, i);
+    }
+    for (int i = 0; i < m; i++) {
+      kmm.set(i, i, kmm.get(i, i) + JITTER * Math.max(trace / m, 1.0));
+    }
+    m_inducingCholesky = kmm.chol();
+    if (!m_inducingCholesky.isSPD()) {
+      throw new Exception("Kernel matrix of the inducing points is not positive definite, "
+                          + "try fewer inducing points!");
+    }
+
+    // K_mn K_nm and K_mn * t, in blocks of training instances
+    Matrix sigma = new Matrix(m, m);
+    Matrix kmnt = new Matrix(m, 1);
+    Matrix block = null;
+    Matrix target = null;
+    for (int start = 0; start < insts.numInstances(); start += APPROXIMATION_BLOCK_SIZE) {
+      int size = Math.min(APPROXIMATION_BLOCK_SIZE, insts.numInstances() - start);
+      if ((block == null) || (block.getRowDimension() != size)) {
+        block = new Matrix(size, m);
+        target = new Matrix(size, 1);
+      }
+      for (int i = 0; i < size; i++) {
+        Instance inst = insts.instance(start + i);
+        for (int j = 0; j < m; j++) {
+          block.set(i, j, m_inducingKernel.eval(-1, j, inst));
+        }
+        target.set(i, 0, inst.classValue() - m_avg_target);
+      }
+      Matrix blockT = block.transpose();
+      sigma.plusEquals(blockT.times(block));
+      kmnt.plusEquals(blockT.times(target));
+    }
+
+    // Sigma = K_mm + K_mn K_nm / noise^2, weights = Sigma^-1 K_mn t / noise^2
+    double noise = m_delta * m_delta;
+    sigma.timesEquals(1.0 / noise);
+    sigma.plusEquals(kmm);
+    m_sigmaCholesky = sigma.chol();
+    if (!m_sigmaCholesky.isSPD()) {
+      throw new Exception("Covariance matrix of the approximation is not positive definite, "
+                          + "try fewer inducing points or more noise!");
+    }
+    m_t = m_sigmaCholesky.solve(kmnt).timesEquals(1.0 / noise);
+    m_L = null;
+  }
+
+  /**
+   * Computes the vector of kernel values between the given (filtered)
+   * instance and the training instances, or the inducing points if the
+   * approximation is used.
+   * 
+   * @param inst
+   *            the filtered instance
+   * @return the kernel values as column vector
+   * @throws Exception
+   *             if the kernel can't be evaluated
+   */
+  protected Matrix computeKernelVector(Instance inst) throws Exception {
+
+    Kernel kernel = (m_inducingKernel != null) ? m_inducingKernel : m_kernel;
+    int num = m_t.getRowDimension();
+    Matrix k = new Matrix(num, 1);
+    for (int i = 0; i < num; i++) {
+      k.set(i, 0, kernel.eval(-1, i, inst));
+    }
+
+    return k;
+  }
+
   /**
    * Classifies a given instance.
    * 
@@ -464,10 +719,7 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
     inst = filterInstance(inst);
 
     // Build K vector
-    Matrix k = new Matrix(m_NumTrain, 1);
-    for (int i = 0; i < m_NumTrain; i++) {
-      k.set(i, 0, m_kernel.eval(-1, i, inst));
-    }
+    Matrix k = computeKernelVector(inst);
 
     double result = k.transpose().times(m_t).get(0, 0) + m_avg_target;
     result = (result - m_Blin) / m_Alin;
@@ -507,6 +759,10 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
    */
   protected double computeStdDev(Instance inst, Matrix k) throws Exception {
 
+    if (m_inducingKernel != null) {
+      return computeApproximateStdDev(inst, k);
+    }
+
     double kappa = m_kernel.eval(-1, -1, inst) + m_delta * m_delta;
 
     double s = 0;
@@ -527,6 +783,27 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
     return sigma;
   }
 
+  /**
+   * Computes standard deviation for given instance with the approximation,
+   * without transforming target back into original space. The variance is
+   * k(x,x) - k' K_mm^-1 k + k' Sigma^-1 k plus the noise.
+   */
+  protected double computeApproximateStdDev(Instance inst, Matrix k) throws Exception {
+
+    double kappa = m_inducingKernel.eval(-1, -1, inst) + m_delta * m_delta;
+
+    Matrix kT = k.transpose();
+    double s = kT.times(m_inducingCholesky.solve(k)).get(0, 0)
+      - kT.times(m_sigmaCholesky.solve(k)).get(0, 0);
+
+    double sigma = m_delta;
+    if (kappa > s) {
+      sigma = Math.sqrt(kappa - s);
+    }
+
+    return sigma;
+  }
+
   /**
    * Computes a prediction interval for the given instance and confidence
    * level.
@@ -544,10 +821,7 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
     inst = filterInstance(inst);
 
     // Build K vector (and Kappa)
-    Matrix k = new Matrix(m_NumTrain, 1);
-    for (int i = 0; i < m_NumTrain; i++) {
-      k.set(i, 0, m_kernel.eval(-1, i, inst));
-    }
+    Matrix k = computeKernelVector(inst);
 
     double estimate = k.transpose().times(m_t).get(0, 0) + m_avg_target;
 
@@ -583,10 +857,7 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
     inst = filterInstance(inst);
 
     // Build K vector (and Kappa)
-    Matrix k = new Matrix(m_NumTrain, 1);
-    for (int i = 0; i < m_NumTrain; i++) {
-      k.set(i, 0, m_kernel.eval(-1, i, inst));
-    }
+    Matrix k = computeKernelVector(inst);
 
     return computeStdDev(inst, k) / m_Alin;
   }
@@ -604,10 +875,7 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
     inst = filterInstance(inst);
 
     // Build K vector (and Kappa)
-    Matrix k = new Matrix(m_NumTrain, 1);
-    for (int i = 0; i < m_NumTrain; i++) {
-      k.set(i, 0, m_kernel.eval(-1, i, inst));
-    }
+    Matrix k = computeKernelVector(inst);
     
     double estimate = k.transpose().times(m_t).get(0, 0) + m_avg_target;
 
@@ -645,6 +913,15 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
                                  + "\t(default: weka.classifiers.functions.supportVector.PolyKernel)", "K", 1,
                                  "-K <classname and parameters>"));
 
+    result.addElement(new Option("\tThe number of inducing points for the subset of regressors\n"
+                                 + "\tapproximation. (default 0 = exact Gaussian process)", "M", 1, "-M <num>"));
+
+    result.addElement(new Option("\tHow to select the inducing points: 0=random training instances/\n"
+                                 + "\t1=k-means cluster centroids. (default 0=random)", "P", 1, "-P <num>"));
+
+    result.addElement(new Option("\tThe seed for selecting the inducing points. (default 1)", "S", 1,
+                                 "-S <num>"));
+
     result.addElement(new Option("", "", 0, "\nOptions specific to kernel " + getKernel().getClass().getName()
                                  + ":"));
 
@@ -658,64 +935,65 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
   /**
    * Parses a given list of options. <p/>
    * 
-   * <!-- options-start --> Valid options are: <p/>
-   * 
-   * <pre>
-   *       -D
-   *        If set, classifier is run in debug mode and
-   *        may output additional info to the console
-   * </pre>
-   * 
-   * <pre>
-   *       -L &lt;double&gt;
-   *        Level of Gaussian Noise. (default 0.1)
-   * </pre>
-   * 
-   * <pre>
-   *       -M &lt;double&gt;
-   *        Level of Gaussian Noise for the class. (default 0.1)
-   * </pre>
-   * 
-   * <pre>
-   *       -N
-   *        Whether to 0=normalize/1=standardize/2=neither. (default 0=normalize)
-   * </pre>
-   * 
-   * <pre>
-   *       -K &lt;classname and parameters&gt;
-   *        The Kernel to use.
-   *        (default: weka.classifiers.functions.supportVector.PolyKernel)
-   * </pre>
-   * 
-   * <pre>
-   *       
-   *       Options specific to kernel weka.classifiers.functions.supportVector.RBFKernel:
-   * </pre>
-   * 
-   * <pre>
-   *       -D
-   *        Enables debugging output (if available) to be printed.
-   *        (default: off)
-   * </pre>
-   * 
-   * <pre>
-   *       -no-checks
-   *        Turns off all checks - use with caution!
-   *        (default: checks on)
-   * </pre>
-   * 
-   * <pre>
-   *       -C &lt;num&gt;
-   *        The size of the cache (a prime number).
-   *        (default: 250007)
-   * </pre>
-   * 
-   * <pre>
-   *       -G &lt;num&gt;
-   *        The Gamma parameter.
-   *        (default: 0.01)
-   * </pre>
-   * 
+   * <!-- options-start -->
+   * * Valid options are: <p/>
+   * * 
+   * * <pre> -D
+   * *  If set, classifier is run in debug mode and
+   * *  may output additional info to the console</pre>
+   * * 
+   * * <pre> -L &lt;double&gt;
+   * *  Level of Gaussian Noise wrt transformed target. (default 1)</pre>
+   * * 
+   * * <pre> -N
+   * *  Whether to 0=normalize/1=standardize/2=neither. (default 0=normalize)</pre>
+   * * 
+   * * <pre> -K &lt;classname and parameters&gt;
+   * *  The Kernel to use.
+   * *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
+   * * 
+   * * <pre> -M &lt;num&gt;
+   * *  The number of inducing points for the subset of regressors
+   * *  approximation. (default 0 = exact Gaussian process)</pre>
+   * * 
+   * * <pre> -P &lt;num&gt;
+   * *  How to select the inducing points: 0=random training instances/
+   * *  1=k-means cluster centroids. (default 0=random)</pre>
+   * * 
+   * * <pre> -S &lt;num&gt;
+   * *  The seed for selecting the inducing points. (default 1)</pre>
+   * * 
+   * * <pre> 
+   * * Options specific to kernel weka.classifiers.functions.supportVector.PolyKernel:
+   * * </pre>
+   * * 
+   * * <pre> -D
+   * *  Enables debugging output (if available) to be printed.
+   * *  (default: off)</pre>
+   * * 
+   * * <pre> -no-checks
+   * *  Turns off all checks - use with caution!
+   * *  (default: checks on)</pre>
+   * * 
+   * * <pre> -C &lt;num&gt;
+   * *  The size of the cache (a prime number), 0 for full cache and 
+   * *  -1 to turn it off.
+   * *  (default: 250007)</pre>
+   * * 
+   * * <pre> -cache-mb &lt;num&gt;
+   * *  The size of the kernel cache in megabytes, replaces the cache
+   * *  set with -C if greater than 0. This cache can be shared by
+   * *  classifiers that build several kernels on the same data.
+   * *  (default: 0)</pre>
+   * * 
+   * * <pre> -E &lt;num&gt;
+   * *  The Exponent to use.
+   * *  (default: 1.0)</pre>
+   * * 
+   * * <pre> -L
+   * *  Use lower-order terms.
+   * *  (default: no)</pre>
+   * * 
    * <!-- options-end -->
    * 
    * @param options
@@ -747,6 +1025,24 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
       setKernel(Kernel.forName(tmpStr, tmpOptions));
     }
 
+    tmpStr = Utils.getOption('M', options);
+    if (tmpStr.length() != 0)
+      setNumInducingPoints(Integer.parseInt(tmpStr));
+    else
+      setNumInducingPoints(0);
+
+    tmpStr = Utils.getOption('P', options);
+    if (tmpStr.length() != 0)
+      setInducingPointSelection(new SelectedTag(Integer.parseInt(tmpStr), TAGS_SELECTION));
+    else
+      setInducingPointSelection(new SelectedTag(SELECTION_RANDOM, TAGS_SELECTION));
+
+    tmpStr = Utils.getOption('S', options);
+    if (tmpStr.length() != 0)
+      setSeed(Integer.parseInt(tmpStr));
+    else
+      setSeed(1);
+
     super.setOptions(options);
   }
 
@@ -774,6 +1070,17 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
     result.addElement("-K");
     result.addElement("" + m_kernel.getClass().getName() + " " + Utils.joinOptions(m_kernel.getOptions()));
 
+    if (m_numInducingPoints > 0) {
+      result.addElement("-M");
+      result.addElement("" + m_numInducingPoints);
+
+      result.addElement("-P");
+      result.addElement("" + m_inducingPointSelection);
+
+      result.addElement("-S");
+      result.addElement("" + getSeed());
+    }
+
     return (String[]) result.toArray(new String[result.size()]);
   }
 
@@ -871,6 +1178,100 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
     m_delta = v;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numInducingPointsTipText() {
+    return "The number of inducing points for the subset of regressors approximation; "
+      + "0 (or at least the number of training instances) for the exact Gaussian process.";
+  }
+
+  /**
+   * Gets the number of inducing points.
+   * 
+   * @return the number of inducing points, 0 for the exact Gaussian process
+   */
+  public int getNumInducingPoints() {
+    return m_numInducingPoints;
+  }
+
+  /**
+   * Sets the number of inducing points.
+   * 
+   * @param value
+   *            the number of inducing points, 0 for the exact Gaussian process
+   */
+  public void setNumInducingPoints(int value) {
+    if (value >= 0)
+      m_numInducingPoints = value;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String inducingPointSelectionTipText() {
+    return "How to select the inducing points: randomly from the training instances "
+      + "or as centroids of k-means clustering (at most " + KMEANS_ITERATIONS + " iterations).";
+  }
+
+  /**
+   * Gets how the inducing points are selected. Will be one of
+   * SELECTION_RANDOM, SELECTION_KMEANS.
+   * 
+   * @return the selection method
+   */
+  public SelectedTag getInducingPointSelection() {
+    return new SelectedTag(m_inducingPointSelection, TAGS_SELECTION);
+  }
+
+  /**
+   * Sets how the inducing points are selected. Should be one of
+   * SELECTION_RANDOM, SELECTION_KMEANS.
+   * 
+   * @param value
+   *            the selection method
+   */
+  public void setInducingPointSelection(SelectedTag value) {
+    if (value.getTags() == TAGS_SELECTION) {
+      m_inducingPointSelection = value.getSelectedTag().getID();
+    }
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The seed for selecting the inducing points.";
+  }
+
+  /**
+   * Gets the seed for selecting the inducing points.
+   * 
+   * @return the seed
+   */
+  public int getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Sets the seed for selecting the inducing points.
+   * 
+   * @param value
+   *            the seed
+   */
+  public void setSeed(int value) {
+    m_Seed = value;
+  }
+
   /**
    * Prints out the classifier.
    * 
@@ -894,6 +1295,24 @@ public class GaussianProcesses extends AbstractClassifier implements OptionHandl
 
       text.append("Average Target Value : " + m_avg_target + "\n");
 
+      if (m_inducingKernel != null) {
+        text.append("Subset of regressors approximation with " + m_t.getRowDimension()
+                    + " inducing points (" + TAGS_SELECTION[m_inducingPointSelection].getReadable()
+                    + ")\n");
+        text.append("Weights of the inducing points:\n");
+        double min = m_t.get(0, 0);
+        double max = m_t.get(0, 0);
+        for (int i = 0; i < m_t.getRowDimension(); i++) {
+          if (m_t.get(i, 0) < min)
+            min = m_t.get(i, 0);
+          else if (m_t.get(i, 0) > max)
+            max = m_t.get(i, 0);
+        }
+        text.append("    Lowest Value = " + min + "\n");
+        text.append("    Highest Value = " + max + "\n \n");
+        return text.toString();
+      }
+
       text.append("Inverted Covariance Matrix:\n");
       double min = -m_L[0][0];
       double max = -m_L[0][0];
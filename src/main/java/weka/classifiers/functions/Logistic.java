@@ -23,6 +23,7 @@ package weka.classifiers.functions;
 
 import weka.classifiers.Classifier;
 import weka.classifiers.AbstractClassifier;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -30,7 +31,9 @@ import weka.core.Optimization;
 import weka.core.ConjugateGradientOptimization;
 import weka.core.Option;
 import weka.core.OptionHandler;
+import weka.core.ParallelObjective;
 import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
@@ -105,19 +108,30 @@ import java.util.Vector;
  * <pre> -D
  *  Turn on debugging output.</pre>
  * 
+ * <pre> -C
+ *  Use conjugate gradient descent rather than BFGS updates.</pre>
+ * 
  * <pre> -R &lt;ridge&gt;
  *  Set the ridge in the log-likelihood.</pre>
  * 
  * <pre> -M &lt;number&gt;
  *  Set the maximum number of iterations (default -1, until convergence).</pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100).</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use for computing the log-likelihood
+ *  and its gradient (default 1).</pre>
+ * 
  <!-- options-end -->
  *
  * @author Xin Xu (xx5@cs.waikato.ac.nz)
  * @version $Revision: 8079 $
  */
 public class Logistic extends AbstractClassifier 
-  implements OptionHandler, WeightedInstancesHandler, TechnicalInformationHandler {
+  implements OptionHandler, WeightedInstancesHandler, TechnicalInformationHandler,
+             BatchPredictor {
   
   /** for serialization */
   static final long serialVersionUID = 3932117032546553727L;
@@ -162,6 +176,9 @@ public class Logistic extends AbstractClassifier
   private boolean m_useConjugateGradientDescent = false;
 
   private Instances m_structure;
+
+  /** The number of threads to evaluate the log-likelihood with. */
+  protected int m_NumExecutionSlots = 1;
     
   /**
    * Returns a string describing this classifier
@@ -227,7 +244,7 @@ public class Logistic extends AbstractClassifier
    * @return an enumeration of all the available options
    */
   public Enumeration listOptions() {
-    Vector newVector = new Vector(4);
+    Vector newVector = new Vector(5);
     newVector.addElement(new Option("\tTurn on debugging output.",
 				    "D", 0, "-D"));
     newVector.addElement(new Option("\tUse conjugate gradient descent rather than BFGS updates.",
@@ -237,6 +254,10 @@ public class Logistic extends AbstractClassifier
     newVector.addElement(new Option("\tSet the maximum number of iterations"+
 				    " (default -1, until convergence).",
 				    "M", 1, "-M <number>"));
+    newVector.addElement(batchSizeOption());
+    newVector.addElement(new Option("\tThe number of threads to use for computing"+
+				    " the log-likelihood\n\tand its gradient (default 1).",
+				    "num-slots", 1, "-num-slots <num>"));
     return newVector.elements();
   }
     
@@ -249,12 +270,22 @@ public class Logistic extends AbstractClassifier
    * <pre> -D
    *  Turn on debugging output.</pre>
    * 
+   * <pre> -C
+   *  Use conjugate gradient descent rather than BFGS updates.</pre>
+   * 
    * <pre> -R &lt;ridge&gt;
    *  Set the ridge in the log-likelihood.</pre>
    * 
    * <pre> -M &lt;number&gt;
    *  Set the maximum number of iterations (default -1, until convergence).</pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100).</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  The number of threads to use for computing the log-likelihood
+   *  and its gradient (default 1).</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -276,6 +307,15 @@ public class Logistic extends AbstractClassifier
       m_MaxIts = Integer.parseInt(maxItsString);
     else 
       m_MaxIts = -1;
+
+    setBatchSizeOption(options);
+
+    String numSlots = Utils.getOption("num-slots", options);
+    if (numSlots.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(numSlots));
+    } else {
+      setNumExecutionSlots(1);
+    }
   }
     
   /**
@@ -285,7 +325,7 @@ public class Logistic extends AbstractClassifier
    */
   public String [] getOptions() {
 	
-    String [] options = new String [6];
+    String [] options = new String [10];
     int current = 0;
 	
     if (getDebug()) 
@@ -297,6 +337,13 @@ public class Logistic extends AbstractClassifier
     options[current++] = ""+m_Ridge;	
     options[current++] = "-M";
     options[current++] = ""+m_MaxIts;
+    for (String option : getBatchSizeOptions()) {
+      options[current++] = option;
+    }
+    if (getNumExecutionSlots() != 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + getNumExecutionSlots();
+    }
     while (current < options.length) 
       options[current++] = "";
     return options;
@@ -412,6 +459,54 @@ public class Logistic extends AbstractClassifier
     m_MaxIts = newMaxIts;
   }    
     
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for computing the log-likelihood "
+      + "and its gradient during training. The instances are split into "
+      + "one part per thread, so the result may differ slightly (rounding) "
+      + "between different numbers of threads.";
+  }
+
+  /**
+   * Set the number of threads to use for training.
+   *
+   * @param numSlots the number of threads
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of threads to use for training.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+    
   private class OptEng extends Optimization {
 
     OptObject m_oO = null;
@@ -420,11 +515,11 @@ public class Logistic extends AbstractClassifier
       m_oO = oO;
     }
 
-    protected double objectiveFunction(double[] x){
+    protected double objectiveFunction(double[] x) throws Exception {
       return m_oO.objectiveFunction(x);
     }    
 
-    protected double[] evaluateGradient(double[] x){
+    protected double[] evaluateGradient(double[] x) throws Exception {
       return m_oO.evaluateGradient(x);
     }
     
@@ -441,11 +536,11 @@ public class Logistic extends AbstractClassifier
       m_oO = oO;
     }
 
-    protected double objectiveFunction(double[] x){
+    protected double objectiveFunction(double[] x) throws Exception {
       return m_oO.objectiveFunction(x);
     }    
 
-    protected double[] evaluateGradient(double[] x){
+    protected double[] evaluateGradient(double[] x) throws Exception {
       return m_oO.evaluateGradient(x);
     }
     
@@ -454,13 +549,35 @@ public class Logistic extends AbstractClassifier
     }
   }
 
-  private class OptObject {
+  /**
+   * The negative log-likelihood and its gradient. The sums over the
+   * instances are computed with ParallelObjective. The data is either the
+   * dense, normalized m_Data matrix or, for sparse data, the non-zero
+   * values of the instances, which are left as they are. In the latter
+   * case the normalization is applied to the coefficients instead.
+   */
+  private class OptObject extends ParallelObjective {
 
     /** Weights of instances in the data */
     private double[] weights;
 
     /** Class labels of instances */
     private int[] cls;
+
+    /** The columns of the non-zero values (sparse data only) */
+    private int[][] indices;
+
+    /** The non-zero values (sparse data only) */
+    private double[][] values;
+
+    /** The attribute means (sparse data only) */
+    private double[] mean;
+
+    /** The attribute standard deviations (sparse data only) */
+    private double[] sd;
+
+    /** The coefficients for the unnormalized data (sparse data only) */
+    private double[] coeffs;
 	
     /** 
      * Set the weights of instances
@@ -477,25 +594,101 @@ public class Logistic extends AbstractClassifier
     public void setClassLabels(int[] c) {
       cls = c;
     }
-	
-    /** 
-     * Evaluate objective function
+
+    /**
+     * Set the sparse data to use instead of m_Data
+     * @param ind the columns of the non-zero values of each instance
+     * @param val the non-zero values of each instance
+     * @param m the means of the columns
+     * @param s the standard deviations of the columns
+     */
+    public void setSparseData(int[][] ind, double[][] val, double[] m, 
+                              double[] s) {
+      indices = ind;
+      values = val;
+      mean = m;
+      sd = s;
+    }
+
+    /**
+     * Returns the number of instances
+     * @return the number of instances
+     */
+    protected int numInstances() {
+      return cls.length;
+    }
+
+    /**
+     * Computes the coefficients for the unnormalized sparse data, i.e.,
+     * divides by the standard deviations and moves the means into the
+     * intercepts.
      * @param x the current values of variables
-     * @return the value of the objective function 
      */
-    protected double objectiveFunction(double[] x){
-      double nll = 0; // -LogLikelihood
+    private void computeCoefficients(double[] x) {
       int dim = m_NumPredictors+1; // Number of variables per class
-	    
-      for(int i=0; i<cls.length; i++){ // ith instance
 
-	double[] exp = new double[m_NumClasses-1];
-	int index;
+      if (coeffs == null)
+	coeffs = new double[x.length];
+      for(int offset=0; offset<m_NumClasses-1; offset++){
+	int index = offset * dim;
+	double intercept = x[index];
+	for(int j=1; j<dim; j++){
+	  if (sd[j] != 0) {
+	    coeffs[index + j] = x[index + j] / sd[j];
+	    intercept -= coeffs[index + j] * mean[j];
+	  } else {
+	    coeffs[index + j] = x[index + j];
+	  }
+	}
+	coeffs[index] = intercept;
+      }
+    }
+
+    /**
+     * Computes the linear predictors of an instance
+     * @param x the current values of variables
+     * @param i the index of the instance
+     * @param exp the array to store the predictors in
+     */
+    private void predictors(double[] x, int i, double[] exp) {
+      int dim = m_NumPredictors+1; // Number of variables per class
+      int index;
+
+      if (indices == null) {
 	for(int offset=0; offset<m_NumClasses-1; offset++){ 
+	  double sum = 0;
 	  index = offset * dim;
 	  for(int j=0; j<dim; j++)
-	    exp[offset] += m_Data[i][j]*x[index + j];
+	    sum += m_Data[i][j]*x[index + j];
+	  exp[offset] = sum;
+	}
+      } else {
+	int[] ind = indices[i];
+	double[] val = values[i];
+	for(int offset=0; offset<m_NumClasses-1; offset++){ 
+	  index = offset * dim;
+	  double sum = coeffs[index];
+	  for(int p=0; p<ind.length; p++)
+	    sum += val[p]*coeffs[index + ind[p]];
+	  exp[offset] = sum;
 	}
+      }
+    }
+	
+    /** 
+     * Computes the negative log-likelihood of a range of instances
+     * @param x the current values of variables
+     * @param from the first instance
+     * @param to the last instance (exclusive)
+     * @return the partial negative log-likelihood
+     */
+    protected double objective(double[] x, int from, int to){
+      double nll = 0; // -LogLikelihood
+      double[] exp = new double[m_NumClasses-1];
+	    
+      for(int i=from; i<to; i++){ // ith instance
+
+	predictors(x, i, exp);
 	double max = exp[Utils.maxIndex(exp)];
 	double denom = Math.exp(-max);
 	double num;
@@ -510,35 +703,26 @@ public class Logistic extends AbstractClassifier
 		
 	nll -= weights[i]*(num - Math.log(denom)); // Weighted NLL
       }
-	    
-      // Ridge: note that intercepts NOT included
-      for(int offset=0; offset<m_NumClasses-1; offset++){
-	for(int r=1; r<dim; r++)
-	  nll += m_Ridge*x[offset*dim+r]*x[offset*dim+r];
-      }
-	    
+
       return nll;
     }
 
     /** 
-     * Evaluate Jacobian vector
+     * Adds the gradient of the negative log-likelihood of a range of
+     * instances to the accumulator. For sparse data, the gradient is 
+     * with respect to the coefficients of the unnormalized data, see
+     * evaluateGradient(double[]).
      * @param x the current values of variables
-     * @return the gradient vector 
+     * @param from the first instance
+     * @param to the last instance (exclusive)
+     * @param grad the accumulator
      */
-    protected double[] evaluateGradient(double[] x){
-      double[] grad = new double[x.length];
+    protected void gradient(double[] x, int from, int to, double[] grad){
       int dim = m_NumPredictors+1; // Number of variables per class
+      double[] num=new double[m_NumClasses-1]; // numerator of [-log(1+sum(exp))]'
 	    
-      for(int i=0; i<cls.length; i++){ // ith instance
-	double[] num=new double[m_NumClasses-1]; // numerator of [-log(1+sum(exp))]'
-	int index;
-	for(int offset=0; offset<m_NumClasses-1; offset++){ // Which part of x
-	  double exp=0.0;
-	  index = offset * dim;
-	  for(int j=0; j<dim; j++)
-	    exp += m_Data[i][j]*x[index + j];
-	  num[offset] = exp;
-	}
+      for(int i=from; i<to; i++){ // ith instance
+	predictors(x, i, num);
 
 	double max = num[Utils.maxIndex(num)];
 	double denom = Math.exp(-max); // Denominator of [-log(1+sum(exp))]'
@@ -548,19 +732,82 @@ public class Logistic extends AbstractClassifier
 	}
 	Utils.normalize(num, denom);
 		
-	// Update denominator of the gradient of -log(Posterior)
-	double firstTerm;
-	for(int offset=0; offset<m_NumClasses-1; offset++){ // Which part of x
-	  index = offset * dim;
-	  firstTerm = weights[i] * num[offset];
-	  for(int q=0; q<dim; q++){
-	    grad[index + q] += firstTerm * m_Data[i][q];
+	if (indices == null) {
+	  // Update denominator of the gradient of -log(Posterior)
+	  int index;
+	  double firstTerm;
+	  for(int offset=0; offset<m_NumClasses-1; offset++){ // Which part of x
+	    index = offset * dim;
+	    firstTerm = weights[i] * num[offset];
+	    for(int q=0; q<dim; q++){
+	      grad[index + q] += firstTerm * m_Data[i][q];
+	    }
 	  }
-	}
 		
-	if(cls[i] != m_NumClasses-1){ // Not the last class
-	  for(int p=0; p<dim; p++){
-	    grad[cls[i]*dim+p] -= weights[i]*m_Data[i][p]; 
+	  if(cls[i] != m_NumClasses-1){ // Not the last class
+	    for(int p=0; p<dim; p++){
+	      grad[cls[i]*dim+p] -= weights[i]*m_Data[i][p]; 
+	    }
+	  }
+	} else {
+	  int[] ind = indices[i];
+	  double[] val = values[i];
+	  for(int offset=0; offset<m_NumClasses-1; offset++){ // Which part of x
+	    int index = offset * dim;
+	    double factor = weights[i] * num[offset];
+	    if (offset == cls[i])
+	      factor -= weights[i];
+	    grad[index] += factor;
+	    for(int p=0; p<ind.length; p++){
+	      grad[index + ind[p]] += factor * val[p];
+	    }
+	  }
+	}
+      }
+    }
+
+    /** 
+     * Evaluate objective function
+     * @param x the current values of variables
+     * @return the value of the objective function 
+     * @throws Exception if the evaluation fails
+     */
+    protected double objectiveFunction(double[] x) throws Exception {
+      int dim = m_NumPredictors+1; // Number of variables per class
+
+      if (indices != null)
+	computeCoefficients(x);
+      double nll = sumObjective(x);
+	    
+      // Ridge: note that intercepts NOT included
+      for(int offset=0; offset<m_NumClasses-1; offset++){
+	for(int r=1; r<dim; r++)
+	  nll += m_Ridge*x[offset*dim+r]*x[offset*dim+r];
+      }
+	    
+      return nll;
+    }
+
+    /** 
+     * Evaluate Jacobian vector
+     * @param x the current values of variables
+     * @return the gradient vector 
+     * @throws Exception if the evaluation fails
+     */
+    protected double[] evaluateGradient(double[] x) throws Exception {
+      int dim = m_NumPredictors+1; // Number of variables per class
+
+      if (indices != null)
+	computeCoefficients(x);
+      double[] grad = sumGradient(x, x.length);
+
+      if (indices != null) {
+	// Chain rule: from the unnormalized to the normalized data
+	for(int offset=0; offset<m_NumClasses-1; offset++){
+	  int index = offset * dim;
+	  for(int j=1; j<dim; j++){
+	    if (sd[j] != 0)
+	      grad[index + j] = (grad[index + j] - mean[j]*grad[index]) / sd[j];
 	  }
 	}
       }
@@ -573,6 +820,10 @@ public class Logistic extends AbstractClassifier
 	    
       return grad;
     }
+    
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision: 8079 $");
+    }
   }
 
   /**
@@ -638,7 +889,22 @@ public class Logistic extends AbstractClassifier
     int nR = m_NumPredictors = train.numAttributes() - 1;
     int nC = train.numInstances();
 	
-    m_Data = new double[nC][nR + 1];               // Data values
+    // Sparse data is kept as it is, not as a dense (normalized) matrix
+    boolean sparse = (nC > 0);
+    for (int i = 0; i < nC; i++) {
+      if (!(train.instance(i) instanceof SparseInstance)) {
+	sparse = false;
+	break;
+      }
+    }
+    int [][] indices = null;                       // Sparse data columns
+    double [][] values = null;                     // Sparse data values
+    if (sparse) {
+      indices = new int[nC][];
+      values = new double[nC][];
+    } else {
+      m_Data = new double[nC][nR + 1];             // Data values
+    }
     int [] Y  = new int[nC];                       // Class labels
     double [] xMean= new double[nR + 1];           // Attribute means
     double [] xSD  = new double[nR + 1];           // Attribute stddev's
@@ -658,15 +924,39 @@ public class Logistic extends AbstractClassifier
       weights[i] = current.weight();     // Dealing with weights
       totWeights += weights[i];
 	    
-      m_Data[i][0] = 1;
-      int j = 1;
-      for (int k = 0; k <= nR; k++) {
-	if (k != m_ClassIndex) {
-	  double x = current.value(k);
-	  m_Data[i][j] = x;
-	  xMean[j] += weights[i]*x;
-	  xSD[j] += weights[i]*x*x;
-	  j++;
+      if (sparse) {
+	int numValues = 0;
+	for (int p = 0; p < current.numValues(); p++) {
+	  if ((current.index(p) != m_ClassIndex) && (current.valueSparse(p) != 0)) {
+	    numValues++;
+	  }
+	}
+	indices[i] = new int[numValues];
+	values[i] = new double[numValues];
+	int n = 0;
+	for (int p = 0; p < current.numValues(); p++) {
+	  int k = current.index(p);
+	  double x = current.valueSparse(p);
+	  if ((k != m_ClassIndex) && (x != 0)) {
+	    int j = (k < m_ClassIndex) ? k + 1 : k;
+	    indices[i][n] = j;
+	    values[i][n] = x;
+	    xMean[j] += weights[i]*x;
+	    xSD[j] += weights[i]*x*x;
+	    n++;
+	  }
+	}
+      } else {
+	m_Data[i][0] = 1;
+	int j = 1;
+	for (int k = 0; k <= nR; k++) {
+	  if (k != m_ClassIndex) {
+	    double x = current.value(k);
+	    m_Data[i][j] = x;
+	    xMean[j] += weights[i]*x;
+	    xSD[j] += weights[i]*x*x;
+	    j++;
+	  }
 	}
       }
 	    
@@ -699,8 +989,8 @@ public class Logistic extends AbstractClassifier
 			   );
     }
 	
-    // Normalise input data 
-    for (int i = 0; i < nC; i++) {
+    // Normalise input data (sparse data is normalized on the fly)
+    for (int i = 0; i < nC && !sparse; i++) {
       for (int j = 0; j <= nR; j++) {
 	if (xSD[j] != 0) {
 	  m_Data[i][j] = (m_Data[i][j] - xMean[j]) / xSD[j];
@@ -731,6 +1021,10 @@ public class Logistic extends AbstractClassifier
     OptObject oO = new OptObject();	
     oO.setWeights(weights);
     oO.setClassLabels(Y);
+    if (sparse) {
+      oO.setSparseData(indices, values, xMean, xSD);
+    }
+    oO.setNumThreads(m_NumExecutionSlots);
 
     Optimization opt = null;
     if (m_useConjugateGradientDescent) {
@@ -740,22 +1034,26 @@ public class Logistic extends AbstractClassifier
     }
     opt.setDebug(m_Debug);
 
-    if(m_MaxIts == -1){  // Search until convergence
-      x = opt.findArgmin(x, b);
-      while(x==null){
-	x = opt.getVarbValues();
+    try {
+      if(m_MaxIts == -1){  // Search until convergence
+	x = opt.findArgmin(x, b);
+	while(x==null){
+	  x = opt.getVarbValues();
+	  if (m_Debug)
+	    System.out.println("First set of iterations finished, not enough!");
+	  x = opt.findArgmin(x, b);
+	}
 	if (m_Debug)
-	  System.out.println("First set of iterations finished, not enough!");
+	  System.out.println(" -------------<Converged>--------------");
+      }
+      else{
+	opt.setMaxIteration(m_MaxIts);
 	x = opt.findArgmin(x, b);
+	if(x==null) // Not enough, but use the current value
+	  x = opt.getVarbValues();
       }
-      if (m_Debug)
-	System.out.println(" -------------<Converged>--------------");
-    }
-    else{
-      opt.setMaxIteration(m_MaxIts);
-      x = opt.findArgmin(x, b);
-      if(x==null) // Not enough, but use the current value
-	x = opt.getVarbValues();
+    } finally {
+      oO.shutdown();
     }
 	
     m_LL = -opt.getMinFunction(); // Log-likelihood
@@ -807,6 +1105,60 @@ public class Logistic extends AbstractClassifier
     return distribution;
   }
 
+  /**
+   * Computes the distributions for a batch of instances. The filtered
+   * instances are collected first and the linear predictors of the whole
+   * batch are then computed with a single pass over the parameters.
+   *
+   * @param insts the instances for which distributions are to be computed
+   * @return the class probability distributions, one for each instance
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  public double[][] distributionsForInstances(Instances insts) 
+    throws Exception {
+
+    Instance instance;
+    double [][] instDat = new double [insts.numInstances()][];
+    for (int i = 0; i < instDat.length; i++) {
+      m_ReplaceMissingValues.input(insts.instance(i));
+      instance = m_ReplaceMissingValues.output();
+      m_AttFilter.input(instance);
+      instance = m_AttFilter.output();
+      m_NominalToBinary.input(instance);
+      instance = m_NominalToBinary.output();
+
+      // Extract the predictor columns into an array
+      instDat[i] = new double [m_NumPredictors + 1];
+      int j = 1;
+      instDat[i][0] = 1;
+      for (int k = 0; k <= m_NumPredictors; k++) {
+	if (k != m_ClassIndex) {
+	  instDat[i][j++] = instance.value(k);
+	}
+      }
+    }
+
+    // Log-posterior before normalizing, accumulated in the same order as
+    // in evaluateProbability(double[]), but row by row of m_Par
+    double [][] v = new double [instDat.length][m_NumClasses];
+    for (int k = 0; k <= m_NumPredictors; k++) {
+      double [] par = m_Par[k];
+      for (int i = 0; i < instDat.length; i++) {
+	double val = instDat[i][k];
+	double [] vi = v[i];
+	for (int j = 0; j < m_NumClasses-1; j++) {
+	  vi[j] += par[j] * val;
+	}
+      }
+    }
+
+    double [][] result = new double [instDat.length][];
+    for (int i = 0; i < instDat.length; i++) {
+      result[i] = evaluateProbability(v[i], new double[m_NumClasses]);
+    }
+    return result;
+  }
+
   /**
    * Compute the posterior distribution using optimized parameter values
    * and the testing instance.
@@ -823,6 +1175,17 @@ public class Logistic extends AbstractClassifier
 	v[j] += m_Par[k][j] * data[k];
       }
     }
+    
+    return evaluateProbability(v, prob);
+  } 
+
+  /**
+   * Compute the posterior distribution from the log-posterior.
+   * @param v the log-posterior before normalizing
+   * @param prob the array to store the distribution in
+   * @return the posterior probability distribution
+   */ 
+  private double[] evaluateProbability(double[] v, double[] prob){
     v[m_NumClasses-1] = 0;
 	
     // Do so to avoid scaling problems
@@ -50,6 +50,7 @@ import javax.swing.JTextField;
 
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.neural.LayeredNetwork;
 import weka.classifiers.functions.neural.LinearUnit;
 import weka.classifiers.functions.neural.NeuralConnection;
 import weka.classifiers.functions.neural.NeuralNode;
@@ -72,7 +73,7 @@ import weka.filters.unsupervised.attribute.NominalToBinary;
 /** 
  <!-- globalinfo-start -->
  * A Classifier that uses backpropagation to classify instances.<br/>
- * This network can be built by hand, created by an algorithm or both. The network can also be monitored and modified during training time. The nodes in this network are all sigmoid (except for when the class is numeric in which case the the output nodes become unthresholded linear units).
+ * This network can be built by hand, created by an algorithm or both. The network can also be monitored and modified during training time. The nodes in this network are all sigmoid (except for when the class is numeric in which case the the output nodes become unthresholded linear units). Networks whose nodes are arranged in layers are trained with loops over the weights of the layers, optionally in mini-batches whose instances are processed in parallel.
  * <p/>
  <!-- globalinfo-end -->
  *
@@ -140,6 +141,14 @@ import weka.filters.unsupervised.attribute.NominalToBinary;
  *  Learning rate decay will occur.
  *  (Set this to cause the learning rate to decay).</pre>
  * 
+ * <pre> -mini-batch &lt;size&gt;
+ *  The number of instances per update of the weights.
+ *  (Value should be &gt; 0, Default = 1).</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use for a mini-batch.
+ *  (Value should be &gt; 0, Default = 1).</pre>
+ * 
  <!-- options-end -->
  *
  * @author Malcolm Ware (mfw4@cs.waikato.ac.nz)
@@ -288,13 +297,7 @@ public class MultilayerPerceptron
 	    m_unitValue += m_inputList[noa].outputValue(true);
 	   
 	  }
-	  if (m_numeric && m_normalizeClass) {
-	    //then scale the value;
-	    //this scales linearly from between -1 and 1
-	    m_unitValue = m_unitValue * 
-	      m_attributeRanges[m_instances.classIndex()] + 
-	      m_attributeBases[m_instances.classIndex()];
-	  }
+	  m_unitValue = scaleOutput(m_unitValue);
 	}
       }
       return m_unitValue;
@@ -321,34 +324,7 @@ public class MultilayerPerceptron
 	  }
 	}
 	else {
-	  if (m_currentInstance.classIsMissing()) {
-	    m_unitError = .1;  
-	  }
-	  else if (m_instances.classAttribute().isNominal()) {
-	    if (m_currentInstance.classValue() == m_link) {
-	      m_unitError = 1 - m_unitValue;
-	    }
-	    else {
-	      m_unitError = 0 - m_unitValue;
-	    }
-	  }
-	  else if (m_numeric) {
-	    
-	    if (m_normalizeClass) {
-	      if (m_attributeRanges[m_instances.classIndex()] == 0) {
-		m_unitError = 0;
-	      }
-	      else {
-		m_unitError = (m_currentInstance.classValue() - m_unitValue ) /
-		  m_attributeRanges[m_instances.classIndex()];
-		//m_numericRange;
-		
-	      }
-	    }
-	    else {
-	      m_unitError = m_currentInstance.classValue() - m_unitValue;
-	    }
-	  }
+	  m_unitError = outputError(m_currentInstance, m_link, m_unitValue);
 	}
       }
       return m_unitError;
@@ -1030,6 +1006,15 @@ public class MultilayerPerceptron
    * This is a linear unit.
    */
   private LinearUnit m_linearUnit;
+
+  /** The number of instances per update of the weights. */
+  private int m_miniBatchSize;
+
+  /** The number of threads to use for the instances of a mini-batch. */
+  private int m_numExecutionSlots;
+
+  /** The layered view of the network, null if the network isn't layered. */
+  private LayeredNetwork m_layered;
   
   /**
    * The constructor.
@@ -1077,6 +1062,9 @@ public class MultilayerPerceptron
     m_momentum = .2;
     m_reset = true;
     m_decay = false;
+    m_miniBatchSize = 1;
+    m_numExecutionSlots = 1;
+    m_layered = null;
   }
 
   /**
@@ -1386,6 +1374,43 @@ public class MultilayerPerceptron
   public int getTrainingTime() {
     return m_numEpochs;
   }
+
+  /**
+   * Set the number of instances whose errors are calculated with the same
+   * weights, before the weights are updated. This is only used if the
+   * network is layered.
+   * @param n The number of instances per update (must be greater than 0).
+   */
+  public void setMiniBatchSize(int n) {
+    if (n > 0) {
+      m_miniBatchSize = n;
+    }
+  }
+
+  /**
+   * @return The number of instances per update of the weights.
+   */
+  public int getMiniBatchSize() {
+    return m_miniBatchSize;
+  }
+
+  /**
+   * Set the number of threads to use for calculating the errors of the
+   * instances of a mini-batch.
+   * @param n The number of threads (must be greater than 0).
+   */
+  public void setNumExecutionSlots(int n) {
+    if (n > 0) {
+      m_numExecutionSlots = n;
+    }
+  }
+
+  /**
+   * @return The number of threads to use for a mini-batch.
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
   
   /**
    * Call this function to place a node into the network list.
@@ -1516,6 +1541,63 @@ public class MultilayerPerceptron
   }
   
 
+  /**
+   * Scales the sum of the inputs of an output unit to the range of the
+   * class, if the class is numeric and normalized.
+   * @param value The sum of the inputs.
+   * @return The output value.
+   */
+  private double scaleOutput(double value) {
+    if (m_numeric && m_normalizeClass) {
+      //then scale the value;
+      //this scales linearly from between -1 and 1
+      value = value * 
+	m_attributeRanges[m_instances.classIndex()] + 
+	m_attributeBases[m_instances.classIndex()];
+    }
+    return value;
+  }
+
+  /**
+   * Calculates the error of an output unit, which is the difference
+   * between the predicted class, and the actual class.
+   * @param inst The instance.
+   * @param link The class value that the output unit represents.
+   * @param value The output value of the unit.
+   * @return The error value, or NaN if the class type is not supported.
+   */
+  private double outputError(Instance inst, int link, double value) {
+    if (inst.classIsMissing()) {
+      return .1;  
+    }
+    else if (m_instances.classAttribute().isNominal()) {
+      if (inst.classValue() == link) {
+	return 1 - value;
+      }
+      else {
+	return 0 - value;
+      }
+    }
+    else if (m_numeric) {
+      
+      if (m_normalizeClass) {
+	if (m_attributeRanges[m_instances.classIndex()] == 0) {
+	  return 0;
+	}
+	else {
+	  return (inst.classValue() - value) /
+	    m_attributeRanges[m_instances.classIndex()];
+	  //m_numericRange;
+	  
+	}
+      }
+      else {
+	return inst.classValue() - value;
+      }
+    }
+    return Double.NaN;
+  }
+
   /**
    * this will reset all the nodes in the network.
    */
@@ -1571,6 +1653,109 @@ public class MultilayerPerceptron
 
   }
   
+  /**
+   * Creates the layered view of the network, which trains and classifies
+   * with loops over the weights of the nodes instead of through the nodes.
+   * @return The view, or null if the network isn't layered (e.g. if it
+   * has been changed in the gui).
+   */
+  private LayeredNetwork createLayeredNetwork() {
+    NeuralNode[] nodes = new NeuralNode[m_numClasses];
+    for (int noa = 0; noa < m_numClasses; noa++) {
+      if (m_outputs[noa].getNumInputs() != 1 
+	  || !(m_outputs[noa].getInputs()[0] instanceof NeuralNode)
+	  || m_outputs[noa].getInputs()[0].getNumOutputs() != 1) {
+	return null;
+      }
+      nodes[noa] = (NeuralNode)m_outputs[noa].getInputs()[0];
+    }
+    LayeredNetwork layered = LayeredNetwork.create(m_inputs, nodes);
+    if (layered != null) {
+      layered.setNumThreads(m_numExecutionSlots);
+    }
+    return layered;
+  }
+
+  /**
+   * Fills in the values of the input units for an instance, for the 
+   * layered view of the network.
+   * @param inst The instance.
+   * @param input The array for the values.
+   */
+  private void layeredInput(Instance inst, double[] input) {
+    for (int noa = 0; noa < m_inputs.length; noa++) {
+      if (inst.isMissing(m_inputs[noa].getLink())) {
+	input[noa] = 0;
+      }
+      else {
+	input[noa] = inst.value(m_inputs[noa].getLink());
+      }
+    }
+  }
+
+  /**
+   * This will calculate the errors of the output units of the layered view
+   * of the network, the same way as the output units of the network.
+   * @param inst The instance.
+   * @param values The values of the output nodes.
+   * @param errors The array for the errors.
+   * @return The squared error.
+   */
+  private double layeredErrors(Instance inst, double[] values, 
+			       double[] errors) {
+    double ret = 0;
+    for (int noc = 0; noc < m_numClasses; noc++) {
+      errors[noc] = outputError(inst, m_outputs[noc].getLink(), 
+				scaleOutput(values[noc]));
+      ret += errors[noc] * errors[noc];
+    }
+    return ret;
+  }
+
+  /**
+   * This will train the layered view of the network through the training
+   * instances once, in mini-batches.
+   * @param start The index of the first training instance.
+   * @param epoch The number of the epoch (for the decay).
+   * @return The sum of the weighted errors of the instances.
+   */
+  private double trainLayered(int start, int epoch) throws Exception {
+    int size = Math.min(m_miniBatchSize, 
+			Math.max(1, m_instances.numInstances() - start));
+    double[][] inputs = new double[size][m_inputs.length];
+    double[] rates = new double[size];
+    double[] squaredErrors = new double[size];
+    final Instance[] batch = new Instance[size];
+    LayeredNetwork.OutputErrors errors = new LayeredNetwork.OutputErrors() {
+	public double errors(int index, double[] values, double[] errors) {
+	  return layeredErrors(batch[index], values, errors);
+	}
+      };
+    double right = 0;
+    int count = 0;
+    for (int nob = start; nob < m_instances.numInstances(); nob++) {
+      if (!m_instances.instance(nob).classIsMissing()) {
+	batch[count] = m_instances.instance(nob);
+	layeredInput(batch[count], inputs[count]);
+	rates[count] = m_learningRate * batch[count].weight();
+	if (m_decay) {
+	  rates[count] /= epoch;
+	}
+	count++;
+      }
+      if (count == size || (nob == m_instances.numInstances() - 1 && count > 0)) {
+	m_layered.train(inputs, rates, count, m_momentum, errors, 
+			squaredErrors);
+	for (int noc = 0; noc < count; noc++) {
+	  right += (squaredErrors[noc] / m_instances.numClasses()) *
+	    batch[noc].weight();
+	}
+	count = 0;
+      }
+    }
+    return right;
+  }
+
   /**
    * This creates the required input units.
    */
@@ -1783,6 +1968,7 @@ public class MultilayerPerceptron
     m_currentInstance = null;
     m_controlPanel = null;
     m_nodePanel = null;
+    m_layered = null;
     
     
     m_outputs = new NeuralEnd[0];
@@ -1906,6 +2092,7 @@ public class MultilayerPerceptron
       m_currentInstance = null;
       return;
     }
+    m_layered = createLayeredNetwork();
     
 
     //connections done.
@@ -1942,26 +2129,31 @@ public class MultilayerPerceptron
 
     for (int noa = 1; noa < m_numEpochs + 1; noa++) {
       right = 0;
-      for (int nob = numInVal; nob < m_instances.numInstances(); nob++) {
-	m_currentInstance = m_instances.instance(nob);
-	
-	if (!m_currentInstance.classIsMissing()) {
-	   
-	  //this is where the network updating (and training occurs, for the
-	  //training set
-	  resetNetwork();
-	  calculateOutputs();
-	  tempRate = m_learningRate * m_currentInstance.weight();  
-	  if (m_decay) {
-	    tempRate /= noa;
+      if (m_layered != null) {
+	right = trainLayered(numInVal, noa);
+      }
+      else {
+	for (int nob = numInVal; nob < m_instances.numInstances(); nob++) {
+	  m_currentInstance = m_instances.instance(nob);
+	  
+	  if (!m_currentInstance.classIsMissing()) {
+	    
+	    //this is where the network updating (and training occurs, for the
+	    //training set
+	    resetNetwork();
+	    calculateOutputs();
+	    tempRate = m_learningRate * m_currentInstance.weight();  
+	    if (m_decay) {
+	      tempRate /= noa;
+	    }
+	    
+	    right += (calculateErrors() / m_instances.numClasses()) *
+	      m_currentInstance.weight();
+	    updateNetworkWeights(tempRate, m_momentum);
+	    
 	  }
-
-	  right += (calculateErrors() / m_instances.numClasses()) *
-	    m_currentInstance.weight();
-	  updateNetworkWeights(tempRate, m_momentum);
 	  
 	}
-	
       }
       right /= totalWeight;
       if (Double.isInfinite(right) || Double.isNaN(right)) {
@@ -1991,14 +2183,24 @@ public class MultilayerPerceptron
 	for (int nob = 0; nob < valSet.numInstances(); nob++) {
 	  m_currentInstance = valSet.instance(nob);
 	  if (!m_currentInstance.classIsMissing()) {
-	    //this is where the network updating occurs, for the validation set
-	    resetNetwork();
-	    calculateOutputs();
-	    right += (calculateErrors() / valSet.numClasses()) 
-	      * m_currentInstance.weight();
-	    //note 'right' could be calculated here just using
-	    //the calculate output values. This would be faster.
-	    //be less modular
+	    if (m_layered != null) {
+	      double[] input = new double[m_inputs.length];
+	      layeredInput(m_currentInstance, input);
+	      right += (layeredErrors(m_currentInstance, 
+				      m_layered.outputs(input),
+				      new double[m_numClasses])
+			/ valSet.numClasses()) * m_currentInstance.weight();
+	    }
+	    else {
+	      //this is where the network updating occurs, for the validation set
+	      resetNetwork();
+	      calculateOutputs();
+	      right += (calculateErrors() / valSet.numClasses()) 
+		* m_currentInstance.weight();
+	      //note 'right' could be calculated here just using
+	      //the calculate output values. This would be faster.
+	      //be less modular
+	    }
 	  }
 	  
 	}
@@ -2054,6 +2256,8 @@ public class MultilayerPerceptron
 	    setEndsToLinear();
 	  }
 	}
+	//the network may have been changed while it was stopped
+	m_layered = createLayeredNetwork();
 	m_controlPanel.m_changeEpochs.setEnabled(false);
 	m_controlPanel.m_changeLearning.setEnabled(false);
 	m_controlPanel.m_changeMomentum.setEnabled(false);
@@ -2121,13 +2325,24 @@ public class MultilayerPerceptron
 	}
       }
     }
-    resetNetwork();
-    
-    //since all the output values are needed.
-    //They are calculated manually here and the values collected.
-    double[] theArray = new double[m_numClasses];
-    for (int noa = 0; noa < m_numClasses; noa++) {
-      theArray[noa] = m_outputs[noa].outputValue(true);
+    double[] theArray;
+    if (m_layered != null) {
+      double[] input = new double[m_inputs.length];
+      layeredInput(m_currentInstance, input);
+      theArray = m_layered.outputs(input);
+      for (int noa = 0; noa < m_numClasses; noa++) {
+	theArray[noa] = scaleOutput(theArray[noa]);
+      }
+    }
+    else {
+      resetNetwork();
+      
+      //since all the output values are needed.
+      //They are calculated manually here and the values collected.
+      theArray = new double[m_numClasses];
+      for (int noa = 0; noa < m_numClasses; noa++) {
+	theArray[noa] = m_outputs[noa].outputValue(true);
+      }
     }
     if (m_instances.classAttribute().isNumeric()) {
       return theArray;
@@ -2219,6 +2434,14 @@ public class MultilayerPerceptron
               "\tLearning rate decay will occur.\n"
 	      +"\t(Set this to cause the learning rate to decay).",
 	      "D", 0,"-D"));
+    newVector.addElement(new Option(
+	      "\tThe number of instances per update of the weights.\n"
+	      +"\t(Value should be > 0, Default = 1).",
+	      "mini-batch", 1, "-mini-batch <size>"));
+    newVector.addElement(new Option(
+	      "\tThe number of threads to use for a mini-batch.\n"
+	      +"\t(Value should be > 0, Default = 1).",
+	      "num-slots", 1, "-num-slots <num>"));
     
     
     return newVector.elements();
@@ -2291,6 +2514,14 @@ public class MultilayerPerceptron
    *  Learning rate decay will occur.
    *  (Set this to cause the learning rate to decay).</pre>
    * 
+   * <pre> -mini-batch &lt;size&gt;
+   *  The number of instances per update of the weights.
+   *  (Value should be &gt; 0, Default = 1).</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  The number of threads to use for a mini-batch.
+   *  (Value should be &gt; 0, Default = 1).</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -2377,6 +2608,18 @@ public class MultilayerPerceptron
     } else {
       setDecay(false);
     }
+    String batchString = Utils.getOption("mini-batch", options);
+    if (batchString.length() != 0) {
+      setMiniBatchSize(Integer.parseInt(batchString));
+    } else {
+      setMiniBatchSize(1);
+    }
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
     
     Utils.checkForRemainingOptions(options);
   }
@@ -2388,7 +2631,7 @@ public class MultilayerPerceptron
    */
   public String [] getOptions() {
 
-    String [] options = new String [21];
+    String [] options = new String [25];
     int current = 0;
     options[current++] = "-L"; options[current++] = "" + getLearningRate(); 
     options[current++] = "-M"; options[current++] = "" + getMomentum();
@@ -2418,6 +2661,14 @@ public class MultilayerPerceptron
     if (getDecay()) {
       options[current++] = "-D";
     }
+    if (getMiniBatchSize() != 1) {
+      options[current++] = "-mini-batch";
+      options[current++] = "" + getMiniBatchSize();
+    }
+    if (getNumExecutionSlots() != 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + getNumExecutionSlots();
+    }
 
     
     while (current < options.length) {
@@ -2505,7 +2756,9 @@ public class MultilayerPerceptron
       + "The network can also be monitored and modified during training time. "
       + "The nodes in this network are all sigmoid (except for when the class "
       + "is numeric in which case the the output nodes become unthresholded "
-      + "linear units).";
+      + "linear units). Networks whose nodes are arranged in layers are "
+      + "trained with loops over the weights of the layers, optionally in "
+      + "mini-batches whose instances are processed in parallel.";
   }
   
   /**
@@ -2686,6 +2939,26 @@ public class MultilayerPerceptron
       ". If the learning rate is changed in the gui, this is treated as the" +
       " starting learning rate.";
   }
+  /**
+   * @return a string to describe the mini-batch size option.
+   */
+  public String miniBatchSizeTipText() {
+    return "The number of instances whose errors are calculated with the"
+      + " same weights, before the weights are updated with the average of"
+      + " the updates for the instances (so larger batches usually need a"
+      + " larger learning rate). With 1, the weights are updated after every"
+      + " instance. Only used if the nodes of the network are arranged in"
+      + " layers (not changed in the gui).";
+  }
+
+  /**
+   * @return a string to describe the number of execution slots option.
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for calculating the errors of the"
+      + " instances of a mini-batch.";
+  }
+
   
   /**
    * Returns the revision string.
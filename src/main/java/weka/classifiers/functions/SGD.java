@@ -23,11 +23,19 @@ package weka.classifiers.functions;
 
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import weka.classifiers.RandomizableClassifier;
 import weka.classifiers.UpdateableClassifier;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
@@ -45,7 +53,8 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 /**
  <!-- globalinfo-start -->
  * Implements stochastic gradient descent for learning various linear models (binary class SVM, binary class logistic regression and linear regression). Globally replaces all missing values and transforms nominal attributes into binary ones. It also normalizes all attributes, so the coefficients in the output are based on the normalized data.<br/>
- * For numeric class attributes, the squared loss function (2) must be used.
+ * For numeric class attributes, the squared loss function (2) must be used.<br/>
+ * Batch learning can use mini-batches and several threads, which either average their weights after every epoch or update shared weights without locking (Hogwild).
  * <p/>
  <!-- globalinfo-end -->
  *
@@ -75,6 +84,20 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
  * <pre> -M
  *  Don't replace missing values</pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100).</pre>
+ * 
+ * <pre> -mini-batch &lt;size&gt;
+ *  The number of instances per update of the weights
+ *  (batch learning only, default = 1)</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use (batch learning only, default = 1)</pre>
+ * 
+ * <pre> -hogwild
+ *  Update the weights of all threads without locking (Hogwild),
+ *  instead of averaging the weights of the threads</pre>
+ * 
  <!-- options-end -->
  *
  * @author Eibe Frank (eibe{[at]}cs{[dot]}waikato{[dot]}ac{[dot]}nz)
@@ -84,7 +107,7 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
  */
 public class SGD extends RandomizableClassifier
   implements UpdateableClassifier,
-    OptionHandler {
+    OptionHandler, BatchPredictor {
   
   /** For serialization */
   private static final long serialVersionUID = -3732968666673530290L;
@@ -135,6 +158,25 @@ public class SGD extends RandomizableClassifier
   
   /** Holds the header of the training data */
   protected Instances m_data;
+
+  /** The number of instances per update of the weights (batch learning) */
+  protected int m_miniBatchSize = 1;
+
+  /** The number of threads to use for batch learning */
+  protected int m_numExecutionSlots = 1;
+
+  /**
+   * Whether the threads update the same weights without locking
+   * (Hogwild), instead of training copies that get averaged after
+   * every epoch
+   */
+  protected boolean m_hogwild = false;
+
+  /**
+   * The smallest scale factor of the weights of a thread before the
+   * weight decay is applied to the weights themselves
+   */
+  protected static final double MIN_SCALE = 1e-9;
   
   /**
    * Returns default capabilities of the classifier.
@@ -252,6 +294,96 @@ public class SGD extends RandomizableClassifier
     return m_epochs;
   }
   
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String miniBatchSizeTipText() {
+    return "The number of instances whose gradients are computed with the " +
+    		"same weights before the weights are updated with their " +
+    		"average (batch learning only).";
+  }
+  
+  /**
+   * Set the number of instances per update of the weights
+   * 
+   * @param size the number of instances (at least 1)
+   */
+  public void setMiniBatchSize(int size) {
+    m_miniBatchSize = Math.max(1, size);
+  }
+  
+  /**
+   * Get the number of instances per update of the weights
+   * 
+   * @return the number of instances
+   */
+  public int getMiniBatchSize() {
+    return m_miniBatchSize;
+  }
+  
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for batch learning. Each " +
+    		"thread trains on its own part of the data.";
+  }
+  
+  /**
+   * Set the number of threads to use for batch learning
+   * 
+   * @param slots the number of threads (at least 1)
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_numExecutionSlots = Math.max(1, slots);
+  }
+  
+  /**
+   * Get the number of threads to use for batch learning
+   * 
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+  
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String hogwildTipText() {
+    return "If true, the threads update the same weights without " +
+    		"locking (Hogwild), which is not reproducible. Otherwise, " +
+    		"each thread trains a copy of the weights and the copies " +
+    		"are averaged after every epoch.";
+  }
+  
+  /**
+   * Set whether the threads update the same weights without locking
+   * 
+   * @param h true for Hogwild updates, false for averaging
+   */
+  public void setHogwild(boolean h) {
+    m_hogwild = h;
+  }
+  
+  /**
+   * Get whether the threads update the same weights without locking
+   * 
+   * @return true for Hogwild updates, false for averaging
+   */
+  public boolean getHogwild() {
+    return m_hogwild;
+  }
+  
   /**
    * Turn normalization off/on.
    * 
@@ -311,7 +443,25 @@ public class SGD extends RandomizableClassifier
   public String dontReplaceMissingTipText() {
     return "Turn off global replacement of missing values";
   }
+    
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
   
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
   /**
    * Set the loss function to use.
    * 
@@ -367,6 +517,16 @@ public class SGD extends RandomizableClassifier
     		"-E <integer>"));
     newVector.add(new Option("\tDon't normalize the data", "N", 0, "-N"));
     newVector.add(new Option("\tDon't replace missing values", "M", 0, "-M"));
+    newVector.add(batchSizeOption());
+    newVector.add(new Option("\tThe number of instances per update of the " +
+    		"weights\n\t(batch learning only, default = 1)", "mini-batch", 1,
+    		"-mini-batch <size>"));
+    newVector.add(new Option("\tThe number of threads to use " +
+    		"(batch learning only, default = 1)", "num-slots", 1,
+    		"-num-slots <num>"));
+    newVector.add(new Option("\tUpdate the weights of all threads without " +
+    		"locking (Hogwild),\n\tinstead of averaging the weights of " +
+    		"the threads", "hogwild", 0, "-hogwild"));
     
     return newVector.elements();
   }
@@ -401,6 +561,20 @@ public class SGD extends RandomizableClassifier
    * <pre> -M
    *  Don't replace missing values</pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100).</pre>
+   * 
+   * <pre> -mini-batch &lt;size&gt;
+   *  The number of instances per update of the weights
+   *  (batch learning only, default = 1)</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  The number of threads to use (batch learning only, default = 1)</pre>
+   * 
+   * <pre> -hogwild
+   *  Update the weights of all threads without locking (Hogwild),
+   *  instead of averaging the weights of the threads</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -434,6 +608,24 @@ public class SGD extends RandomizableClassifier
     
     setDontNormalize(Utils.getFlag("N", options));
     setDontReplaceMissing(Utils.getFlag('M', options));
+
+    setBatchSizeOption(options);
+
+    String miniBatchString = Utils.getOption("mini-batch", options);
+    if (miniBatchString.length() > 0) {
+      setMiniBatchSize(Integer.parseInt(miniBatchString));
+    } else {
+      setMiniBatchSize(1);
+    }
+
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() > 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    setHogwild(Utils.getFlag("hogwild", options));
   }
   
   /**
@@ -454,6 +646,18 @@ public class SGD extends RandomizableClassifier
     if (getDontReplaceMissing()) {
       options.add("-M");
     }
+    for (String option : getBatchSizeOptions()) {
+      options.add(option);
+    }
+    if (getMiniBatchSize() != 1) {
+      options.add("-mini-batch"); options.add("" + getMiniBatchSize());
+    }
+    if (getNumExecutionSlots() != 1) {
+      options.add("-num-slots"); options.add("" + getNumExecutionSlots());
+    }
+    if (getHogwild()) {
+      options.add("-hogwild");
+    }
     
     return options.toArray(new String[1]);
   }
@@ -473,7 +677,10 @@ public class SGD extends RandomizableClassifier
     		" so the coefficients in the output are based on the normalized" +
     		" data.\n" +
     		"For numeric class attributes, the squared loss function " +
-    		"(" + SQUAREDLOSS + ") must be used.";
+    		"(" + SQUAREDLOSS + ") must be used.\n" +
+    		"Batch learning can use mini-batches and several threads, " +
+    		"which either average their weights after every epoch or " +
+    		"update shared weights without locking (Hogwild).";
   }
   
   /**
@@ -583,6 +790,11 @@ public class SGD extends RandomizableClassifier
   }
   
   private void train(Instances data) throws Exception {
+    if (m_miniBatchSize > 1 || m_numExecutionSlots > 1) {
+      trainParallel(data);
+      return;
+    }
+    
     for (int e = 0; e < m_epochs; e++) {
       for (int i = 0; i < data.numInstances(); i++) {
         updateClassifier(data.instance(i), false);
@@ -590,25 +802,252 @@ public class SGD extends RandomizableClassifier
     }
   }
   
+  /**
+   * Trains the model in mini-batches with one or more threads. The data
+   * is split into one contiguous part per thread. Either all threads update
+   * m_weights without locking (Hogwild), or each thread trains a copy of
+   * m_weights on its part and the copies are averaged after every epoch.
+   * 
+   * @param data the (filtered and randomized) training instances
+   * @throws Exception if training fails
+   */
+  protected void trainParallel(Instances data) throws Exception {
+    int numThreads = Math.min(m_numExecutionSlots, data.numInstances());
+    AtomicLong decaySteps = new AtomicLong();
+    long[] decayStamps = new long[m_weights.length - 1];
+    List<TrainingTask> tasks = new ArrayList<TrainingTask>();
+    for (int k = 0; k < numThreads; k++) {
+      tasks.add(new TrainingTask(data, 
+          (int) ((long) data.numInstances() * k / numThreads),
+          (int) ((long) data.numInstances() * (k + 1) / numThreads),
+          decaySteps, decayStamps));
+    }
+    
+    ExecutorService pool = null;
+    if (numThreads > 1) {
+      pool = Executors.newFixedThreadPool(numThreads);
+    }
+    try {
+      for (int e = 0; e < m_epochs; e++) {
+        for (TrainingTask task : tasks) {
+          task.m_weights = (m_hogwild) ? m_weights : m_weights.clone();
+        }
+        
+        if (pool != null) {
+          List<Future<Object>> futures = new ArrayList<Future<Object>>();
+          for (TrainingTask task : tasks) {
+            futures.add(pool.submit(task));
+          }
+          for (Future<Object> future : futures) {
+            try {
+              future.get();
+            } catch (ExecutionException ex) {
+              if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+              }
+              throw ex;
+            }
+          }
+        } else {
+          tasks.get(0).call();
+        }
+        
+        if (m_hogwild) {
+          // apply the weight decay that is still outstanding
+          double multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
+          long steps = decaySteps.get();
+          for (int j = 0; j < decayStamps.length; j++) {
+            if (decayStamps[j] < steps) {
+              m_weights[j] *= Math.pow(multiplier, steps - decayStamps[j]);
+              decayStamps[j] = steps;
+            }
+          }
+        } else {
+          // average the weights of the threads, in a fixed order
+          for (int i = 0; i < m_weights.length; i++) {
+            double sum = 0;
+            for (TrainingTask task : tasks) {
+              sum += task.m_weights[i];
+            }
+            m_weights[i] = sum / numThreads;
+          }
+        }
+        m_t += data.numInstances();
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdownNow();
+      }
+    }
+  }
+  
+  /**
+   * Trains weights in mini-batches on a part of the training data, for one
+   * epoch. Only the non-zero values of the instances are visited, and the
+   * weight decay is applied lazily: for a copy of the weights to a scale
+   * factor, for the shared weights (Hogwild) to each weight only when it is
+   * used, given the number of mini-batches since it was last used. Like the
+   * updates themselves, the latter isn't synchronized between the threads.
+   */
+  protected class TrainingTask 
+    implements Callable<Object> {
+    
+    /** the training data */
+    protected Instances m_trainData;
+    
+    /** the first instance of the part */
+    protected int m_from;
+    
+    /** the instance after the last one of the part */
+    protected int m_to;
+    
+    /** the weights to train (+ bias in the last element) */
+    protected double[] m_weights;
+    
+    /** the number of mini-batches of all threads so far (Hogwild) */
+    protected AtomicLong m_decaySteps;
+    
+    /** the number of mini-batches up to which each weight is decayed (Hogwild) */
+    protected long[] m_decayStamps;
+    
+    /**
+     * Initializes the task.
+     * 
+     * @param data the training data
+     * @param from the first instance of the part
+     * @param to the instance after the last one of the part
+     * @param decaySteps the shared number of mini-batches so far (Hogwild)
+     * @param decayStamps the shared number of mini-batches up to which each
+     * weight is decayed (Hogwild)
+     */
+    public TrainingTask(Instances data, int from, int to, 
+        AtomicLong decaySteps, long[] decayStamps) {
+      m_trainData = data;
+      m_from = from;
+      m_to = to;
+      m_decaySteps = decaySteps;
+      m_decayStamps = decayStamps;
+    }
+    
+    /**
+     * Applies the outstanding weight decay to the shared weights of the
+     * non-zero values of the given instance (Hogwild).
+     * 
+     * @param instance the instance
+     * @param classIndex the index of the class attribute
+     * @param multiplier the weight decay of a single mini-batch
+     * @param step the current number of mini-batches
+     */
+    protected void decay(Instance instance, int classIndex, 
+        double multiplier, long step) {
+      int n1 = instance.numValues();
+      for (int p1 = 0; p1 < n1; p1++) {
+        int indS = instance.index(p1);
+        if (indS != classIndex && m_decayStamps[indS] < step) {
+          m_weights[indS] *= Math.pow(multiplier, step - m_decayStamps[indS]);
+          m_decayStamps[indS] = step;
+        }
+      }
+    }
+    
+    /**
+     * Trains the weights.
+     * 
+     * @return null
+     */
+    public Object call() {
+      int classIndex = m_trainData.classIndex();
+      boolean nominal = m_trainData.classAttribute().isNominal();
+      int bias = m_weights.length - 1;
+      double multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
+      double[] factors = new double[m_miniBatchSize];
+      // the weights of the attributes are scale * m_weights
+      double scale = 1.0;
+      long step = 0;
+      
+      for (int start = m_from; start < m_to; start += m_miniBatchSize) {
+        int end = Math.min(start + m_miniBatchSize, m_to);
+        
+        // the gradients of the instances, with the same weights
+        for (int i = start; i < end; i++) {
+          Instance instance = m_trainData.instance(i);
+          factors[i - start] = 0;
+          if (instance.classIsMissing()) {
+            continue;
+          }
+          if (m_hogwild) {
+            decay(instance, classIndex, multiplier, m_decaySteps.get());
+          }
+          double wx = scale * dotProd(instance, m_weights, classIndex);
+          double y;
+          double z;
+          if (nominal) {
+            y = (instance.classValue() == 0) ? -1 : 1;
+            z = y * (wx + m_weights[bias]);
+          } else {
+            y = instance.classValue();
+            z = y - (wx + m_weights[bias]);
+            y = 1;
+          }
+          if (m_loss != HINGE || (z < 1)) {
+            factors[i - start] = m_learningRate * y * dloss(z) / (end - start);
+          }
+        }
+        
+        // weight decay
+        if (m_hogwild) {
+          step = m_decaySteps.incrementAndGet();
+        } else {
+          scale *= multiplier;
+          if (scale < MIN_SCALE) {
+            for (int j = 0; j < bias; j++) {
+              m_weights[j] *= scale;
+            }
+            scale = 1.0;
+          }
+        }
+        
+        // update the coefficients and the bias
+        for (int i = start; i < end; i++) {
+          double factor = factors[i - start];
+          if (factor == 0) {
+            continue;
+          }
+          Instance instance = m_trainData.instance(i);
+          if (m_hogwild) {
+            decay(instance, classIndex, multiplier, step);
+          }
+          double scaled = factor / scale;
+          int n1 = instance.numValues();
+          for (int p1 = 0; p1 < n1; p1++) {
+            int indS = instance.index(p1);
+            if (indS != classIndex && !instance.isMissingSparse(p1)) {
+              m_weights[indS] += scaled * instance.valueSparse(p1);
+            }
+          }
+          m_weights[bias] += factor;
+        }
+      }
+      
+      if (scale != 1.0) {
+        for (int j = 0; j < bias; j++) {
+          m_weights[j] *= scale;
+        }
+      }
+      
+      return null;
+    }
+  }
+  
   protected static double dotProd(Instance inst1, double[] weights, int classIndex) {
     double result = 0;
 
+    // only the non-zero values of sparse instances are visited
     int n1 = inst1.numValues();
-    int n2 = weights.length - 1; 
-
-    for (int p1 = 0, p2 = 0; p1 < n1 && p2 < n2;) {
+    for (int p1 = 0; p1 < n1; p1++) {
       int ind1 = inst1.index(p1);
-      int ind2 = p2;
-      if (ind1 == ind2) {
-        if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
-          result += inst1.valueSparse(p1) * weights[p2];
-        }
-        p1++;
-        p2++;
-      } else if (ind1 > ind2) {
-        p2++;
-      } else {
-        p1++;
+      if (ind1 != classIndex && !inst1.isMissingSparse(p1)) {
+        result += inst1.valueSparse(p1) * weights[ind1];
       }
     }
     return (result);
@@ -709,10 +1148,41 @@ public class SGD extends RandomizableClassifier
    * @throws Exception if the distribution can't be computed successfully
    */
   public double[] distributionForInstance(Instance inst) throws Exception {
-    double[] result = (inst.classAttribute().isNominal()) 
-      ? new double[2]
-      : new double[1];
-
+    return distributionForFilteredInstance(filterInstance(inst));
+  }
+  
+  /**
+   * Computes the distributions for a batch of instances. The instances
+   * are passed through the filters first and the distributions are then
+   * computed from the filtered instances in one go.
+   *
+   * @param insts the instances for which distributions are computed
+   * @return the distributions, one for each instance
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  public double[][] distributionsForInstances(Instances insts) 
+    throws Exception {
+    Instance[] filtered = new Instance[insts.numInstances()];
+    for (int i = 0; i < filtered.length; i++) {
+      filtered[i] = filterInstance(insts.instance(i));
+    }
+    
+    double[][] result = new double[filtered.length][];
+    for (int i = 0; i < filtered.length; i++) {
+      result[i] = distributionForFilteredInstance(filtered[i]);
+    }
+    return result;
+  }
+  
+  /**
+   * Passes the given instance through the filters set up in 
+   * buildClassifier().
+   *
+   * @param inst the instance to filter
+   * @return the filtered instance
+   * @throws Exception if filtering fails
+   */
+  protected Instance filterInstance(Instance inst) throws Exception {
     if (m_replaceMissing != null) {
       m_replaceMissing.input(inst);
       inst = m_replaceMissing.output();
@@ -727,6 +1197,21 @@ public class SGD extends RandomizableClassifier
       m_normalize.input(inst);
       inst = m_normalize.output();
     }
+    
+    return inst;
+  }
+  
+  /**
+   * Computes the distribution for an instance that has already been passed 
+   * through the filters.
+   *
+   * @param inst the filtered instance
+   * @return the distribution
+   */
+  protected double[] distributionForFilteredInstance(Instance inst) {
+    double[] result = (inst.classAttribute().isNominal()) 
+      ? new double[2]
+      : new double[1];
 
     double wx = dotProd(inst, m_weights, inst.classIndex());// * m_wScale;
     double z = (wx + m_weights[m_weights.length - 1]);
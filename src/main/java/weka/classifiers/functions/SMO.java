@@ -22,15 +22,27 @@
 package weka.classifiers.functions;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.functions.supportVector.CachedKernel;
 import weka.classifiers.functions.supportVector.Kernel;
+import weka.classifiers.functions.supportVector.KernelCache;
+import weka.classifiers.functions.supportVector.KernelCacheHandler;
 import weka.classifiers.functions.supportVector.PolyKernel;
 import weka.classifiers.functions.supportVector.SMOset;
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.DenseInstance;
@@ -154,6 +166,14 @@ import weka.filters.unsupervised.attribute.Standardize;
  * <pre> -W &lt;double&gt;
  *  The random number seed. (default 1)</pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100)</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for training the pairwise
+ *  machines and for batch prediction.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -K &lt;classname and parameters&gt;
  *  The Kernel to use.
  *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
@@ -175,6 +195,12 @@ import weka.filters.unsupervised.attribute.Standardize;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The size of the kernel cache in megabytes, replaces the cache
+ *  set with -C if greater than 0. This cache can be shared by
+ *  classifiers that build several kernels on the same data.
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -192,7 +218,8 @@ import weka.filters.unsupervised.attribute.Standardize;
  */
 public class SMO 
   extends AbstractClassifier 
-  implements WeightedInstancesHandler, TechnicalInformationHandler {
+  implements WeightedInstancesHandler, TechnicalInformationHandler,
+             BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = -6585883636378691736L;
@@ -329,6 +356,10 @@ public class SMO
     /** Stores the weight of the training instances */
     protected double m_sumOfWeights = 0;
 
+    /** The indices of the training instances in the training data of
+        the multi-class machine (null if not available) */
+    protected int[] m_globalIndices = null;
+
     /**
      * Fits logistic regression model to SVM outputs analogue
      * to John Platt's method.  
@@ -679,6 +710,38 @@ public class SMO
       return result;
     }
 
+    /**
+     * Computes SVM output for given instance, taking kernel values from and
+     * storing them in a cache that is shared with the other pairwise
+     * machines. Must only be used for non-linear machines that have the
+     * global indices of their training instances.
+     *
+     * @param inst the instance 
+     * @param values the kernel values, indexed by global index
+     * @param stamps the stamps of the kernel values, indexed by global index
+     * @param stamp the stamp of values that have been computed for inst
+     * @return the output of the SVM for the given instance
+     * @throws Exception in case of an error
+     */
+    protected double SVMOutput(Instance inst, double[] values, int[] stamps,
+			       int stamp) throws Exception {
+      
+      double result = 0;
+      
+      for (int i = m_supportVectors.getNext(-1); i != -1; 
+	   i = m_supportVectors.getNext(i)) {
+	int index = m_globalIndices[i];
+	if (stamps[index] != stamp) {
+	  values[index] = m_kernel.eval(-1, i, inst);
+	  stamps[index] = stamp;
+	}
+	result += m_class[i] * m_alpha[i] * values[index];
+      }
+      result -= m_b;
+      
+      return result;
+    }
+
     /**
      * Prints out the classifier.
      *
@@ -1193,6 +1256,17 @@ public class SMO
 
   /** the kernel to use */
   protected Kernel m_kernel = new PolyKernel();
+
+  /** The number of execution slots (threads) for training the pairwise
+      machines and for batch prediction. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** The kernel cache shared by the pairwise machines during training
+      (null if not used) */
+  protected transient KernelCache m_KernelCache;
+
+  /** The statistics of the shared kernel cache (null if not used) */
+  protected String m_KernelCacheStatistics;
   
   /**
    * Turns off checks for missing values, etc. Use with caution.
@@ -1331,9 +1405,31 @@ public class SMO
       subsets[i].compactify();
     }
 
-    // Build the binary classifiers
+    // Offsets of the subsets, which determine the global indices
+    // of the training instances
+    int[] offsets = new int[insts.numClasses()];
+    for (int i = 1; i < insts.numClasses(); i++) {
+      offsets[i] = offsets[i - 1] + subsets[i - 1].numInstances();
+    }
+
+    // Build the binary classifiers. The data for the machines is always
+    // set up in the same order, so that the random number generator
+    // produces the same sequence, whether the machines are trained one
+    // after the other or concurrently.
     Random rand = new Random(m_randomSeed);
     m_classifiers = new BinarySMO[insts.numClasses()][insts.numClasses()];
+
+    // The kernels of the machines share one cache, indexed by the global
+    // indices of the training instances
+    m_KernelCache = null;
+    m_KernelCacheStatistics = null;
+    if ((m_kernel instanceof KernelCacheHandler)
+	&& (((KernelCacheHandler) m_kernel).getCacheSizeMB() > 0)) {
+      m_KernelCache = new KernelCache(insts.numInstances(),
+	  ((KernelCacheHandler) m_kernel).getCacheSizeMB() * KernelCache.MEGABYTE);
+    }
+
+    List<PairTask> tasks = new ArrayList<PairTask>();
     for (int i = 0; i < insts.numClasses(); i++) {
       for (int j = i + 1; j < insts.numClasses(); j++) {
 	m_classifiers[i][j] = new BinarySMO();
@@ -1346,12 +1442,163 @@ public class SMO
 	  data.add(subsets[j].instance(k));
 	}
 	data.compactify();
+
+	// Remember where the instances come from, so that kernel
+	// values can be shared between the machines at prediction time
+	IdentityHashMap<Instance,Integer> indices = null;
+	if (!m_KernelIsLinear || (m_KernelCache != null)) {
+	  indices = new IdentityHashMap<Instance,Integer>();
+	  for (int k = 0; k < data.numInstances(); k++) {
+	    if (k < subsets[i].numInstances()) {
+	      indices.put(data.instance(k), offsets[i] + k);
+	    } else {
+	      indices.put(data.instance(k),
+			  offsets[j] + k - subsets[i].numInstances());
+	    }
+	  }
+	}
+
 	data.randomize(rand);
-	m_classifiers[i][j].buildClassifier(data, i, j, 
-					    m_fitLogisticModels,
-					    m_numFolds, m_randomSeed);
+	PairTask task = new PairTask(i, j, data, indices);
+	if (m_NumExecutionSlots > 1) {
+	  tasks.add(task);
+	} else {
+	  task.call();
+	}
       }
     }
+
+    if (tasks.size() > 0) {
+      runTasks(tasks);
+    }
+
+    if (m_KernelCache != null) {
+      m_KernelCacheStatistics = m_KernelCache.toString();
+      m_KernelCache = null;
+    }
+  }
+
+  /**
+   * Runs the given tasks with a pool of m_NumExecutionSlots threads and
+   * waits for all of them to finish.
+   *
+   * @param tasks the tasks to run
+   * @return the results of the tasks, in the same order
+   * @throws Exception if a task fails
+   */
+  protected <T> List<T> runTasks(List<? extends Callable<T>> tasks)
+    throws Exception {
+
+    ExecutorService pool = Executors.newFixedThreadPool(
+	Math.min(m_NumExecutionSlots, tasks.size()));
+    try {
+      return runTasks(pool, tasks);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the given tasks with the given pool and waits for all of them to
+   * finish. The pool is not shut down.
+   *
+   * @param pool the pool to use
+   * @param tasks the tasks to run
+   * @return the results of the tasks, in the same order
+   * @throws Exception if a task fails
+   */
+  protected <T> List<T> runTasks(ExecutorService pool,
+				 List<? extends Callable<T>> tasks)
+    throws Exception {
+
+    List<T> result = new ArrayList<T>();
+    List<Future<T>> futures = new ArrayList<Future<T>>();
+    for (Callable<T> task : tasks) {
+      futures.add(pool.submit(task));
+    }
+    for (Future<T> future : futures) {
+      try {
+	result.add(future.get());
+      } catch (ExecutionException e) {
+	if (e.getCause() instanceof Exception) {
+	  throw (Exception) e.getCause();
+	}
+	throw e;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Trains the machine for one pair of classes.
+   */
+  protected class PairTask
+    implements Callable<BinarySMO> {
+
+    /** the index of the first class */
+    protected int m_cl1;
+
+    /** the index of the second class */
+    protected int m_cl2;
+
+    /** the training data of the machine */
+    protected Instances m_data;
+
+    /** the global indices of the training instances (null if not needed) */
+    protected IdentityHashMap<Instance,Integer> m_indices;
+
+    /**
+     * Initializes the task.
+     *
+     * @param cl1 the index of the first class
+     * @param cl2 the index of the second class
+     * @param data the training data of the machine
+     * @param indices the global indices of the training instances,
+     * null if not needed
+     */
+    public PairTask(int cl1, int cl2, Instances data,
+		    IdentityHashMap<Instance,Integer> indices) {
+      m_cl1 = cl1;
+      m_cl2 = cl2;
+      m_data = data;
+      m_indices = indices;
+    }
+
+    /**
+     * Trains the machine.
+     *
+     * @return the trained machine
+     * @throws Exception if training fails
+     */
+    public BinarySMO call() throws Exception {
+
+      BinarySMO smo = m_classifiers[m_cl1][m_cl2];
+      int[] globalIndices = null;
+      if (m_indices != null) {
+	globalIndices = new int[m_data.numInstances()];
+	for (int k = 0; k < globalIndices.length; k++) {
+	  globalIndices[k] = m_indices.get(m_data.instance(k));
+	}
+      }
+      if (m_KernelCache != null) {
+	((KernelCacheHandler) smo.getKernel()).setKernelCache(m_KernelCache,
+							      globalIndices);
+      }
+
+      smo.buildClassifier(m_data, m_cl1, m_cl2,
+			  m_fitLogisticModels, m_numFolds, m_randomSeed);
+
+      if (!m_KernelIsLinear) {
+	smo.m_globalIndices = globalIndices;
+      }
+
+      // release the data, the machine keeps its own reference if needed
+      m_data = null;
+      m_indices = null;
+
+      return smo;
+    }
   }
 
   /**
@@ -1362,7 +1609,193 @@ public class SMO
    */
   public double[] distributionForInstance(Instance inst) throws Exception {
 
-    // Filter instance
+    inst = filterInstance(inst);
+
+    double[][] outputs = new double[inst.numClasses()][inst.numClasses()];
+    for (int i = 0; i < inst.numClasses(); i++) {
+      for (int j = i + 1; j < inst.numClasses(); j++) {
+	if (hasOutput(i, j, inst.numClasses())) {
+	  outputs[i][j] = m_classifiers[i][j].SVMOutput(-1, inst);
+	}
+      }
+    }
+
+    return distributionForOutputs(outputs, inst.numClasses());
+  }
+
+  /**
+   * Estimates class probabilities for the given instances. For non-linear
+   * machines, the kernel values of a test instance are shared between the
+   * pairwise machines, since these have training instances in common.
+   * With more than one execution slot, the pairwise machines are split
+   * into groups that compute their outputs concurrently (the kernel
+   * values are then only shared within a group).
+   *
+   * @param insts the instances to compute the probabilities for
+   * @return the class probabilities, one array for each instance
+   * @throws Exception in case of an error
+   */
+  public double[][] distributionsForInstances(Instances insts)
+    throws Exception {
+
+    int numClasses = insts.numClasses();
+    double[][] result = new double[insts.numInstances()][];
+
+    // Can kernel values be shared?
+    boolean share = !m_KernelIsLinear && (m_kernel instanceof CachedKernel);
+    int numTrain = 0;
+    for (int i = 0; share && (i < numClasses); i++) {
+      for (int j = i + 1; share && (j < numClasses); j++) {
+	if (m_classifiers[i][j].m_alpha != null) {
+	  if (m_classifiers[i][j].m_globalIndices == null) {
+	    share = false;
+	  } else {
+	    for (int k = 0; k < m_classifiers[i][j].m_globalIndices.length; k++) {
+	      numTrain = Math.max(numTrain,
+				  m_classifiers[i][j].m_globalIndices[k] + 1);
+	    }
+	  }
+	}
+      }
+    }
+
+    // The filters are not thread-safe, so the instances are filtered up
+    // front by this thread, in chunks to limit the memory used for the
+    // outputs. All chunks use the same pool.
+    int numGroups = Math.min(m_NumExecutionSlots,
+			     numClasses * (numClasses - 1) / 2);
+    ExecutorService pool = null;
+    if (numGroups > 1) {
+      pool = Executors.newFixedThreadPool(numGroups);
+    }
+    try {
+      for (int start = 0; start < result.length; start += OUTPUT_CHUNK_SIZE) {
+	Instance[] chunk =
+	  new Instance[Math.min(OUTPUT_CHUNK_SIZE, result.length - start)];
+	for (int n = 0; n < chunk.length; n++) {
+	  chunk[n] = filterInstance(insts.instance(start + n));
+	}
+	double[][][] outputs = new double[chunk.length][numClasses][numClasses];
+
+	if (pool != null) {
+	  List<OutputTask> tasks = new ArrayList<OutputTask>();
+	  for (int g = 0; g < numGroups; g++) {
+	    tasks.add(new OutputTask(g, numGroups, chunk, outputs,
+				     share ? numTrain : -1));
+	  }
+	  runTasks(pool, tasks);
+	} else {
+	  new OutputTask(0, 1, chunk, outputs, share ? numTrain : -1).call();
+	}
+
+	for (int n = 0; n < chunk.length; n++) {
+	  result[start + n] = distributionForOutputs(outputs[n], numClasses);
+	}
+      }
+    } finally {
+      if (pool != null) {
+	pool.shutdownNow();
+      }
+    }
+
+    return result;
+  }
+
+  /** The number of instances whose outputs are computed at once in
+      distributionsForInstances(Instances). */
+  protected static final int OUTPUT_CHUNK_SIZE = 1000;
+
+  /**
+   * Computes the outputs of a group of pairwise machines (every numGroups-th
+   * machine, starting with the given one) for filtered instances.
+   */
+  protected class OutputTask
+    implements Callable<Object> {
+
+    /** the index of the first machine of the group */
+    protected int m_group;
+
+    /** the number of groups */
+    protected int m_numGroups;
+
+    /** the (filtered) instances */
+    protected Instance[] m_insts;
+
+    /** the outputs, indexed by instance and pair of classes */
+    protected double[][][] m_outputs;
+
+    /** the number of training instances for sharing kernel values,
+	-1 if kernel values are not shared */
+    protected int m_numTrain;
+
+    /**
+     * Initializes the task.
+     *
+     * @param group the index of the first machine of the group
+     * @param numGroups the number of groups
+     * @param insts the (filtered) instances
+     * @param outputs the array to store the outputs in
+     * @param numTrain the number of training instances for sharing kernel
+     * values, -1 for no sharing
+     */
+    public OutputTask(int group, int numGroups, Instance[] insts,
+		      double[][][] outputs, int numTrain) {
+      m_group = group;
+      m_numGroups = numGroups;
+      m_insts = insts;
+      m_outputs = outputs;
+      m_numTrain = numTrain;
+    }
+
+    /**
+     * Computes the outputs.
+     *
+     * @return null
+     * @throws Exception if an output can't be computed
+     */
+    public Object call() throws Exception {
+
+      int numClasses = m_outputs.length > 0 ? m_outputs[0].length : 0;
+      double[] values = null;
+      int[] stamps = null;
+      if (m_numTrain > -1) {
+	values = new double[m_numTrain];
+	stamps = new int[m_numTrain];
+      }
+
+      for (int n = 0; n < m_insts.length; n++) {
+	int pair = 0;
+	for (int i = 0; i < numClasses; i++) {
+	  for (int j = i + 1; j < numClasses; j++, pair++) {
+	    if ((pair % m_numGroups != m_group)
+		|| !hasOutput(i, j, numClasses)) {
+	      continue;
+	    }
+	    if ((values != null) && (m_classifiers[i][j].m_alpha != null)) {
+	      m_outputs[n][i][j] = m_classifiers[i][j].SVMOutput(m_insts[n],
+		  values, stamps, n + 1);
+	    } else {
+	      m_outputs[n][i][j] = m_classifiers[i][j].SVMOutput(-1,
+		  m_insts[n]);
+	    }
+	  }
+	}
+      }
+
+      return null;
+    }
+  }
+
+  /**
+   * Passes the given instance through the filters set up in
+   * buildClassifier(Instances).
+   *
+   * @param inst the instance to filter
+   * @return the filtered instance
+   * @throws Exception in case of an error
+   */
+  protected Instance filterInstance(Instance inst) throws Exception {
+
     if (!m_checksTurnedOff) {
       m_Missing.input(inst);
       m_Missing.batchFinished();
@@ -1374,27 +1807,60 @@ public class SMO
       m_NominalToBinary.batchFinished();
       inst = m_NominalToBinary.output();
     }
-    
+
     if (m_Filter != null) {
       m_Filter.input(inst);
       m_Filter.batchFinished();
       inst = m_Filter.output();
     }
-    
+
+    return inst;
+  }
+
+  /**
+   * Returns whether the output of the given pairwise machine is needed
+   * for computing the class probabilities.
+   *
+   * @param i the index of the first class
+   * @param j the index of the second class
+   * @param numClasses the number of classes
+   * @return true if the output of the machine is needed
+   */
+  protected boolean hasOutput(int i, int j, int numClasses) {
+
+    if (m_fitLogisticModels && (numClasses == 2)) {
+      return true;
+    }
+    return (m_classifiers[i][j].m_alpha != null) ||
+      (m_classifiers[i][j].m_sparseWeights != null);
+  }
+
+  /**
+   * Estimates class probabilities from the outputs of the pairwise
+   * machines.
+   *
+   * @param outputs the outputs of the machines, indexed like the machines
+   * @param numClasses the number of classes
+   * @return the class probabilities
+   * @throws Exception in case of an error
+   */
+  protected double[] distributionForOutputs(double[][] outputs,
+					    int numClasses) throws Exception {
+
     if (!m_fitLogisticModels) {
-      double[] result = new double[inst.numClasses()];
-      for (int i = 0; i < inst.numClasses(); i++) {
-	for (int j = i + 1; j < inst.numClasses(); j++) {
-	  if ((m_classifiers[i][j].m_alpha != null) || 
+      double[] result = new double[numClasses];
+      for (int i = 0; i < numClasses; i++) {
+	for (int j = i + 1; j < numClasses; j++) {
+	  if ((m_classifiers[i][j].m_alpha != null) ||
 	      (m_classifiers[i][j].m_sparseWeights != null)) {
-	    double output = m_classifiers[i][j].SVMOutput(-1, inst);
+	    double output = outputs[i][j];
 	    if (output > 0) {
 	      result[j] += 1;
 	    } else {
 	      result[i] += 1;
 	    }
 	  }
-	} 
+	}
       }
       Utils.normalize(result);
       return result;
@@ -1402,21 +1868,21 @@ public class SMO
 
       // We only need to do pairwise coupling if there are more
       // then two classes.
-      if (inst.numClasses() == 2) {
+      if (numClasses == 2) {
 	double[] newInst = new double[2];
-	newInst[0] = m_classifiers[0][1].SVMOutput(-1, inst);
+	newInst[0] = outputs[0][1];
 	newInst[1] = Utils.missingValue();
 	return m_classifiers[0][1].m_logistic.
 	  distributionForInstance(new DenseInstance(1, newInst));
       }
-      double[][] r = new double[inst.numClasses()][inst.numClasses()];
-      double[][] n = new double[inst.numClasses()][inst.numClasses()];
-      for (int i = 0; i < inst.numClasses(); i++) {
-	for (int j = i + 1; j < inst.numClasses(); j++) {
-	  if ((m_classifiers[i][j].m_alpha != null) || 
+      double[][] r = new double[numClasses][numClasses];
+      double[][] n = new double[numClasses][numClasses];
+      for (int i = 0; i < numClasses; i++) {
+	for (int j = i + 1; j < numClasses; j++) {
+	  if ((m_classifiers[i][j].m_alpha != null) ||
 	      (m_classifiers[i][j].m_sparseWeights != null)) {
 	    double[] newInst = new double[2];
-	    newInst[0] = m_classifiers[i][j].SVMOutput(-1, inst);
+	    newInst[0] = outputs[i][j];
 	    newInst[1] = Utils.missingValue();
 	    r[i][j] = m_classifiers[i][j].m_logistic.
 	      distributionForInstance(new DenseInstance(1, newInst))[0];
@@ -1624,6 +2090,14 @@ public class SMO
 	"(default 1)",
 	"W", 1, "-W <double>"));
     
+    result.addElement(batchSizeOption());
+
+    result.addElement(new Option(
+	"\tNumber of execution slots for training the pairwise\n"
+	+ "\tmachines and for batch prediction.\n"
+	+ "\t(default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+
     result.addElement(new Option(
 	"\tThe Kernel to use.\n"
 	+ "\t(default: weka.classifiers.functions.supportVector.PolyKernel)",
@@ -1682,6 +2156,14 @@ public class SMO
    * <pre> -W &lt;double&gt;
    *  The random number seed. (default 1)</pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100)</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for training the pairwise
+   *  machines and for batch prediction.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -K &lt;classname and parameters&gt;
    *  The Kernel to use.
    *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
@@ -1703,6 +2185,12 @@ public class SMO
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The size of the kernel cache in megabytes, replaces the cache
+   *  set with -C if greater than 0. This cache can be shared by
+   *  classifiers that build several kernels on the same data.
+   *  (default: 0)</pre>
+   * 
    * <pre> -E &lt;num&gt;
    *  The Exponent to use.
    *  (default: 1.0)</pre>
@@ -1760,6 +2248,14 @@ public class SMO
     else
       setRandomSeed(1);
 
+    setBatchSizeOption(options);
+
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    else
+      setNumExecutionSlots(1);
+
     tmpStr     = Utils.getOption('K', options);
     tmpOptions = Utils.splitOptions(tmpStr);
     if (tmpOptions.length != 0) {
@@ -1810,6 +2306,15 @@ public class SMO
     result.add("-W");
     result.add("" + getRandomSeed());
 
+    for (String option : getBatchSizeOptions()) {
+      result.add(option);
+    }
+
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
     result.add("-K");
     result.add("" + getKernel().getClass().getName() + " " + Utils.joinOptions(getKernel().getOptions()));
     
@@ -1838,6 +2343,56 @@ public class SMO
     return m_checksTurnedOff;
   }
 
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for training "
+      + "the pairwise machines of a multi-class problem and for batch "
+      + "prediction. The results are the same for any number of slots.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for training the
+   * pairwise machines and for batch prediction.
+   *
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for training the
+   * pairwise machines and for batch prediction.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Returns the tip text for this property
    * 
@@ -2114,6 +2669,9 @@ public class SMO
 	  text.append("\n\n");
 	}
       }
+      if (m_KernelCacheStatistics != null) {
+	text.append(m_KernelCacheStatistics + "\n\n");
+      }
     } catch (Exception e) {
       return "Can't print SMO classifier.";
     }
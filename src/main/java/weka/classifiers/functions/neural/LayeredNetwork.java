@@ -0,0 +1,604 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    LayeredNetwork.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions.neural;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.matrix.ParallelOperations.RangeTask;
+
+/**
+ * A view of a feed-forward network of NeuralNodes that are arranged in
+ * layers (every node of a layer is connected to all the units of the
+ * previous layer and nothing else) as one weight matrix per layer. The
+ * values and errors of the units are computed with loops over primitive
+ * arrays, instead of recursively through the NeuralConnection graph. The
+ * rows of the matrices are the weight arrays of the nodes themselves, so
+ * training through this class changes the weights of the nodes (and
+ * whatever displays them) directly. <p/>
+ *
+ * Training is done in mini-batches: the errors of the instances of a batch
+ * are computed with the same weights, in parallel if more than one thread
+ * is used, and the weights are then changed by the average of the changes
+ * for the individual instances. For batches of a single instance, the
+ * changes are exactly those of SigmoidUnit and LinearUnit.
+ *
+ * @version $Revision: 9500 $
+ */
+public class LayeredNetwork
+  implements Serializable, RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -2749460391527846530L;
+
+  /**
+   * Computes the errors of the output units of the network for an instance,
+   * like the units that the output nodes are connected to.
+   */
+  public static interface OutputErrors {
+
+    /**
+     * Computes the errors of the output units for an instance of a batch.
+     * Gets called from several threads at once if more than one thread is
+     * used.
+     *
+     * @param index	the index of the instance in the batch
+     * @param values	the values of the output units
+     * @param errors	the array to store the errors in
+     * @return		the sum of the squared errors
+     */
+    public double errors(int index, double[] values, double[] errors);
+  }
+
+  /** the weights per layer and unit, the threshold first (the weight
+      arrays of the nodes) */
+  protected double[][][] m_Weights;
+
+  /** the last changes of the weights (the arrays of the nodes) */
+  protected double[][][] m_Changes;
+
+  /** whether the units of a layer are sigmoid units (otherwise linear) */
+  protected boolean[] m_Sigmoid;
+
+  /** the number of inputs */
+  protected int m_NumInputs;
+
+  /** the number of threads to use for a batch */
+  protected int m_NumThreads = 1;
+
+  /** the threads (created on demand) */
+  protected transient ExecutorService m_Executor;
+
+  /** the values of the inputs and units per instance of the current batch */
+  protected transient double[][][] m_Values;
+
+  /** the errors of the units per instance of the current batch */
+  protected transient double[][][] m_Errors;
+
+  /**
+   * Initializes the view of the given layers.
+   *
+   * @param numInputs	the number of inputs
+   * @param layers	the nodes of the layers, from the input side
+   */
+  protected LayeredNetwork(int numInputs, List<NeuralNode[]> layers) {
+    int		l;
+    int		u;
+
+    m_NumInputs = numInputs;
+    m_Weights   = new double[layers.size()][][];
+    m_Changes   = new double[layers.size()][][];
+    m_Sigmoid   = new boolean[layers.size()];
+    for (l = 0; l < layers.size(); l++) {
+      m_Weights[l] = new double[layers.get(l).length][];
+      m_Changes[l] = new double[layers.get(l).length][];
+      m_Sigmoid[l] = (layers.get(l)[0].getMethod() instanceof SigmoidUnit);
+      for (u = 0; u < layers.get(l).length; u++) {
+	m_Weights[l][u] = layers.get(l)[u].getWeights();
+	m_Changes[l][u] = layers.get(l)[u].getChangeInWeights();
+      }
+    }
+  }
+
+  /**
+   * Returns the inputs of a connection (without the unused entries of the
+   * array).
+   *
+   * @param con		the connection
+   * @return		the inputs
+   */
+  protected static NeuralConnection[] inputsOf(NeuralConnection con) {
+    NeuralConnection[]	result;
+
+    result = new NeuralConnection[con.getNumInputs()];
+    System.arraycopy(con.getInputs(), 0, result, 0, result.length);
+
+    return result;
+  }
+
+  /**
+   * Returns whether the connections of a unit are the given ones, in that
+   * order.
+   *
+   * @param cons	the connections of the unit
+   * @param num		the number of connections of the unit
+   * @param expected	the expected connections
+   * @return		true if the same
+   */
+  protected static boolean same(NeuralConnection[] cons, int num,
+      NeuralConnection[] expected) {
+
+    int		i;
+
+    if (num != expected.length)
+      return false;
+    for (i = 0; i < num; i++) {
+      if (cons[i] != expected[i])
+	return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Creates the view of a network, if it is layered: the output nodes and
+   * the nodes they are connected to form layers, down to the inputs, and
+   * all the nodes of a layer are either sigmoid or linear units.
+   *
+   * @param inputs	the units that feed the inputs
+   * @param outputs	the output nodes
+   * @return		the view, null if the network is not layered
+   */
+  public static LayeredNetwork create(NeuralConnection[] inputs,
+      NeuralNode[] outputs) {
+
+    List<NeuralNode[]>				layers;
+    IdentityHashMap<NeuralConnection,Object>	visited;
+    NeuralNode[]				layer;
+    NeuralConnection[]				prev;
+    Class<?>					method;
+    int						i;
+
+    layers  = new ArrayList<NeuralNode[]>();
+    visited = new IdentityHashMap<NeuralConnection,Object>();
+    layer   = outputs;
+    while (true) {
+      if (layer.length == 0)
+	return null;
+      method = layer[0].getMethod().getClass();
+      if ((method != SigmoidUnit.class) && (method != LinearUnit.class))
+	return null;
+      prev = inputsOf(layer[0]);
+      if (prev.length == 0)
+	return null;
+      for (i = 0; i < layer.length; i++) {
+	if (visited.put(layer[i], layer[i]) != null)
+	  return null;
+	if (layer[i].getMethod().getClass() != method)
+	  return null;
+	if (!same(layer[i].getInputs(), layer[i].getNumInputs(), prev))
+	  return null;
+      }
+      layers.add(0, layer);
+
+      if (same(prev, prev.length, inputs))
+	break;
+
+      // the previous layer must only feed this one
+      for (i = 0; i < prev.length; i++) {
+	if (!(prev[i] instanceof NeuralNode))
+	  return null;
+	if (!same(prev[i].getOutputs(), prev[i].getNumOutputs(), layer))
+	  return null;
+      }
+      layer = new NeuralNode[prev.length];
+      System.arraycopy(prev, 0, layer, 0, prev.length);
+    }
+
+    return new LayeredNetwork(inputs.length, layers);
+  }
+
+  /**
+   * Returns the number of inputs.
+   *
+   * @return		the number of inputs
+   */
+  public int getNumInputs() {
+    return m_NumInputs;
+  }
+
+  /**
+   * Returns the number of layers (without the inputs).
+   *
+   * @return		the number of layers
+   */
+  public int getNumLayers() {
+    return m_Weights.length;
+  }
+
+  /**
+   * Returns the number of output units.
+   *
+   * @return		the number of outputs
+   */
+  public int getNumOutputs() {
+    return m_Weights[m_Weights.length - 1].length;
+  }
+
+  /**
+   * Sets the number of threads to use for the instances of a batch.
+   *
+   * @param value	the number of threads, 1 for sequential training
+   */
+  public void setNumThreads(int value) {
+    m_NumThreads = Math.max(1, value);
+  }
+
+  /**
+   * Returns the number of threads to use for the instances of a batch.
+   *
+   * @return		the number of threads
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Computes the values of the units.
+   *
+   * @param values	the values of the inputs (first row), the rows for
+   * 			the values of the layers are filled in
+   */
+  protected void computeValues(double[][] values) {
+    double[]	weights;
+    double[]	in;
+    double	value;
+    int		l;
+    int		u;
+    int		j;
+
+    for (l = 0; l < m_Weights.length; l++) {
+      in = values[l];
+      for (u = 0; u < m_Weights[l].length; u++) {
+	weights = m_Weights[l][u];
+	value   = weights[0];
+	for (j = 0; j < in.length; j++)
+	  value += in[j] * weights[j + 1];
+	if (m_Sigmoid[l]) {
+	  // same as SigmoidUnit
+	  if (value < -45)
+	    value = 0;
+	  else if (value > 45)
+	    value = 1;
+	  else
+	    value = 1 / (1 + Math.exp(-value));
+	}
+	values[l + 1][u] = value;
+      }
+    }
+  }
+
+  /**
+   * Computes the errors of the units, given the errors of the outputs.
+   *
+   * @param values	the values of the inputs and units
+   * @param errors	the errors per layer; the last row contains the
+   * 			errors of the outputs, the rows for the errors of the
+   * 			layers are filled in
+   */
+  protected void computeErrors(double[][] values, double[][] errors) {
+    double[][]	next;
+    double[]	nextErrors;
+    double	error;
+    double	value;
+    int		l;
+    int		u;
+    int		o;
+
+    for (l = m_Weights.length - 1; l >= 0; l--) {
+      for (u = 0; u < m_Weights[l].length; u++) {
+	if (l == m_Weights.length - 1) {
+	  error = errors[l][u];
+	}
+	else {
+	  next       = m_Weights[l + 1];
+	  nextErrors = errors[l + 1];
+	  error      = 0;
+	  for (o = 0; o < next.length; o++)
+	    error += nextErrors[o] * next[o][u + 1];
+	}
+	if (m_Sigmoid[l]) {
+	  value  = values[l + 1][u];
+	  error *= value * (1 - value);
+	}
+	errors[l][u] = error;
+      }
+    }
+  }
+
+  /**
+   * Computes the values of the output units for the given inputs.
+   *
+   * @param input	the values of the inputs
+   * @return		the values of the output units
+   */
+  public double[] outputs(double[] input) {
+    double[][]	values;
+    int		l;
+
+    values    = new double[m_Weights.length + 1][];
+    values[0] = input;
+    for (l = 0; l < m_Weights.length; l++)
+      values[l + 1] = new double[m_Weights[l].length];
+    computeValues(values);
+
+    return values[m_Weights.length];
+  }
+
+  /**
+   * Makes sure that the buffers for the instances of a batch exist.
+   *
+   * @param count	the number of instances in the batch
+   */
+  protected void allocate(int count) {
+    int		i;
+    int		l;
+
+    if ((m_Values != null) && (m_Values.length >= count))
+      return;
+
+    m_Values = new double[count][m_Weights.length + 1][];
+    m_Errors = new double[count][m_Weights.length][];
+    for (i = 0; i < count; i++) {
+      for (l = 0; l < m_Weights.length; l++) {
+	m_Values[i][l + 1] = new double[m_Weights[l].length];
+	m_Errors[i][l]     = new double[m_Weights[l].length];
+      }
+    }
+  }
+
+  /**
+   * Returns the threads, creating them if necessary. Idle threads
+   * terminate after a while.
+   *
+   * @return		the threads
+   */
+  protected synchronized ExecutorService getExecutor() {
+    ThreadPoolExecutor	executor;
+
+    if (m_Executor == null) {
+      executor = new ThreadPoolExecutor(
+	  m_NumThreads, m_NumThreads, 10, TimeUnit.SECONDS,
+	  new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+	    public Thread newThread(Runnable r) {
+	      Thread result = new Thread(r, "weka-neural");
+	      result.setDaemon(true);
+	      return result;
+	    }
+	  });
+      executor.allowCoreThreadTimeOut(true);
+      m_Executor = executor;
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Processes the items of a range, split evenly between the threads. The
+   * calling thread takes part in the work.
+   *
+   * @param count	the number of items
+   * @param task	the task to run on the parts
+   * @throws Exception	if the task fails
+   */
+  protected void execute(int count, final RangeTask task) throws Exception {
+    List<Future<?>>	futures;
+    int			numThreads;
+    int			i;
+
+    numThreads = Math.min(m_NumThreads, count);
+    if (numThreads <= 1) {
+      task.run(0, count);
+      return;
+    }
+
+    futures = new ArrayList<Future<?>>();
+    for (i = 1; i < numThreads; i++) {
+      final int from = (int) ((long) count * i / numThreads);
+      final int to   = (int) ((long) count * (i + 1) / numThreads);
+      futures.add(getExecutor().submit(new Runnable() {
+	public void run() {
+	  task.run(from, to);
+	}
+      }));
+    }
+    task.run(0, count / numThreads);
+
+    for (Future<?> future: futures) {
+      try {
+	future.get();
+      }
+      catch (ExecutionException e) {
+	if (e.getCause() instanceof Exception)
+	  throw (Exception) e.getCause();
+	throw e;
+      }
+    }
+  }
+
+  /**
+   * Changes the weights of the units of a layer, with the errors and values
+   * of the instances of the batch.
+   *
+   * @param l		the layer
+   * @param from	the first unit
+   * @param to		the unit after the last one
+   * @param count	the number of instances in the batch
+   * @param rates	the learning rates for the instances
+   * @param momentum	the momentum
+   */
+  protected void changeWeights(int l, int from, int to, int count,
+      double[] rates, double momentum) {
+
+    double[]	weights;
+    double[]	changes;
+    double[]	learnTimesError;
+    double[]	sums;
+    double[]	in;
+    double	sum;
+    double	c;
+    int		u;
+    int		i;
+    int		j;
+
+    learnTimesError = new double[count];
+    sums            = new double[m_Values[0][l].length];
+    for (u = from; u < to; u++) {
+      weights = m_Weights[l][u];
+      changes = m_Changes[l][u];
+
+      sum = 0;
+      for (i = 0; i < count; i++) {
+	learnTimesError[i] = rates[i] * m_Errors[i][l][u];
+	sum               += learnTimesError[i];
+      }
+      // like NeuralNode, units without an error are not updated
+      if (Double.isNaN(sum))
+	continue;
+
+      in = m_Values[0][l];
+      for (j = 0; j < sums.length; j++)
+	sums[j] = learnTimesError[0] * in[j];
+      for (i = 1; i < count; i++) {
+	in = m_Values[i][l];
+	for (j = 0; j < sums.length; j++)
+	  sums[j] += learnTimesError[i] * in[j];
+      }
+
+      if (count == 1) {
+	c = learnTimesError[0];
+      }
+      else {
+	c = sum / count;
+	for (j = 0; j < sums.length; j++)
+	  sums[j] /= count;
+      }
+      c += momentum * changes[0];
+      weights[0] += c;
+      changes[0]  = c;
+      for (j = 0; j < sums.length; j++) {
+	c  = sums[j];
+	c += momentum * changes[j + 1];
+	weights[j + 1] += c;
+	changes[j + 1]  = c;
+      }
+    }
+  }
+
+  /**
+   * Trains the network with a batch of instances.
+   *
+   * @param inputs	the values of the inputs of the instances
+   * @param rates	the learning rates for the instances (e.g., scaled
+   * 			with the instance weights)
+   * @param count	the number of instances in the batch
+   * @param momentum	the momentum
+   * @param outputErrors	computes the errors of the outputs
+   * @param squaredErrors	the array to store the squared errors of the
+   * 				instances in (as returned by outputErrors)
+   * @throws Exception	if training fails
+   */
+  public void train(final double[][] inputs, final double[] rates,
+      final int count, final double momentum,
+      final OutputErrors outputErrors, final double[] squaredErrors)
+    throws Exception {
+
+    RangeTask	task;
+    int		l;
+    final int[]	offsets;
+
+    if (count == 0)
+      return;
+
+    allocate(count);
+
+    // values and errors of the instances
+    execute(count, new RangeTask() {
+      public void run(int from, int to) {
+	int	last;
+	int	i;
+
+	last = m_Weights.length;
+	for (i = from; i < to; i++) {
+	  m_Values[i][0] = inputs[i];
+	  computeValues(m_Values[i]);
+	  squaredErrors[i] = outputErrors.errors(
+	      i, m_Values[i][last], m_Errors[i][last - 1]);
+	  computeErrors(m_Values[i], m_Errors[i]);
+	}
+      }
+    });
+
+    // changes of the weights, unit by unit
+    offsets = new int[m_Weights.length + 1];
+    for (l = 0; l < m_Weights.length; l++)
+      offsets[l + 1] = offsets[l] + m_Weights[l].length;
+    task = new RangeTask() {
+      public void run(int from, int to) {
+	int	l;
+
+	for (l = 0; l < m_Weights.length; l++) {
+	  if ((from < offsets[l + 1]) && (to > offsets[l])) {
+	    changeWeights(l,
+		Math.max(from, offsets[l]) - offsets[l],
+		Math.min(to, offsets[l + 1]) - offsets[l],
+		count, rates, momentum);
+	  }
+	}
+      }
+    };
+    // a single instance is not worth the synchronization
+    if (count == 1)
+      task.run(0, offsets[m_Weights.length]);
+    else
+      execute(offsets[m_Weights.length], task);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
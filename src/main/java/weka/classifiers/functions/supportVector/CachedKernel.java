@@ -31,7 +31,9 @@ import weka.core.Utils;
 /**
  * Base class for RBFKernel and PolyKernel that implements a simple LRU.
  * (least-recently-used) cache if the cache size is set to a value > 0.
- * Otherwise it uses a full cache.
+ * Otherwise it uses a full cache. Alternatively, the kernel values can be
+ * stored in a KernelCache of a given size in megabytes, which can be
+ * shared with other kernels (see setKernelCache(KernelCache, int[])).
  * 
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
  * @author Shane Legg (shane@intelligenesis.net) (sparse vector code)
@@ -42,7 +44,8 @@ import weka.core.Utils;
  * @version $Revision: 8034 $
  */
 public abstract class CachedKernel 
-  extends Kernel {
+  extends Kernel
+  implements KernelCacheHandler {
 
   /** for serialization */
   private static final long serialVersionUID = 702810182699015136L;
@@ -69,6 +72,19 @@ public abstract class CachedKernel
   /** number of cache slots in an entry */
   protected int m_cacheSlots = 4;
 
+  /** The size of the KernelCache in megabytes (0 to use the cache above) */
+  protected int m_cacheSizeMB = 0;
+
+  /** The KernelCache to use with the next call of buildKernel */
+  protected transient KernelCache m_sharedCache;
+
+  /** The indices of the instances in the KernelCache to use with the next
+      call of buildKernel */
+  protected transient int[] m_sharedCacheIndices;
+
+  /** The view of the KernelCache in use (null if not used) */
+  protected transient KernelCache.View m_cacheView;
+
   /**
    * default constructor - does nothing.
    */
@@ -113,6 +129,13 @@ public abstract class CachedKernel
 	+ "\t(default: 250007)",
 	"C", 1, "-C <num>"));
 
+    result.addElement(new Option(
+	"\tThe size of the kernel cache in megabytes, replaces the cache\n"
+	+ "\tset with -C if greater than 0. This cache can be shared by\n"
+	+ "\tclassifiers that build several kernels on the same data.\n"
+	+ "\t(default: 0)",
+	"cache-mb", 1, "-cache-mb <num>"));
+
     return result.elements();
   }
 
@@ -131,6 +154,12 @@ public abstract class CachedKernel
     else
       setCacheSize(250007);
     
+    tmpStr = Utils.getOption("cache-mb", options);
+    if (tmpStr.length() != 0)
+      setCacheSizeMB(Integer.parseInt(tmpStr));
+    else
+      setCacheSizeMB(0);
+    
     super.setOptions(options);
   }
 
@@ -152,6 +181,11 @@ public abstract class CachedKernel
     result.add("-C");
     result.add("" + getCacheSize());
 
+    if (getCacheSizeMB() > 0) {
+      result.add("-cache-mb");
+      result.add("" + getCacheSizeMB());
+    }
+
     return (String[]) result.toArray(new String[result.size()]);	  
   }
 
@@ -183,6 +217,24 @@ public abstract class CachedKernel
     long key = -1;
     int location = -1;
 
+    // Use KernelCache?
+    if ((id1 >= 0) && (m_cacheView != null)) {
+      result = m_cacheView.get(id1, id2);
+      if (!Double.isNaN(result)) {
+	m_cacheHits++;
+	return result;
+      }
+      // always evaluate in the same order, since the value may be used by
+      // other kernels sharing the cache
+      if (m_cacheView.index(id1) >= m_cacheView.index(id2))
+	result = evaluate(id1, id2, inst1);
+      else
+	result = evaluate(id2, id1, m_data.instance(id2));
+      m_kernelEvals++;
+      m_cacheView.put(id1, id2, result);
+      return result;
+    }
+
     // we can only cache if we know the indexes and caching is not 
     // disbled (m_cacheSize == -1)
     if ( (id1 >= 0) && (m_cacheSize != -1) ) {
@@ -277,6 +329,10 @@ public abstract class CachedKernel
     m_storage = null;
     m_keys = null;
     m_kernelMatrix = null;
+    if (m_cacheView != null) {
+      m_cacheView.release();
+      m_cacheView = null;
+    }
   }
 
   /**
@@ -349,6 +405,73 @@ public abstract class CachedKernel
     return "The size of the cache (a prime number), 0 for full cache and -1 to turn it off.";
   }
 
+  /**
+   * Sets the size of the KernelCache in megabytes, 0 to use the cache set
+   * with setCacheSize(int) instead.
+   * 
+   * @param value	the size in megabytes
+   */
+  public void setCacheSizeMB(int value) {
+    if (value >= 0) {
+      m_cacheSizeMB = value;
+      clean();
+    }
+    else {
+      System.out.println(
+	  "Cache size in MB cannot be smaller than 0 (provided: " + value + ")!");
+    }
+  }
+  
+  /**
+   * Returns the size of the KernelCache in megabytes.
+   * 
+   * @return 		the size, 0 if the cache set with setCacheSize(int)
+   * 			is used
+   */
+  public int getCacheSizeMB() {
+    return m_cacheSizeMB;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String cacheSizeMBTipText() {
+    return "The size of the kernel cache in megabytes, 0 to use the cache "
+      + "defined by cacheSize instead. The full kernel matrix is stored if "
+      + "it fits, otherwise the least recently used rows are evicted. "
+      + "Classifiers that build several kernels on the same data (e.g., "
+      + "SMO for multi-class problems) share this cache between them.";
+  }
+
+  /**
+   * Sets the cache to use with the next call of buildKernel(Instances),
+   * instead of a cache of its own.
+   *
+   * @param cache	the cache to use
+   * @param indices	the indices of the instances passed to
+   * 			buildKernel(Instances) in the cache, null if the
+   * 			same
+   */
+  public void setKernelCache(KernelCache cache, int[] indices) {
+    m_sharedCache        = cache;
+    m_sharedCacheIndices = indices;
+  }
+
+  /**
+   * Returns the KernelCache that the kernel uses.
+   *
+   * @return		the cache, null if none is used
+   */
+  public KernelCache getKernelCache() {
+    if (m_cacheView == null)
+      return null;
+    else
+      return m_cacheView.getCache();
+  }
+
   /**
    * initializes variables etc.
    * 
@@ -361,7 +484,32 @@ public abstract class CachedKernel
     m_cacheHits   = 0;
     m_numInsts    = m_data.numInstances();
 
-    if (getCacheSize() > 0) {
+    // Use KernelCache?
+    if (m_cacheView != null) {
+      m_cacheView.release();
+      m_cacheView = null;
+    }
+    if (m_sharedCache != null) {
+      if ((m_sharedCacheIndices != null)
+	  && (m_sharedCacheIndices.length != m_numInsts))
+	throw new IllegalArgumentException(
+	    "Number of indices for kernel cache differs from number of instances: "
+	    + m_sharedCacheIndices.length + " != " + m_numInsts);
+      m_cacheView          = m_sharedCache.newView(m_sharedCacheIndices);
+      m_sharedCache        = null;
+      m_sharedCacheIndices = null;
+    }
+    else if (getCacheSizeMB() > 0) {
+      m_cacheView = new KernelCache(
+	  m_numInsts, getCacheSizeMB() * KernelCache.MEGABYTE).newView(null);
+    }
+
+    if (m_cacheView != null) {
+      m_storage      = null;
+      m_keys         = null;
+      m_kernelMatrix = null;
+    }
+    else if (getCacheSize() > 0) {
       // Use LRU cache
       m_storage = new double[m_cacheSize * m_cacheSlots];
       m_keys    = new long[m_cacheSize * m_cacheSlots];
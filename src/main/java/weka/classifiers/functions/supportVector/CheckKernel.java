@@ -155,6 +155,12 @@ import weka.core.WeightedInstancesHandler;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The size of the kernel cache in megabytes, replaces the cache
+ *  set with -C if greater than 0. This cache can be shared by
+ *  classifiers that build several kernels on the same data.
+ *  (default: 0)</pre>
+ * 
  * <pre> -G &lt;num&gt;
  *  The Gamma parameter.
  *  (default: 0.01)</pre>
@@ -279,6 +285,12 @@ public class CheckKernel
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The size of the kernel cache in megabytes, replaces the cache
+   *  set with -C if greater than 0. This cache can be shared by
+   *  classifiers that build several kernels on the same data.
+   *  (default: 0)</pre>
+   * 
    * <pre> -G &lt;num&gt;
    *  The Gamma parameter.
    *  (default: 0.01)</pre>
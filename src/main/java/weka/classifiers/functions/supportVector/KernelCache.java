@@ -0,0 +1,493 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    KernelCache.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.functions.supportVector;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * A cache for kernel values whose size is given in bytes rather than in
+ * entries. The cache is defined over a dataset of a fixed number of
+ * instances and can be shared by several kernels, including kernels that
+ * are used concurrently, as long as each kernel maps the indices of its own
+ * instances to the indices in that dataset (e.g., the pairwise machines of
+ * a multi-class SMO, which are trained on subsets of the same data).<p/>
+ *
+ * If the lower triangle of the kernel matrix fits into the memory budget,
+ * it is stored completely. Otherwise the cache holds rows of the kernel
+ * matrix, keyed by the index of the first instance, and evicts the least
+ * recently used rows. The rows are distributed over several stripes, each
+ * with its own lock and LRU list, so that concurrent kernels rarely wait
+ * for each other. Values are filled in lazily and entries are read and
+ * written atomically, so no locking is necessary for accessing the values
+ * themselves.<p/>
+ *
+ * Kernels access the cache through a View, which is not thread-safe and
+ * must only be used by one kernel. A view remembers the two rows used
+ * last, which covers the typical access pattern of SMO (the kernel values
+ * of two instances with all others). Once the kernel is done, the view has
+ * to be released, which drops these rows and adds the view's hits and
+ * misses to the statistics of the cache.
+ *
+ * @version $Revision: 9500 $
+ */
+public class KernelCache
+  implements RevisionHandler {
+
+  /** the number of bytes in a megabyte */
+  public static final long MEGABYTE = 1024 * 1024;
+
+  /** the maximum number of stripes */
+  public static final int MAX_STRIPES = 16;
+
+  /** marks stored values, so that an entry of 0 means "not cached" */
+  protected static final long MASK = 0x7ff4a5a5a5a5a5a5L;
+
+  /** the number of instances */
+  protected final int m_NumInstances;
+
+  /** the memory budget in bytes */
+  protected final long m_MaxBytes;
+
+  /** the lower triangle of the kernel matrix (null if rows are cached) */
+  protected final AtomicLongArray m_Matrix;
+
+  /** the stripes with the cached rows (null if the full matrix is used) */
+  protected final Stripe[] m_Stripes;
+
+  /** the maximum number of rows */
+  protected final int m_MaxRows;
+
+  /** the number of values found in the cache by released views */
+  protected final AtomicLong m_Hits = new AtomicLong();
+
+  /** the number of values not found in the cache by released views */
+  protected final AtomicLong m_Misses = new AtomicLong();
+
+  /**
+   * A part of the cached rows, with its own LRU list. Access has to be
+   * synchronized on the stripe.
+   */
+  protected static class Stripe
+    extends LinkedHashMap<Integer,AtomicLongArray> {
+
+    /** for serialization */
+    private static final long serialVersionUID = 4781284719658723071L;
+
+    /** the maximum number of rows in the stripe */
+    protected int m_Capacity;
+
+    /** the number of rows evicted so far */
+    protected long m_Evictions;
+
+    /**
+     * Initializes the stripe.
+     *
+     * @param capacity	the maximum number of rows
+     */
+    public Stripe(int capacity) {
+      super(16, 0.75f, true);
+      m_Capacity = capacity;
+    }
+
+    /**
+     * Evicts the least recently used row if the stripe is full.
+     *
+     * @param eldest	the least recently used row
+     * @return		true if the row is to be removed
+     */
+    protected boolean removeEldestEntry(Map.Entry<Integer,AtomicLongArray> eldest) {
+      if (size() > m_Capacity) {
+	m_Evictions++;
+	return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Gives a single kernel access to the cache, using the indices of the
+   * kernel's instances. Not thread-safe.
+   */
+  public class View {
+
+    /** the indices of the kernel's instances in the cache, null if the
+	same */
+    protected int[] m_Indices;
+
+    /** the index of the row used last */
+    protected int m_Index1 = -1;
+
+    /** the row used last */
+    protected AtomicLongArray m_Row1;
+
+    /** the index of the row used before the last one */
+    protected int m_Index2 = -1;
+
+    /** the row used before the last one */
+    protected AtomicLongArray m_Row2;
+
+    /** the number of values found in the cache since the last release */
+    protected long m_ViewHits;
+
+    /** the number of values not found in the cache since the last release */
+    protected long m_ViewMisses;
+
+    /**
+     * Initializes the view.
+     *
+     * @param indices	the indices of the kernel's instances in the cache,
+     * 			null if they are the same
+     */
+    protected View(int[] indices) {
+      m_Indices = indices;
+    }
+
+    /**
+     * Returns the given row, from the rows used last or from the cache.
+     *
+     * @param index	the index of the row in the cache
+     * @return		the row
+     */
+    protected AtomicLongArray row(int index) {
+      AtomicLongArray	result;
+
+      if (index == m_Index1)
+	return m_Row1;
+
+      if (index == m_Index2) {
+	result = m_Row2;
+      }
+      else {
+	result = getRow(index);
+      }
+      m_Index2 = m_Index1;
+      m_Row2   = m_Row1;
+      m_Index1 = index;
+      m_Row1   = result;
+
+      return result;
+    }
+
+    /**
+     * Returns the position of the value in the full matrix or in the row
+     * of the first instance.
+     *
+     * @param i		the index of the first instance in the cache
+     * @param j		the index of the second instance in the cache
+     * @return		the position
+     */
+    protected int position(int i, int j) {
+      if (m_Matrix == null)
+	return j;
+      else if (i > j)
+	return (int) (((long) i * (i + 1)) / 2) + j;
+      else
+	return (int) (((long) j * (j + 1)) / 2) + i;
+    }
+
+    /**
+     * Returns the index of the kernel's instance in the cache. Kernels
+     * sharing the cache should evaluate pairs of instances in the order
+     * of these indices, so that the cached values do not depend on which
+     * kernel computed them first.
+     *
+     * @param id	the index of the instance of the kernel
+     * @return		the index in the cache
+     */
+    public int index(int id) {
+      return (m_Indices == null) ? id : m_Indices[id];
+    }
+
+    /**
+     * Returns the cached kernel value for the given instances.
+     *
+     * @param id1	the index of the first instance of the kernel
+     * @param id2	the index of the second instance of the kernel
+     * @return		the value, NaN if not cached
+     */
+    public double get(int id1, int id2) {
+      int		i;
+      int		j;
+      long		value;
+
+      i = index(id1);
+      j = index(id2);
+      if (m_Matrix == null)
+	value = row(i).get(position(i, j));
+      else
+	value = m_Matrix.get(position(i, j));
+
+      if (value == 0) {
+	m_ViewMisses++;
+	return Double.NaN;
+      }
+      m_ViewHits++;
+
+      return Double.longBitsToDouble(value ^ MASK);
+    }
+
+    /**
+     * Stores the kernel value for the given instances.
+     *
+     * @param id1	the index of the first instance of the kernel
+     * @param id2	the index of the second instance of the kernel
+     * @param value	the value to store
+     */
+    public void put(int id1, int id2, double value) {
+      int		i;
+      int		j;
+
+      i = index(id1);
+      j = index(id2);
+      if (m_Matrix == null)
+	row(i).lazySet(position(i, j), Double.doubleToRawLongBits(value) ^ MASK);
+      else
+	m_Matrix.lazySet(position(i, j), Double.doubleToRawLongBits(value) ^ MASK);
+    }
+
+    /**
+     * Releases the rows used last and adds the hits and misses of the view
+     * to the statistics of the cache. The view can still be used
+     * afterwards, counting from zero again.
+     */
+    public void release() {
+      m_Index1 = -1;
+      m_Row1   = null;
+      m_Index2 = -1;
+      m_Row2   = null;
+
+      m_Hits.addAndGet(m_ViewHits);
+      m_Misses.addAndGet(m_ViewMisses);
+      m_ViewHits   = 0;
+      m_ViewMisses = 0;
+    }
+
+    /**
+     * Returns the cache of the view.
+     *
+     * @return		the cache
+     */
+    public KernelCache getCache() {
+      return KernelCache.this;
+    }
+  }
+
+  /**
+   * Initializes the cache.
+   *
+   * @param numInstances	the number of instances of the dataset
+   * @param maxBytes		the memory budget in bytes
+   */
+  public KernelCache(int numInstances, long maxBytes) {
+    long	size;
+    int		numStripes;
+    int		i;
+
+    m_NumInstances = numInstances;
+    m_MaxBytes     = maxBytes;
+
+    size = ((long) numInstances * (numInstances + 1)) / 2;
+    if ((size * 8 <= maxBytes) && (size < Integer.MAX_VALUE)) {
+      m_Matrix  = new AtomicLongArray((int) size);
+      m_Stripes = null;
+      m_MaxRows = numInstances;
+    }
+    else {
+      m_Matrix  = null;
+      m_MaxRows = (int) Math.max(1, maxBytes / ((long) numInstances * 8));
+      numStripes = Math.min(MAX_STRIPES, m_MaxRows);
+      m_Stripes = new Stripe[numStripes];
+      for (i = 0; i < numStripes; i++)
+	m_Stripes[i] = new Stripe(
+	    m_MaxRows / numStripes + ((i < m_MaxRows % numStripes) ? 1 : 0));
+    }
+  }
+
+  /**
+   * Returns the given row, allocating it if it is not in the cache.
+   *
+   * @param index	the index of the row
+   * @return		the row
+   */
+  protected AtomicLongArray getRow(int index) {
+    Stripe		stripe;
+    AtomicLongArray	result;
+
+    stripe = m_Stripes[index % m_Stripes.length];
+    synchronized (stripe) {
+      result = stripe.get(index);
+      if (result == null) {
+	result = new AtomicLongArray(m_NumInstances);
+	stripe.put(index, result);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns a new view of the cache for a kernel.
+   *
+   * @param indices	the indices of the kernel's instances in the cache,
+   * 			null if they are the same
+   * @return		the view
+   * @throws IllegalArgumentException if an index is out of range
+   */
+  public View newView(int[] indices) {
+    if (indices != null) {
+      for (int index: indices) {
+	if ((index < 0) || (index >= m_NumInstances))
+	  throw new IllegalArgumentException(
+	      "Index out of range for kernel cache: " + index);
+      }
+    }
+
+    return new View(indices);
+  }
+
+  /**
+   * Returns the number of instances of the dataset.
+   *
+   * @return		the number of instances
+   */
+  public int getNumInstances() {
+    return m_NumInstances;
+  }
+
+  /**
+   * Returns the memory budget.
+   *
+   * @return		the budget in bytes
+   */
+  public long getMaxBytes() {
+    return m_MaxBytes;
+  }
+
+  /**
+   * Returns whether the full kernel matrix is stored.
+   *
+   * @return		true if the full matrix is stored
+   */
+  public boolean isFullMatrix() {
+    return (m_Matrix != null);
+  }
+
+  /**
+   * Returns the number of rows currently cached.
+   *
+   * @return		the number of rows
+   */
+  public int getNumRows() {
+    int		result;
+
+    if (m_Matrix != null)
+      return m_NumInstances;
+
+    result = 0;
+    for (Stripe stripe: m_Stripes) {
+      synchronized (stripe) {
+	result += stripe.size();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of values that were found in the cache. Only
+   * counts the views that have been released.
+   *
+   * @return		the number of hits
+   * @see View#release()
+   */
+  public long getHits() {
+    return m_Hits.get();
+  }
+
+  /**
+   * Returns the number of values that were not found in the cache. Only
+   * counts the views that have been released.
+   *
+   * @return		the number of misses
+   * @see View#release()
+   */
+  public long getMisses() {
+    return m_Misses.get();
+  }
+
+  /**
+   * Returns the number of rows that have been evicted.
+   *
+   * @return		the number of evictions
+   */
+  public long getEvictions() {
+    long	result;
+
+    result = 0;
+    if (m_Stripes != null) {
+      for (Stripe stripe: m_Stripes) {
+	synchronized (stripe) {
+	  result += stripe.m_Evictions;
+	}
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the statistics of the cache.
+   *
+   * @return		the statistics
+   */
+  public String toString() {
+    StringBuffer	result;
+
+    result = new StringBuffer();
+    result.append("Kernel cache: ");
+    result.append(m_MaxBytes / MEGABYTE + " MB, ");
+    if (isFullMatrix())
+      result.append("full matrix");
+    else
+      result.append(getNumRows() + " of max. " + m_MaxRows + " rows");
+    result.append(", " + getHits() + " hits, " + getMisses() + " misses");
+    if (!isFullMatrix())
+      result.append(", " + getEvictions() + " evictions");
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    KernelCacheHandler.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.functions.supportVector;
+
+/**
+ * Interface for kernels that can store their values in a KernelCache,
+ * possibly shared with other kernels.
+ *
+ * @version $Revision: 9500 $
+ * @see KernelCache
+ */
+public interface KernelCacheHandler {
+
+  /**
+   * Returns the size of the kernel cache in megabytes.
+   *
+   * @return		the size, 0 if the kernel does not use a KernelCache
+   */
+  public int getCacheSizeMB();
+
+  /**
+   * Sets the cache to use with the next call of buildKernel(Instances),
+   * instead of a cache of its own.
+   *
+   * @param cache	the cache to use
+   * @param indices	the indices of the instances passed to
+   * 			buildKernel(Instances) in the cache, null if the
+   * 			same
+   */
+  public void setKernelCache(KernelCache cache, int[] indices);
+
+  /**
+   * Returns the cache that the kernel uses.
+   *
+   * @return		the cache, null if none is used
+   */
+  public KernelCache getKernelCache();
+}
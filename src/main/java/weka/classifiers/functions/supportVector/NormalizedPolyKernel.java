@@ -48,6 +48,12 @@ import weka.core.RevisionUtils;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The size of the kernel cache in megabytes, replaces the cache
+ *  set with -C if greater than 0. This cache can be shared by
+ *  classifiers that build several kernels on the same data.
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -120,6 +120,9 @@ public class RegOptimizer
 
   /** number of kernel cache hits, used for printing statistics only **/
   protected int m_nCacheHits = -1;
+
+  /** statistics of the KernelCache (if used), for printing only **/
+  protected String m_KernelCacheStatistics = null;
   
   /** weights for linear kernel **/
   protected double[] m_weights;
@@ -307,6 +310,7 @@ public class RegOptimizer
     m_b = 0.0;
     m_nEvals = 0;
     m_nCacheHits = -1;
+    m_KernelCacheStatistics = null;
   }
   
   /** 
@@ -316,10 +320,22 @@ public class RegOptimizer
    * @throws Exception	if something goes wrong
    */
   protected void wrapUp() throws Exception {
+    KernelCache cache = null;
+
     m_target = null;
     
     m_nEvals = m_kernel.numEvals();
     m_nCacheHits = m_kernel.numCacheHits();
+    if (m_kernel instanceof KernelCacheHandler) {
+      cache = ((KernelCacheHandler) m_kernel).getKernelCache();
+    }
+
+    // Save memory; also releases the kernel's view of the cache, which
+    // adds its hits and misses to the statistics of the cache
+    m_kernel.clean();
+    if (cache != null) {
+      m_KernelCacheStatistics = cache.toString();
+    }
     
     if ((m_SVM.getKernel() instanceof PolyKernel) && ((PolyKernel) m_SVM.getKernel()).getExponent() == 1.0) {
       // convert alpha's to weights
@@ -547,6 +563,9 @@ public class RegOptimizer
       double hitRatio = 1 - m_nEvals * 1.0 / (m_nCacheHits + m_nEvals);
       text.append(" (" + Utils.doubleToString(hitRatio * 100, 7, 3).trim() + "% cached)");
     }
+    if (m_KernelCacheStatistics != null) {
+      text.append("\n" + m_KernelCacheStatistics);
+    }
     
     return text.toString();		
   }
@@ -96,6 +96,12 @@ import weka.core.Utils;
  *  The size of the cache (a prime number).
  *  (default: 250007)</pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The size of the kernel cache in megabytes, replaces the cache
+ *  set with -C if greater than 0. This cache can be shared by
+ *  classifiers that build several kernels on the same data.
+ *  (default: 0)</pre>
+ * 
  * <pre> -IC &lt;num&gt;
  *  The size of the internal cache (a prime number).
  *  (default: 200003)</pre>
@@ -277,7 +283,7 @@ import weka.core.Utils;
  */
 public class StringKernel 
   extends Kernel
-  implements TechnicalInformationHandler {
+  implements TechnicalInformationHandler, KernelCacheHandler {
   
   /** for serialization */
   private static final long serialVersionUID = -4902954211202690123L;
@@ -298,6 +304,19 @@ public class StringKernel
   /** Counts the number of kernel evaluations. */
   private int m_kernelEvals;
 
+  /** The size of the KernelCache in megabytes (0 to use the cache above) */
+  private int m_cacheSizeMB = 0;
+
+  /** The KernelCache to use with the next call of buildKernel */
+  private transient KernelCache m_sharedCache;
+
+  /** The indices of the instances in the KernelCache to use with the next
+      call of buildKernel */
+  private transient int[] m_sharedCacheIndices;
+
+  /** The view of the KernelCache in use (null if not used) */
+  private transient KernelCache.View m_cacheView;
+
   /** The number of instance in the dataset */
   private int m_numInsts;
 
@@ -470,6 +489,13 @@ public class StringKernel
 	+ "\t(default: 250007)",
 	"C", 1, "-C <num>"));
 
+    result.addElement(new Option(
+	"\tThe size of the kernel cache in megabytes, replaces the cache\n"
+	+ "\tset with -C if greater than 0. This cache can be shared by\n"
+	+ "\tclassifiers that build several kernels on the same data.\n"
+	+ "\t(default: 0)",
+	"cache-mb", 1, "-cache-mb <num>"));
+
     result.addElement(new Option(
 	"\tThe size of the internal cache (a prime number).\n"
 	+ "\t(default: 200003)",
@@ -523,6 +549,12 @@ public class StringKernel
    *  The size of the cache (a prime number).
    *  (default: 250007)</pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The size of the kernel cache in megabytes, replaces the cache
+   *  set with -C if greater than 0. This cache can be shared by
+   *  classifiers that build several kernels on the same data.
+   *  (default: 0)</pre>
+   * 
    * <pre> -IC &lt;num&gt;
    *  The size of the internal cache (a prime number).
    *  (default: 200003)</pre>
@@ -566,6 +598,12 @@ public class StringKernel
     else
       setCacheSize(250007);
     
+    tmpStr = Utils.getOption("cache-mb", options);
+    if (tmpStr.length() != 0)
+      setCacheSizeMB(Integer.parseInt(tmpStr));
+    else
+      setCacheSizeMB(0);
+    
     tmpStr = Utils.getOption("IC", options);
     if (tmpStr.length() != 0)
       setInternalCacheSize(Integer.parseInt(tmpStr));
@@ -621,6 +659,11 @@ public class StringKernel
     result.add("-C");
     result.add("" + getCacheSize());
 
+    if (getCacheSizeMB() > 0) {
+      result.add("-cache-mb");
+      result.add("" + getCacheSizeMB());
+    }
+
     result.add("-IC");
     result.add("" + getInternalCacheSize());
 
@@ -704,6 +747,71 @@ public class StringKernel
     return "The size of the cache (a prime number).";
   }
 
+  /**
+   * Sets the size of the KernelCache in megabytes, 0 to use the cache set
+   * with setCacheSize(int) instead.
+   * 
+   * @param value	the size in megabytes
+   */
+  public void setCacheSizeMB(int value) {
+    if (value >= 0) {
+      m_cacheSizeMB = value;
+      clean();
+    }
+    else {
+      System.out.println(
+	  "Cache size in MB cannot be smaller than 0 (provided: " + value + ")!");
+    }
+  }
+  
+  /**
+   * Returns the size of the KernelCache in megabytes.
+   * 
+   * @return 		the size, 0 if the cache set with setCacheSize(int)
+   * 			is used
+   */
+  public int getCacheSizeMB() {
+    return m_cacheSizeMB;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String cacheSizeMBTipText() {
+    return "The size of the kernel cache in megabytes, 0 to use the cache "
+      + "defined by cacheSize instead. Classifiers that build several "
+      + "kernels on the same data share this cache between them.";
+  }
+
+  /**
+   * Sets the cache to use with the next call of buildKernel(Instances),
+   * instead of a cache of its own.
+   *
+   * @param cache	the cache to use
+   * @param indices	the indices of the instances passed to
+   * 			buildKernel(Instances) in the cache, null if the
+   * 			same
+   */
+  public void setKernelCache(KernelCache cache, int[] indices) {
+    m_sharedCache        = cache;
+    m_sharedCacheIndices = indices;
+  }
+
+  /**
+   * Returns the KernelCache that the kernel uses.
+   *
+   * @return		the cache, null if none is used
+   */
+  public KernelCache getKernelCache() {
+    if (m_cacheView == null)
+      return null;
+    else
+      return m_cacheView.getCache();
+  }
+
   /** 
    * sets the size of the internal cache for intermediate results. Memory
    * consumption is about 16x this amount in bytes. Only use when lambda
@@ -883,6 +991,24 @@ public class StringKernel
     long key = -1;
     int location = -1;
 
+    // use KernelCache?
+    if ((id1 >= 0) && (m_cacheView != null)) {
+      result = m_cacheView.get(id1, id2);
+      if (!Double.isNaN(result)) {
+        if (m_Debug) 
+          System.err.println("result (cached): " + result);
+        return result;
+      }
+      // always evaluate in the same order, since the value may be used by
+      // other kernels sharing the cache
+      if (m_cacheView.index(id1) < m_cacheView.index(id2)) {
+        int id = id1;
+        id1    = id2;
+        id2    = id;
+        inst1  = m_data.instance(id1);
+      }
+    }
+
     // we can only cache if we know the indexes
     if ((id1 >= 0) && (m_keys != null)) {
       if (id1 > id2) {
@@ -928,6 +1054,9 @@ public class StringKernel
       m_storage[location] = result;
       m_keys[location] = (key + 1);
     }
+    else if ((id1 >= 0) && (m_cacheView != null)) {
+      m_cacheView.put(id1, id2, result);
+    }
     return result;
   }
 
@@ -940,6 +1069,10 @@ public class StringKernel
   public void clean() {
     m_storage = null;
     m_keys = null;
+    if (m_cacheView != null) {
+      m_cacheView.release();
+      m_cacheView = null;
+    }
   }
 
   /**
@@ -1465,8 +1598,35 @@ public class StringKernel
       }
     }
     m_numInsts       = m_data.numInstances();
-    m_storage        = new double[m_cacheSize];
-    m_keys           = new long[m_cacheSize];
+
+    // use KernelCache?
+    if (m_cacheView != null) {
+      m_cacheView.release();
+      m_cacheView = null;
+    }
+    if (m_sharedCache != null) {
+      if ((m_sharedCacheIndices != null)
+	  && (m_sharedCacheIndices.length != m_numInsts))
+	throw new IllegalArgumentException(
+	    "Number of indices for kernel cache differs from number of instances: "
+	    + m_sharedCacheIndices.length + " != " + m_numInsts);
+      m_cacheView          = m_sharedCache.newView(m_sharedCacheIndices);
+      m_sharedCache        = null;
+      m_sharedCacheIndices = null;
+    }
+    else if (m_cacheSizeMB > 0) {
+      m_cacheView = new KernelCache(
+	  m_numInsts, m_cacheSizeMB * KernelCache.MEGABYTE).newView(null);
+    }
+
+    if (m_cacheView != null) {
+      m_storage      = null;
+      m_keys         = null;
+    }
+    else {
+      m_storage      = new double[m_cacheSize];
+      m_keys         = new long[m_cacheSize];
+    }
     m_powersOflambda = calculatePowersOfLambda();
   }
 
@@ -21,9 +21,16 @@
 
 package weka.classifiers.lazy;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.UpdateableClassifier;
@@ -32,6 +39,7 @@ import weka.classifiers.lazy.kstar.KStarConstants;
 import weka.classifiers.lazy.kstar.KStarNominalAttribute;
 import weka.classifiers.lazy.kstar.KStarNumericAttribute;
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instance;
@@ -86,6 +94,19 @@ import weka.core.Utils;
  *  Valid options are: a(verage), d(elete), m(axdiff), n(ormal)
  * </pre>
  * 
+ * <pre> -cache-mb &lt;num&gt;
+ *  The maximum memory of the caches in megabytes
+ *  (0 = unlimited, default 64)
+ * </pre>
+ * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100)
+ * </pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  The number of threads to use for batch prediction (default 1)
+ * </pre>
+ * 
  <!-- options-end -->
  *
  * @author Len Trigg (len@reeltwo.com)
@@ -94,7 +115,8 @@ import weka.core.Utils;
  */
 public class KStar 
   extends AbstractClassifier
-  implements KStarConstants, UpdateableClassifier, TechnicalInformationHandler {
+  implements KStarConstants, UpdateableClassifier, TechnicalInformationHandler,
+             BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = 332458330800479083L;
@@ -127,7 +149,13 @@ public class KStar
    * A custom data structure for caching distinct attribute values
    * and their scale factor or stop parameter.
    */
-  protected KStarCache [] m_Cache;
+  protected transient KStarCache [] m_Cache;
+
+  /** The maximum memory of the caches in megabytes (0 = unlimited) */
+  protected int m_CacheSizeMB = 64;
+
+  /** The number of threads to use for batch prediction */
+  protected int m_NumExecutionSlots = 1;
 
   /** missing value treatment */
   protected int m_MissingMode = M_AVERAGE;
@@ -268,25 +296,14 @@ public class KStar
       classProbability[i] = 0.0;
     }
     predictedValue[0] = 0.0;
-    if (m_InitFlag == ON) {
-	// need to compute them only once and will be used for all instances.
-	// We are doing this because the evaluation module controls the calls. 
-      if (m_BlendMethod == B_ENTROPY) {
-	generateRandomClassColomns();
-      }
-      m_Cache = new KStarCache[m_NumAttributes];
-      for (int i=0; i<m_NumAttributes;i++) {
-	m_Cache[i] = new KStarCache();
-      }
-      m_InitFlag = OFF;
-      //      System.out.println("Computing...");
-    }
+    KStarCache [] cache = getCache();
     // init done.
     Instance trainInstance;
     Enumeration enu = m_Train.enumerateInstances();
     while ( enu.hasMoreElements() ) {
       trainInstance = (Instance)enu.nextElement();
-      transProb = instanceTransformationProbability(instance, trainInstance);      
+      transProb = instanceTransformationProbability(instance, trainInstance,
+						    cache);
       switch ( m_ClassType )
 	{
 	case Attribute.NOMINAL:
@@ -312,6 +329,88 @@ public class KStar
     }
   }
 
+  /**
+   * Returns the caches of the attributes, initializing them (and the random
+   * class columns) if necessary. Synchronized, since predictions may be
+   * made by several threads at the same time.
+   *
+   * @return the caches, one per attribute
+   */
+  protected synchronized KStarCache [] getCache() {
+    if (m_InitFlag == ON) {
+      // need to compute them only once and will be used for all instances.
+      // We are doing this because the evaluation module controls the calls. 
+      if (m_BlendMethod == B_ENTROPY) {
+	generateRandomClassColomns();
+      }
+      m_Cache = null;
+      m_InitFlag = OFF;
+    }
+    if (m_Cache == null) {
+      // the limit is shared among the attributes
+      long maxBytes = (long) m_CacheSizeMB * 1024 * 1024 
+	/ Math.max(1, m_NumAttributes - 1);
+      m_Cache = new KStarCache[m_NumAttributes];
+      for (int i=0; i<m_NumAttributes;i++) {
+	m_Cache[i] = new KStarCache(maxBytes);
+      }
+    }
+    return m_Cache;
+  }
+
+  /**
+   * Computes the distributions for a batch of instances. If more than one
+   * execution slot is used, the batch is split into one contiguous part 
+   * per thread.
+   *
+   * @param insts the instances to compute the distributions for
+   * @return the class probability distributions, one for each instance
+   * @throws Exception if an error occurred during the prediction
+   */
+  public double [][] distributionsForInstances(final Instances insts)
+    throws Exception {
+
+    final double [][] result = new double [insts.numInstances()][];
+    int numThreads = Math.min(m_NumExecutionSlots, insts.numInstances());
+    if (numThreads <= 1) {
+      for (int i = 0; i < result.length; i++) {
+	result[i] = distributionForInstance(insts.instance(i));
+      }
+      return result;
+    }
+
+    List<Future<Object>> futures = new ArrayList<Future<Object>>();
+    ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+    try {
+      for (int n = 0; n < numThreads; n++) {
+	final int from = (int) ((long) result.length * n / numThreads);
+	final int to = (int) ((long) result.length * (n + 1) / numThreads);
+	futures.add(pool.submit(new Callable<Object>() {
+	  public Object call() throws Exception {
+	    for (int i = from; i < to; i++) {
+	      result[i] = distributionForInstance(insts.instance(i));
+	    }
+	    return null;
+	  }
+	}));
+      }
+      for (Future<Object> future : futures) {
+	try {
+	  future.get();
+	} catch (ExecutionException e) {
+	  if (e.getCause() instanceof Exception) {
+	    throw (Exception) e.getCause();
+	  }
+	  throw e;
+	}
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    return result;
+  }
+
   /**
    * Calculate the probability of the first instance transforming into the 
    * second instance:
@@ -320,10 +419,12 @@ public class KStar
    * 
    * @param first the test instance
    * @param second the train instance
+   * @param cache the caches of the attributes
    * @return transformation probability value
    */
   private double instanceTransformationProbability(Instance first, 
-						   Instance second) {
+						   Instance second,
+						   KStarCache [] cache) {
     String debug = "(KStar.instanceTransformationProbability) ";
     double transProb = 1.0;
     int numMissAttr = 0;
@@ -335,7 +436,7 @@ public class KStar
 	numMissAttr++;
 	continue;
       }
-      transProb *= attrTransProb(first, second, i);
+      transProb *= attrTransProb(first, second, i, cache);
       // normilize for missing values
       if (numMissAttr != m_NumAttributes) {
 	transProb = Math.pow(transProb, (double)m_NumAttributes / 
@@ -356,9 +457,11 @@ public class KStar
    * @param first the test instance.
    * @param second the train instance.
    * @param col the index of the attribute in the instance.
+   * @param cache the caches of the attributes
    * @return the value of the transformation probability.
    */
-  private double attrTransProb(Instance first, Instance second, int col) {
+  private double attrTransProb(Instance first, Instance second, int col,
+			       KStarCache [] cache) {
     String debug = "(KStar.attrTransProb)";
     double transProb = 0.0;
     KStarNominalAttribute ksNominalAttr;
@@ -368,7 +471,7 @@ public class KStar
       case Attribute.NOMINAL:
 	ksNominalAttr = new KStarNominalAttribute(first, second, col, m_Train, 
 						  m_RandClassCols, 
-						  m_Cache[col]);
+						  cache[col]);
 	ksNominalAttr.setOptions(m_MissingMode, m_BlendMethod, m_GlobalBlend);
 	transProb = ksNominalAttr.transProb();
 	ksNominalAttr = null;
@@ -377,7 +480,7 @@ public class KStar
       case Attribute.NUMERIC:
 	ksNumericAttr = new KStarNumericAttribute(first, second, col, 
 						  m_Train, m_RandClassCols, 
-						  m_Cache[col]);
+						  cache[col]);
 	ksNumericAttr.setOptions(m_MissingMode, m_BlendMethod, m_GlobalBlend);
 	transProb = ksNumericAttr.transProb();
 	ksNumericAttr = null;
@@ -426,7 +529,7 @@ public class KStar
    */
   public Enumeration listOptions() {
 
-    Vector optVector = new Vector( 3 );
+    Vector optVector = new Vector( 6 );
     optVector.addElement(new Option(
 	      "\tManual blend setting (default 20%)\n",
 	      "B", 1, "-B <num>"));
@@ -437,6 +540,14 @@ public class KStar
 	      "\tSpecify the missing value treatment mode (default a)\n"
 	      +"\tValid options are: a(verage), d(elete), m(axdiff), n(ormal)\n",
 	      "M", 1,"-M <char>"));
+    optVector.addElement(new Option(
+	      "\tThe maximum memory of the caches in megabytes\n"
+	      +"\t(0 = unlimited, default 64)\n",
+	      "cache-mb", 1, "-cache-mb <num>"));
+    optVector.addElement(batchSizeOption());
+    optVector.addElement(new Option(
+	      "\tThe number of threads to use for batch prediction (default 1)\n",
+	      "num-slots", 1, "-num-slots <num>"));
     return optVector.elements();
   }
    
@@ -504,6 +615,77 @@ public class KStar
     return false;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String cacheSizeMBTipText() {
+    return "The maximum memory (in megabytes) that the caches of the "
+      + "attribute parameters use together, 0 for unlimited. Values that "
+      + "do not fit are computed again when needed.";
+  }
+
+  /**
+   * Set the maximum memory of the caches.
+   * @param value the memory in megabytes, 0 for unlimited
+   */
+  public synchronized void setCacheSizeMB(int value) {
+    m_CacheSizeMB = Math.max(0, value);
+    m_Cache = null;
+  }
+
+  /**
+   * Get the maximum memory of the caches.
+   * @return the memory in megabytes, 0 for unlimited
+   */
+  public int getCacheSizeMB() {
+    return m_CacheSizeMB;
+  }
+
+  /**
+   * Set the preferred batch size for batch prediction.
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for batch prediction. The caches "
+      + "are shared by the threads and the predictions are the same for "
+      + "any number of threads.";
+  }
+
+  /**
+   * Set the number of threads to use for batch prediction.
+   * @param numSlots the number of threads
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of threads to use for batch prediction.
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Parses a given list of options. <p/>
    *
@@ -523,6 +705,19 @@ public class KStar
    *  Valid options are: a(verage), d(elete), m(axdiff), n(ormal)
    * </pre>
    * 
+   * <pre> -cache-mb &lt;num&gt;
+   *  The maximum memory of the caches in megabytes
+   *  (0 = unlimited, default 64)
+   * </pre>
+   * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100)
+   * </pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  The number of threads to use for batch prediction (default 1)
+   * </pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -556,6 +751,22 @@ public class KStar
 	setMissingMode(new SelectedTag(M_AVERAGE, TAGS_MISSING));
       }
     }
+
+    String cacheStr = Utils.getOption("cache-mb", options);
+    if (cacheStr.length() != 0) {
+      setCacheSizeMB(Integer.parseInt(cacheStr));
+    } else {
+      setCacheSizeMB(64);
+    }
+
+    setBatchSizeOption(options);
+
+    String numSlots = Utils.getOption("num-slots", options);
+    if (numSlots.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(numSlots));
+    } else {
+      setNumExecutionSlots(1);
+    }
     Utils.checkForRemainingOptions(options);
   }
 
@@ -566,8 +777,8 @@ public class KStar
    * @return an array of strings suitable for passing to setOptions()
    */
   public String [] getOptions() {
-    // -B <num> -E -M <char>
-    String [] options = new String [ 5 ];
+    // -B <num> -E -M <char> -cache-mb <num> -batch-size <size> -num-slots <num>
+    String [] options = new String [ 11 ];
     int itr = 0;
     options[itr++] = "-B";
     options[itr++] = "" + m_GlobalBlend;
@@ -589,6 +800,20 @@ public class KStar
     else if (m_MissingMode == M_NORMAL) {
       options[itr++] = "" + "n";
     }
+
+    if (m_CacheSizeMB != 64) {
+      options[itr++] = "-cache-mb";
+      options[itr++] = "" + m_CacheSizeMB;
+    }
+
+    for (String option : getBatchSizeOptions()) {
+      options[itr++] = option;
+    }
+
+    if (m_NumExecutionSlots != 1) {
+      options[itr++] = "-num-slots";
+      options[itr++] = "" + m_NumExecutionSlots;
+    }
     while (itr < options.length) {
       options[itr++] = "";
     }
@@ -714,4 +939,3 @@ public class KStar
   }
 
 } // class end
-
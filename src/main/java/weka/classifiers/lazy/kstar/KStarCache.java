@@ -24,13 +24,28 @@
 package weka.classifiers.lazy.kstar;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
 
 /**
  * A class representing the caching system used to keep track of each attribute
- * value and its corresponding scale factor or stop parameter.
+ * value and its corresponding scale factor or stop parameter. <p/>
+ *
+ * The cache is an open-addressing hashtable of primitive values: every slot
+ * holds the bits of the key (the attribute value), the scale factor/stop
+ * parameter and the transformation probability to a missing value in
+ * three consecutive elements of a single array. A key is only looked for in
+ * the first few slots following its hash position; if all of them are
+ * taken once the table cannot grow any more, one of them is evicted. Hence
+ * the memory used by the cache can be bounded. Evicted values are simply
+ * computed again. <p/>
+ *
+ * Lookups do not lock and can be performed concurrently by several threads,
+ * while storing values is synchronized. A slot is published by writing its
+ * key last and a lookup re-reads the key after the values, so a lookup never
+ * returns values that belong to a different key.
  *
  * @author Len Trigg (len@reeltwo.com)
  * @author Abdelaziz Mahoui (am14@cs.waikato.ac.nz)
@@ -40,274 +55,247 @@ public class KStarCache
   implements Serializable, RevisionHandler {
 
   /** for serialization */
-  private static final long serialVersionUID = -7693632394267140678L;
-  
+  private static final long serialVersionUID = -3187620962390716453L;
+
+  /** the number of bytes that a slot of the table uses */
+  public static final int SLOT_BYTES = 3 * 8;
+
+  /** the initial number of slots */
+  protected static final int INITIAL_CAPACITY = 64;
+
+  /** the maximum number of slots (the array needs 3 elements per slot) */
+  protected static final int MAXIMUM_CAPACITY = 1 << 29;
+
+  /** the number of slots a key can be stored in, starting at its hash 
+   * position */
+  protected static final int MAX_PROBES = 16;
+
+  /** the table grows when more than this fraction of the slots is used */
+  protected static final double LOAD_FACTOR = 0.75;
+
+  /** the key of unused slots (a NaN that doubleToLongBits never returns) */
+  protected static final long EMPTY = -1L;
+
+  /** the slots: key bits, value bits and missing probability bits */
+  protected volatile AtomicLongArray m_Table;
+
+  /** the maximum number of slots */
+  protected int m_MaxCapacity;
+
+  /** the number of used slots */
+  protected int m_Count;
+
+  /** the number of evicted entries */
+  protected long m_Evictions;
+
   /**
-   * cache table
+   * Initializes a cache of unlimited size.
    */
-  CacheTable m_Cache = new CacheTable();
-  
+  public KStarCache() {
+    this(0);
+  }
+
   /**
-   * Stores the specified values in the cahce table for easy retrieval.
+   * Initializes a cache that uses at most (about) the given number of bytes.
    *
-   * @param key attribute value used key to lookup the cache table.
-   * @param value cache parameter: attribute scale/stop parameter.
-   * @param pmiss cache parameter: transformation probability to 
-   * attribute with missing value.
+   * @param maxBytes the maximum memory to use, 0 for unlimited
    */
-  public void store(double key, double value, double pmiss) {
-    if ( !m_Cache.containsKey(key) ) {
-      m_Cache.insert(key, value, pmiss);
+  public KStarCache(long maxBytes) {
+    m_MaxCapacity = MAXIMUM_CAPACITY;
+    if (maxBytes > 0) {
+      m_MaxCapacity = MAX_PROBES;
+      while ((m_MaxCapacity < MAXIMUM_CAPACITY) 
+	     && ((long) m_MaxCapacity * 2 * SLOT_BYTES <= maxBytes)) {
+	m_MaxCapacity *= 2;
+      }
     }
+    m_Table = newTable(Math.min(INITIAL_CAPACITY, m_MaxCapacity));
   }
-  
+
   /**
-   * Checks if the specified key maps with an entry in the cache table
+   * Returns a new, empty table.
    *
-   * @param key the key to map with an entry in the hashtable.
+   * @param capacity the number of slots
+   * @return the table
    */
-  public boolean containsKey(double key) {
-    if ( m_Cache.containsKey(key) ) {
-      return true;
+  protected static AtomicLongArray newTable(int capacity) {
+    AtomicLongArray result = new AtomicLongArray(3 * capacity);
+    for (int i = 0; i < capacity; i++) {
+      result.lazySet(3 * i, EMPTY);
     }
-    return false;
+    return result;
   }
-  
+
   /**
-   * Returns the values in the cache mapped by the specified key
+   * Returns the hash position of a key.
    *
-   * @param key the key used to retrieve the table entry.
+   * @param bits the bits of the key
+   * @param capacity the number of slots (a power of 2)
+   * @return the slot
    */
-  public TableEntry getCacheValues( double key ) {
-    if ( m_Cache.containsKey(key) ) {
-      return m_Cache.getEntry(key);
-    }
-    return null;
+  protected static int position(long bits, int capacity) {
+    int h = (int) (bits ^ (bits >>> 32));
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h & (capacity - 1);
   }
 
   /**
-   * A custom hashtable class to support the caching system.
+   * Stores the specified values in the cahce table for easy retrieval.
    *
+   * @param key attribute value used key to lookup the cache table.
+   * @param value cache parameter: attribute scale/stop parameter.
+   * @param pmiss cache parameter: transformation probability to 
+   * attribute with missing value.
    */
-  public class CacheTable
-    implements Serializable, RevisionHandler {
-
-    /** for serialization */
-    private static final long serialVersionUID = -8086106452588253423L;
-
-    /** The hash table data. */
-    private TableEntry [] m_Table;
-
-    /** The total number of entries in the hash table. */
-    private int m_Count;
-
-    /** Rehashes the table when count exceeds this threshold. */
-    private int m_Threshold;
-
-    /** The load factor for the hashtable. */
-    private float m_LoadFactor;
-
-    /** The default size of the hashtable */
-    private final int DEFAULT_TABLE_SIZE = 101;
-
-    /** The default load factor for the hashtable */
-    private final float DEFAULT_LOAD_FACTOR = 0.75f;
-
-    //    private final float DEFAULT_LOAD_FACTOR = 0.5f;
-    /** Accuracy value for equality */
-    private final double EPSILON = 1.0E-5;
-    
-    /**
-     * Constructs a new hashtable with a default capacity and load factor.
-     */
-    public CacheTable(int size, float loadFactor) {
-      m_Table = new TableEntry[size];
-      m_LoadFactor = loadFactor;
-      m_Threshold = (int)(size * loadFactor);
-      m_Count = 0;
-    }
-    
-    /**
-     * Constructs a new hashtable with a default capacity and load factor.
-     */
-    public CacheTable() {
-      this(101, 0.75f);
-    }
-    
-    /**
-     * Tests if the specified double is a key in this hashtable.
-     */
-    public boolean containsKey(double key) {
-      TableEntry [] table = m_Table;
-      int hash = hashCode(key);
-      int index = (hash & 0x7FFFFFFF) % table.length;
-      for (TableEntry e = table[index] ; e != null ; e = e.next) {
-	if ((e.hash == hash) && (Math.abs(e.key - key) < EPSILON)) {
-	  return true;
-	}
-      }
-      return false;
+  public synchronized void store(double key, double value, double pmiss) {
+    AtomicLongArray table = m_Table;
+    int capacity = table.length() / 3;
+    if ((m_Count >= capacity * LOAD_FACTOR) && (capacity < m_MaxCapacity)) {
+      table = rehash(table, capacity * 2);
+      m_Table = table;
     }
-    
-    /**
-     * Inserts a new entry in the hashtable using the specified key. 
-     * If the key already exist in the hashtable, do nothing.
-     */
-    public void insert(double key, double value, double pmiss) {
-      // Makes sure the key is not already in the hashtable.
-      TableEntry e, ne;
-      TableEntry [] table = m_Table;
-      int hash = hashCode(key);
-      int index = (hash & 0x7FFFFFFF) % table.length;
-      // start looking along the chain
-      for (e = table[index] ; e != null ; e = e.next) {
-	if ((e.hash == hash) && (Math.abs(e.key - key) < EPSILON)) {
-	  return;
-	}
+    insert(table, Double.doubleToLongBits(key), Double.doubleToLongBits(value),
+	   Double.doubleToLongBits(pmiss));
+  }
+
+  /**
+   * Inserts an entry into the table, unless its key is already present.
+   * The values are written before the key, so that lookups never see
+   * the key without its values. If all the slots of the key are taken, 
+   * one of them is evicted (this happens rarely before the table has 
+   * reached its maximum size).
+   *
+   * @param table the table to insert into
+   * @param key the bits of the key
+   * @param value the bits of the value
+   * @param pmiss the bits of the missing probability
+   */
+  protected void insert(AtomicLongArray table, long key, long value, 
+			long pmiss) {
+    int capacity = table.length() / 3;
+    int pos = position(key, capacity);
+    for (int i = 0; i < MAX_PROBES; i++) {
+      int slot = 3 * ((pos + i) & (capacity - 1));
+      long current = table.get(slot);
+      if (current == key) {
+	return;
       }
-      // At this point, key is not in table.
-      // Creates a new entry.
-      ne = new TableEntry( hash, key, value, pmiss, table[index] );
-      // Put entry at the head of the chain.
-      table[index] = ne;
-      m_Count++;
-      // Rehash the table if the threshold is exceeded
-      if (m_Count >= m_Threshold) {
-	rehash();
+      if (current == EMPTY) {
+	table.lazySet(slot + 1, value);
+	table.lazySet(slot + 2, pmiss);
+	table.lazySet(slot, key);
+	m_Count++;
+	return;
       }
     }
-    
-    /**
-     * Returns the table entry to which the specified key is mapped in 
-     * this hashtable.
-     * @return a table entry.
-     */
-    public TableEntry getEntry(double key) {
-      TableEntry [] table = m_Table;
-      int hash = hashCode(key);
-      int index = (hash & 0x7FFFFFFF) % table.length;
-      for (TableEntry e = table[index] ; e != null ; e = e.next) {
-	if ((e.hash == hash) && (Math.abs(e.key - key) < EPSILON)) {
-	  return e;
-	}
+
+    // all slots are taken: replace one of them, in turns
+    int slot = 3 * ((pos + (int) (m_Evictions % MAX_PROBES)) & (capacity - 1));
+    table.lazySet(slot, EMPTY);
+    table.lazySet(slot + 1, value);
+    table.lazySet(slot + 2, pmiss);
+    table.lazySet(slot, key);
+    m_Evictions++;
+  }
+
+  /**
+   * Copies the entries into a table with the given number of slots.
+   *
+   * @param table the current table
+   * @param capacity the number of slots of the new table
+   * @return the new table
+   */
+  protected AtomicLongArray rehash(AtomicLongArray table, int capacity) {
+    AtomicLongArray result = newTable(capacity);
+    m_Count = 0;
+    for (int slot = 0; slot < table.length(); slot += 3) {
+      long key = table.get(slot);
+      if (key != EMPTY) {
+	insert(result, key, table.get(slot + 1), table.get(slot + 2));
       }
-      return null;
-    }
-    
-    /**
-     * Returns the number of keys in this hashtable.
-     * @return the number of keys in this hashtable.
-     */
-    public int size() {
-      return m_Count;
     }
-    
-    /**
-     * Tests if this hashtable maps no keys to values.
-     * @return true if this hastable maps no keys to values.
-     */
-    public boolean isEmpty() {
-      return m_Count == 0;
-    }
-    
-    /**
-     * Clears this hashtable so that it contains no keys.
-     */
-    public void clear() {
-      TableEntry table[] = m_Table;
-      for (int index = table.length; --index >= 0; ) {
-	table[index] = null;
+    return result;
+  }
+
+  /**
+   * Retrieves the values mapped by the specified key.
+   *
+   * @param key the key used to retrieve the values.
+   * @param values the array to store the scale/stop parameter (index 0)
+   * and the missing probability (index 1) in
+   * @return true if the key was found
+   */
+  public boolean lookup(double key, double[] values) {
+    AtomicLongArray table = m_Table;
+    int capacity = table.length() / 3;
+    long bits = Double.doubleToLongBits(key);
+    int pos = position(bits, capacity);
+    for (int i = 0; i < MAX_PROBES; i++) {
+      int slot = 3 * ((pos + i) & (capacity - 1));
+      long current = table.get(slot);
+      if (current == EMPTY) {
+	return false;
       }
-      m_Count = 0;
-    }
-    
-    /**
-     * Rehashes the contents of the hashtable into a hashtable with a 
-     * larger capacity. This method is called automatically when the 
-     * number of keys in the hashtable exceeds this hashtable's capacity 
-     * and load factor. 
-     */
-    private void rehash() {
-      int oldCapacity = m_Table.length;
-      TableEntry [] oldTable = m_Table;    
-      int newCapacity = oldCapacity * 2 + 1;
-      TableEntry [] newTable = new TableEntry[newCapacity];
-      m_Threshold = (int)(newCapacity * m_LoadFactor);
-      m_Table = newTable;
-      TableEntry e, old;
-      for (int i = oldCapacity ; i-- > 0 ;) {
-	for (old = oldTable[i] ; old != null ; ) {
-	  e = old;
-	  old = old.next;
-	  int index = (e.hash & 0x7FFFFFFF) % newCapacity;
-	  e.next = newTable[index];
-	  newTable[index] = e;
+      if (current == bits) {
+	long value = table.get(slot + 1);
+	long pmiss = table.get(slot + 2);
+	// the slot may have been reused in the meantime
+	if (table.get(slot) != bits) {
+	  return false;
 	}
+	values[0] = Double.longBitsToDouble(value);
+	values[1] = Double.longBitsToDouble(pmiss);
+	return true;
       }
     }
-    
-    /**
-     * Returns the hash code of the specified double.
-     * @return the hash code of the specified double.
-     */
-    private int hashCode(double key) {
-      long bits = Double.doubleToLongBits(key);
-      return (int)(bits ^ (bits >> 32));
-    }
-    
-    /**
-     * Returns the revision string.
-     * 
-     * @return		the revision
-     */
-    public String getRevision() {
-      return RevisionUtils.extract("$Revision: 8034 $");
-    }
-  } // CacheTable
+    return false;
+  }
   
   /**
-   * Hashtable collision list.
+   * Checks if the specified key maps with an entry in the cache table
+   *
+   * @param key the key to map with an entry in the hashtable.
    */
-  public class TableEntry
-    implements Serializable, RevisionHandler {
-
-    /** for serialization */
-    private static final long serialVersionUID = 4057602386766259138L;
-
-    /** attribute value hash code */
-    public int hash;
-
-    /** attribute value */
-    public double key;
+  public boolean containsKey(double key) {
+    return lookup(key, new double[2]);
+  }
 
-    /** scale factor or stop parameter */
-    public double value;
+  /**
+   * Returns the number of entries in the cache.
+   *
+   * @return the number of entries
+   */
+  public synchronized int size() {
+    return m_Count;
+  }
 
-    /** transformation probability to missing value */
-    public double pmiss;
+  /**
+   * Returns the number of entries that have been evicted so far.
+   *
+   * @return the number of evictions
+   */
+  public synchronized long getEvictions() {
+    return m_Evictions;
+  }
 
-    /** next table entry (separate chaining) */
-    public TableEntry next = null;
+  /**
+   * Returns the number of bytes used by the table.
+   *
+   * @return the memory used
+   */
+  public long getMemoryUsage() {
+    return (long) m_Table.length() * 8;
+  }
 
-    /** Constructor */
-    public TableEntry(int hash, double key, double value, 
-		      double pmiss, TableEntry next) {
-      this.hash  = hash;
-      this.key   = key;
-      this.value = value;
-      this.pmiss = pmiss;
-      this.next  = next;
-    }
-    
-    /**
-     * Returns the revision string.
-     * 
-     * @return		the revision
-     */
-    public String getRevision() {
-      return RevisionUtils.extract("$Revision: 8034 $");
-    }
-  }  // TableEntry
+  /**
+   * Removes all entries from the cache.
+   */
+  public synchronized void clear() {
+    m_Table = newTable(Math.min(INITIAL_CAPACITY, m_MaxCapacity));
+    m_Count = 0;
+  }
   
   /**
    * Returns the revision string.
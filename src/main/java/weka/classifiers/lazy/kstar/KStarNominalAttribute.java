@@ -147,11 +147,10 @@ public class KStarNominalAttribute
     double transProb = 0.0;
     // check if the attribute value has been encountred before
     // in which case it should be in the nominal cache
-    if (m_Cache.containsKey(m_Test.value(m_AttrIndex))) {
-      KStarCache.TableEntry te = 
-	m_Cache.getCacheValues(m_Test.value(m_AttrIndex));
-      m_Stop = te.value;
-      m_MissingProb = te.pmiss;
+    double [] cached = new double[2];
+    if (m_Cache.lookup(m_Test.value(m_AttrIndex), cached)) {
+      m_Stop = cached[0];
+      m_MissingProb = cached[1];
     }
     else {
       generateAttrDistribution();
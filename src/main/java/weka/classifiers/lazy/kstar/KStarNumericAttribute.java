@@ -146,11 +146,10 @@ public class KStarNumericAttribute
     double transProb, distance, scale;
     // check if the attribute value has been encountred before
     // in which case it should be in the numeric cache
-    if ( m_Cache.containsKey(m_Test.value(m_AttrIndex))) {
-      KStarCache.TableEntry te = 
-	m_Cache.getCacheValues( m_Test.value(m_AttrIndex) );
-      m_Scale = te.value;
-      m_MissingProb = te.pmiss;
+    double [] cached = new double[2];
+    if (m_Cache.lookup(m_Test.value(m_AttrIndex), cached)) {
+      m_Scale = cached[0];
+      m_MissingProb = cached[1];
     }
     else {
       if (m_BlendMethod == B_ENTROPY) {
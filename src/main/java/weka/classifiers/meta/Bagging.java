@@ -26,8 +26,11 @@ import java.util.Random;
 import java.util.Vector;
 import java.util.ArrayList;
 
+import weka.classifiers.Classifier;
 import weka.classifiers.RandomizableParallelIteratedSingleClassifierEnhancer;
 import weka.core.AdditionalMeasureProducer;
+import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -77,6 +80,9 @@ import weka.core.PartitionGenerator;
  * <pre> -O
  *  Calculate the out of bag error.</pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100).</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)</pre>
@@ -128,7 +134,7 @@ import weka.core.PartitionGenerator;
 public class Bagging
   extends RandomizableParallelIteratedSingleClassifierEnhancer 
   implements WeightedInstancesHandler, AdditionalMeasureProducer,
-             TechnicalInformationHandler, PartitionGenerator {
+             TechnicalInformationHandler, PartitionGenerator, BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = -115879962237199703L;
@@ -141,7 +147,7 @@ public class Bagging
 
   /** The out of bag error that has been calculated */
   protected double m_OutOfBagError;  
-    
+
   /**
    * Constructor.
    */
@@ -202,7 +208,7 @@ public class Bagging
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(2);
+    Vector newVector = new Vector(3);
 
     newVector.addElement(new Option(
               "\tSize of each bag, as a percentage of the\n" 
@@ -211,6 +217,7 @@ public class Bagging
     newVector.addElement(new Option(
               "\tCalculate the out of bag error.",
               "O", 0, "-O"));
+    newVector.addElement(batchSizeOption());
 
     Enumeration enu = super.listOptions();
     while (enu.hasMoreElements()) {
@@ -233,6 +240,9 @@ public class Bagging
    * <pre> -O
    *  Calculate the out of bag error.</pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100).</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)</pre>
@@ -290,6 +300,8 @@ public class Bagging
 
     setCalcOutOfBag(Utils.getFlag('O', options));
 
+    setBatchSizeOption(options);
+
     super.setOptions(options);
   }
 
@@ -302,7 +314,7 @@ public class Bagging
 
 
     String [] superOptions = super.getOptions();
-    String [] options = new String [superOptions.length + 3];
+    String [] options = new String [superOptions.length + 5];
 
     int current = 0;
     options[current++] = "-P"; 
@@ -312,6 +324,10 @@ public class Bagging
       options[current++] = "-O";
     }
 
+    for (String option : getBatchSizeOptions()) {
+      options[current++] = option;
+    }
+
     System.arraycopy(superOptions, 0, options, current, 
 		     superOptions.length);
 
@@ -322,6 +338,24 @@ public class Bagging
     return options;
   }
 
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -390,6 +424,16 @@ public class Bagging
     
     return m_OutOfBagError;
   }
+
+  /**
+   * Returns the classifiers that make up the ensemble.
+   *
+   * @return the classifiers, null if the ensemble hasn't been built yet
+   */
+  public Classifier[] getMemberClassifiers() {
+    
+    return m_Classifiers;
+  }
   
   /**
    * Returns an enumeration of the additional measure names.
@@ -593,6 +637,64 @@ public class Bagging
     }
   }
 
+  /**
+   * Calculates the class membership probabilities for the given test
+   * instances. Base classifiers that are batch predictors get all the
+   * instances at once.
+   *
+   * @param insts the instances to be classified
+   * @return predicted class probability distributions, one for each
+   * instance
+   * @throws Exception if distributions can't be computed successfully 
+   */
+  public double[][] distributionsForInstances(Instances insts) 
+    throws Exception {
+
+    boolean numeric = insts.classAttribute().isNumeric();
+    double [][] sums = new double [insts.numInstances()][insts.numClasses()];
+    double [][] dists;
+    double [] newProbs;
+
+    for (int i = 0; i < m_NumIterations; i++) {
+      if (m_Classifiers[i] instanceof BatchPredictor) {
+	dists = ((BatchPredictor)m_Classifiers[i]).
+	  distributionsForInstances(insts);
+      } else {
+	dists = null;
+      }
+      for (int k = 0; k < sums.length; k++) {
+	if (numeric) {
+	  if (dists == null) {
+	    sums[k][0] += m_Classifiers[i].classifyInstance(insts.instance(k));
+	  } else if (dists[k] == null) {
+	    throw new Exception("Null distribution predicted");
+	  } else if (insts.classAttribute().type() == Attribute.NUMERIC) {
+	    // same as AbstractClassifier.classifyInstance(Instance)
+	    sums[k][0] += dists[k][0];
+	  } else {
+	    sums[k][0] += Utils.missingValue();
+	  }
+	} else {
+	  if (dists == null) {
+	    newProbs = m_Classifiers[i].distributionForInstance(insts.instance(k));
+	  } else {
+	    newProbs = dists[k];
+	  }
+	  for (int j = 0; j < newProbs.length; j++)
+	    sums[k][j] += newProbs[j];
+	}
+      }
+    }
+    for (int k = 0; k < sums.length; k++) {
+      if (numeric) {
+	sums[k][0] /= (double)m_NumIterations;
+      } else if (!Utils.eq(Utils.sum(sums[k]), 0)) {
+	Utils.normalize(sums[k]);
+      }
+    }
+    return sums;
+  }
+
   /**
    * Returns description of the bagged classifier.
    *
@@ -24,10 +24,21 @@ package weka.classifiers.meta;
 import java.io.Serializable;
 import java.io.StreamTokenizer;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.classifiers.RandomizableSingleClassifierEnhancer;
 import weka.core.Capabilities;
@@ -87,6 +98,10 @@ import weka.core.Utils;
  *  once to optimise over several classifier options
  *  simultaneously.</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 1)</pre>
@@ -274,6 +289,10 @@ public class CVParameterSelection
   /** The number of folds used in cross-validation */
   protected int m_NumFolds = 10;
 
+  /** The number of execution slots (threads) used to cross-validate the
+      parameter combinations */
+  protected int m_NumExecutionSlots = 1;
+
   /**
    * Create the options array to pass to the classifier. The parameter
    * values and positions are taken from m_ClassifierOptions and
@@ -318,17 +337,14 @@ public class CVParameterSelection
   }
 
   /**
-   * Finds the best parameter combination. (recursive for each parameter
-   * being optimised).
-   * 
-   * @param depth the index of the parameter to be optimised at this level
-   * @param trainData the data the search is based on
-   * @param random a random number generator
-   * @throws Exception if an error occurs
+   * Collects the parameter combinations to cross-validate, in the order in
+   * which they are searched. (recursive for each parameter being optimised).
+   *
+   * @param depth the index of the parameter to be varied at this level
+   * @param combinations the list to add the classifier options to
    */
-  protected void findParamsByCrossValidation(int depth, Instances trainData,
-					     Random random)
-    throws Exception {
+  protected void collectParameterCombinations(int depth,
+					      List<String[]> combinations) {
 
     if (depth < m_CVParams.size()) {
       CVParameter cvParam = (CVParameter)m_CVParams.elementAt(depth);
@@ -349,34 +365,167 @@ public class CVParameterSelection
       for(cvParam.m_ParamValue = cvParam.m_Lower; 
 	  cvParam.m_ParamValue <= upper; 
 	  cvParam.m_ParamValue += increment) {
-	findParamsByCrossValidation(depth + 1, trainData, random);
+	collectParameterCombinations(depth + 1, combinations);
       }
     } else {
-      
-      Evaluation evaluation = new Evaluation(trainData);
+      combinations.add(createOptions());
+    }
+  }
+
+  /**
+   * Cross-validates the classifier with the given options. The
+   * evaluation is abandoned once the errors made on the folds processed
+   * so far already make the error rate clearly worse than the best one
+   * found so far.
+   *
+   * @param classifier the classifier to use
+   * @param options the classifier options to evaluate
+   * @param trainData the data the search is based on
+   * @param train the training sets of the folds
+   * @param test the test sets of the folds
+   * @param best the best error rate so far (shared by all evaluations)
+   * @return the cross-validated error rate, null if abandoned
+   * @throws Exception if an error occurs
+   */
+  protected Double evaluateParameterCombination(Classifier classifier,
+						String[] options,
+						Instances trainData,
+						Instances[] train,
+						Instances[] test,
+						double[] best)
+    throws Exception {
 
-      // Set the classifier options
-      String [] options = createOptions();
+    Evaluation evaluation = new Evaluation(trainData);
+    double totalWeight = trainData.sumOfWeights();
+    ((OptionHandler)classifier).setOptions((String[])options.clone());
+    for (int j = 0; j < m_NumFolds; j++) {
+      classifier.buildClassifier(new Instances(train[j]));
+      evaluation.setPriors(train[j]);
+      evaluation.evaluateModel(classifier, new Instances(test[j]));
+      if (j == m_NumFolds - 1) {
+	break;
+      }
+
+      // the error rate can only grow with the remaining folds
+      double bound;
+      if (trainData.classAttribute().isNominal()) {
+	bound = evaluation.incorrect() / totalWeight;
+      } else {
+	double rmse = evaluation.rootMeanSquaredError();
+	bound = Math.sqrt(rmse * rmse 
+			  * (evaluation.numInstances() - evaluation.unclassified())
+			  / totalWeight);
+      }
+      synchronized (best) {
+	if (Utils.gr(bound, best[0])) {
+	  return null;
+	}
+      }
+    }
+    double error = evaluation.errorRate();
+    synchronized (best) {
+      if (error < best[0]) {
+	best[0] = error;
+      }
+    }
+
+    return error;
+  }
+
+  /**
+   * Finds the best parameter combination. The combinations are
+   * cross-validated on the same folds, which are created only once. With
+   * more than one execution slot the combinations are evaluated
+   * concurrently, each thread working with a copy of the classifier.
+   * 
+   * @param depth the index of the parameter to be optimised at this level
+   * @param trainData the data the search is based on
+   * @param random a random number generator
+   * @throws Exception if an error occurs
+   */
+  protected void findParamsByCrossValidation(int depth, 
+					     final Instances trainData,
+					     Random random)
+    throws Exception {
+
+    List<String[]> combinations = new ArrayList<String[]>();
+    collectParameterCombinations(depth, combinations);
+
+    // We want to randomize the data the same way for every 
+    // learning scheme.
+    final Instances[] train = new Instances[m_NumFolds];
+    final Instances[] test = new Instances[m_NumFolds];
+    for (int j = 0; j < m_NumFolds; j++) {
+      train[j] = trainData.trainCV(m_NumFolds, j, new Random(1));
+      test[j] = trainData.testCV(m_NumFolds, j);
+    }
+
+    final double[] best = new double[]{Double.MAX_VALUE};
+    Double[] errors = new Double[combinations.size()];
+    if ((m_NumExecutionSlots <= 1) || (combinations.size() < 2)) {
+      for (int i = 0; i < combinations.size(); i++) {
+	errors[i] = evaluateParameterCombination(m_Classifier, 
+						 combinations.get(i), 
+						 trainData, train, test, best);
+      }
+    } else {
+      int numSlots = Math.min(m_NumExecutionSlots, combinations.size());
+      final BlockingQueue<Classifier> idle = 
+	new LinkedBlockingQueue<Classifier>();
+      Classifier[] copies = AbstractClassifier.makeCopies(m_Classifier, numSlots);
+      for (int i = 0; i < copies.length; i++) {
+	idle.add(copies[i]);
+      }
+      ExecutorService pool = Executors.newFixedThreadPool(numSlots);
+      try {
+	List<Future<Double>> futures = new ArrayList<Future<Double>>();
+	for (final String[] options : combinations) {
+	  futures.add(pool.submit(new Callable<Double>() {
+	    public Double call() throws Exception {
+	      Classifier classifier = idle.take();
+	      try {
+		return evaluateParameterCombination(classifier, options,
+						    trainData, train, test,
+						    best);
+	      } finally {
+		idle.put(classifier);
+	      }
+	    }
+	  }));
+	}
+	for (int i = 0; i < futures.size(); i++) {
+	  try {
+	    errors[i] = futures.get(i).get();
+	  } catch (ExecutionException e) {
+	    if (e.getCause() instanceof Exception) {
+	      throw (Exception)e.getCause();
+	    }
+	    throw e;
+	  }
+	}
+      } finally {
+	pool.shutdownNow();
+      }
+    }
+
+    // pick the first of the best combinations, in the order of the search
+    for (int i = 0; i < combinations.size(); i++) {
+      String [] options = combinations.get(i);
       if (m_Debug) {
 	System.err.print("Setting options for " 
 			 + m_Classifier.getClass().getName() + ":");
-	for (int i = 0; i < options.length; i++) {
-	  System.err.print(" " + options[i]);
+	for (int n = 0; n < options.length; n++) {
+	  System.err.print(" " + options[n]);
 	}
 	System.err.println("");
       }
-      ((OptionHandler)m_Classifier).setOptions(options);
-      for (int j = 0; j < m_NumFolds; j++) {
-
-        // We want to randomize the data the same way for every 
-        // learning scheme.
-	Instances train = trainData.trainCV(m_NumFolds, j, new Random(1));
-	Instances test = trainData.testCV(m_NumFolds, j);
-	m_Classifier.buildClassifier(train);
-	evaluation.setPriors(train);
-	evaluation.evaluateModel(m_Classifier, test);
+      if (errors[i] == null) {
+	if (m_Debug) {
+	  System.err.println("Cross-validation abandoned");
+	}
+	continue;
       }
-      double error = evaluation.errorRate();
+      double error = errors[i];
       if (m_Debug) {
 	System.err.println("Cross-validated error rate: " 
 			   + Utils.doubleToString(error, 6, 4));
@@ -384,7 +533,7 @@ public class CVParameterSelection
       if ((m_BestPerformance == -99) || (error < m_BestPerformance)) {
 	
 	m_BestPerformance = error;
-	m_BestClassifierOptions = createOptions();
+	m_BestClassifierOptions = options;
       }
     }
   }
@@ -428,7 +577,7 @@ public class CVParameterSelection
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(2);
+    Vector newVector = new Vector(3);
 
     newVector.addElement(new Option(
 	      "\tNumber of folds used for cross validation (default 10).",
@@ -444,6 +593,10 @@ public class CVParameterSelection
 	      + "\tonce to optimise over several classifier options\n"
 	      + "\tsimultaneously.",
 	      "P", 1, "-P <classifier parameter>"));
+    newVector.addElement(new Option(
+	      "\tNumber of execution slots.\n"
+	      + "\t(default 1 - i.e. no parallelism)",
+	      "num-slots", 1, "-num-slots <num>"));
 
 
     Enumeration enu = super.listOptions();
@@ -474,6 +627,10 @@ public class CVParameterSelection
    *  once to optimise over several classifier options
    *  simultaneously.</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 1)</pre>
@@ -519,6 +676,13 @@ public class CVParameterSelection
       }
     } while (cvParam.length() != 0);
 
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     super.setOptions(options);
   }
 
@@ -543,13 +707,21 @@ public class CVParameterSelection
     } else {
       superOptions = super.getOptions();
     }
-    String [] options = new String [superOptions.length + m_CVParams.size() * 2 + 2];
+    int numOptions = superOptions.length + m_CVParams.size() * 2 + 2;
+    if (getNumExecutionSlots() != 1) {
+      numOptions += 2;
+    }
+    String [] options = new String [numOptions];
 
     int current = 0;
     for (int i = 0; i < m_CVParams.size(); i++) {
       options[current++] = "-P"; options[current++] = "" + getCVParameter(i);
     }
     options[current++] = "-X"; options[current++] = "" + getNumFolds();
+    if (getNumExecutionSlots() != 1) {
+      options[current++] = "-num-slots"; 
+      options[current++] = "" + getNumExecutionSlots();
+    }
 
     System.arraycopy(superOptions, 0, options, current, 
 		     superOptions.length);
@@ -759,6 +931,36 @@ public class CVParameterSelection
     }
     m_NumFolds = numFolds;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads used to cross-validate the parameter "
+      + "combinations. The combinations are evaluated concurrently.";
+  }
+
+  /**
+   * Gets the number of execution slots (threads).
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Sets the number of execution slots (threads).
+   *
+   * @param numSlots the number of slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+
+    m_NumExecutionSlots = numSlots;
+  }
  
   /**
    *  Returns the type of graph this classifier
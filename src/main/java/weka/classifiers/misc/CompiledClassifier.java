@@ -0,0 +1,675 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CompiledClassifier.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.misc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import weka.classifiers.SingleClassifierEnhancer;
+import weka.classifiers.Sourcable;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ <!-- globalinfo-start -->
+ * Turns the model of a Sourcable classifier into bytecode at runtime. After building the base classifier, the source code it generates is rewritten to work on the internal values of an instance (double[] instead of Object[]), compiled in memory and loaded, and class labels are predicted with the compiled code, which the JIT compiler can optimize like any other code. Class probabilities are computed by the base classifier, since the generated source code only predicts class labels.<br/>
+ * If no Java compiler is available (e.g., when running on a JRE) or compilation fails, the base classifier's classifyInstance method is used instead.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ * 
+ * <pre> -D
+ *  If set, classifier is run in debug mode and
+ *  may output additional info to the console</pre>
+ * 
+ * <pre> -W
+ *  Full name of base classifier.
+ *  (default: weka.classifiers.trees.J48)</pre>
+ * 
+ * <pre> 
+ * Options specific to classifier weka.classifiers.trees.J48:
+ * </pre>
+ * 
+ * <pre> -U
+ *  Use unpruned tree.</pre>
+ * 
+ * <pre> -O
+ *  Do not collapse tree.</pre>
+ * 
+ * <pre> -C &lt;pruning confidence&gt;
+ *  Set confidence threshold for pruning.
+ *  (default 0.25)</pre>
+ * 
+ * <pre> -M &lt;minimum number of instances&gt;
+ *  Set minimum number of instances per leaf.
+ *  (default 2)</pre>
+ * 
+ * <pre> -R
+ *  Use reduced error pruning.</pre>
+ * 
+ * <pre> -N &lt;number of folds&gt;
+ *  Set number of folds for reduced error
+ *  pruning. One fold is used as pruning set.
+ *  (default 3)</pre>
+ * 
+ * <pre> -B
+ *  Use binary splits only.</pre>
+ * 
+ * <pre> -S
+ *  Don't perform subtree raising.</pre>
+ * 
+ * <pre> -L
+ *  Do not clean up after the tree has been built.</pre>
+ * 
+ * <pre> -A
+ *  Laplace smoothing for predicted probabilities.</pre>
+ * 
+ * <pre> -J
+ *  Do not use MDL correction for info gain on numeric attributes.</pre>
+ * 
+ * <pre> -Q &lt;seed&gt;
+ *  Seed for random data shuffling (default 1).</pre>
+ * 
+ * <pre> -presort
+ *  Sort the data only once and maintain sorted indices
+ *  for the subsets (faster on numeric attributes).</pre>
+ * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100).</pre>
+ * 
+ <!-- options-end -->
+ *
+ * @version $Revision: 9500 $
+ */
+public class CompiledClassifier
+  extends SingleClassifierEnhancer {
+
+  /** for serialization */
+  private static final long serialVersionUID = -3215781284236406172L;
+
+  /** the name of the class generated by the base classifier */
+  public final static String MODEL_CLASSNAME = "WekaCompiledModel";
+
+  /** the name of the class that adapts the generated class to CompiledModel */
+  public final static String ADAPTER_CLASSNAME = "WekaCompiledModelAdapter";
+
+  /** matches the parameter declarations of the generated methods */
+  protected final static Pattern PARAMETER =
+    Pattern.compile("Object\\s*\\[\\]\\s*i\\b");
+
+  /** matches the tests for missing values */
+  protected final static Pattern MISSING =
+    Pattern.compile("i\\[(\\d+)\\]\\s*==\\s*null");
+
+  /** matches the numeric values */
+  protected final static Pattern NUMERIC =
+    Pattern.compile("\\(\\(Double\\)\\s*i\\[(\\d+)\\]\\)(\\.doubleValue\\(\\))?");
+
+  /** matches the comparisons of nominal values */
+  protected final static Pattern NOMINAL =
+    Pattern.compile("(?:\\(\\(String\\)\\s*i\\[(\\d+)\\]\\)|i\\[(\\d+)\\])\\.equals\\(\"([^\"]*)\"\\)");
+
+  /**
+   * Interface for the compiled models.
+   */
+  public static interface CompiledModel {
+
+    /**
+     * Classifies the given values, like the static classify method of the
+     * source code generated by Sourcable classifiers, but with the
+     * internal values of the instance instead of objects.
+     *
+     * @param i		the internal values (the index for nominal
+     * 			attributes, NaN for missing values)
+     * @return		the classification
+     * @throws Exception	if classification fails
+     */
+    public double classify(double[] i) throws Exception;
+  }
+
+  /**
+   * Source code held in memory.
+   */
+  protected static class SourceFile
+    extends SimpleJavaFileObject {
+
+    /** the source code */
+    protected String m_Source;
+
+    /**
+     * Initializes the source file.
+     *
+     * @param className	the name of the class
+     * @param source	the source code
+     */
+    public SourceFile(String className, String source) {
+      super(URI.create("string:///" + className + Kind.SOURCE.extension), Kind.SOURCE);
+      m_Source = source;
+    }
+
+    /**
+     * Returns the source code.
+     *
+     * @param ignoreEncodingErrors	ignored
+     * @return		the source code
+     */
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+      return m_Source;
+    }
+  }
+
+  /**
+   * Bytecode held in memory.
+   */
+  protected static class ClassFile
+    extends SimpleJavaFileObject {
+
+    /** the bytecode */
+    protected ByteArrayOutputStream m_Bytes = new ByteArrayOutputStream();
+
+    /**
+     * Initializes the class file.
+     *
+     * @param className	the name of the class
+     */
+    public ClassFile(String className) {
+      super(URI.create("bytes:///" + className + Kind.CLASS.extension), Kind.CLASS);
+    }
+
+    /**
+     * Returns the stream the compiler writes the bytecode to.
+     *
+     * @return		the stream
+     */
+    public OutputStream openOutputStream() {
+      return m_Bytes;
+    }
+  }
+
+  /**
+   * File manager that keeps the generated bytecode in memory.
+   */
+  protected static class MemoryFileManager
+    extends ForwardingJavaFileManager<JavaFileManager> {
+
+    /** the generated classes */
+    protected Map<String,ClassFile> m_Classes = new HashMap<String,ClassFile>();
+
+    /**
+     * Initializes the file manager.
+     *
+     * @param manager	the file manager to delegate to
+     */
+    public MemoryFileManager(JavaFileManager manager) {
+      super(manager);
+    }
+
+    /**
+     * Returns an in-memory file for the bytecode of the given class.
+     *
+     * @param location	ignored
+     * @param className	the name of the class
+     * @param kind	ignored
+     * @param sibling	ignored
+     * @return		the file
+     */
+    public JavaFileObject getJavaFileForOutput(Location location,
+	String className, Kind kind, FileObject sibling) {
+      ClassFile	result;
+
+      result = new ClassFile(className);
+      m_Classes.put(className, result);
+
+      return result;
+    }
+  }
+
+  /**
+   * Class loader for the bytecode kept in memory.
+   */
+  protected static class MemoryClassLoader
+    extends ClassLoader {
+
+    /** the generated classes */
+    protected Map<String,ClassFile> m_Classes;
+
+    /**
+     * Initializes the class loader.
+     *
+     * @param parent	the parent class loader
+     * @param classes	the generated classes
+     */
+    public MemoryClassLoader(ClassLoader parent, Map<String,ClassFile> classes) {
+      super(parent);
+      m_Classes = classes;
+    }
+
+    /**
+     * Defines the given class from its bytecode.
+     *
+     * @param name	the name of the class
+     * @return		the class
+     * @throws ClassNotFoundException	if the class wasn't generated
+     */
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      ClassFile	file;
+      byte[]	bytes;
+
+      file = m_Classes.get(name);
+      if (file == null)
+	return super.findClass(name);
+      bytes = file.m_Bytes.toByteArray();
+
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  /** whether the base classifier has been built */
+  protected boolean m_ModelBuilt = false;
+
+  /** the structure of the training data */
+  protected Instances m_Header = null;
+
+  /** the compiled model (null if not compiled yet or compilation failed) */
+  protected transient CompiledModel m_CompiledModel = null;
+
+  /** whether compilation was attempted already */
+  protected transient boolean m_CompilationAttempted = false;
+
+  /** the reason why compilation failed (null if it didn't fail) */
+  protected transient String m_CompilationError = null;
+
+  /**
+   * Returns a string describing classifier
+   *
+   * @return 		a description suitable for displaying in the
+   *         		explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Turns the model of a Sourcable classifier into bytecode at runtime. "
+      + "After building the base classifier, the source code it generates is "
+      + "rewritten to work on the internal values of an instance (double[] "
+      + "instead of Object[]), compiled in memory and loaded, and class labels "
+      + "are predicted with the compiled code, which the JIT compiler can "
+      + "optimize like any other code. Class probabilities are computed by "
+      + "the base classifier, since the generated source code only predicts "
+      + "class labels.\n"
+      + "If no Java compiler is available (e.g., when running on a JRE) or "
+      + "compilation fails, the base classifier's classifyInstance method is "
+      + "used instead.";
+  }
+
+  /**
+   * String describing default classifier.
+   *
+   * @return 		the default classifier classname
+   */
+  protected String defaultClassifierString() {
+    return "weka.classifiers.trees.J48";
+  }
+
+  /**
+   * Default constructor.
+   */
+  public CompiledClassifier() {
+    m_Classifier = new weka.classifiers.trees.J48();
+  }
+
+  /**
+   * Builds the base classifier and compiles the source code generated from
+   * its model.
+   *
+   * @param data        the training instances
+   * @throws Exception  if something goes wrong
+   */
+  public void buildClassifier(Instances data) throws Exception {
+    if (!(m_Classifier instanceof Sourcable))
+      throw new IllegalArgumentException(
+	  "Base classifier must implement Sourcable: "
+	  + m_Classifier.getClass().getName());
+
+    // can classifier handle the data?
+    getCapabilities().testWithFail(data);
+
+    m_ModelBuilt           = false;
+    m_Header               = null;
+    m_CompiledModel        = null;
+    m_CompilationAttempted = false;
+    m_CompilationError     = null;
+
+    m_Classifier.buildClassifier(data);
+    m_Header     = new Instances(data, 0);
+    m_ModelBuilt = true;
+
+    getCompiledModel();
+  }
+
+  /**
+   * Rewrites the source code generated by a Sourcable classifier, which
+   * receives the values as objects (String for nominal and Double for
+   * numeric attributes, null for missing values), to work on the internal
+   * values of the instance. Nominal values are compared by their index.
+   *
+   * @param source	the generated source code
+   * @return		the rewritten source code
+   * @throws Exception	if a nominal value is unknown
+   */
+  protected String rewriteSource(String source) throws Exception {
+    StringBuffer	result;
+    Matcher		matcher;
+    String		index;
+    int			attIndex;
+    int			valIndex;
+
+    source = PARAMETER.matcher(source).replaceAll("double[] i");
+    source = MISSING.matcher(source).replaceAll("Double.isNaN(i[$1])");
+    source = NUMERIC.matcher(source).replaceAll("i[$1]");
+
+    result  = new StringBuffer();
+    matcher = NOMINAL.matcher(source);
+    while (matcher.find()) {
+      index = matcher.group(1);
+      if (index == null)
+	index = matcher.group(2);
+      attIndex = Integer.parseInt(index);
+      valIndex = m_Header.attribute(attIndex).indexOfValue(matcher.group(3));
+      if (valIndex < 0)
+	throw new Exception(
+	    "Unknown value of attribute " + (attIndex + 1) + ": "
+	    + matcher.group(3));
+      matcher.appendReplacement(
+	  result, Matcher.quoteReplacement("(i[" + attIndex + "] == " + valIndex + ")"));
+    }
+    matcher.appendTail(result);
+
+    return result.toString();
+  }
+
+  /**
+   * Generates the source code of the base classifier's model, rewritten
+   * to work on the internal values, together with an adapter implementing
+   * CompiledModel.
+   *
+   * @return		the source code of the model and the adapter
+   * @throws Exception	if generating the source code fails
+   */
+  protected String[] generateSource() throws Exception {
+    String[]	result;
+
+    result    = new String[2];
+    result[0] = rewriteSource(((Sourcable) m_Classifier).toSource(MODEL_CLASSNAME));
+    result[1] =
+        "public class " + ADAPTER_CLASSNAME + "\n"
+      + "  implements " + CompiledModel.class.getName().replace('$', '.') + " {\n"
+      + "\n"
+      + "  public double classify(double[] i) throws Exception {\n"
+      + "    return " + MODEL_CLASSNAME + ".classify(i);\n"
+      + "  }\n"
+      + "}\n";
+
+    return result;
+  }
+
+  /**
+   * Returns the classpath to compile the generated source code with: the
+   * locations of the class loaders that loaded this class and the location
+   * of this class itself (the generated adapter implements CompiledModel).
+   *
+   * @return		the classpath
+   */
+  protected String getCompileClasspath() {
+    Set<String>		paths;
+    ClassLoader		loader;
+    CodeSource		source;
+    StringBuffer	result;
+
+    paths  = new LinkedHashSet<String>();
+    loader = CompiledClassifier.class.getClassLoader();
+    while (loader != null) {
+      if (loader instanceof URLClassLoader) {
+	for (URL url: ((URLClassLoader) loader).getURLs())
+	  addClasspath(paths, url);
+      }
+      loader = loader.getParent();
+    }
+    source = CompiledClassifier.class.getProtectionDomain().getCodeSource();
+    if (source != null)
+      addClasspath(paths, source.getLocation());
+
+    result = new StringBuffer();
+    for (String path: paths) {
+      if (result.length() > 0)
+	result.append(File.pathSeparator);
+      result.append(path);
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Adds the location to the classpath, if it is a file.
+   *
+   * @param paths	the classpath so far
+   * @param url		the location to add
+   */
+  protected void addClasspath(Set<String> paths, URL url) {
+    if ((url == null) || !url.getProtocol().equals("file"))
+      return;
+    try {
+      paths.add(new File(url.toURI()).getPath());
+    }
+    catch (Exception e) {
+      paths.add(url.getPath());
+    }
+  }
+
+  /**
+   * Compiles the source code generated by the base classifier.
+   *
+   * @return		the compiled model
+   * @throws Exception	if compilation fails
+   */
+  protected CompiledModel compile() throws Exception {
+    JavaCompiler		compiler;
+    MemoryFileManager		manager;
+    List<JavaFileObject>	files;
+    List<String>		options;
+    StringWriter		output;
+    String[]			source;
+    ClassLoader			loader;
+    Boolean			success;
+
+    compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null)
+      throw new IllegalStateException("No Java compiler available!");
+
+    source = generateSource();
+    files  = new ArrayList<JavaFileObject>();
+    files.add(new SourceFile(MODEL_CLASSNAME, source[0]));
+    files.add(new SourceFile(ADAPTER_CLASSNAME, source[1]));
+
+    options = new ArrayList<String>();
+    options.add("-classpath");
+    options.add(getCompileClasspath());
+    options.add("-g:none");
+    options.add("-nowarn");
+
+    output  = new StringWriter();
+    manager = new MemoryFileManager(
+	compiler.getStandardFileManager(null, null, null));
+    try {
+      success = compiler.getTask(
+	  output, manager, null, options, null, files).call();
+    }
+    finally {
+      manager.close();
+    }
+    if (!success.booleanValue()) {
+      if (getDebug())
+	System.err.println(source[0] + "\n" + source[1]);
+      throw new Exception("Compilation failed:\n" + output);
+    }
+
+    loader = new MemoryClassLoader(getClass().getClassLoader(), manager.m_Classes);
+
+    return (CompiledModel) loader.loadClass(ADAPTER_CLASSNAME)
+	.getDeclaredConstructor().newInstance();
+  }
+
+  /**
+   * Returns the compiled model, compiling it first if necessary (e.g.,
+   * after deserialization).
+   *
+   * @return		the compiled model, null if compilation failed
+   */
+  protected CompiledModel getCompiledModel() {
+    if (m_ModelBuilt && !m_CompilationAttempted) {
+      try {
+	m_CompiledModel = compile();
+      }
+      catch (Exception e) {
+	m_CompiledModel    = null;
+	m_CompilationError = e.getMessage();
+	if (getDebug())
+	  e.printStackTrace();
+      }
+      m_CompilationAttempted = true;
+    }
+
+    return m_CompiledModel;
+  }
+
+  /**
+   * Returns whether predictions are made with the compiled model.
+   *
+   * @return		true if the model got compiled
+   */
+  public boolean isCompiled() {
+    return (getCompiledModel() != null);
+  }
+
+  /**
+   * Classifies the given test instance, with the compiled model or, if
+   * that isn't available, with the base classifier.
+   *
+   * @param instance 	the instance to be classified
+   * @return 		the predicted class value
+   * @throws Exception 	if an error occurred during the prediction
+   */
+  public double classifyInstance(Instance instance) throws Exception {
+    CompiledModel	model;
+    double[]		values;
+
+    model = getCompiledModel();
+    if (model == null)
+      return m_Classifier.classifyInstance(instance);
+
+    values = instance.toDoubleArray();
+    values[instance.classIndex()] = Utils.missingValue();
+
+    return model.classify(values);
+  }
+
+  /**
+   * Returns the class distribution of the base classifier, since the
+   * compiled model only predicts class labels.
+   *
+   * @param instance 	the instance to be classified
+   * @return 		the class distribution
+   * @throws Exception 	if an error occurred during the prediction
+   */
+  public double[] distributionForInstance(Instance instance) throws Exception {
+    return m_Classifier.distributionForInstance(instance);
+  }
+
+  /**
+   * Returns a string representation of the classifier
+   *
+   * @return		the string representation of the classifier
+   */
+  public String toString() {
+    StringBuffer	result;
+
+    result = new StringBuffer();
+    result.append("CompiledClassifier\n");
+    result.append("==================\n\n");
+    if (!m_ModelBuilt) {
+      result.append("No model built yet.\n");
+    }
+    else {
+      if (getCompiledModel() != null)
+	result.append("Predictions are made with the compiled model.\n\n");
+      else
+	result.append("Compilation failed, predictions are made with the base classifier:\n"
+	    + m_CompilationError + "\n\n");
+      result.append(m_Classifier.toString());
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+
+  /**
+   * Runs the classifier with the given options
+   *
+   * @param args	the commandline options
+   */
+  public static void main(String[] args) {
+    runClassifier(new CompiledClassifier(), args);
+  }
+}
+
@@ -102,6 +102,10 @@ import weka.core.WeightedInstancesHandler;
  * <pre> -Q &lt;seed&gt;
  *  Seed for random data shuffling (default 1).</pre>
  * 
+ * <pre> -presort
+ *  Sort the data only once and maintain sorted indices
+ *  for the subsets (faster on numeric attributes).</pre>
+ * 
  <!-- options-end -->
  *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -127,6 +131,9 @@ public class PART
   /** Use MDL correction? */
   private boolean m_useMDLcorrection = true;         
 
+  /** Sort the data only once and maintain sorted indices? */
+  private boolean m_presort = false;
+
   /** Use reduced error pruning? */
   private boolean m_reducedErrorPruning = false;
 
@@ -216,9 +223,11 @@ public class PART
     ModelSelection modSelection;	 
 
     if (m_binarySplits)
-      modSelection = new BinC45ModelSelection(m_minNumObj, instances, m_useMDLcorrection);
+      modSelection = new BinC45ModelSelection(m_minNumObj, instances, m_useMDLcorrection,
+					      m_presort);
     else
-      modSelection = new C45ModelSelection(m_minNumObj, instances, m_useMDLcorrection);
+      modSelection = new C45ModelSelection(m_minNumObj, instances, m_useMDLcorrection,
+					   m_presort);
     if (m_unpruned) 
       m_root = new MakeDecList(modSelection, m_minNumObj);
     else if (m_reducedErrorPruning) 
@@ -320,6 +329,10 @@ public class PART
     newVector.
       addElement(new Option("\tSeed for random data shuffling (default 1).",
 			    "Q", 1, "-Q <seed>"));
+    newVector.
+      addElement(new Option("\tSort the data only once and maintain sorted indices\n" +
+			    "\tfor the subsets (faster on numeric attributes).",
+			    "presort", 0, "-presort"));
 
     return newVector.elements();
   }
@@ -358,6 +371,10 @@ public class PART
    * <pre> -Q &lt;seed&gt;
    *  Seed for random data shuffling (default 1).</pre>
    * 
+   * <pre> -presort
+   *  Sort the data only once and maintain sorted indices
+   *  for the subsets (faster on numeric attributes).</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -370,6 +387,7 @@ public class PART
     m_reducedErrorPruning = Utils.getFlag('R', options);
     m_binarySplits = Utils.getFlag('B', options);
     m_useMDLcorrection = !Utils.getFlag('J', options);
+    m_presort = Utils.getFlag("presort", options);
     String confidenceString = Utils.getOption('C', options);
     if (confidenceString.length() != 0) {
       if (m_reducedErrorPruning) {
@@ -419,7 +437,7 @@ public class PART
    */
   public String [] getOptions() {
 
-    String [] options = new String [12];
+    String [] options = new String [13];
     int current = 0;
 
     if (m_unpruned) {
@@ -442,6 +460,9 @@ public class PART
     if (!m_useMDLcorrection) {
       options[current++] = "-J";
     }
+    if (m_presort) {
+      options[current++] = "-presort";
+    }
 
     while (current < options.length) {
       options[current++] = "";
@@ -650,6 +671,38 @@ public class PART
     
     m_useMDLcorrection = newuseMDLcorrection;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String presortTipText() {
+    return "Whether to sort the data only once and to maintain sorted indices "
+      + "for the subsets, instead of sorting the data at each node (speeds up "
+      + "learning with numeric attributes).";
+  }
+
+  /**
+   * Get the value of presort.
+   *
+   * @return Value of presort.
+   */
+  public boolean getPresort() {
+    
+    return m_presort;
+  }
+  
+  /**
+   * Set the value of presort.
+   *
+   * @param v Value to assign to presort.
+   */
+  public void setPresort(boolean v) {
+    
+    m_presort = v;
+  }
+
   
   /**
    * Returns the tip text for this property
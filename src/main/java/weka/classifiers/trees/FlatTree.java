@@ -0,0 +1,392 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    FlatTree.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.trees;
+
+import weka.core.Instance;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * A compiled form of one or more decision trees for fast prediction. The
+ * nodes are stored in flat arrays (attribute, split point, offsets of the
+ * successors and of the distribution) rather than as a graph of objects,
+ * and predictions walk these arrays without allocating memory, apart from
+ * the returned distribution and the distributions for instances with
+ * missing values. Several trees can be packed into the same arrays, e.g.,
+ * the trees of a forest.<p/>
+ *
+ * The trees are compiled from nodes that implement FlatTree.Node, and
+ * the compiled trees make the same predictions as these nodes: a nominal
+ * split has one successor per value, a numeric split sends values smaller
+ * than the split point to the first successor and all others to the
+ * second. Instances with a missing value are split up according to the
+ * proportions of the successors. If a successor can't make a prediction,
+ * the distribution of the node itself is used.
+ *
+ * @version $Revision: 9500 $
+ */
+public class FlatTree
+  implements RevisionHandler {
+
+  /**
+   * Interface for nodes of trees that can be compiled.
+   */
+  public static interface Node {
+
+    /**
+     * Returns the index of the attribute that is split on.
+     *
+     * @return the attribute index, -1 if the node is a leaf
+     */
+    public int getSplitAttribute();
+
+    /**
+     * Returns whether the split is on a nominal attribute.
+     *
+     * @return true if the split attribute is nominal
+     */
+    public boolean isNominalSplit();
+
+    /**
+     * Returns the split point for a numeric split.
+     *
+     * @return the split point
+     */
+    public double getSplitPoint();
+
+    /**
+     * Returns the successors of the node.
+     *
+     * @return the successors
+     */
+    public Node[] getSuccessors();
+
+    /**
+     * Returns the proportions of training instances going down each
+     * branch, used for instances with a missing value.
+     *
+     * @return the proportions
+     */
+    public double[] getProportions();
+
+    /**
+     * Returns the distribution predicted at this node.
+     *
+     * @return the distribution, null if no prediction can be made
+     */
+    public double[] getPrediction();
+  }
+
+  /** The split attribute of each node (-1 for leaves). */
+  protected final int[] m_Attribute;
+
+  /** Whether the split attribute of each node is nominal. */
+  protected final boolean[] m_Nominal;
+
+  /** The split point of each node. */
+  protected final double[] m_SplitPoint;
+
+  /** The offset of the first successor of each node in m_Successors. */
+  protected final int[] m_FirstSuccessor;
+
+  /** The number of successors of each node. */
+  protected final int[] m_NumSuccessors;
+
+  /** The successors of all nodes. */
+  protected final int[] m_Successors;
+
+  /** The proportions of all successors. */
+  protected final double[] m_Proportions;
+
+  /** The offset of the distribution of each node (-1 if none). */
+  protected final int[] m_DistributionOffset;
+
+  /** The distributions of all nodes. */
+  protected final double[] m_Distributions;
+
+  /** The length of the distributions. */
+  protected final int m_DistributionLength;
+
+  /** The root nodes of the trees. */
+  protected final int[] m_Roots;
+
+  /**
+   * Compiles the given trees.
+   *
+   * @param roots the root nodes of the trees
+   * @param distributionLength the length of the distributions
+   */
+  public FlatTree(Node[] roots, int distributionLength) {
+
+    int numNodes = 0;
+    int numSuccessors = 0;
+    int numDists = 0;
+    Node[] stack;
+    Node node;
+    int top;
+    int i;
+
+    // count nodes, successors and distributions
+    stack = new Node[16];
+    for (i = 0; i < roots.length; i++) {
+      top = 0;
+      stack[top++] = roots[i];
+      while (top > 0) {
+	node = stack[--top];
+	numNodes++;
+	if (node.getPrediction() != null)
+	  numDists++;
+	if (node.getSplitAttribute() > -1) {
+	  numSuccessors += node.getSuccessors().length;
+	  for (Node successor : node.getSuccessors()) {
+	    if (top == stack.length) {
+	      Node[] newStack = new Node[stack.length * 2];
+	      System.arraycopy(stack, 0, newStack, 0, top);
+	      stack = newStack;
+	    }
+	    stack[top++] = successor;
+	  }
+	}
+      }
+    }
+
+    m_Attribute          = new int[numNodes];
+    m_Nominal            = new boolean[numNodes];
+    m_SplitPoint         = new double[numNodes];
+    m_FirstSuccessor     = new int[numNodes];
+    m_NumSuccessors      = new int[numNodes];
+    m_DistributionOffset = new int[numNodes];
+    m_Successors         = new int[numSuccessors];
+    m_Proportions        = new double[numSuccessors];
+    m_Distributions      = new double[numDists * distributionLength];
+    m_DistributionLength = distributionLength;
+    m_Roots              = new int[roots.length];
+
+    int[] counts = new int[]{0, 0, 0};
+    for (i = 0; i < roots.length; i++)
+      m_Roots[i] = add(roots[i], counts);
+  }
+
+  /**
+   * Adds the given node and its successors, in depth-first order, with
+   * the successors of a node stored next to each other.
+   *
+   * @param node the node to add
+   * @param counts the number of nodes, successors and distributions
+   * added so far
+   * @return the index of the node
+   */
+  protected int add(Node node, int[] counts) {
+
+    int index = counts[0]++;
+    double[] dist = node.getPrediction();
+
+    m_Attribute[index] = node.getSplitAttribute();
+    if (dist != null) {
+      m_DistributionOffset[index] = counts[2] * m_DistributionLength;
+      System.arraycopy(dist, 0, m_Distributions,
+	  m_DistributionOffset[index], m_DistributionLength);
+      counts[2]++;
+    } else {
+      m_DistributionOffset[index] = -1;
+    }
+
+    if (m_Attribute[index] > -1) {
+      Node[] successors = node.getSuccessors();
+      double[] props = node.getProportions();
+      m_Nominal[index] = node.isNominalSplit();
+      m_SplitPoint[index] = node.getSplitPoint();
+      m_FirstSuccessor[index] = counts[1];
+      m_NumSuccessors[index] = successors.length;
+      counts[1] += successors.length;
+      for (int i = 0; i < successors.length; i++) {
+	m_Proportions[m_FirstSuccessor[index] + i] = props[i];
+	m_Successors[m_FirstSuccessor[index] + i] = add(successors[i], counts);
+      }
+    }
+
+    return index;
+  }
+
+  /**
+   * Returns the number of trees.
+   *
+   * @return the number of trees
+   */
+  public int numTrees() {
+    return m_Roots.length;
+  }
+
+  /**
+   * Returns the number of nodes of all trees.
+   *
+   * @return the number of nodes
+   */
+  public int numNodes() {
+    return m_Attribute.length;
+  }
+
+  /**
+   * Determines the node whose distribution is predicted for the given
+   * instance, descending from the given node. If the instance has a missing
+   * value for a split attribute on the way down, the descent stops at that
+   * node, which is returned encoded as -(node + 2).
+   *
+   * @param node the node to start from
+   * @param instance the instance to compute the distribution for
+   * @return the index of the predicting node, -1 if no prediction can be
+   * made, or the encoded node with the missing value
+   */
+  protected int predictingNode(int node, Instance instance) {
+
+    int result = -1;
+    double value;
+    int att;
+
+    while (true) {
+      if (m_DistributionOffset[node] > -1)
+	result = node;
+      att = m_Attribute[node];
+      if (att == -1)
+	return result;
+      value = instance.value(att);
+      if (Utils.isMissingValue(value))
+	return -(node + 2);
+      if (m_Nominal[node]) {
+	if (((int) value < 0) || ((int) value >= m_NumSuccessors[node]))
+	  throw new ArrayIndexOutOfBoundsException((int) value);
+	node = m_Successors[m_FirstSuccessor[node] + (int) value];
+      } else if (value < m_SplitPoint[node]) {
+	node = m_Successors[m_FirstSuccessor[node]];
+      } else {
+	node = m_Successors[m_FirstSuccessor[node] + 1];
+      }
+    }
+  }
+
+  /**
+   * Computes the distribution for the given instance, starting at the
+   * given node.
+   *
+   * @param node the node to start from
+   * @param instance the instance to compute the distribution for
+   * @return the distribution, null if no prediction can be made
+   */
+  protected double[] distribution(int node, Instance instance) {
+
+    double[] result;
+
+    node = predictingNode(node, instance);
+    if (node == -1)
+      return null;
+    if (node < -1)
+      return missingDistribution(-node - 2, instance);
+
+    result = new double[m_DistributionLength];
+    System.arraycopy(m_Distributions, m_DistributionOffset[node],
+	result, 0, m_DistributionLength);
+    return result;
+  }
+
+  /**
+   * Computes the distribution for an instance with a missing value for the
+   * split attribute of the given node, by splitting the instance up
+   * according to the proportions of the successors.
+   *
+   * @param node the node with the missing value
+   * @param instance the instance to compute the distribution for
+   * @return the distribution
+   */
+  protected double[] missingDistribution(int node, Instance instance) {
+
+    double[] result;
+    double[] help;
+    int i;
+    int j;
+
+    result = new double[m_DistributionLength];
+    for (i = 0; i < m_NumSuccessors[node]; i++) {
+      help = distribution(m_Successors[m_FirstSuccessor[node] + i], instance);
+      if (help != null) {
+	for (j = 0; j < help.length; j++)
+	  result[j] += m_Proportions[m_FirstSuccessor[node] + i] * help[j];
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Computes the distribution for the given instance with the first tree.
+   *
+   * @param instance the instance to compute the distribution for
+   * @return the distribution, null if the tree can't make a prediction
+   */
+  public double[] distributionForInstance(Instance instance) {
+    return distribution(m_Roots[0], instance);
+  }
+
+  /**
+   * Adds the distributions of all trees for the given instance to the
+   * given array, tree by tree.
+   *
+   * @param instance the instance to compute the distributions for
+   * @param sums the array to add the distributions to
+   * @return false if one of the trees can't make a prediction (the sums
+   * are incomplete then)
+   */
+  public boolean sumDistributions(Instance instance, double[] sums) {
+
+    double[] dist;
+    int node;
+    int offset;
+    int i;
+    int j;
+
+    for (i = 0; i < m_Roots.length; i++) {
+      node = predictingNode(m_Roots[i], instance);
+      if (node == -1)
+	return false;
+      if (node < -1) {
+	dist = missingDistribution(-node - 2, instance);
+	for (j = 0; j < dist.length; j++)
+	  sums[j] += dist[j];
+      } else {
+	offset = m_DistributionOffset[node];
+	for (j = 0; j < m_DistributionLength; j++)
+	  sums[j] += m_Distributions[offset + j];
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
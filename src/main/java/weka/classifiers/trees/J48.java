@@ -30,9 +30,11 @@ import weka.classifiers.trees.j48.BinC45ModelSelection;
 import weka.classifiers.trees.j48.C45ModelSelection;
 import weka.classifiers.trees.j48.C45PruneableClassifierTree;
 import weka.classifiers.trees.j48.ClassifierTree;
+import weka.classifiers.trees.j48.FlatClassifierTree;
 import weka.classifiers.trees.j48.ModelSelection;
 import weka.classifiers.trees.j48.PruneableClassifierTree;
 import weka.core.AdditionalMeasureProducer;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Drawable;
 import weka.core.Instance;
@@ -115,6 +117,13 @@ import weka.core.WeightedInstancesHandler;
  * <pre> -Q &lt;seed&gt;
  *  Seed for random data shuffling (default 1).</pre>
  * 
+ * <pre> -presort
+ *  Sort the data only once and maintain sorted indices
+ *  for the subsets (faster on numeric attributes).</pre>
+ * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100).</pre>
+ * 
  <!-- options-end -->
  *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -124,13 +133,17 @@ public class J48
   extends AbstractClassifier 
   implements OptionHandler, Drawable, Matchable, Sourcable, 
              WeightedInstancesHandler, Summarizable, AdditionalMeasureProducer, 
-             TechnicalInformationHandler, PartitionGenerator {
+             TechnicalInformationHandler, PartitionGenerator,
+             BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = -217733168393644444L;
 
   /** The decision tree */
   protected ClassifierTree m_root;
+
+  /** The decision tree compiled for prediction */
+  protected transient FlatClassifierTree m_flatTree;
   
   /** Unpruned tree? */
   private boolean m_unpruned = false;
@@ -147,6 +160,9 @@ public class J48
   /** Use MDL correction? */
   private boolean m_useMDLcorrection = true;         
 
+  /** Sort the data only once and maintain sorted indices? */
+  private boolean m_presort = false;
+
   /** Determines whether probabilities are smoothed using
       Laplace correction when predictions are generated */
   private boolean m_useLaplace = false;
@@ -236,10 +252,13 @@ public class J48
 
     ModelSelection modSelection;	 
 
+    m_flatTree = null;
     if (m_binarySplits)
-      modSelection = new BinC45ModelSelection(m_minNumObj, instances, m_useMDLcorrection);
+      modSelection = new BinC45ModelSelection(m_minNumObj, instances, m_useMDLcorrection,
+					      m_presort);
     else
-      modSelection = new C45ModelSelection(m_minNumObj, instances, m_useMDLcorrection);
+      modSelection = new C45ModelSelection(m_minNumObj, instances, m_useMDLcorrection,
+					   m_presort);
     if (!m_reducedErrorPruning)
       m_root = new C45PruneableClassifierTree(modSelection, !m_unpruned, m_CF,
                                               m_subtreeRaising, !m_noCleanup, m_collapseTree);
@@ -252,6 +271,31 @@ public class J48
     } else {
       ((C45ModelSelection)modSelection).cleanup();
     }
+    getFlatTree();
+  }
+
+  /**
+   * Returns the decision tree compiled for prediction, compiling it first
+   * if necessary (e.g., after deserialization or if the laplace setting
+   * has changed).
+   *
+   * @return the compiled tree, null if the tree can't be compiled
+   */
+  protected FlatClassifierTree getFlatTree() {
+
+    FlatClassifierTree flatTree = m_flatTree;
+
+    if ((m_root != null) 
+	&& ((flatTree == null) || (flatTree.getUseLaplace() != m_useLaplace))) {
+      try {
+	flatTree = new FlatClassifierTree(m_root, m_useLaplace);
+      } catch (Exception e) {
+	flatTree = null;
+      }
+      m_flatTree = flatTree;
+    }
+
+    return flatTree;
   }
 
   /**
@@ -263,6 +307,10 @@ public class J48
    */
   public double classifyInstance(Instance instance) throws Exception {
 
+    FlatClassifierTree flatTree = getFlatTree();
+
+    if ((flatTree != null) && !flatTree.getUseLaplace())
+      return flatTree.classifyInstance(instance);
     return m_root.classifyInstance(instance);
   }
 
@@ -276,9 +324,34 @@ public class J48
   public final double [] distributionForInstance(Instance instance) 
        throws Exception {
 
+    FlatClassifierTree flatTree = getFlatTree();
+
+    if (flatTree != null)
+      return flatTree.distributionForInstance(instance);
     return m_root.distributionForInstance(instance, m_useLaplace);
   }
 
+  /** 
+   * Returns class probabilities for a batch of instances.
+   *
+   * @param instances the instances to calculate the class probabilities for
+   * @return the class probabilities, one array for each instance
+   * @throws Exception if distributions can't be computed successfully
+   */
+  public double [][] distributionsForInstances(Instances instances) 
+       throws Exception {
+
+    FlatClassifierTree flatTree = getFlatTree();
+
+    if (flatTree == null)
+      return m_root.distributionsForInstances(instances, m_useLaplace);
+
+    double [][] result = new double[instances.numInstances()][];
+    for (int i = 0; i < result.length; i++)
+      result[i] = flatTree.distributionForInstance(instances.instance(i));
+    return result;
+  }
+
   /**
    *  Returns the type of graph this classifier
    *  represents.
@@ -415,6 +488,11 @@ public class J48
     newVector.
       addElement(new Option("\tSeed for random data shuffling (default 1).",
 			    "Q", 1, "-Q <seed>"));
+    newVector.
+      addElement(new Option("\tSort the data only once and maintain sorted indices\n" +
+			    "\tfor the subsets (faster on numeric attributes).",
+			    "presort", 0, "-presort"));
+    newVector.addElement(batchSizeOption());
 
     return newVector.elements();
   }
@@ -465,6 +543,13 @@ public class J48
    * <pre> -Q &lt;seed&gt;
    *  Seed for random data shuffling (default 1).</pre>
    * 
+   * <pre> -presort
+   *  Sort the data only once and maintain sorted indices
+   *  for the subsets (faster on numeric attributes).</pre>
+   * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100).</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -482,6 +567,8 @@ public class J48
     m_binarySplits = Utils.getFlag('B', options);
     m_useLaplace = Utils.getFlag('A', options);
     m_useMDLcorrection = !Utils.getFlag('J', options);
+    m_presort = Utils.getFlag("presort", options);
+    setBatchSizeOption(options);
 
     // Pruning options
     m_unpruned = Utils.getFlag('U', options);
@@ -541,7 +628,7 @@ public class J48
    */
   public String [] getOptions() {
 
-    String [] options = new String [16];
+    String [] options = new String [19];
     int current = 0;
 
     if (m_noCleanup) {
@@ -574,6 +661,12 @@ public class J48
     if (!m_useMDLcorrection) {
       options[current++] = "-J";
     }
+    if (m_presort) {
+      options[current++] = "-presort";
+    }
+    for (String option : getBatchSizeOptions()) {
+      options[current++] = option;
+    }
 
     while (current < options.length) {
       options[current++] = "";
@@ -668,7 +761,57 @@ public class J48
     
     m_useMDLcorrection = newuseMDLcorrection;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String presortTipText() {
+    return "Whether to sort the data only once and to maintain sorted indices "
+      + "for the subsets, instead of sorting the data at each node (speeds up "
+      + "learning with numeric attributes).";
+  }
+
+  /**
+   * Get the value of presort.
+   *
+   * @return Value of presort.
+   */
+  public boolean getPresort() {
+    
+    return m_presort;
+  }
+  
+  /**
+   * Set the value of presort.
+   *
+   * @param v Value to assign to presort.
+   */
+  public void setPresort(boolean v) {
+    
+    m_presort = v;
+  }
+
   
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
   /**
    * Returns a description of the classifier.
    * 
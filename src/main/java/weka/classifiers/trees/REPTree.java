@@ -33,6 +33,7 @@ import weka.classifiers.Sourcable;
 import weka.classifiers.rules.ZeroR;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.ContingencyTables;
@@ -76,6 +77,9 @@ import weka.core.Randomizable;
  * <pre> -L
  *  Maximum tree depth (default -1, no maximum)</pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100).</pre>
+ * 
  <!-- options-end -->
  *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -84,7 +88,8 @@ import weka.core.Randomizable;
 public class REPTree 
   extends AbstractClassifier 
   implements OptionHandler, WeightedInstancesHandler, Drawable, 
-	     AdditionalMeasureProducer, Sourcable, PartitionGenerator, Randomizable {
+	     AdditionalMeasureProducer, Sourcable, PartitionGenerator, Randomizable,
+	     BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = -9216785998198681299L;
@@ -108,7 +113,7 @@ public class REPTree
 
   /** An inner class for building and storing the tree structure */
   protected class Tree 
-    implements Serializable, RevisionHandler {
+    implements Serializable, RevisionHandler, FlatTree.Node {
     
     /** for serialization */
     static final long serialVersionUID = -1635481717888437935L;
@@ -206,6 +211,61 @@ public class REPTree
       }
     }
 
+    /**
+     * Returns the index of the attribute that is split on.
+     * 
+     * @return the attribute index, -1 if the node is a leaf
+     */
+    public int getSplitAttribute() {
+      return m_Attribute;
+    }
+
+    /**
+     * Returns whether the split is on a nominal attribute.
+     * 
+     * @return true if the split attribute is nominal
+     */
+    public boolean isNominalSplit() {
+      return m_Info.attribute(m_Attribute).isNominal();
+    }
+
+    /**
+     * Returns the split point for a numeric split.
+     * 
+     * @return the split point
+     */
+    public double getSplitPoint() {
+      return m_SplitPoint;
+    }
+
+    /**
+     * Returns the subtrees of this tree.
+     * 
+     * @return the subtrees
+     */
+    public FlatTree.Node[] getSuccessors() {
+      return m_Successors;
+    }
+
+    /**
+     * Returns the proportions of training instances going down each
+     * branch.
+     * 
+     * @return the proportions
+     */
+    public double[] getProportions() {
+      return m_Prop;
+    }
+
+    /**
+     * Returns the class probabilities predicted at this node.
+     * 
+     * @return the probabilities, null if the node is empty
+     */
+    public double[] getPrediction() {
+      return m_ClassProbs;
+    }
+
    /**
     * Returns a string containing java source code equivalent to the test
     * made at this node. The instance being tested is called "i". This
@@ -1392,6 +1452,9 @@ public class REPTree
   /** Whether to spread initial count across all values */
   protected boolean m_SpreadInitialCount = false;
 
+  /** The tree compiled for prediction (null if not compiled yet). */
+  protected transient FlatTree m_FlatTree = null;
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -1627,6 +1690,24 @@ public class REPTree
     m_SpreadInitialCount = newSpreadInitialCount;
   }
   
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
   /**
    * Lists the command-line options for this classifier.
    * 
@@ -1634,7 +1715,7 @@ public class REPTree
    */
   public Enumeration listOptions() {
     
-    Vector newVector = new Vector(8);
+    Vector newVector = new Vector(9);
 
     newVector.
       addElement(new Option("\tSet minimum number of instances per leaf " +
@@ -1664,6 +1745,7 @@ public class REPTree
       addElement(new Option("\tSpread initial count over all class values (i.e." +
                             " don't use 1 per value)",
 			    "R", 0, "-R"));
+    newVector.addElement(batchSizeOption());
 
     return newVector.elements();
   } 
@@ -1675,7 +1757,7 @@ public class REPTree
    */
   public String[] getOptions() {
     
-    String [] options = new String [15];
+    String [] options = new String [17];
     int current = 0;
     options[current++] = "-M"; 
     options[current++] = "" + (int)getMinNum();
@@ -1695,6 +1777,9 @@ public class REPTree
     if (getSpreadInitialCount()) {
       options[current++] = "-R";
     }
+    for (String option : getBatchSizeOptions()) {
+      options[current++] = option;
+    }
     while (current < options.length) {
       options[current++] = "";
     }
@@ -1726,6 +1811,9 @@ public class REPTree
    * <pre> -L
    *  Maximum tree depth (default -1, no maximum)</pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100).</pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -1771,6 +1859,7 @@ public class REPTree
       m_InitialCount = 0;
     }
     m_SpreadInitialCount = Utils.getFlag('R', options);
+    setBatchSizeOption(options);
     
     Utils.checkForRemainingOptions(options);
   }
@@ -1856,6 +1945,7 @@ public class REPTree
     Random random = new Random(m_Seed);
 
     m_zeroR = null;
+    m_FlatTree = null;
     if (data.numAttributes() == 1) {
       m_zeroR = new ZeroR();
       m_zeroR.buildClassifier(data);
@@ -1955,6 +2045,25 @@ public class REPTree
       m_Tree.reducedErrorPrune();
       m_Tree.backfitHoldOutSet();
     }
+
+    // Compile tree for prediction
+    getFlatTree();
+  }
+
+  /**
+   * Returns the tree compiled for prediction, compiling it first if
+   * necessary (e.g., after deserialization).
+   *
+   * @return the compiled tree, null if there is no tree
+   */
+  protected FlatTree getFlatTree() {
+
+    if ((m_FlatTree == null) && (m_Tree != null)) {
+      m_FlatTree = new FlatTree(new FlatTree.Node[]{m_Tree}, 
+				m_Tree.m_Info.numClasses());
+    }
+
+    return m_FlatTree;
   }
 
   /**
@@ -1970,10 +2079,37 @@ public class REPTree
       if (m_zeroR != null) {
 	return m_zeroR.distributionForInstance(instance);
       } else {
-	return m_Tree.distributionForInstance(instance);
+	return getFlatTree().distributionForInstance(instance);
       }
   }
 
+  /**
+   * Computes class distributions for a batch of instances using the
+   * compiled tree.
+   * 
+   * @param instances the instances to compute the distributions for
+   * @return the computed class probabilities, one array for each instance
+   * @throws Exception if computation fails
+   */
+  public double[][] distributionsForInstances(Instances instances) 
+    throws Exception {
+
+    if (m_zeroR != null) {
+      double[][] result = new double[instances.numInstances()][];
+      for (int i = 0; i < result.length; i++) {
+	result[i] = m_zeroR.distributionForInstance(instances.instance(i));
+      }
+      return result;
+    } else {
+      FlatTree flatTree = getFlatTree();
+      double[][] result = new double[instances.numInstances()][];
+      for (int i = 0; i < result.length; i++) {
+	result[i] = flatTree.distributionForInstance(instances.instance(i));
+      }
+      return result;
+    }
+  }
+
 
   /** 
    * For getting a unique ID when outputting the tree source
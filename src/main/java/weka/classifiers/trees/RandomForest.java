@@ -25,8 +25,10 @@ import java.util.Enumeration;
 import java.util.Vector;
 
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
 import weka.classifiers.meta.Bagging;
 import weka.core.AdditionalMeasureProducer;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -92,6 +94,9 @@ import weka.core.PartitionGenerator;
  *  Number of execution slots.
  *  (default 1 - i.e. no parallelism)</pre>
  * 
+ * <pre> -batch-size &lt;size&gt;
+ *  The desired batch size for batch prediction (default 100).</pre>
+ * 
  * <pre> -D
  *  If set, classifier is run in debug mode and
  *  may output additional info to the console</pre>
@@ -105,7 +110,7 @@ public class RandomForest
   extends AbstractClassifier 
   implements OptionHandler, Randomizable, WeightedInstancesHandler, 
              AdditionalMeasureProducer, TechnicalInformationHandler, 
-             PartitionGenerator {
+             PartitionGenerator, BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = 1116839470751428698L;
@@ -131,6 +136,9 @@ public class RandomForest
   
   /** The number of threads to have executing at any one time */
   protected int m_numExecutionSlots = 1;
+
+  /** The trees compiled for prediction (null if not compiled yet). */
+  protected transient FlatTree m_FlatForest = null;
   
   /** Print the individual trees in the output */
   protected boolean m_printTrees = false;
@@ -419,6 +427,8 @@ public class RandomForest
         + "\t(default 1 - i.e. no parallelism)",
         "num-slots", 1, "-num-slots <num>"));
 
+    newVector.addElement(batchSizeOption());
+
     Enumeration enu = super.listOptions();
     while (enu.hasMoreElements()) {
       newVector.addElement(enu.nextElement());
@@ -459,6 +469,10 @@ public class RandomForest
     
     result.add("-num-slots");
     result.add("" + getNumExecutionSlots());
+
+    for (String option : getBatchSizeOptions()) {
+      result.add(option);
+    }
     
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
@@ -494,6 +508,9 @@ public class RandomForest
    *  Number of execution slots.
    *  (default 1 - i.e. no parallelism)</pre>
    * 
+   * <pre> -batch-size &lt;size&gt;
+   *  The desired batch size for batch prediction (default 100).</pre>
+   * 
    * <pre> -D
    *  If set, classifier is run in debug mode and
    *  may output additional info to the console</pre>
@@ -542,12 +559,32 @@ public class RandomForest
     } else {
       setNumExecutionSlots(1);
     }
+
+    setBatchSizeOption(options);
     
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
   }  
 
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
   /**
    * Returns default capabilities of the classifier.
    *
@@ -573,6 +610,7 @@ public class RandomForest
     data.deleteWithMissingClass();
     
     m_bagger = new Bagging();
+    m_FlatForest = null;
     RandomTree rTree = new RandomTree();
 
     // set up the random tree options
@@ -588,6 +626,41 @@ public class RandomForest
     m_bagger.setCalcOutOfBag(true);
     m_bagger.setNumExecutionSlots(m_numExecutionSlots);
     m_bagger.buildClassifier(data);
+
+    // compile the trees for prediction
+    getFlatForest();
+  }
+
+  /**
+   * Returns the trees of the forest compiled into a single FlatTree,
+   * compiling them first if necessary (e.g., after deserialization).
+   *
+   * @return the compiled trees, null if they can't be compiled
+   */
+  protected FlatTree getFlatForest() {
+
+    if ((m_FlatForest == null) && (m_bagger != null)) {
+      Classifier[] members = m_bagger.getMemberClassifiers();
+      if ((members == null) || (members.length == 0)) {
+	return null;
+      }
+      FlatTree.Node[] roots = new FlatTree.Node[members.length];
+      for (int i = 0; i < members.length; i++) {
+	if (!(members[i] instanceof RandomTree) 
+	    || (((RandomTree) members[i]).m_zeroR != null)) {
+	  return null;
+	}
+	roots[i] = ((RandomTree) members[i]).m_Tree;
+      }
+      try {
+	m_FlatForest = new FlatTree(roots, 
+	    ((RandomTree) members[0]).m_Info.numClasses());
+      } catch (IllegalArgumentException e) {
+	// a node's distribution can't be normalized, use the trees themselves
+      }
+    }
+
+    return m_FlatForest;
   }
 
   /**
@@ -599,9 +672,42 @@ public class RandomForest
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
 
+    FlatTree forest = getFlatForest();
+    if ((forest != null) && instance.classAttribute().isNominal()) {
+      // same as Bagging, but without walking the trees' objects
+      double[] sums = new double[instance.numClasses()];
+      if (forest.sumDistributions(instance, sums)) {
+	if (!Utils.eq(Utils.sum(sums), 0)) {
+	  Utils.normalize(sums);
+	}
+	return sums;
+      }
+    }
+
     return m_bagger.distributionForInstance(instance);
   }
 
+  /**
+   * Returns the class probability distributions for a set of instances.
+   *
+   * @param insts the instances to be classified
+   * @return the distributions the forest generates for the instances
+   * @throws Exception if computation fails
+   */
+  public double[][] distributionsForInstances(Instances insts) 
+    throws Exception {
+
+    if (getFlatForest() == null) {
+      return m_bagger.distributionsForInstances(insts);
+    }
+
+    double[][] result = new double[insts.numInstances()][];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = distributionForInstance(insts.instance(i));
+    }
+    return result;
+  }
+
   /**
    * Outputs a description of this classifier.
    *
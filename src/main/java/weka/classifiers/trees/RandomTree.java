@@ -22,15 +22,23 @@
 package weka.classifiers.trees;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
 import java.util.Queue;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Classifier;
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.ContingencyTables;
@@ -75,6 +83,10 @@ import weka.core.PartitionGenerator;
  * <pre> -U
  *  Allow unclassified instances.</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -D
  *  If set, classifier is run in debug mode and
  *  may output additional info to the console</pre>
@@ -88,7 +100,7 @@ import weka.core.PartitionGenerator;
 public class RandomTree 
   extends AbstractClassifier 
   implements OptionHandler, WeightedInstancesHandler, Randomizable, 
-             Drawable, PartitionGenerator {
+             Drawable, PartitionGenerator, BatchPredictor {
 
   /** for serialization */
   static final long serialVersionUID = 8934314652175299374L;
@@ -120,6 +132,27 @@ public class RandomTree
   /** a ZeroR model in case no model can be built from the data */
   protected Classifier m_zeroR;
 
+  /** The number of execution slots (threads) to use for building the tree. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** The tree compiled for prediction (null if not compiled yet). */
+  protected transient FlatTree m_FlatTree = null;
+
+  /**
+   * The minimum number of instances at a node for evaluating its attributes
+   * and building its subtrees concurrently.
+   */
+  protected static final int MIN_PARALLEL_NODE_SIZE = 1000;
+
+  /** The training data, only available while building the tree. */
+  protected transient Instances m_Data;
+
+  /** The class values of the training data, only while building the tree. */
+  protected transient int[] m_ClassValues;
+
+  /** The thread pool, only while building the tree with several slots. */
+  protected transient ExecutorService m_ExecutorPool;
+
   /**
    * Returns a string describing classifier
    * 
@@ -303,6 +336,7 @@ public class RandomTree
   public void setAllowUnclassifiedInstances(boolean newAllowUnclassifiedInstances) {
     
     m_AllowUnclassifiedInstances = newAllowUnclassifiedInstances;
+    m_FlatTree = null;
   }
 
   /**
@@ -315,6 +349,57 @@ public class RandomTree
     m_MaxDepth = value;
   }
 
+  /**
+   * Set the number of execution slots (threads) to use for building the
+   * tree.
+   *
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for building the
+   * tree.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for building the "
+      + "tree. With more than one slot, the subtrees of large nodes use their "
+      + "own random number generators, i.e., the tree differs from the one "
+      + "built with a single slot, but is the same for any number of slots "
+      + "greater than one.";
+  }
+
+  /**
+   * Set the preferred batch size for batch prediction.
+   *
+   * @param size the batch size to use
+   */
+  public void setBatchSize(String size) {
+    m_BatchSize = size;
+  }
+
+  /**
+   * Get the preferred batch size for batch prediction.
+   *
+   * @return the preferred batch size
+   */
+  public String getBatchSize() {
+    return m_BatchSize;
+  }
+
   /**
    * Lists the command-line options for this classifier.
    * 
@@ -348,6 +433,13 @@ public class RandomTree
       addElement(new Option("\tAllow unclassified instances.",
 			    "U", 0, "-U"));
 
+    newVector.addElement(new Option(
+        "\tNumber of execution slots.\n"
+        + "\t(default 1 - i.e. no parallelism)",
+        "num-slots", 1, "-num-slots <num>"));
+
+    newVector.addElement(batchSizeOption());
+
     Enumeration enu = super.listOptions();
     while (enu.hasMoreElements()) {
       newVector.addElement(enu.nextElement());
@@ -391,6 +483,15 @@ public class RandomTree
       result.add("-U");
     }
 
+    if (getNumExecutionSlots() > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
+    for (String option : getBatchSizeOptions()) {
+      result.add(option);
+    }
+
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -426,6 +527,10 @@ public class RandomTree
    * <pre> -U
    *  Allow unclassified instances.</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -D
    *  If set, classifier is run in debug mode and
    *  may output additional info to the console</pre>
@@ -476,6 +581,15 @@ public class RandomTree
 
     setAllowUnclassifiedInstances(Utils.getFlag('U', options));
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    setBatchSizeOption(options);
+
     super.setOptions(options);
 
     Utils.checkForRemainingOptions(options);
@@ -525,6 +639,7 @@ public class RandomTree
     // remove instances with missing class
     data = new Instances(data);
     data.deleteWithMissingClass();
+    m_FlatTree = null;
 
     // only class? -> build ZeroR model
     if (data.numAttributes() == 1) {
@@ -560,22 +675,65 @@ public class RandomTree
       attIndicesWindow[i] = j++;
     }
 
-    // Compute initial class counts
+    // Compute initial class counts, the nodes refer to the training
+    // instances via their indices
     double[] classProbs = new double[train.numClasses()];
+    int[] indices = new int[train.numInstances()];
+    double[] weights = new double[train.numInstances()];
+    m_ClassValues = new int[train.numInstances()];
     for (int i = 0; i < train.numInstances(); i++) {
       Instance inst = train.instance(i);
       classProbs[(int) inst.classValue()] += inst.weight();
+      indices[i] = i;
+      weights[i] = inst.weight();
+      m_ClassValues[i] = (int) inst.classValue();
     }
 
     // Build tree 
     m_Tree = new Tree();
     m_Info = new Instances(data, 0);
-    m_Tree.buildTree(train, classProbs, attIndicesWindow, rand, 0);
+    m_Data = train;
+    if (m_NumExecutionSlots > 1) {
+      m_ExecutorPool = Executors.newFixedThreadPool(m_NumExecutionSlots);
+    }
+    try {
+      m_Tree.buildTree(indices, weights, classProbs, attIndicesWindow, rand, 0);
+    } finally {
+      if (m_ExecutorPool != null) {
+        m_ExecutorPool.shutdownNow();
+        m_ExecutorPool = null;
+      }
+      m_Data = null;
+      m_ClassValues = null;
+    }
       
     // Backfit if required
     if (backfit != null) {
       m_Tree.backfitData(backfit);
     }
+
+    // Compile tree for prediction
+    getFlatTree();
+  }
+
+  /**
+   * Returns the tree compiled for prediction, compiling it first if
+   * necessary (e.g., after deserialization).
+   *
+   * @return the compiled tree, null if the tree can't be compiled
+   */
+  protected FlatTree getFlatTree() {
+
+    if ((m_FlatTree == null) && (m_Tree != null)) {
+      try {
+        m_FlatTree = new FlatTree(new FlatTree.Node[]{m_Tree}, 
+                                  m_Info.numClasses());
+      } catch (IllegalArgumentException e) {
+        // a node's distribution can't be normalized, use the tree itself
+      }
+    }
+
+    return m_FlatTree;
   }
 
   /**
@@ -591,9 +749,39 @@ public class RandomTree
     if (m_zeroR != null) {
       return m_zeroR.distributionForInstance(instance);
     } else {
+      FlatTree flatTree = getFlatTree();
+      if (flatTree != null) {
+        return flatTree.distributionForInstance(instance);
+      }
       return m_Tree.distributionForInstance(instance);
     }
   }
+
+  /**
+   * Computes class distributions for a batch of instances using the
+   * compiled tree.
+   * 
+   * @param instances the instances to compute the distributions for
+   * @return the computed class probabilities, one array for each instance
+   * @throws Exception if computation fails
+   */
+  public double[][] distributionsForInstances(Instances instances) 
+    throws Exception {
+
+    if (m_zeroR != null) {
+      double[][] result = new double[instances.numInstances()][];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = m_zeroR.distributionForInstance(instances.instance(i));
+      }
+      return result;
+    } else {
+      double[][] result = new double[instances.numInstances()][];
+      for (int i = 0; i < result.length; i++) {
+        result[i] = distributionForInstance(instances.instance(i));
+      }
+      return result;
+    }
+  }
     
   /**
    * Outputs the decision tree.
@@ -733,10 +921,41 @@ public class RandomTree
     return m_Tree.numNodes();
   }
 
+  /**
+   * Runs the given tasks using the thread pool and waits for them to finish.
+   * The calling thread runs any task not started by the pool yet itself, so
+   * tasks waiting for their subtasks cannot exhaust the pool.
+   *
+   * @param tasks the tasks to run
+   * @throws Exception if a task fails
+   */
+  protected <T> void runTasks(List<? extends Callable<T>> tasks)
+    throws Exception {
+
+    List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>();
+    for (Callable<T> task : tasks) {
+      futures.add(new FutureTask<T>(task));
+    }
+    for (int i = 1; i < futures.size(); i++) {
+      m_ExecutorPool.execute(futures.get(i));
+    }
+    for (FutureTask<T> future : futures) {
+      future.run(); // no-op if already started
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+          throw (Exception) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+
   /**
    * The inner class for dealing with the tree.
    */
-  protected class Tree implements Serializable {
+  protected class Tree implements Serializable, FlatTree.Node {
     
     /** The subtrees appended to this tree. */
     protected Tree[] m_Successors;
@@ -839,7 +1058,73 @@ public class RandomTree
         return returnedDist;
       }
     }
-    
+
+    /**
+     * Returns the index of the attribute that is split on.
+     * 
+     * @return the attribute index, -1 if the node is a leaf
+     */
+    public int getSplitAttribute() {
+      return m_Attribute;
+    }
+
+    /**
+     * Returns whether the split is on a nominal attribute.
+     * 
+     * @return true if the split attribute is nominal
+     */
+    public boolean isNominalSplit() {
+      return m_Info.attribute(m_Attribute).isNominal();
+    }
+
+    /**
+     * Returns the split point for a numeric split.
+     * 
+     * @return the split point
+     */
+    public double getSplitPoint() {
+      return m_SplitPoint;
+    }
+
+    /**
+     * Returns the successors of the node.
+     * 
+     * @return the successors
+     */
+    public FlatTree.Node[] getSuccessors() {
+      return m_Successors;
+    }
+
+    /**
+     * Returns the proportions of training instances going down each
+     * branch.
+     * 
+     * @return the proportions
+     */
+    public double[] getProportions() {
+      return m_Prop;
+    }
+
+    /**
+     * Returns the distribution predicted at this node, the same as
+     * distributionForInstance(Instance) returns at a leaf.
+     * 
+     * @return the distribution, null if no prediction can be made
+     */
+    public double[] getPrediction() {
+      
+      if (m_ClassDistribution == null) {
+        if (getAllowUnclassifiedInstances()) {
+          return new double[m_Info.numClasses()];
+        } else {
+          return null;
+        }
+      }
+      double[] normalizedDistribution = m_ClassDistribution.clone();
+      Utils.normalize(normalizedDistribution);
+      return normalizedDistribution;
+    }
+
     /**
      * Outputs one node for graph.
      * 
@@ -1076,10 +1361,14 @@ public class RandomTree
     }
     
     /**
-     * Recursively generates a tree.
+     * Recursively generates a tree. The instances at the node are given by
+     * their indices in the training data and their (possibly fractional)
+     * weights.
      * 
-     * @param data
-     *            the data to work with
+     * @param indices
+     *            the indices of the instances at this node
+     * @param weights
+     *            the weights of the instances at this node
      * @param classProbs
      *            the class distribution
      * @param attIndicesWindow
@@ -1091,11 +1380,11 @@ public class RandomTree
      * @throws Exception
      *             if generation fails
      */
-    protected void buildTree(Instances data, double[] classProbs, int[] attIndicesWindow,
-                             Random random, int depth) throws Exception {
+    protected void buildTree(int[] indices, double[] weights, double[] classProbs,
+                             int[] attIndicesWindow, Random random, int depth) throws Exception {
       
       // Make leaf if there are no training instances
-      if (data.numInstances() == 0) {
+      if (indices.length == 0) {
         m_Attribute = -1;
         m_ClassDistribution = null;
         m_Prop = null;
@@ -1116,6 +1405,10 @@ public class RandomTree
         return;
       }
       
+      // Large nodes get processed in parallel
+      boolean parallel = (m_ExecutorPool != null)
+        && (indices.length >= MIN_PARALLEL_NODE_SIZE);
+      
       // Compute class distributions and value of splitting
       // criterion for each attribute
       double val = -Double.MAX_VALUE;
@@ -1124,27 +1417,38 @@ public class RandomTree
       double[] bestProps = null;
       int bestIndex = 0;
       
-      // Handles to get arrays out of distribution method
-      double[][] props = new double[1][0];
-      double[][][] dists = new double[1][0][0];
-      
       // Investigate K random attributes
       int attIndex = 0;
       int windowSize = attIndicesWindow.length;
       int k = m_KValue;
       boolean gainFound = false;
-      while ((windowSize > 0) && (k-- > 0 || !gainFound)) {
-        
-        int chosenIndex = random.nextInt(windowSize);
-        attIndex = attIndicesWindow[chosenIndex];
-        
-        // shift chosen attIndex out of window
-        attIndicesWindow[chosenIndex] = attIndicesWindow[windowSize - 1];
-        attIndicesWindow[windowSize - 1] = attIndex;
-        windowSize--;
+      
+      // The first K attributes are investigated anyway, so they can be
+      // evaluated concurrently (on copies of the data)
+      List<SplitTask> candidates = new ArrayList<SplitTask>();
+      if (parallel) {
+        while ((windowSize > 0) && (k > 0)) {
+          k--;
+          attIndex = drawAttribute(attIndicesWindow, windowSize--, random);
+          candidates.add(new SplitTask(attIndex, indices, weights, false));
+        }
+        runTasks(candidates);
+      }
+      
+      int next = 0;
+      while ((next < candidates.size())
+             || ((windowSize > 0) && (k-- > 0 || !gainFound))) {
         
-        double currSplit = distribution(props, dists, attIndex, data);
-        double currVal = gain(dists[0], priorVal(dists[0]));
+        SplitTask candidate;
+        if (next < candidates.size()) {
+          candidate = candidates.get(next++);
+        } else {
+          attIndex = drawAttribute(attIndicesWindow, windowSize--, random);
+          candidate = new SplitTask(attIndex, indices, weights, !parallel);
+          candidate.call();
+        }
+        attIndex = candidate.m_Att;
+        double currVal = candidate.m_Val;
         
         if (Utils.gr(currVal, 0))
           gainFound = true;
@@ -1152,9 +1456,9 @@ public class RandomTree
         if ((currVal > val) || ((currVal == val) && (attIndex < bestIndex))) {
           val = currVal;
           bestIndex = attIndex;
-          split = currSplit;
-          bestProps = props[0];
-          bestDists = dists[0];
+          split = candidate.m_Split;
+          bestProps = candidate.m_Props[0];
+          bestDists = candidate.m_Dists[0];
         }
       }
       
@@ -1167,16 +1471,33 @@ public class RandomTree
         // Build subtrees
         m_SplitPoint = split;
         m_Prop = bestProps;
-        Instances[] subsets = splitData(data);
+        int[][] subsetIndices = new int[bestDists.length][];
+        double[][] subsetWeights = new double[bestDists.length][];
+        splitData(indices, weights, subsetIndices, subsetWeights);
         m_Successors = new Tree[bestDists.length];
-        for (int i = 0; i < bestDists.length; i++) {
-          m_Successors[i] = new Tree();
-          m_Successors[i].buildTree(subsets[i], bestDists[i], attIndicesWindow, random, depth + 1);
+        if (parallel) {
+          
+          // the subtrees get their own random number generators and
+          // attribute windows, initialized in order
+          List<SubtreeTask> subtrees = new ArrayList<SubtreeTask>();
+          for (int i = 0; i < bestDists.length; i++) {
+            m_Successors[i] = new Tree();
+            subtrees.add(new SubtreeTask(m_Successors[i], subsetIndices[i],
+                subsetWeights[i], bestDists[i], attIndicesWindow.clone(),
+                new Random(random.nextLong()), depth + 1));
+          }
+          runTasks(subtrees);
+        } else {
+          for (int i = 0; i < bestDists.length; i++) {
+            m_Successors[i] = new Tree();
+            m_Successors[i].buildTree(subsetIndices[i], subsetWeights[i], bestDists[i],
+                attIndicesWindow, random, depth + 1);
+          }
         }
         
         // If all successors are non-empty, we don't need to store the class distribution
         boolean emptySuccessor = false;
-        for (int i = 0; i < subsets.length; i++) {
+        for (int i = 0; i < m_Successors.length; i++) {
           if (m_Successors[i].m_ClassDistribution == null) {
             emptySuccessor = true;
             break;
@@ -1192,6 +1513,30 @@ public class RandomTree
       }
     }
     
+    /**
+     * Randomly chooses an attribute from the window and shifts it out of
+     * the window.
+     * 
+     * @param attIndicesWindow
+     *            the attribute window
+     * @param windowSize
+     *            the current size of the window
+     * @param random
+     *            random number generator for choosing the attribute
+     * @return the index of the chosen attribute
+     */
+    protected int drawAttribute(int[] attIndicesWindow, int windowSize, Random random) {
+      
+      int chosenIndex = random.nextInt(windowSize);
+      int attIndex = attIndicesWindow[chosenIndex];
+      
+      // shift chosen attIndex out of window
+      attIndicesWindow[chosenIndex] = attIndicesWindow[windowSize - 1];
+      attIndicesWindow[windowSize - 1] = attIndex;
+      
+      return attIndex;
+    }
+    
     /**
      * Computes size of the tree.
      * 
@@ -1278,6 +1623,110 @@ public class RandomTree
       return subsets;
     }
     
+    /**
+     * Splits the instances at the node into subsets based on the given
+     * split. Instances with a missing value go down all branches, with
+     * their weight reduced accordingly.
+     * 
+     * @param indices
+     *            the indices of the instances at the node
+     * @param weights
+     *            the weights of the instances at the node
+     * @param subsetIndices
+     *            for returning the indices of the subsets
+     * @param subsetWeights
+     *            for returning the weights of the subsets
+     */
+    protected void splitData(int[] indices, double[] weights,
+                             int[][] subsetIndices, double[][] subsetWeights) {
+      
+      Attribute attribute = m_Data.attribute(m_Attribute);
+      if (!attribute.isNominal() && !attribute.isNumeric()) {
+        throw new IllegalArgumentException("Unknown attribute type");
+      }
+      
+      // Determine the branch of each instance, -1 for missing values
+      int[] branches = new int[indices.length];
+      int[] sizes = new int[m_Prop.length];
+      for (int i = 0; i < indices.length; i++) {
+        double value = m_Data.instance(indices[i]).value(m_Attribute);
+        if (Utils.isMissingValue(value)) {
+          branches[i] = -1;
+          for (int k = 0; k < m_Prop.length; k++) {
+            if (m_Prop[k] > 0) {
+              sizes[k]++;
+            }
+          }
+        } else {
+          if (attribute.isNominal()) {
+            branches[i] = (int) value;
+          } else {
+            branches[i] = (value < m_SplitPoint) ? 0 : 1;
+          }
+          sizes[branches[i]]++;
+        }
+      }
+      
+      // Fill the subsets, preserving the order of the instances
+      for (int k = 0; k < m_Prop.length; k++) {
+        subsetIndices[k] = new int[sizes[k]];
+        subsetWeights[k] = new double[sizes[k]];
+        sizes[k] = 0;
+      }
+      for (int i = 0; i < indices.length; i++) {
+        if (branches[i] == -1) {
+          for (int k = 0; k < m_Prop.length; k++) {
+            if (m_Prop[k] > 0) {
+              subsetIndices[k][sizes[k]] = indices[i];
+              subsetWeights[k][sizes[k]] = m_Prop[k] * weights[i];
+              sizes[k]++;
+            }
+          }
+        } else {
+          subsetIndices[branches[i]][sizes[branches[i]]] = indices[i];
+          subsetWeights[branches[i]][sizes[branches[i]]] = weights[i];
+          sizes[branches[i]]++;
+        }
+      }
+    }
+    
+    /**
+     * Sorts the instances at the node in place according to the values of
+     * the given attribute, with missing values last.
+     * 
+     * @param att
+     *            the attribute index
+     * @param indices
+     *            the indices of the instances at the node
+     * @param weights
+     *            the weights of the instances at the node
+     * @return the sorted values of the attribute
+     */
+    protected double[] sort(int att, int[] indices, double[] weights) {
+      
+      double[] values = new double[indices.length];
+      double[] vals = new double[indices.length];
+      for (int i = 0; i < indices.length; i++) {
+        values[i] = m_Data.instance(indices[i]).value(att);
+        if (Utils.isMissingValue(values[i])) {
+          vals[i] = Double.MAX_VALUE;
+        } else {
+          vals[i] = values[i];
+        }
+      }
+      
+      int[] sortOrder = Utils.sortWithNoMissingValues(vals);
+      int[] oldIndices = indices.clone();
+      double[] oldWeights = weights.clone();
+      for (int i = 0; i < sortOrder.length; i++) {
+        indices[i] = oldIndices[sortOrder[i]];
+        weights[i] = oldWeights[sortOrder[i]];
+        vals[i] = values[sortOrder[i]];
+      }
+      
+      return vals;
+    }
+    
     /**
      * Computes class distribution for an attribute.
      * 
@@ -1285,54 +1734,58 @@ public class RandomTree
      * @param dists
      * @param att
      *            the attribute index
-     * @param data
-     *            the data to work with
+     * @param indices
+     *            the indices of the instances at the node, sorted in
+     *            place for numeric attributes
+     * @param weights
+     *            the weights of the instances at the node, sorted in
+     *            place for numeric attributes
      * @throws Exception
      *             if something goes wrong
      */
-    protected double distribution(double[][] props, double[][][] dists, int att, Instances data)
+    protected double distribution(double[][] props, double[][][] dists, int att,
+                                  int[] indices, double[] weights)
       throws Exception {
       
       double splitPoint = Double.NaN;
-      Attribute attribute = data.attribute(att);
+      Attribute attribute = m_Data.attribute(att);
       double[][] dist = null;
-      int indexOfFirstMissingValue = data.numInstances();
+      int indexOfFirstMissingValue = indices.length;
       
       if (attribute.isNominal()) {
         
         // For nominal attributes
-        dist = new double[attribute.numValues()][data.numClasses()];
-        for (int i = 0; i < data.numInstances(); i++) {
-          Instance inst = data.instance(i);
+        dist = new double[attribute.numValues()][m_Data.numClasses()];
+        for (int i = 0; i < indices.length; i++) {
+          Instance inst = m_Data.instance(indices[i]);
           if (inst.isMissing(att)) {
             
             // Skip missing values at this stage
-            if (indexOfFirstMissingValue == data.numInstances()) {
+            if (indexOfFirstMissingValue == indices.length) {
               indexOfFirstMissingValue = i;
             }
             continue;
           }
-          dist[(int) inst.value(att)][(int) inst.classValue()] += inst.weight();
+          dist[(int) inst.value(att)][m_ClassValues[indices[i]]] += weights[i];
         }
       } else {
         
         // For numeric attributes
-        double[][] currDist = new double[2][data.numClasses()];
-        dist = new double[2][data.numClasses()];
+        double[][] currDist = new double[2][m_Data.numClasses()];
+        dist = new double[2][m_Data.numClasses()];
         
         // Sort data
-        data.sort(att);
+        double[] values = sort(att, indices, weights);
         
         // Move all instances into second subset
-        for (int j = 0; j < data.numInstances(); j++) {
-          Instance inst = data.instance(j);
-          if (inst.isMissing(att)) {
+        for (int j = 0; j < indices.length; j++) {
+          if (Utils.isMissingValue(values[j])) {
             
             // Can stop as soon as we hit a missing value
             indexOfFirstMissingValue = j;
             break;
           }
-          currDist[1][(int) inst.classValue()] += inst.weight();
+          currDist[1][m_ClassValues[indices[j]]] += weights[j];
         }
         
         // Value before splitting
@@ -1344,13 +1797,12 @@ public class RandomTree
         }
         
         // Try all possible split points
-        double currSplit = data.instance(0).value(att);
+        double currSplit = values[0];
         double currVal, bestVal = -Double.MAX_VALUE;
         for (int i = 0; i < indexOfFirstMissingValue; i++) {
-          Instance inst = data.instance(i);
           
           // Can we place a sensible split point here?
-          if (inst.value(att) > currSplit) {
+          if (values[i] > currSplit) {
             
             // Compute gain for split point
             currVal = gain(currDist, priorVal);
@@ -1362,11 +1814,11 @@ public class RandomTree
               bestVal = currVal;
               
               // Save split point
-              splitPoint = (inst.value(att) + currSplit) / 2.0;
+              splitPoint = (values[i] + currSplit) / 2.0;
               
               // Check for numeric precision problems
               if (splitPoint <= currSplit) {
-                splitPoint = inst.value(att);
+                splitPoint = values[i];
               }
               
               // Save distribution
@@ -1374,12 +1826,12 @@ public class RandomTree
                 System.arraycopy(currDist[j], 0, dist[j], 0, dist[j].length);
               }
             }
-            currSplit = inst.value(att);
+            currSplit = values[i];
           }
           
           // Shift over the weight
-          currDist[0][(int) inst.classValue()] += inst.weight();
-          currDist[1][(int) inst.classValue()] -= inst.weight();
+          currDist[0][m_ClassValues[indices[i]]] += weights[i];
+          currDist[1][m_ClassValues[indices[i]]] -= weights[i];
         }
       }
       
@@ -1397,21 +1849,20 @@ public class RandomTree
       }
         
       // Distribute weights for instances with missing values
-      for (int i = indexOfFirstMissingValue; i < data.numInstances(); i++) {
-        Instance inst = data.instance(i);
+      for (int i = indexOfFirstMissingValue; i < indices.length; i++) {
         if (attribute.isNominal()) {
           
           // Need to check if attribute value is missing
-          if (inst.isMissing(att)) {
+          if (m_Data.instance(indices[i]).isMissing(att)) {
             for (int j = 0; j < dist.length; j++) {
-              dist[j][(int) inst.classValue()] += props[0][j] * inst.weight();
+              dist[j][m_ClassValues[indices[i]]] += props[0][j] * weights[i];
             }
           }
         } else {
           
           // Can be sure that value is missing, so no test required
           for (int j = 0; j < dist.length; j++) {
-            dist[j][(int) inst.classValue()] += props[0][j] * inst.weight();
+            dist[j][m_ClassValues[indices[i]]] += props[0][j] * weights[i];
           }
         }
       }
@@ -1421,6 +1872,131 @@ public class RandomTree
       return splitPoint;
     }
     
+    /**
+     * Evaluates a candidate attribute for splitting a node.
+     */
+    protected class SplitTask implements Callable<Double> {
+      
+      /** the attribute index. */
+      protected int m_Att;
+      
+      /** the indices of the instances at the node. */
+      protected int[] m_Indices;
+      
+      /** the weights of the instances at the node. */
+      protected double[] m_Weights;
+      
+      /** whether to sort the node's arrays in place or copies of them. */
+      protected boolean m_InPlace;
+      
+      /** the proportions of the branches. */
+      protected double[][] m_Props = new double[1][0];
+      
+      /** the class distributions of the branches. */
+      protected double[][][] m_Dists = new double[1][0][0];
+      
+      /** the split point. */
+      protected double m_Split;
+      
+      /** the value of the splitting criterion. */
+      protected double m_Val;
+      
+      /**
+       * Initializes the task.
+       * 
+       * @param att the attribute index
+       * @param indices the indices of the instances at the node
+       * @param weights the weights of the instances at the node
+       * @param inPlace whether to sort the given arrays or copies of them
+       */
+      public SplitTask(int att, int[] indices, double[] weights, boolean inPlace) {
+        m_Att = att;
+        m_Indices = indices;
+        m_Weights = weights;
+        m_InPlace = inPlace;
+      }
+      
+      /**
+       * Computes the distributions and the value of the splitting criterion.
+       * 
+       * @return the value of the splitting criterion
+       * @throws Exception if something goes wrong
+       */
+      public Double call() throws Exception {
+        if (m_InPlace) {
+          m_Split = distribution(m_Props, m_Dists, m_Att, m_Indices, m_Weights);
+        } else {
+          m_Split = distribution(m_Props, m_Dists, m_Att,
+              m_Indices.clone(), m_Weights.clone());
+        }
+        m_Val = gain(m_Dists[0], priorVal(m_Dists[0]));
+        
+        return m_Val;
+      }
+    }
+    
+    /**
+     * Builds a subtree.
+     */
+    protected class SubtreeTask implements Callable<Tree> {
+      
+      /** the subtree to build. */
+      protected Tree m_Subtree;
+      
+      /** the indices of the instances at the subtree. */
+      protected int[] m_Indices;
+      
+      /** the weights of the instances at the subtree. */
+      protected double[] m_Weights;
+      
+      /** the class distribution. */
+      protected double[] m_ClassProbs;
+      
+      /** the attribute window. */
+      protected int[] m_AttIndicesWindow;
+      
+      /** the random number generator of the subtree. */
+      protected Random m_Random;
+      
+      /** the depth of the subtree. */
+      protected int m_Depth;
+      
+      /**
+       * Initializes the task.
+       * 
+       * @param subtree the subtree to build
+       * @param indices the indices of the instances at the subtree
+       * @param weights the weights of the instances at the subtree
+       * @param classProbs the class distribution
+       * @param attIndicesWindow the attribute window
+       * @param random the random number generator of the subtree
+       * @param depth the depth of the subtree
+       */
+      public SubtreeTask(Tree subtree, int[] indices, double[] weights,
+          double[] classProbs, int[] attIndicesWindow, Random random, int depth) {
+        m_Subtree = subtree;
+        m_Indices = indices;
+        m_Weights = weights;
+        m_ClassProbs = classProbs;
+        m_AttIndicesWindow = attIndicesWindow;
+        m_Random = random;
+        m_Depth = depth;
+      }
+      
+      /**
+       * Builds the subtree.
+       * 
+       * @return the subtree
+       * @throws Exception if something goes wrong
+       */
+      public Tree call() throws Exception {
+        m_Subtree.buildTree(m_Indices, m_Weights, m_ClassProbs,
+            m_AttIndicesWindow, m_Random, m_Depth);
+        
+        return m_Subtree;
+      }
+    }
+    
     /**
      * Computes value of splitting criterion before split.
      * 
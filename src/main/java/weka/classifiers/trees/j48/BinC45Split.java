@@ -89,11 +89,29 @@ public class BinC45Split
   /**
    * Creates a C4.5-type split on the given data.
    *
+   * @param trainInstances the data to build the split from
    * @exception Exception if something goes wrong
    */
   public void buildClassifier(Instances trainInstances)
        throws Exception {
 
+    buildClassifier(trainInstances, null);
+  }
+
+  /**
+   * Creates a C4.5-type split on the given data.
+   * Uses the given sorted indices for numeric attributes instead of
+   * sorting the data.
+   *
+   * @param trainInstances the data to build the split from
+   * @param sortedIndices the sorted indices of the data, null if the
+   * data is to be sorted
+   * @exception Exception if something goes wrong
+   */
+  public void buildClassifier(Instances trainInstances,
+			      SortedIndices sortedIndices)
+       throws Exception {
+
     // Initialize the remaining instance variables.
     m_numSubsets = 0;
     m_splitPoint = Double.MAX_VALUE;
@@ -105,8 +123,12 @@ public class BinC45Split
     if (trainInstances.attribute(m_attIndex).isNominal()){
       handleEnumeratedAttribute(trainInstances);
     }else{
-      trainInstances.sort(trainInstances.attribute(m_attIndex));
-      handleNumericAttribute(trainInstances);
+      if (sortedIndices != null) {
+	handleNumericAttribute(trainInstances, sortedIndices.indices(m_attIndex));
+      } else {
+	trainInstances.sort(trainInstances.attribute(m_attIndex));
+	handleNumericAttribute(trainInstances, null);
+      }
     }
   }    
 
@@ -220,7 +242,8 @@ public class BinC45Split
    *
    * @exception Exception if something goes wrong
    */
-  private void handleNumericAttribute(Instances trainInstances)
+  private void handleNumericAttribute(Instances trainInstances,
+				      int [] sortedIndices)
        throws Exception {
   
     int firstMiss;
@@ -238,10 +261,9 @@ public class BinC45Split
     m_distribution = new Distribution(2,trainInstances.numClasses());
     
     // Only Instances with known values are relevant.
-    Enumeration enu = trainInstances.enumerateInstances();
     i = 0;
-    while (enu.hasMoreElements()) {
-      instance = (Instance) enu.nextElement();
+    while (i < trainInstances.numInstances()) {
+      instance = instance(trainInstances,sortedIndices,i);
       if (instance.isMissing(m_attIndex))
 	break;
       m_distribution.add(1,instance);
@@ -268,12 +290,12 @@ public class BinC45Split
     defaultEnt = m_infoGainCrit.oldEnt(m_distribution);
     while (next < firstMiss){
 	  
-      if (trainInstances.instance(next-1).value(m_attIndex)+1e-5 < 
-	  trainInstances.instance(next).value(m_attIndex)){ 
+      if (instance(trainInstances,sortedIndices,next-1).value(m_attIndex)+1e-5 < 
+	  instance(trainInstances,sortedIndices,next).value(m_attIndex)){ 
 	
 	// Move class values for all Instances up to next 
 	// possible split point.
-	m_distribution.shiftRange(1,0,trainInstances,last,next);
+	m_distribution.shiftRange(1,0,trainInstances,sortedIndices,last,next);
 	
 	// Check if enough Instances in each subset and compute
 	// values for criteria.
@@ -308,19 +330,19 @@ public class BinC45Split
     // best split.
     m_numSubsets = 2;
     m_splitPoint = 
-      (trainInstances.instance(splitIndex+1).value(m_attIndex)+
-       trainInstances.instance(splitIndex).value(m_attIndex))/2;
+      (instance(trainInstances,sortedIndices,splitIndex+1).value(m_attIndex)+
+       instance(trainInstances,sortedIndices,splitIndex).value(m_attIndex))/2;
 
     // In case we have a numerical precision problem we need to choose the
     // smaller value
-    if (m_splitPoint == trainInstances.instance(splitIndex + 1).value(m_attIndex)) {
-      m_splitPoint = trainInstances.instance(splitIndex).value(m_attIndex);
+    if (m_splitPoint == instance(trainInstances,sortedIndices,splitIndex + 1).value(m_attIndex)) {
+      m_splitPoint = instance(trainInstances,sortedIndices,splitIndex).value(m_attIndex);
     }
 
     // Restore distributioN for best split.
     m_distribution = new Distribution(2,trainInstances.numClasses());
-    m_distribution.addRange(0,trainInstances,0,splitIndex+1);
-    m_distribution.addRange(1,trainInstances,splitIndex+1,firstMiss);
+    m_distribution.addRange(0,trainInstances,sortedIndices,0,splitIndex+1);
+    m_distribution.addRange(1,trainInstances,sortedIndices,splitIndex+1,firstMiss);
 
     // Compute modified gain ratio for best split.
     m_gainRatio = m_gainRatioCrit.
@@ -328,6 +350,22 @@ public class BinC45Split
 		     m_infoGain);
   }
 
+  /**
+   * Returns the instance at the given position in the sort order.
+   *
+   * @param data the instances
+   * @param sortedIndices the sorted indices, null if the data is sorted
+   * @param index the position in the sort order
+   * @return the instance
+   */
+  private Instance instance(Instances data, int [] sortedIndices, int index) {
+
+    if (sortedIndices == null)
+      return data.instance(index);
+    else
+      return data.instance(sortedIndices[index]);
+  }
+
   /**
    * Returns (C4.5-type) information gain for the generated split.
    */
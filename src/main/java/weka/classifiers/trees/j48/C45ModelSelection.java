@@ -22,6 +22,8 @@
 package weka.classifiers.trees.j48;
 
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import weka.core.Attribute;
 import weka.core.Instances;
@@ -49,6 +51,12 @@ public class C45ModelSelection
   /** All the training data */
   private Instances m_allData; // 
 
+  /** Whether to use sorted indices instead of sorting the data at each node. */
+  private boolean m_presort;
+
+  /** The sorted indices of the subsets that still have to be processed. */
+  private transient Map<Instances,SortedIndices> m_sortedIndices;
+
   /**
    * Initializes the split selection method with the given parameters.
    *
@@ -65,6 +73,25 @@ public class C45ModelSelection
     m_allData = allData;
     m_useMDLcorrection = useMDLcorrection;
   }
+  /**
+   * Initializes the split selection method with the given parameters.
+   *
+   * @param minNoObj minimum number of instances that have to occur in at least two
+   * subsets induced by split
+   * @param allData FULL training dataset (necessary for
+   * selection of split points).
+   * @param useMDLcorrection whether to use MDL adjustement when
+   * finding splits on numeric attributes
+   * @param presort whether to sort the data only once and to maintain
+   * sorted indices for the subsets
+   */
+  public C45ModelSelection(int minNoObj, Instances allData,
+			   boolean useMDLcorrection, boolean presort) {
+
+    this(minNoObj, allData, useMDLcorrection);
+    m_presort = presort;
+  }
+
 
   /**
    * Sets reference to training data to null.
@@ -72,6 +99,31 @@ public class C45ModelSelection
   public void cleanup() {
 
     m_allData = null;
+    m_sortedIndices = null;
+  }
+
+  /**
+   * Returns the sorted indices of the given data, sorting it if the
+   * indices haven't been derived from the data's parent node. In the
+   * latter case the data is the root of a new (partial) tree, so any
+   * indices left over from the previous one get discarded.
+   *
+   * @param data the data to get the sorted indices for
+   * @return the sorted indices
+   */
+  protected SortedIndices sortedIndices(Instances data) {
+
+    SortedIndices result;
+
+    if (m_sortedIndices == null)
+      m_sortedIndices = new IdentityHashMap<Instances,SortedIndices>();
+    result = m_sortedIndices.remove(data);
+    if (result == null) {
+      m_sortedIndices.clear();
+      result = new SortedIndices(data, m_sortedIndices);
+    }
+
+    return result;
   }
 
   /**
@@ -89,6 +141,7 @@ public class C45ModelSelection
     boolean multiVal = true;
     Distribution checkDistribution;
     Attribute attribute;
+    SortedIndices sortedIndices = null;
     double sumOfWeights;
     int i;
     
@@ -96,6 +149,8 @@ public class C45ModelSelection
 
       // Check if all Instances belong to one class or if not
       // enough Instances to split.
+      if (m_presort)
+	sortedIndices = sortedIndices(data);
       checkDistribution = new Distribution(data);
       noSplitModel = new NoSplit(checkDistribution);
       if (Utils.sm(checkDistribution.total(),2*m_minNoObj) ||
@@ -129,7 +184,7 @@ public class C45ModelSelection
 	  
 	  // Get models for current attribute.
 	  currentModel[i] = new C45Split(i,m_minNoObj,sumOfWeights,m_useMDLcorrection);
-	  currentModel[i].buildClassifier(data);
+	  currentModel[i].buildClassifier(data,sortedIndices);
 	  
 	  // Check if useful split for current attribute
 	  // exists and check for enumerated attributes with 
@@ -183,6 +238,7 @@ public class C45ModelSelection
       // Set the split point analogue to C45 if attribute numeric.
       if (m_allData != null)
 	bestModel.setSplitPoint(m_allData);
+      bestModel.setSortedIndices(sortedIndices);
       return bestModel;
     }catch(Exception e){
       e.printStackTrace();
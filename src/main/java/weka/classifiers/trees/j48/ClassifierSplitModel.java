@@ -47,6 +47,9 @@ public abstract class ClassifierSplitModel
   /** Number of created subsets. */
   protected int m_numSubsets;         
 
+  /** The sorted indices of the data the model was built from, if any. */
+  protected transient SortedIndices m_sortedIndices;
+
   /**
    * Allows to clone a model (shallow copy).
    */
@@ -234,6 +237,17 @@ public abstract class ClassifierSplitModel
     m_distribution = new Distribution(data, this);
   }
 
+  /**
+   * Sets the sorted indices of the data the model was built from. They
+   * get passed on to the subsets when this data is split.
+   *
+   * @param sortedIndices the sorted indices
+   */
+  public void setSortedIndices(SortedIndices sortedIndices) {
+
+    m_sortedIndices = sortedIndices;
+  }
+
   /**
    * Splits the given set of instances into subsets.
    *
@@ -267,6 +281,12 @@ public abstract class ClassifierSplitModel
     }
     for (j = 0; j < m_numSubsets; j++)
       instances[j].compactify();
+
+    // Pass on the sorted indices to the subsets.
+    if ((m_sortedIndices != null) && (m_sortedIndices.data() == data)) {
+      m_sortedIndices.split(this, instances);
+      m_sortedIndices = null;
+    }
     
     return instances;
   }
@@ -252,6 +252,31 @@ public class ClassifierTree
 	m_sons[i].cleanup(justHeaderInfo);
   }
 
+  /** 
+   * Returns class probabilities for a batch of instances. The instances
+   * are passed through the tree together, one node at a time, which gives
+   * the same probabilities as distributionForInstance(Instance, boolean).
+   *
+   * @param instances the instances to get the distributions for
+   * @param useLaplace whether to use laplace or not
+   * @return the distributions, one for each instance
+   * @throws Exception if something goes wrong
+   */
+  public final double [][] distributionsForInstances(Instances instances,
+						     boolean useLaplace) 
+       throws Exception {
+
+    int [] indices = new int[instances.numInstances()];
+    double [] weights = new double[instances.numInstances()];
+
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = i;
+      weights[i] = 1;
+    }
+
+    return getProbs(instances, indices, weights, indices.length, useLaplace);
+  }
+
   /** 
    * Returns class probabilities for a weighted instance.
    *
@@ -688,6 +713,122 @@ public class ClassifierTree
     }
   }
 
+  /**
+   * Help method for computing class probabilities of a batch of
+   * instances, the batch counterpart of getProbs(int, Instance, double)
+   * and getProbsLaplace(int, Instance, double).
+   *
+   * @param instances the instances
+   * @param indices the indices of the instances that reach this node
+   * @param weights the weights to use for these instances
+   * @param num the number of instances that reach this node
+   * @param useLaplace whether to use laplace or not
+   * @return the probs, one array for each of the instances
+   * @throws Exception if something goes wrong
+   */
+  private double [][] getProbs(Instances instances, int [] indices,
+			       double [] weights, int num, boolean useLaplace) 
+    throws Exception {
+
+    int numClasses = instances.numClasses();
+    double [][] probs = new double[num][];
+    Instance instance;
+    int i, j, k;
+
+    if (m_isLeaf) {
+      for (k = 0; k < num; k++) {
+	instance = instances.instance(indices[k]);
+	probs[k] = new double[numClasses];
+	for (j = 0; j < numClasses; j++) {
+	  probs[k][j] = weights[k] * classProb(j, instance, -1, useLaplace);
+	}
+      }
+      return probs;
+    }
+
+    // Route the instances to the sons, remembering where they end up.
+    // Instances with a missing value go to all (non-empty) sons.
+    int [] subsets = new int[num];
+    int [] positions = new int[num];
+    int [][] missingPositions = new int[num][];
+    int [][] sonIndices = new int[m_sons.length][num];
+    double [][] sonWeights = new double[m_sons.length][num];
+    int [] sonNum = new int[m_sons.length];
+    for (k = 0; k < num; k++) {
+      instance = instances.instance(indices[k]);
+      subsets[k] = localModel().whichSubset(instance);
+      if (subsets[k] == -1) {
+	double [] subsetWeights = localModel().weights(instance);
+	missingPositions[k] = new int[m_sons.length];
+	for (i = 0; i < m_sons.length; i++) {
+	  if (!son(i).m_isEmpty) {
+	    missingPositions[k][i] = sonNum[i];
+	    sonIndices[i][sonNum[i]] = indices[k];
+	    sonWeights[i][sonNum[i]++] = subsetWeights[i] * weights[k];
+	  }
+	}
+      } else if (son(subsets[k]).m_isEmpty) {
+	probs[k] = new double[numClasses];
+	for (j = 0; j < numClasses; j++) {
+	  probs[k][j] = weights[k] * 
+	    classProb(j, instance, subsets[k], useLaplace);
+	}
+      } else {
+	i = subsets[k];
+	positions[k] = sonNum[i];
+	sonIndices[i][sonNum[i]] = indices[k];
+	sonWeights[i][sonNum[i]++] = weights[k];
+      }
+    }
+
+    double [][][] sonProbs = new double[m_sons.length][][];
+    for (i = 0; i < m_sons.length; i++) {
+      if (sonNum[i] > 0) {
+	sonProbs[i] = son(i).getProbs(instances, sonIndices[i], sonWeights[i],
+				      sonNum[i], useLaplace);
+      }
+    }
+
+    for (k = 0; k < num; k++) {
+      if (subsets[k] == -1) {
+	probs[k] = new double[numClasses];
+	for (i = 0; i < m_sons.length; i++) {
+	  if (!son(i).m_isEmpty) {
+	    for (j = 0; j < numClasses; j++) {
+	      probs[k][j] += sonProbs[i][missingPositions[k][i]][j];
+	    }
+	  }
+	}
+      } else if (probs[k] == null) {
+	probs[k] = sonProbs[subsets[k]][positions[k]];
+      }
+    }
+
+    return probs;
+  }
+
+  /**
+   * Returns the class probability of the local model, with or without
+   * laplace correction.
+   *
+   * @param classIndex the class index
+   * @param instance the instance
+   * @param theSubset the subset
+   * @param useLaplace whether to use laplace or not
+   * @return the probability
+   * @throws Exception if something goes wrong
+   */
+  private double classProb(int classIndex, Instance instance, int theSubset,
+			   boolean useLaplace) 
+    throws Exception {
+
+    if (useLaplace) {
+      return localModel().classProbLaplace(classIndex, instance, theSubset);
+    } else {
+      return localModel().classProb(classIndex, instance, theSubset);
+    }
+  }
+
   /**
    * Method just exists to make program easier to read.
    */
@@ -347,6 +347,43 @@ public class Distribution
     totaL += sumOfWeights;
   }
 
+  /**
+   * Adds all instances in given range to given bag, visiting the
+   * instances in the order given by the index array.
+   *
+   * @param bagIndex the bag to add the instances to
+   * @param source the instances
+   * @param indices the order in which to visit the instances, null for
+   * the order of the instances
+   * @param startIndex the first position in the index array
+   * @param lastPlusOne the last position in the index array plus one
+   * @exception Exception if something goes wrong
+   */
+  public final void addRange(int bagIndex,Instances source,int [] indices,
+			     int startIndex, int lastPlusOne)
+       throws Exception {
+
+    double sumOfWeights = 0;
+    int classIndex;
+    Instance instance;
+    int i;
+
+    if (indices == null) {
+      addRange(bagIndex,source,startIndex,lastPlusOne);
+      return;
+    }
+
+    for (i = startIndex; i < lastPlusOne; i++) {
+      instance = (Instance) source.instance(indices[i]);
+      classIndex = (int)instance.classValue();
+      sumOfWeights = sumOfWeights+instance.weight();
+      m_perClassPerBag[bagIndex][classIndex] += instance.weight();
+      m_perClass[classIndex] += instance.weight();
+    }
+    m_perBag[bagIndex] += sumOfWeights;
+    totaL += sumOfWeights;
+  }
+
   /**
    * Adds given instance to all bags weighting it according to given weights.
    *
@@ -737,6 +774,44 @@ public class Distribution
       m_perBag[to] += weight;
     }
   }
+
+  /**
+   * Shifts all instances in given range from one bag to another one,
+   * visiting the instances in the order given by the index array.
+   *
+   * @param from the bag to take the instances from
+   * @param to the bag to move the instances to
+   * @param source the instances
+   * @param indices the order in which to visit the instances, null for
+   * the order of the instances
+   * @param startIndex the first position in the index array
+   * @param lastPlusOne the last position in the index array plus one
+   * @exception Exception if something goes wrong
+   */
+  public final void shiftRange(int from,int to,Instances source,
+			       int [] indices,int startIndex,int lastPlusOne) 
+       throws Exception {
+    
+    int classIndex;
+    double weight;
+    Instance instance;
+    int i;
+
+    if (indices == null) {
+      shiftRange(from,to,source,startIndex,lastPlusOne);
+      return;
+    }
+
+    for (i = startIndex; i < lastPlusOne; i++) {
+      instance = (Instance) source.instance(indices[i]);
+      classIndex = (int)instance.classValue();
+      weight = instance.weight();
+      m_perClassPerBag[from][classIndex] -= weight;
+      m_perClassPerBag[to][classIndex] += weight;
+      m_perBag[from] -= weight;
+      m_perBag[to] += weight;
+    }
+  }
   
   /**
    * Returns the revision string.
@@ -0,0 +1,338 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    FlatClassifierTree.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.trees.j48;
+
+import weka.core.Instance;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * A ClassifierTree compiled into flat arrays for fast prediction. The
+ * class probabilities of the leaves and of the empty sons, as well as the
+ * weights for instances with missing values, are computed once, so that
+ * classifying an instance only walks the arrays. The compiled tree
+ * returns the same probabilities as
+ * ClassifierTree.distributionForInstance(Instance, boolean). Only trees
+ * built from C45Split, BinC45Split and NoSplit models can be compiled.
+ *
+ * @version $Revision: 9500 $
+ */
+public class FlatClassifierTree
+  implements RevisionHandler {
+
+  /** Type of a node that is a leaf. */
+  protected static final int LEAF = 0;
+
+  /** Type of a node that splits on a numeric attribute. */
+  protected static final int NUMERIC = 1;
+
+  /** Type of a node with one son per value of a nominal attribute. */
+  protected static final int NOMINAL = 2;
+
+  /** Type of a node that tests for one value of a nominal attribute. */
+  protected static final int BINARY_NOMINAL = 3;
+
+  /** Whether the probabilities use the laplace correction. */
+  protected final boolean m_useLaplace;
+
+  /** The number of classes. */
+  protected final int m_numClasses;
+
+  /** The type of each node. */
+  protected final int [] m_type;
+
+  /** The split attribute of each node. */
+  protected final int [] m_attIndex;
+
+  /** The split point of each node. */
+  protected final double [] m_splitPoint;
+
+  /** The first son of each node in the son arrays (the probabilities
+      in m_probs for a leaf). */
+  protected final int [] m_first;
+
+  /** The number of sons of each node. */
+  protected final int [] m_numSons;
+
+  /** The node of each son, -1 if the son is empty. */
+  protected final int [] m_sonNode;
+
+  /** The weight of each son for instances with missing values. */
+  protected final double [] m_sonWeight;
+
+  /** The class probabilities of the leaves and the empty sons. */
+  protected final double [] m_probs;
+
+  /**
+   * Compiles the given tree.
+   *
+   * @param root the root of the tree
+   * @param useLaplace whether to use the laplace correction
+   * @exception Exception if the tree contains other models than
+   * C45Split, BinC45Split and NoSplit
+   */
+  public FlatClassifierTree(ClassifierTree root, boolean useLaplace)
+       throws Exception {
+
+    int [] counts;
+
+    m_useLaplace = useLaplace;
+    m_numClasses = root.m_train.numClasses();
+
+    counts = new int[2];
+    count(root, counts);
+    m_type = new int[counts[0]];
+    m_attIndex = new int[counts[0]];
+    m_splitPoint = new double[counts[0]];
+    m_first = new int[counts[0]];
+    m_numSons = new int[counts[0]];
+    m_sonNode = new int[counts[1]];
+    m_sonWeight = new double[counts[1]];
+    m_probs = new double[(counts[0] + counts[1]) * m_numClasses];
+
+    add(root, new int[3]);
+  }
+
+  /**
+   * Counts the (non-empty) nodes and the sons of the given tree.
+   *
+   * @param tree the tree
+   * @param counts the number of nodes and sons so far
+   */
+  protected void count(ClassifierTree tree, int [] counts) {
+
+    counts[0]++;
+    if (!tree.m_isLeaf) {
+      counts[1] += tree.m_sons.length;
+      for (int i = 0; i < tree.m_sons.length; i++) {
+	if (!tree.m_sons[i].m_isEmpty)
+	  count(tree.m_sons[i], counts);
+      }
+    }
+  }
+
+  /**
+   * Adds the given tree in depth-first order.
+   *
+   * @param tree the tree to add
+   * @param counts the number of nodes, sons and probabilities added so far
+   * @return the index of the node
+   * @exception Exception if the tree contains unsupported models
+   */
+  protected int add(ClassifierTree tree, int [] counts) throws Exception {
+
+    ClassifierSplitModel model = tree.m_localModel;
+    int index = counts[0]++;
+    int first;
+    int i;
+
+    if (tree.m_isLeaf) {
+      if (!(model instanceof NoSplit))
+	throw new Exception("Can't compile leaf with "
+			    + model.getClass().getName() + "!");
+      m_type[index] = LEAF;
+      m_first[index] = counts[2];
+      addProbs(model, -1, counts);
+      return index;
+    }
+
+    if (model instanceof C45Split) {
+      m_attIndex[index] = ((C45Split) model).attIndex();
+      m_splitPoint[index] = ((C45Split) model).splitPoint();
+      if (tree.m_train.attribute(m_attIndex[index]).isNominal())
+	m_type[index] = NOMINAL;
+      else
+	m_type[index] = NUMERIC;
+    } else if (model instanceof BinC45Split) {
+      m_attIndex[index] = ((BinC45Split) model).attIndex();
+      m_splitPoint[index] = ((BinC45Split) model).splitPoint();
+      if (tree.m_train.attribute(m_attIndex[index]).isNominal())
+	m_type[index] = BINARY_NOMINAL;
+      else
+	m_type[index] = NUMERIC;
+    } else {
+      throw new Exception("Can't compile node with "
+			  + model.getClass().getName() + "!");
+    }
+
+    // Same as weights(Instance) of the split models.
+    first = counts[1];
+    m_first[index] = first;
+    m_numSons[index] = tree.m_sons.length;
+    counts[1] += tree.m_sons.length;
+    for (i = 0; i < tree.m_sons.length; i++) {
+      m_sonWeight[first + i] =
+	model.distribution().perBag(i) / model.distribution().total();
+    }
+    for (i = 0; i < tree.m_sons.length; i++) {
+      if (tree.m_sons[i].m_isEmpty) {
+	m_sonNode[first + i] = -counts[2] - 1;
+	addProbs(model, i, counts);
+      } else {
+	m_sonNode[first + i] = add(tree.m_sons[i], counts);
+      }
+    }
+
+    return index;
+  }
+
+  /**
+   * Adds the class probabilities of the given model.
+   *
+   * @param model the model
+   * @param subset the subset, -1 for a leaf
+   * @param counts the number of nodes, sons and probabilities added so far
+   * @exception Exception if the probabilities can't be computed
+   */
+  protected void addProbs(ClassifierSplitModel model, int subset,
+			  int [] counts) throws Exception {
+
+    int offset = counts[2]++ * m_numClasses;
+
+    for (int j = 0; j < m_numClasses; j++) {
+      if (m_useLaplace)
+	m_probs[offset + j] = model.classProbLaplace(j, null, subset);
+      else
+	m_probs[offset + j] = model.classProb(j, null, subset);
+    }
+  }
+
+  /**
+   * Returns whether the probabilities use the laplace correction.
+   *
+   * @return true if the laplace correction is used
+   */
+  public boolean getUseLaplace() {
+
+    return m_useLaplace;
+  }
+
+  /**
+   * Computes the class probabilities for the given instance, starting at
+   * the given node. Sums for instances with missing values are formed in
+   * the same order as in ClassifierTree, so the results are identical.
+   *
+   * @param node the node to start from
+   * @param instance the instance
+   * @param weight the weight of the instance
+   * @param probs the array to store the probabilities in
+   */
+  protected void probs(int node, Instance instance, double weight,
+		       double [] probs) {
+
+    double [] sonProbs;
+    double value;
+    int subset;
+    int offset;
+    int i, j;
+
+    while (m_type[node] != LEAF) {
+      value = instance.value(m_attIndex[node]);
+      if (Utils.isMissingValue(value)) {
+	for (j = 0; j < m_numClasses; j++)
+	  probs[j] = 0;
+	sonProbs = new double[m_numClasses];
+	for (i = 0; i < m_numSons[node]; i++) {
+	  if (m_sonNode[m_first[node] + i] > -1) {
+	    probs(m_sonNode[m_first[node] + i], instance,
+		  m_sonWeight[m_first[node] + i] * weight, sonProbs);
+	    for (j = 0; j < m_numClasses; j++)
+	      probs[j] += sonProbs[j];
+	  }
+	}
+	return;
+      }
+
+      if (m_type[node] == NUMERIC) {
+	subset = (value - m_splitPoint[node] < Utils.SMALL) ? 0 : 1;
+      } else if (m_type[node] == BINARY_NOMINAL) {
+	subset = ((int) m_splitPoint[node] == (int) value) ? 0 : 1;
+      } else {
+	subset = (int) value;
+	if ((subset < 0) || (subset >= m_numSons[node]))
+	  throw new ArrayIndexOutOfBoundsException(subset);
+      }
+
+      node = m_sonNode[m_first[node] + subset];
+      if (node < 0) {
+	// empty son
+	offset = (-node - 1) * m_numClasses;
+	for (j = 0; j < m_numClasses; j++)
+	  probs[j] = weight * m_probs[offset + j];
+	return;
+      }
+    }
+
+    offset = m_first[node] * m_numClasses;
+    for (j = 0; j < m_numClasses; j++)
+      probs[j] = weight * m_probs[offset + j];
+  }
+
+  /**
+   * Returns the class probabilities for the given instance.
+   *
+   * @param instance the instance
+   * @return the class probabilities
+   */
+  public double [] distributionForInstance(Instance instance) {
+
+    double [] result = new double[m_numClasses];
+
+    probs(0, instance, 1, result);
+
+    return result;
+  }
+
+  /**
+   * Classifies the given instance, like
+   * ClassifierTree.classifyInstance(Instance) (without the laplace
+   * correction).
+   *
+   * @param instance the instance
+   * @return the classification
+   */
+  public double classifyInstance(Instance instance) {
+
+    double [] probs = distributionForInstance(instance);
+    double maxProb = -1;
+    int maxIndex = 0;
+
+    for (int j = 0; j < probs.length; j++) {
+      if (Utils.gr(probs[j], maxProb)) {
+	maxIndex = j;
+	maxProb = probs[j];
+      }
+    }
+
+    return (double) maxIndex;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
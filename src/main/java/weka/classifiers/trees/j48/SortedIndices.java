@@ -0,0 +1,210 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    SortedIndices.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.trees.j48;
+
+import java.util.Map;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+
+/**
+ * Class holding, for each numeric attribute, the indices of a set of
+ * instances in ascending order of the attribute's values (instances with
+ * missing values at the end). The data is sorted only once; when the data
+ * is split, the indices of the subsets are derived from the indices of
+ * the data in linear time and stored in a registry, keyed on the
+ * subsets, from where the model selection picks them up again.
+ *
+ * @version $Revision: 9500 $
+ */
+public class SortedIndices
+  implements RevisionHandler {
+
+  /** The instances the indices refer to. */
+  protected Instances m_data;
+
+  /** The sorted indices per attribute (null for non-numeric attributes). */
+  protected int[][] m_indices;
+
+  /** The registry for the indices of the subsets. */
+  protected Map<Instances,SortedIndices> m_registry;
+
+  /**
+   * Sorts the given instances on all numeric attributes, apart from the
+   * class attribute.
+   *
+   * @param data the instances to sort
+   * @param registry where to store the indices of the subsets
+   */
+  public SortedIndices(Instances data, Map<Instances,SortedIndices> registry) {
+
+    double[] vals;
+    double val;
+    int i, j;
+
+    m_data = data;
+    m_registry = registry;
+    m_indices = new int[data.numAttributes()][];
+    vals = new double[data.numInstances()];
+    for (i = 0; i < data.numAttributes(); i++) {
+      if ((i == data.classIndex()) || !data.attribute(i).isNumeric())
+	continue;
+
+      // Same as Instances.sort(int): missing values go to the end.
+      for (j = 0; j < vals.length; j++) {
+	val = data.instance(j).value(i);
+	if (Utils.isMissingValue(val))
+	  vals[j] = Double.MAX_VALUE;
+	else
+	  vals[j] = val;
+      }
+      m_indices[i] = Utils.sortWithNoMissingValues(vals);
+    }
+  }
+
+  /**
+   * Initializes the object with already sorted indices.
+   *
+   * @param data the instances the indices refer to
+   * @param indices the sorted indices per attribute
+   * @param registry where to store the indices of the subsets
+   */
+  protected SortedIndices(Instances data, int[][] indices,
+			  Map<Instances,SortedIndices> registry) {
+
+    m_data = data;
+    m_indices = indices;
+    m_registry = registry;
+  }
+
+  /**
+   * Returns the instances the indices refer to.
+   *
+   * @return the instances
+   */
+  public Instances data() {
+
+    return m_data;
+  }
+
+  /**
+   * Returns the indices of the instances in ascending order of the given
+   * attribute's values.
+   *
+   * @param attIndex the index of the attribute
+   * @return the sorted indices, null if the attribute is not numeric
+   */
+  public int[] indices(int attIndex) {
+
+    return m_indices[attIndex];
+  }
+
+  /**
+   * Derives the sorted indices of the subsets generated by the given split
+   * model from the indices of the data and stores them in the registry.
+   * Relies on ClassifierSplitModel.split(Instances) adding the instances
+   * to the subsets in the order of the data.
+   *
+   * @param model the model that split the data
+   * @param subsets the subsets generated by the model
+   * @exception Exception if something goes wrong
+   */
+  public void split(ClassifierSplitModel model, Instances[] subsets)
+       throws Exception {
+
+    int[] subset;
+    int[] position;
+    int[][] positions;
+    int[] counts;
+    int[][][] indices;
+    int[] current;
+    double[] weights;
+    Instance instance;
+    int index;
+    int i, j, k, n;
+
+    // Determine subset and position within the subset of each instance.
+    // Instances that go to several subsets are marked with -1.
+    n = m_data.numInstances();
+    subset = new int[n];
+    position = new int[n];
+    positions = new int[n][];
+    counts = new int[subsets.length];
+    for (i = 0; i < n; i++) {
+      instance = m_data.instance(i);
+      subset[i] = model.whichSubset(instance);
+      if (subset[i] > -1) {
+	position[i] = counts[subset[i]]++;
+      } else {
+	weights = model.weights(instance);
+	positions[i] = new int[subsets.length];
+	for (j = 0; j < subsets.length; j++) {
+	  if (Utils.gr(weights[j],0))
+	    positions[i][j] = counts[j]++;
+	  else
+	    positions[i][j] = -1;
+	}
+      }
+    }
+    for (j = 0; j < subsets.length; j++) {
+      if (counts[j] != subsets[j].numInstances())
+	return;
+    }
+
+    // Filter the sorted indices, which preserves their order.
+    indices = new int[subsets.length][m_indices.length][];
+    for (k = 0; k < m_indices.length; k++) {
+      if (m_indices[k] == null)
+	continue;
+      for (j = 0; j < subsets.length; j++)
+	indices[j][k] = new int[counts[j]];
+      current = new int[subsets.length];
+      for (i = 0; i < n; i++) {
+	index = m_indices[k][i];
+	if (subset[index] > -1) {
+	  indices[subset[index]][k][current[subset[index]]++] = position[index];
+	} else {
+	  for (j = 0; j < subsets.length; j++) {
+	    if (positions[index][j] > -1)
+	      indices[j][k][current[j]++] = positions[index][j];
+	  }
+	}
+      }
+    }
+
+    for (j = 0; j < subsets.length; j++)
+      m_registry.put(subsets[j],
+		     new SortedIndices(subsets[j], indices[j], m_registry));
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
@@ -22,10 +22,18 @@ package weka.clusterers;
 
 import java.io.Serializable;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
@@ -41,6 +49,7 @@ import weka.core.RevisionUtils;
 import weka.core.SelectedTag;
 import weka.core.Tag;
 import weka.core.Utils;
+import weka.core.matrix.ParallelOperations.RangeTask;
 
 /**
 <!-- globalinfo-start -->
@@ -77,6 +86,14 @@ import weka.core.Utils;
 * \If set, distance is interpreted as branch length, otherwise it is node height.
 * </pre>
 * 
+* <pre> -F
+* If set, the distance matrix is stored in single precision, which halves its memory.
+* </pre>
+* 
+* <pre> -num-slots &lt;num&gt;
+* Number of execution slots (threads) used for computing distances. (default: 1)
+* </pre>
+* 
 *<!-- options-end -->
 *
 * 
@@ -247,6 +264,99 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
   protected Node [] m_clusters;
   int [] m_nClusterNr;
 
+  /** Whether to store the distance matrix in single precision. */
+  protected boolean m_bFloatDistances = false;
+
+  /** The number of threads to use for computing distances. */
+  protected int m_nNumExecutionSlots = 1;
+
+  /** the threads used while building the clusterer, null if only one slot is used **/
+  protected transient ExecutorService m_Pool;
+
+  /** cluster membership stored in primitive arrays: a cluster is identified
+   * by the index of its first instance and its instances form a linked list **/
+  static class Membership {
+    /** next instance in the cluster, -1 for the last one **/
+    int [] m_nNext;
+    /** last instance of the cluster **/
+    int [] m_nLast;
+    /** number of instances in the cluster, 0 if merged into another one **/
+    int [] m_nSize;
+
+    Membership(int nInstances) {
+      m_nNext = new int[nInstances];
+      m_nLast = new int[nInstances];
+      m_nSize = new int[nInstances];
+      for (int i = 0; i < nInstances; i++) {
+        m_nNext[i] = -1;
+        m_nLast[i] = i;
+        m_nSize[i] = 1;
+      }
+    }
+    int size(int iCluster) {
+      return m_nSize[iCluster];
+    }
+    /** appends the instances of the second cluster to the first one **/
+    void join(int iCluster1, int iCluster2) {
+      m_nNext[m_nLast[iCluster1]] = iCluster2;
+      m_nLast[iCluster1] = m_nLast[iCluster2];
+      m_nSize[iCluster1] += m_nSize[iCluster2];
+      m_nSize[iCluster2] = 0;
+    }
+    /** returns the instances of a cluster, in the order they were added **/
+    int [] members(int iCluster) {
+      int [] result = new int[m_nSize[iCluster]];
+      int k = 0;
+      for (int i = iCluster; k < result.length; i = m_nNext[i]) {
+        result[k++] = i;
+      }
+      return result;
+    }
+  }
+
+  /** condensed distance matrix: only the upper triangle is stored, row by row,
+   * in double or (to halve the memory) single precision **/
+  static class DistanceMatrix {
+    double [][] m_fDouble;
+    float [][] m_fFloat;
+
+    DistanceMatrix(int nInstances, boolean bFloat) {
+      if (bFloat) {
+        m_fFloat = new float[nInstances][];
+      } else {
+        m_fDouble = new double[nInstances][];
+      }
+      for (int i = 0; i < nInstances; i++) {
+        if (bFloat) {
+          m_fFloat[i] = new float[nInstances - i - 1];
+        } else {
+          m_fDouble[i] = new double[nInstances - i - 1];
+        }
+      }
+    }
+    double get(int i, int j) {
+      if (i == j) {
+        return 0;
+      }
+      if (i > j) {
+        int h = i; i = j; j = h;
+      }
+      if (m_fDouble != null) {
+        return m_fDouble[i][j - i - 1];
+      }
+      return m_fFloat[i][j - i - 1];
+    }
+    void set(int i, int j, double fDist) {
+      if (i > j) {
+        int h = i; i = j; j = h;
+      }
+      if (m_fDouble != null) {
+        m_fDouble[i][j - i - 1] = fDist;
+      } else {
+        m_fFloat[i][j - i - 1] = (float) fDist;
+      }
+    }
+  }
 
   @Override
   public void buildClusterer(Instances data) throws Exception {
@@ -257,22 +367,32 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
       return;
     }
     m_DistanceFunction.setInstances(m_instances);
-    // use array of integer vectors to store cluster indices,
+    // use linked lists of instance indices to store clusters,
     // starting with one cluster per instance
-    Vector<Integer> [] nClusterID = new Vector[data.numInstances()];
-    for (int i = 0; i < data.numInstances(); i++) {
-      nClusterID[i] = new Vector<Integer>();
-      nClusterID[i].add(i);
-    }
+    Membership nClusterID = new Membership(nInstances);
     // calculate distance matrix
     int nClusters = data.numInstances();
 
     // used for keeping track of hierarchy
     Node [] clusterNodes = new Node[nInstances];
-    if (m_nLinkType == NEIGHBOR_JOINING) {
-      neighborJoining(nClusters, nClusterID, clusterNodes);
-    } else {
-      doLinkClustering(nClusters, nClusterID, clusterNodes);
+    if (m_nNumExecutionSlots > 1) {
+      m_Pool = Executors.newFixedThreadPool(m_nNumExecutionSlots);
+    }
+    try {
+      if (m_nLinkType == NEIGHBOR_JOINING) {
+        neighborJoining(nClusters, nClusterID, clusterNodes);
+      } else if (m_nLinkType == SINGLE && !m_bDebug) {
+        doSingleLinkClustering(nClusters, nClusterID, clusterNodes);
+      } else if ((m_nLinkType == COMPLETE || m_nLinkType == AVERAGE) && !m_bDebug) {
+        doNNChainClustering(nClusters, nClusterID, clusterNodes);
+      } else {
+        doLinkClustering(nClusters, nClusterID, clusterNodes);
+      }
+    } finally {
+      if (m_Pool != null) {
+        m_Pool.shutdownNow();
+        m_Pool = null;
+      }
     }
 
     // move all clusters in m_nClusterID array
@@ -281,9 +401,10 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     m_clusters = new Node[m_nNumClusters];
     m_nClusterNr = new int[nInstances];
     for (int i = 0; i < nInstances; i++) {
-      if (nClusterID[i].size() > 0) {
-        for (int j = 0; j < nClusterID[i].size(); j++) {
-          m_nClusterNr[nClusterID[i].elementAt(j)] = iCurrent;
+      if (nClusterID.size(i) > 0) {
+        int [] members = nClusterID.members(i);
+        for (int j = 0; j < members.length; j++) {
+          m_nClusterNr[members[j]] = iCurrent;
         }
         m_clusters[iCurrent] = clusterNodes[i];
         iCurrent++;
@@ -292,6 +413,74 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 
   } // buildClusterer
 
+  /** runs the task for the range [0, n), which is split into parts that are
+   * processed by the threads if more than one execution slot is used
+   * @param n number of items
+   * @param task the task to run for the parts
+   * @throws Exception if a task fails
+   */
+  protected void parallelFor(int n, final RangeTask task) throws Exception {
+    if (m_Pool == null || n < 2) {
+      task.run(0, n);
+      return;
+    }
+    int nParts = Math.min(n, 4 * m_nNumExecutionSlots);
+    List<Future<Object>> futures = new ArrayList<Future<Object>>();
+    for (int i = 0; i < nParts; i++) {
+      final int from = (int) ((long) n * i / nParts);
+      final int to = (int) ((long) n * (i + 1) / nParts);
+      futures.add(m_Pool.submit(new Callable<Object>() {
+        public Object call() {
+          task.run(from, to);
+          return null;
+        }
+      }));
+    }
+    for (Future<Object> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+          throw (Exception) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+
+  /** calculates the distances between all instances in parallel
+   * @return the condensed distance matrix
+   * @throws Exception if a distance cannot be computed
+   */
+  DistanceMatrix calcDistanceMatrix() throws Exception {
+    final int n = m_instances.numInstances();
+    final DistanceMatrix fDist = new DistanceMatrix(n, m_bFloatDistances);
+    if (n > 1) {
+      // make sure the distance function is fully initialized
+      m_DistanceFunction.distance(m_instances.instance(0), m_instances.instance(1));
+    }
+    // rows i and n-1-i are processed together, which balances the work
+    parallelFor((n + 1) / 2, new RangeTask() {
+      public void run(int from, int to) {
+        for (int k = from; k < to; k++) {
+          calcDistanceRow(fDist, k);
+          if (n - 1 - k != k) {
+            calcDistanceRow(fDist, n - 1 - k);
+          }
+        }
+      }
+    });
+    return fDist;
+  }
+
+  /** calculates one row of the condensed distance matrix **/
+  void calcDistanceRow(DistanceMatrix fDist, int i) {
+    Instance instance = m_instances.instance(i);
+    for (int j = i + 1; j < m_instances.numInstances(); j++) {
+      fDist.set(i, j, m_DistanceFunction.distance(instance, m_instances.instance(j)));
+    }
+  }
+
   /** use neighbor joining algorithm for clustering
    * This is roughly based on the RapidNJ simple implementation and runs at O(n^3)
    * More efficient implementations exist, see RapidNJ (or my GPU implementation :-))
@@ -299,17 +488,10 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
    * @param nClusterID
    * @param clusterNodes
    */
-  void neighborJoining(int nClusters, Vector<Integer>[] nClusterID, Node [] clusterNodes) {
+  void neighborJoining(int nClusters, Membership nClusterID, Node [] clusterNodes) throws Exception {
     int n = m_instances.numInstances();
 
-    double [][] fDist = new double[nClusters][nClusters];
-    for (int i = 0; i < nClusters; i++) {
-      fDist[i][i] = 0;
-      for (int j = i+1; j < nClusters; j++) {
-        fDist[i][j] = getDistance0(nClusterID[i], nClusterID[j]);
-        fDist[j][i] = fDist[i][j];
-      }
-    }
+    DistanceMatrix fDist = calcDistanceMatrix();
 
     double [] fSeparationSums = new double [n];
     double [] fSeparations = new double [n];
@@ -319,7 +501,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     for(int i = 0; i < n; i++){
       double fSum = 0;
       for(int j = 0; j < n; j++){
-        fSum += fDist[i][j];
+        fSum += fDist.get(i, j);
       }
       fSeparationSums[i] = fSum;
       fSeparations[i] = fSum / (nClusters - 2);
@@ -333,13 +515,12 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
       double fMin = Double.MAX_VALUE;
       if (m_bDebug) {
         for (int i = 0; i < n; i++) {
-          if(nClusterID[i].size() > 0){
-            double [] fRow = fDist[i];
+          if(nClusterID.size(i) > 0){
             double fSep1 = fSeparations[i];
             for(int j = 0; j < n; j++){
-              if(nClusterID[j].size() > 0 && i != j){
+              if(nClusterID.size(j) > 0 && i != j){
                 double fSep2 = fSeparations[j];
-                double fVal = fRow[j] - fSep1 - fSep2;
+                double fVal = fDist.get(i, j) - fSep1 - fSep2;
 
                 if(fVal < fMin){
                   // new minimum
@@ -355,11 +536,10 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
         int i = 0;
         while (i < n) {
           double fSep1 = fSeparations[i];
-          double [] fRow = fDist[i];
           int j = nNextActive[i];
           while (j < n) {
             double fSep2 = fSeparations[j];
-            double fVal = fRow[j] - fSep1 - fSep2;
+            double fVal = fDist.get(i, j) - fSep1 - fSep2;
             if(fVal < fMin){
               // new minimum
               iMin1 = i;
@@ -372,7 +552,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
         }		
       }
       // record distance
-      double fMinDistance = fDist[iMin1][iMin2];
+      double fMinDistance = fDist.get(iMin1, iMin2);
       nClusters--;
       double fSep1 = fSeparations[iMin1];
       double fSep2 = fSeparations[iMin2];
@@ -381,22 +561,21 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
       if (nClusters > 2) {
         // update separations  & distance
         double fNewSeparationSum = 0;
-        double fMutualDistance = fDist[iMin1][iMin2];
-        double[] fRow1 = fDist[iMin1];
-        double[] fRow2 = fDist[iMin2];
+        double fMutualDistance = fDist.get(iMin1, iMin2);
         for(int i = 0; i < n; i++) {
-          if(i == iMin1 || i == iMin2 || nClusterID[i].size() == 0) {
-            fRow1[i] = 0;
+          if(i == iMin1 || i == iMin2 || nClusterID.size(i) == 0) {
+            if (i != iMin1) {
+              fDist.set(iMin1, i, 0);
+            }
           } else {
-            double fVal1 = fRow1[i];
-            double fVal2 = fRow2[i];
+            double fVal1 = fDist.get(iMin1, i);
+            double fVal2 = fDist.get(iMin2, i);
             double fDistance = (fVal1 + fVal2 - fMutualDistance) / 2.0;
             fNewSeparationSum += fDistance;
             // update the separationsum of cluster i.
             fSeparationSums[i] += (fDistance - fVal1 - fVal2);
             fSeparations[i] = fSeparationSums[i] / (nClusters -2);
-            fRow1[i] = fDistance;
-            fDist[i][iMin1] = fDistance;
+            fDist.set(iMin1, i, fDistance);
           }
         }
         fSeparationSums[iMin1] = fNewSeparationSum;
@@ -405,7 +584,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
         merge(iMin1, iMin2, fDist1, fDist2, nClusterID, clusterNodes);
         int iPrev = iMin2;
         // since iMin1 < iMin2 we havenActiveRows[0] >= 0, so the next loop should be save
-        while (nClusterID[iPrev].size() == 0) {
+        while (nClusterID.size(iPrev) == 0) {
           iPrev--;
         }
         nNextActive[iPrev] = nNextActive[iMin2];
@@ -416,13 +595,13 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     }
 
     for (int i = 0; i < n; i++) {
-      if (nClusterID[i].size() > 0) {
+      if (nClusterID.size(i) > 0) {
         for (int j = i+1; j < n; j++) {
-          if (nClusterID[j].size() > 0) {
-            double fDist1 = fDist[i][j];
-            if(nClusterID[i].size() == 1) {
+          if (nClusterID.size(j) > 0) {
+            double fDist1 = fDist.get(i, j);
+            if(nClusterID.size(i) == 1) {
               merge(i,j,fDist1,0,nClusterID, clusterNodes);
-            } else if (nClusterID[j].size() == 1) {
+            } else if (nClusterID.size(j) == 1) {
               merge(i,j,0,fDist1,nClusterID, clusterNodes);
             } else {
               merge(i,j,fDist1/2.0,fDist1/2.0,nClusterID, clusterNodes);
@@ -434,32 +613,235 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     }
   } // neighborJoining
 
+  /** Perform single link clustering.
+   * The single link hierarchy is given by the minimum spanning tree of the
+   * instances, which is computed with Prim's algorithm from distances that are
+   * calculated on the fly. This takes O(n^2) time but only O(n) memory.
+   * @param nClusters number of clusters
+   * @param nClusterID 
+   * @param clusterNodes 
+   */
+  void doSingleLinkClustering(int nClusters, Membership nClusterID, Node [] clusterNodes) throws Exception {
+    final int nInstances = m_instances.numInstances();
+    // closest distance of the instances to the tree, NaN once in the tree
+    final double [] fMinDist = new double[nInstances];
+    final int [] nMinFrom = new int[nInstances];
+    Arrays.fill(fMinDist, Double.POSITIVE_INFINITY);
+    if (nInstances > 1) {
+      // make sure the distance function is fully initialized
+      m_DistanceFunction.distance(m_instances.instance(0), m_instances.instance(1));
+    }
+
+    int [] nEdgeFrom = new int[nInstances - 1];
+    int [] nEdgeTo = new int[nInstances - 1];
+    final double [] fEdgeDist = new double[nInstances - 1];
+    int iLast = 0;
+    fMinDist[0] = Double.NaN;
+    for (int k = 0; k < nInstances - 1; k++) {
+      final int iCurrent = iLast;
+      final Instance current = m_instances.instance(iCurrent);
+      // update the distances to the tree and find the closest instance
+      // in every part, the lowest index wins ties
+      final int nParts = Math.min(nInstances, (m_Pool == null) ? 1 : 4 * m_nNumExecutionSlots);
+      final int [] nBest = new int[nParts];
+      parallelFor(nParts, new RangeTask() {
+        public void run(int from, int to) {
+          for (int p = from; p < to; p++) {
+            int iBest = -1;
+            for (int i = (int) ((long) nInstances * p / nParts); i < (int) ((long) nInstances * (p + 1) / nParts); i++) {
+              if (!Double.isNaN(fMinDist[i])) {
+                double fDist = m_DistanceFunction.distance(current, m_instances.instance(i));
+                if (fDist < fMinDist[i]) {
+                  fMinDist[i] = fDist;
+                  nMinFrom[i] = iCurrent;
+                }
+                if (iBest < 0 || fMinDist[i] < fMinDist[iBest]) {
+                  iBest = i;
+                }
+              }
+            }
+            nBest[p] = iBest;
+          }
+        }
+      });
+      int iBest = -1;
+      for (int p = 0; p < nParts; p++) {
+        if (nBest[p] >= 0 && (iBest < 0 || fMinDist[nBest[p]] < fMinDist[iBest])) {
+          iBest = nBest[p];
+        }
+      }
+      nEdgeFrom[k] = nMinFrom[iBest];
+      nEdgeTo[k] = iBest;
+      fEdgeDist[k] = fMinDist[iBest];
+      fMinDist[iBest] = Double.NaN;
+      iLast = iBest;
+    }
+
+    replayMerges(nClusters, nEdgeFrom, nEdgeTo, fEdgeDist, nClusterID, clusterNodes);
+  } // doSingleLinkClustering
+
+  /** Perform complete or average link clustering with the nearest neighbor chain
+   * algorithm, which updates the condensed distance matrix with the
+   * Lance-Williams formula. This takes O(n^2) time and no memory besides the
+   * distance matrix.
+   * @param nClusters number of clusters
+   * @param nClusterID 
+   * @param clusterNodes 
+   */
+  void doNNChainClustering(int nClusters, Membership nClusterID, Node [] clusterNodes) throws Exception {
+    int nInstances = m_instances.numInstances();
+    DistanceMatrix fDist = calcDistanceMatrix();
+    // working copy of the cluster sizes, as the merges are only replayed later
+    int [] nSize = new int[nInstances];
+    Arrays.fill(nSize, 1);
+    int [] nChain = new int[nInstances];
+    int nChainLength = 0;
+    int [] nEdgeFrom = new int[nInstances - 1];
+    int [] nEdgeTo = new int[nInstances - 1];
+    double [] fEdgeDist = new double[nInstances - 1];
+    int iNextStart = 0;
+
+    for (int k = 0; k < nInstances - 1; k++) {
+      if (nChainLength == 0) {
+        while (nSize[iNextStart] == 0) {
+          iNextStart++;
+        }
+        nChain[nChainLength++] = iNextStart;
+      }
+      // grow the chain until two clusters are mutual nearest neighbors
+      int iA, iB;
+      while (true) {
+        iA = nChain[nChainLength - 1];
+        int iPrev = (nChainLength > 1) ? nChain[nChainLength - 2] : -1;
+        // the previous cluster in the chain wins ties, which guarantees termination
+        iB = iPrev;
+        double fMin = (iPrev >= 0) ? fDist.get(iA, iPrev) : Double.POSITIVE_INFINITY;
+        for (int i = 0; i < nInstances; i++) {
+          if (i != iA && nSize[i] > 0) {
+            double fD = fDist.get(iA, i);
+            if (fD < fMin) {
+              fMin = fD;
+              iB = i;
+            }
+          }
+        }
+        if (iB == iPrev) {
+          break;
+        }
+        nChain[nChainLength++] = iB;
+      }
+      nChainLength -= 2;
+
+      // merge iA and iB into the cluster with the lower index
+      int i1 = Math.min(iA, iB);
+      int i2 = Math.max(iA, iB);
+      nEdgeFrom[k] = i1;
+      nEdgeTo[k] = i2;
+      fEdgeDist[k] = fDist.get(i1, i2);
+      for (int i = 0; i < nInstances; i++) {
+        if (i != i1 && i != i2 && nSize[i] > 0) {
+          double fD1 = fDist.get(i1, i);
+          double fD2 = fDist.get(i2, i);
+          double fD;
+          if (m_nLinkType == COMPLETE) {
+            fD = Math.max(fD1, fD2);
+          } else {
+            fD = (nSize[i1] * fD1 + nSize[i2] * fD2) / (nSize[i1] + nSize[i2]);
+          }
+          fDist.set(i1, i, fD);
+        }
+      }
+      nSize[i1] += nSize[i2];
+      nSize[i2] = 0;
+    }
+
+    replayMerges(nClusters, nEdgeFrom, nEdgeTo, fEdgeDist, nClusterID, clusterNodes);
+  } // doNNChainClustering
+
+  /** Performs the merges in the order of increasing distance (ties in the
+   * order found) until the desired number of clusters is left.
+   * @param nClusters number of clusters
+   * @param nEdgeFrom instances in the first clusters of the merges
+   * @param nEdgeTo instances in the second clusters of the merges
+   * @param fEdgeDist distances of the merges
+   * @param nClusterID 
+   * @param clusterNodes 
+   */
+  void replayMerges(int nClusters, int [] nEdgeFrom, int [] nEdgeTo, final double [] fEdgeDist,
+      Membership nClusterID, Node [] clusterNodes) {
+    Integer [] order = new Integer[fEdgeDist.length];
+    for (int k = 0; k < order.length; k++) {
+      order[k] = k;
+    }
+    // stable, hence merges at the same distance stay in their order
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer o1, Integer o2) {
+        return Double.compare(fEdgeDist[o1], fEdgeDist[o2]);
+      }
+    });
+
+    // union-find, the representative of a cluster is its lowest instance
+    int [] nParent = new int[nClusterID.m_nSize.length];
+    for (int i = 0; i < nParent.length; i++) {
+      nParent[i] = i;
+    }
+    for (int k = 0; k < order.length && nClusters > m_nNumClusters; k++) {
+      int iMin1 = find(nParent, nEdgeFrom[order[k]]);
+      int iMin2 = find(nParent, nEdgeTo[order[k]]);
+      double fDist = fEdgeDist[order[k]];
+      merge(iMin1, iMin2, fDist, fDist, nClusterID, clusterNodes);
+      nParent[Math.max(iMin1, iMin2)] = Math.min(iMin1, iMin2);
+      nClusters--;
+    }
+  } // replayMerges
+
+  /** returns the representative of an instance, compressing the path **/
+  int find(int [] nParent, int i) {
+    int iRoot = i;
+    while (nParent[iRoot] != iRoot) {
+      iRoot = nParent[iRoot];
+    }
+    while (nParent[i] != iRoot) {
+      int iNext = nParent[i];
+      nParent[i] = iRoot;
+      i = iNext;
+    }
+    return iRoot;
+  }
+
   /** Perform clustering using a link method
    * This implementation uses a priority queue resulting in a O(n^2 log(n)) algorithm
    * @param nClusters number of clusters
    * @param nClusterID 
    * @param clusterNodes 
    */
-  void doLinkClustering(int nClusters, Vector<Integer>[] nClusterID, Node [] clusterNodes) {
+  void doLinkClustering(int nClusters, final Membership nClusterID, Node [] clusterNodes) throws Exception {
     int nInstances = m_instances.numInstances();
     PriorityQueue<Tuple> queue = new PriorityQueue<Tuple>(nClusters*nClusters/2, new TupleComparator());
-    double [][] fDistance0 = new double[nClusters][nClusters];
-    double [][] fClusterDistance = null;
+    final DistanceMatrix fDistance0;
+    if (m_nLinkType == WARD) {
+      fDistance0 = new DistanceMatrix(nInstances, m_bFloatDistances);
+      for (int i = 0; i < nClusters; i++) {
+        for (int j = i+1; j < nClusters; j++) {
+          fDistance0.set(i, j, getDistance0(new int[]{i}, new int[]{j}));
+        }
+      }
+    } else {
+      fDistance0 = calcDistanceMatrix();
+    }
+    DistanceMatrix fClusterDistance = null;
     if (m_bDebug) {
-      fClusterDistance = new double[nClusters][nClusters];
+      fClusterDistance = new DistanceMatrix(nClusters, false);
     }
     for (int i = 0; i < nClusters; i++) {
-      fDistance0[i][i] = 0;
       for (int j = i+1; j < nClusters; j++) {
-        fDistance0[i][j] = getDistance0(nClusterID[i], nClusterID[j]);
-        fDistance0[j][i] = fDistance0[i][j];
-        queue.add(new Tuple(fDistance0[i][j], i, j, 1, 1));
+        queue.add(new Tuple(fDistance0.get(i, j), i, j, 1, 1));
         if (m_bDebug) {
-          fClusterDistance[i][j] = fDistance0[i][j];
-          fClusterDistance[j][i] = fDistance0[i][j];
+          fClusterDistance.set(i, j, fDistance0.get(i, j));
         }
       }
     }
+    final double [] fDistances = new double[nInstances];
     while (nClusters > m_nNumClusters) {
       int iMin1 = -1;
       int iMin2 = -1;
@@ -468,10 +850,10 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
         /* simple but inefficient implementation */
         double fMinDistance = Double.MAX_VALUE;
         for (int i = 0; i < nInstances; i++) {
-          if (nClusterID[i].size()>0) {
+          if (nClusterID.size(i)>0) {
             for (int j = i+1; j < nInstances; j++) {
-              if (nClusterID[j].size()>0) {
-                double fDist = fClusterDistance[i][j];
+              if (nClusterID.size(j)>0) {
+                double fDist = fClusterDistance.get(i, j);
                 if (fDist < fMinDistance) {
                   fMinDistance = fDist;
                   iMin1 = i;
@@ -487,24 +869,39 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
         Tuple t;
         do {
           t = queue.poll();
-        } while (t!=null && (nClusterID[t.m_iCluster1].size() != t.m_nClusterSize1 || nClusterID[t.m_iCluster2].size() != t.m_nClusterSize2));
+        } while (t!=null && (nClusterID.size(t.m_iCluster1) != t.m_nClusterSize1 || nClusterID.size(t.m_iCluster2) != t.m_nClusterSize2));
         iMin1 = t.m_iCluster1;
         iMin2 = t.m_iCluster2;
         merge(iMin1, iMin2, t.m_fDist, t.m_fDist, nClusterID, clusterNodes);
       }
       // merge  clusters
 
-      // update distances & queue
+      // update distances & queue, the distances are computed in parallel
+      final int iMerged = iMin1;
+      final int [] merged = nClusterID.members(iMerged);
+      parallelFor(nInstances, new RangeTask() {
+        public void run(int from, int to) {
+          for (int i = from; i < to; i++) {
+            if (i != iMerged && nClusterID.size(i)!=0) {
+              int [] other = nClusterID.members(i);
+              if (iMerged < i) {
+                fDistances[i] = getDistance(fDistance0, merged, other);
+              } else {
+                fDistances[i] = getDistance(fDistance0, other, merged);
+              }
+            }
+          }
+        }
+      });
       for (int i = 0; i < nInstances; i++) {
-        if (i != iMin1 && nClusterID[i].size()!=0) {
+        if (i != iMin1 && nClusterID.size(i)!=0) {
           int i1 = Math.min(iMin1,i);
           int i2 = Math.max(iMin1,i);
-          double fDistance = getDistance(fDistance0, nClusterID[i1], nClusterID[i2]);
+          double fDistance = fDistances[i];
           if (m_bDebug) {
-            fClusterDistance[i1][i2] = fDistance;
-            fClusterDistance[i2][i1] = fDistance;
+            fClusterDistance.set(i1, i2, fDistance);
           }
-          queue.add(new Tuple(fDistance, i1, i2, nClusterID[i1].size(), nClusterID[i2].size()));
+          queue.add(new Tuple(fDistance, i1, i2, nClusterID.size(i1), nClusterID.size(i2)));
         }
       }
 
@@ -512,7 +909,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     }
   } // doLinkClustering
 
-  void merge(int iMin1, int iMin2, double fDist1, double fDist2, Vector<Integer>[] nClusterID, Node [] clusterNodes) {
+  void merge(int iMin1, int iMin2, double fDist1, double fDist2, Membership nClusterID, Node [] clusterNodes) {
     if (m_bDebug) {
       System.err.println("Merging " + iMin1 + " " + iMin2 + " " + fDist1 + " " + fDist2);
     }
@@ -520,8 +917,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
       int h = iMin1; iMin1 = iMin2; iMin2 = h;
       double f = fDist1; fDist1 = fDist2; fDist2 = f;
     }
-    nClusterID[iMin1].addAll(nClusterID[iMin2]);
-    nClusterID[iMin2].removeAllElements();
+    nClusterID.join(iMin1, iMin2);
 
     // track hierarchy
     Node node = new Node();
@@ -546,7 +942,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
   } // merge
 
   /** calculate distance the first time when setting up the distance matrix **/
-  double getDistance0(Vector<Integer> cluster1, Vector<Integer> cluster2) {
+  double getDistance0(int [] cluster1, int [] cluster2) {
     double fBestDist = Double.MAX_VALUE;
     switch (m_nLinkType) {
     case SINGLE:
@@ -556,10 +952,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     case ADJCOMLPETE:
     case AVERAGE:
     case MEAN:
-      // set up two instances for distance function
-      Instance instance1 = (Instance) m_instances.instance(cluster1.elementAt(0)).copy();
-      Instance instance2 = (Instance) m_instances.instance(cluster2.elementAt(0)).copy();
-      fBestDist = m_DistanceFunction.distance(instance1, instance2);
+      fBestDist = m_DistanceFunction.distance(m_instances.instance(cluster1[0]), m_instances.instance(cluster2[0]));
       break;
     case WARD:
     {
@@ -568,34 +961,40 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
       // centroids of the cluster and its members.
       double ESS1 = calcESS(cluster1);
       double ESS2 = calcESS(cluster2);
-      Vector<Integer> merged = new Vector<Integer>();
-      merged.addAll(cluster1);
-      merged.addAll(cluster2);
+      int [] merged = concat(cluster1, cluster2);
       double ESS = calcESS(merged);
-      fBestDist = ESS * merged.size() - ESS1 * cluster1.size() - ESS2 * cluster2.size();
+      fBestDist = ESS * merged.length - ESS1 * cluster1.length - ESS2 * cluster2.length;
     }
     break;
     }
     return fBestDist;
   } // getDistance0
 
+  /** returns the instances of the second cluster appended to those of the first **/
+  int [] concat(int [] cluster1, int [] cluster2) {
+    int [] merged = new int[cluster1.length + cluster2.length];
+    System.arraycopy(cluster1, 0, merged, 0, cluster1.length);
+    System.arraycopy(cluster2, 0, merged, cluster1.length, cluster2.length);
+    return merged;
+  }
+
   /** calculate the distance between two clusters 
    * @param cluster1 list of indices of instances in the first cluster
    * @param cluster2 dito for second cluster
    * @return distance between clusters based on link type
    */
-  double getDistance(double [][] fDistance, Vector<Integer> cluster1, Vector<Integer> cluster2) {
+  double getDistance(DistanceMatrix fDistance, int [] cluster1, int [] cluster2) {
     double fBestDist = Double.MAX_VALUE;
     switch (m_nLinkType) {
     case SINGLE:
       // find single link distance aka minimum link, which is the closest distance between
       // any item in cluster1 and any item in cluster2
       fBestDist = Double.MAX_VALUE;
-      for (int i = 0; i < cluster1.size(); i++) {
-        int i1 = cluster1.elementAt(i);
-        for (int j = 0; j < cluster2.size(); j++) {
-          int i2  = cluster2.elementAt(j);
-          double fDist = fDistance[i1][i2];
+      for (int i = 0; i < cluster1.length; i++) {
+        int i1 = cluster1[i];
+        for (int j = 0; j < cluster2.length; j++) {
+          int i2  = cluster2[j];
+          double fDist = fDistance.get(i1, i2);
           if (fBestDist > fDist) {
             fBestDist = fDist;
           }
@@ -607,11 +1006,11 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
       // find complete link distance aka maximum link, which is the largest distance between
       // any item in cluster1 and any item in cluster2
       fBestDist = 0;
-      for (int i = 0; i < cluster1.size(); i++) {
-        int i1 = cluster1.elementAt(i);
-        for (int j = 0; j < cluster2.size(); j++) {
-          int i2 = cluster2.elementAt(j);
-          double fDist = fDistance[i1][i2];
+      for (int i = 0; i < cluster1.length; i++) {
+        int i1 = cluster1[i];
+        for (int j = 0; j < cluster2.length; j++) {
+          int i2 = cluster2[j];
+          double fDist = fDistance.get(i1, i2);
           if (fBestDist < fDist) {
             fBestDist = fDist;
           }
@@ -622,21 +1021,21 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
       }
       // calculate adjustment, which is the largest within cluster distance
       double fMaxDist = 0;
-      for (int i = 0; i < cluster1.size(); i++) {
-        int i1 = cluster1.elementAt(i);
-        for (int j = i+1; j < cluster1.size(); j++) {
-          int i2 = cluster1.elementAt(j);
-          double fDist = fDistance[i1][i2];
+      for (int i = 0; i < cluster1.length; i++) {
+        int i1 = cluster1[i];
+        for (int j = i+1; j < cluster1.length; j++) {
+          int i2 = cluster1[j];
+          double fDist = fDistance.get(i1, i2);
           if (fMaxDist < fDist) {
             fMaxDist = fDist;
           }
         }
       }
-      for (int i = 0; i < cluster2.size(); i++) {
-        int i1 = cluster2.elementAt(i);
-        for (int j = i+1; j < cluster2.size(); j++) {
-          int i2 = cluster2.elementAt(j);
-          double fDist = fDistance[i1][i2];
+      for (int i = 0; i < cluster2.length; i++) {
+        int i1 = cluster2[i];
+        for (int j = i+1; j < cluster2.length; j++) {
+          int i2 = cluster2[j];
+          double fDist = fDistance.get(i1, i2);
           if (fMaxDist < fDist) {
             fMaxDist = fDist;
           }
@@ -647,52 +1046,50 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     case AVERAGE:
       // finds average distance between the elements of the two clusters
       fBestDist = 0;
-      for (int i = 0; i < cluster1.size(); i++) {
-        int i1 = cluster1.elementAt(i);
-        for (int j = 0; j < cluster2.size(); j++) {
-          int i2 = cluster2.elementAt(j);
-          fBestDist += fDistance[i1][i2];
+      for (int i = 0; i < cluster1.length; i++) {
+        int i1 = cluster1[i];
+        for (int j = 0; j < cluster2.length; j++) {
+          int i2 = cluster2[j];
+          fBestDist += fDistance.get(i1, i2);
         }
       }
-      fBestDist /= (cluster1.size() * cluster2.size());
+      fBestDist /= (cluster1.length * cluster2.length);
       break;
     case MEAN: 
     {
       // calculates the mean distance of a merged cluster (akak Group-average agglomerative clustering)
-      Vector<Integer> merged = new Vector<Integer>();
-      merged.addAll(cluster1);
-      merged.addAll(cluster2);
+      int [] merged = concat(cluster1, cluster2);
       fBestDist = 0;
-      for (int i = 0; i < merged.size(); i++) {
-        int i1 = merged.elementAt(i);
-        for (int j = i+1; j < merged.size(); j++) {
-          int i2 = merged.elementAt(j);
-          fBestDist += fDistance[i1][i2];
+      for (int i = 0; i < merged.length; i++) {
+        int i1 = merged[i];
+        for (int j = i+1; j < merged.length; j++) {
+          int i2 = merged[j];
+          fBestDist += fDistance.get(i1, i2);
         }
       }
-      int n = merged.size();
+      int n = merged.length;
       fBestDist /= (n*(n-1.0)/2.0);
     }
     break;
     case CENTROID:
       // finds the distance of the centroids of the clusters
       double [] fValues1 = new double[m_instances.numAttributes()];
-      for (int i = 0; i < cluster1.size(); i++) {
-        Instance instance = m_instances.instance(cluster1.elementAt(i));
+      for (int i = 0; i < cluster1.length; i++) {
+        Instance instance = m_instances.instance(cluster1[i]);
         for (int j = 0; j < m_instances.numAttributes(); j++) {
           fValues1[j] += instance.value(j);
         }
       }
       double [] fValues2 = new double[m_instances.numAttributes()];
-      for (int i = 0; i < cluster2.size(); i++) {
-        Instance instance = m_instances.instance(cluster2.elementAt(i));
+      for (int i = 0; i < cluster2.length; i++) {
+        Instance instance = m_instances.instance(cluster2[i]);
         for (int j = 0; j < m_instances.numAttributes(); j++) {
           fValues2[j] += instance.value(j);
         }
       }
       for (int j = 0; j < m_instances.numAttributes(); j++) {
-        fValues1[j] /= cluster1.size();
-        fValues2[j] /= cluster2.size();
+        fValues1[j] /= cluster1.length;
+        fValues2[j] /= cluster2.length;
       }
       // set up two instances for distance function
       Instance instance1 = (Instance) m_instances.instance(0).copy();
@@ -710,11 +1107,9 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
       // centroids of the cluster and its members.
       double ESS1 = calcESS(cluster1);
       double ESS2 = calcESS(cluster2);
-      Vector<Integer> merged = new Vector<Integer>();
-      merged.addAll(cluster1);
-      merged.addAll(cluster2);
+      int [] merged = concat(cluster1, cluster2);
       double ESS = calcESS(merged);
-      fBestDist = ESS * merged.size() - ESS1 * cluster1.size() - ESS2 * cluster2.size();
+      fBestDist = ESS * merged.length - ESS1 * cluster1.length - ESS2 * cluster2.length;
     }
     break;
     }
@@ -722,28 +1117,28 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
   } // getDistance
 
   /** calculated error sum-of-squares for instances wrt centroid **/
-  double calcESS(Vector<Integer> cluster) {
+  double calcESS(int [] cluster) {
     double [] fValues1 = new double[m_instances.numAttributes()];
-    for (int i = 0; i < cluster.size(); i++) {
-      Instance instance = m_instances.instance(cluster.elementAt(i));
+    for (int i = 0; i < cluster.length; i++) {
+      Instance instance = m_instances.instance(cluster[i]);
       for (int j = 0; j < m_instances.numAttributes(); j++) {
         fValues1[j] += instance.value(j);
       }
     }
     for (int j = 0; j < m_instances.numAttributes(); j++) {
-      fValues1[j] /= cluster.size();
+      fValues1[j] /= cluster.length;
     }
     // set up two instances for distance function
-    Instance centroid = (Instance) m_instances.instance(cluster.elementAt(0)).copy();
+    Instance centroid = (Instance) m_instances.instance(cluster[0]).copy();
     for (int j = 0; j < m_instances.numAttributes(); j++) {
       centroid.setValue(j, fValues1[j]);
     }
     double fESS = 0;
-    for (int i = 0; i < cluster.size(); i++) {
-      Instance instance = m_instances.instance(cluster.elementAt(i));
+    for (int i = 0; i < cluster.length; i++) {
+      Instance instance = m_instances.instance(cluster[i]);
       fESS += m_DistanceFunction.distance(centroid, instance);
     }
-    return fESS / cluster.size(); 
+    return fESS / cluster.length; 
   } // calcESS
 
   @Override
@@ -812,7 +1207,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(8);
+    Vector newVector = new Vector(10);
     newVector.addElement(new Option(
         "\tIf set, classifier is run in debug mode and\n"
         + "\tmay output additional info to the console",
@@ -836,6 +1231,14 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
         "\tDistance function to use.\n"
         + "\t(default: weka.core.EuclideanDistance)",
         "A", 1,"-A <classname and options>"));
+    newVector.addElement(new Option(
+        "\tIf set, the distance matrix is stored in single precision,\n"
+        + "\twhich halves its memory.",
+        "F", 0, "-F"));
+    newVector.addElement(new Option(
+        "\tNumber of execution slots (threads) used for computing distances.\n"
+        + "\t(default: 1)",
+        "num-slots", 1, "-num-slots <num>"));
     return newVector.elements();
   }
 
@@ -864,6 +1267,14 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 
     setDebug(Utils.getFlag('D', options));
     setDistanceIsBranchLength(Utils.getFlag('B', options));
+    setFloatDistances(Utils.getFlag('F', options));
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    } else {
+      setNumExecutionSlots(1);
+    }
 
     String sLinkType = Utils.getOption('L', options);
 
@@ -904,7 +1315,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
    */
   public String [] getOptions() {
 
-    String [] options = new String [14];
+    String [] options = new String [17];
     int current = 0;
 
     options[current++] = "-N";
@@ -930,6 +1341,11 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
     if (getDistanceIsBranchLength()) {
       options[current++] = "-B";
     }
+    if (getFloatDistances()) {
+      options[current++] = "-F";
+    }
+    options[current++] = "-num-slots";
+    options[current++] = "" + getNumExecutionSlots();
 
     options[current++] = "-A";
     options[current++] = (m_DistanceFunction.getClass().getName() + " " +
@@ -997,6 +1413,31 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 
   public void setDistanceIsBranchLength(boolean bDistanceIsHeight) {m_bDistanceIsBranchLength = bDistanceIsHeight;}
 
+  public boolean getFloatDistances() {return m_bFloatDistances;}
+
+  public void setFloatDistances(boolean bFloatDistances) {m_bFloatDistances = bFloatDistances;}
+
+  /**
+   * @return a string to describe the float distances flag
+   */
+  public String floatDistancesTipText() {
+    return "If set, the distance matrix is stored in single precision, which halves " +
+    "the memory needed for large datasets, at the cost of rounding the distances. " +
+    "Single link clustering does not store a distance matrix.";
+  }
+
+  public int getNumExecutionSlots() {return m_nNumExecutionSlots;}
+
+  public void setNumExecutionSlots(int nNumExecutionSlots) {m_nNumExecutionSlots = Math.max(1, nNumExecutionSlots);}
+
+  /**
+   * @return a string to describe the number of execution slots
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for computing the " +
+    "distances between instances and clusters. The result does not depend on it.";
+  }
+
   public String distanceIsBranchLengthTipText() {
     return "If set to false, the distance between clusters is interpreted " +
     "as the height of the node linking the clusters. This is appropriate for " +
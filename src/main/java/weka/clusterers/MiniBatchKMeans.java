@@ -0,0 +1,858 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    MiniBatchKMeans.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+package weka.clusterers;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import weka.classifiers.rules.DecisionTableHashKey;
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.TechnicalInformation;
+import weka.core.TechnicalInformation.Field;
+import weka.core.TechnicalInformation.Type;
+import weka.core.TechnicalInformationHandler;
+import weka.core.Utils;
+import weka.core.WeightedInstancesHandler;
+
+/**
+ <!-- globalinfo-start -->
+ * Cluster data using mini-batch k-means. The instances are processed in small batches: each instance of a batch is assigned to its closest centroid, which is then moved towards the instance with a per-centroid learning rate (the inverse of the weight of the instances assigned to it so far). The clusterer is updateable, so it can be trained incrementally from a data stream (e.g., an ArffLoader) without loading all the data into memory. Uses the Euclidean distance; the modes of nominal attributes are maintained with counts. For more information see:<br/>
+ * <br/>
+ * D. Sculley: Web-scale k-means clustering. In: Proceedings of the 19th international conference on World Wide Web, 1177-1178, 2010.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ * BibTeX:
+ * <pre>
+ * &#64;inproceedings{Sculley2010,
+ *    author = {D. Sculley},
+ *    booktitle = {Proceedings of the 19th international conference on World Wide Web},
+ *    pages = {1177-1178},
+ *    title = {Web-scale k-means clustering},
+ *    year = {2010}
+ * }
+ * </pre>
+ * <p/>
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -N &lt;num&gt;
+ *  number of clusters.
+ *  (default 2).</pre>
+ *
+ * <pre> -batch-size &lt;num&gt;
+ *  The number of instances in a mini-batch.
+ *  (default 1000).</pre>
+ *
+ * <pre> -I &lt;num&gt;
+ *  Number of passes over the training data, if it is
+ *  not processed incrementally.
+ *  (default 1).</pre>
+ *
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ *
+ * <pre> -S &lt;num&gt;
+ *  Random number seed.
+ *  (default 10)</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision: 9500 $
+ * @see SimpleKMeans
+ */
+public class MiniBatchKMeans extends RandomizableClusterer implements
+    UpdateableClusterer, NumberOfClustersRequestable,
+    WeightedInstancesHandler, TechnicalInformationHandler {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 2926355457356802283L;
+
+  /** number of clusters to generate. */
+  protected int m_NumClusters = 2;
+
+  /** the number of instances in a mini-batch. */
+  protected int m_BatchSize = 1000;
+
+  /** the number of passes over the data if it is given as a whole. */
+  protected int m_NumPasses = 1;
+
+  /** the number of threads used for assigning the instances of a batch. */
+  protected int m_executionSlots = 1;
+
+  /** the distance function. */
+  protected EuclideanDistance m_DistanceFunction = new EuclideanDistance();
+
+  /** the header of the training data. */
+  protected Instances m_Header;
+
+  /** the cluster centroids, null if not initialized yet. */
+  protected Instances m_ClusterCentroids;
+
+  /**
+   * the weight of the instances with a value for a numeric attribute, per
+   * cluster and attribute.
+   */
+  protected double[][] m_ClusterWeights;
+
+  /**
+   * the weight of the instances for each value of a nominal attribute, per
+   * cluster and attribute (null for numeric attributes).
+   */
+  protected double[][][] m_ClusterNominalWeights;
+
+  /** the number of instances assigned to each cluster. */
+  protected int[] m_ClusterSizes;
+
+  /** the instances of the current mini-batch. */
+  protected List<Instance> m_Batch = new ArrayList<Instance>();
+
+  /** the number of instances processed. */
+  protected long m_NumInstances;
+
+  /** the number of mini-batches processed. */
+  protected long m_NumBatches;
+
+  /** the number of distance calculations. */
+  protected long m_DistanceCalculations;
+
+  /** the random number generator for the initial centroids. */
+  protected Random m_Random;
+
+  /** the threads, created when needed and released by updateFinished(). */
+  protected transient ExecutorService m_executorPool;
+
+  /**
+   * the default constructor.
+   */
+  public MiniBatchKMeans() {
+    super();
+
+    m_SeedDefault = 10;
+    setSeed(m_SeedDefault);
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing detailed
+   * information about the technical background of this class, e.g., paper
+   * reference or book this class is based on.
+   *
+   * @return the technical information about this class
+   */
+  @Override
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation result;
+
+    result = new TechnicalInformation(Type.INPROCEEDINGS);
+    result.setValue(Field.AUTHOR, "D. Sculley");
+    result.setValue(Field.TITLE, "Web-scale k-means clustering");
+    result.setValue(Field.BOOKTITLE, "Proceedings of the 19th international "
+        + "conference on World Wide Web");
+    result.setValue(Field.YEAR, "2010");
+    result.setValue(Field.PAGES, "1177-1178");
+
+    return result;
+  }
+
+  /**
+   * Returns a string describing this clusterer.
+   *
+   * @return a description of the evaluator suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return "Cluster data using mini-batch k-means. The instances are processed "
+        + "in small batches: each instance of a batch is assigned to its "
+        + "closest centroid, which is then moved towards the instance with a "
+        + "per-centroid learning rate (the inverse of the weight of the "
+        + "instances assigned to it so far). The clusterer is updateable, so "
+        + "it can be trained incrementally from a data stream (e.g., an "
+        + "ArffLoader) without loading all the data into memory. Uses the "
+        + "Euclidean distance; the modes of nominal attributes are maintained "
+        + "with counts. For more information see:\n\n"
+        + getTechnicalInformation().toString();
+  }
+
+  /**
+   * Returns default capabilities of the clusterer.
+   *
+   * @return the capabilities of this clusterer
+   */
+  @Override
+  public Capabilities getCapabilities() {
+    Capabilities result = super.getCapabilities();
+    result.disableAll();
+    result.enable(Capability.NO_CLASS);
+
+    // attributes
+    result.enable(Capability.NOMINAL_ATTRIBUTES);
+    result.enable(Capability.NUMERIC_ATTRIBUTES);
+    result.enable(Capability.MISSING_VALUES);
+
+    return result;
+  }
+
+  /**
+   * Generates a clusterer. If the data contains instances, they are processed
+   * in random order (once for each pass), otherwise the clusterer is
+   * initialized for training with updateClusterer(Instance).
+   *
+   * @param data set of instances serving as training data
+   * @throws Exception if the clusterer has not been generated successfully
+   */
+  @Override
+  public void buildClusterer(Instances data) throws Exception {
+    // can clusterer handle the data?
+    getCapabilities().testWithFail(data);
+
+    m_Header = new Instances(data, 0);
+    m_Header.setClassIndex(-1);
+    m_ClusterCentroids = null;
+    m_Batch = new ArrayList<Instance>();
+    m_NumInstances = 0;
+    m_NumBatches = 0;
+    m_DistanceCalculations = 0;
+    m_Random = new Random(getSeed());
+
+    if (data.numInstances() > 0) {
+      Instances instances = new Instances(data);
+      instances.setClassIndex(-1);
+      for (int n = 0; n < m_NumPasses; n++) {
+        instances.randomize(m_Random);
+        for (int i = 0; i < instances.numInstances(); i++) {
+          updateClusterer(instances.instance(i));
+        }
+      }
+    }
+
+    updateFinished();
+  }
+
+  /**
+   * Adds an instance to the current mini-batch, which is processed once it
+   * is full.
+   *
+   * @param newInstance the instance to be added
+   * @throws Exception if something goes wrong
+   */
+  @Override
+  public void updateClusterer(Instance newInstance) throws Exception {
+    m_Batch.add(newInstance);
+    if (m_ClusterCentroids == null) {
+      // collect enough instances to choose the initial centroids from
+      if (m_Batch.size() >= Math.max(m_NumClusters, m_BatchSize)) {
+        initializeCentroids();
+        processBatch();
+      }
+    } else if (m_Batch.size() >= m_BatchSize) {
+      processBatch();
+    }
+  }
+
+  /**
+   * Processes the remaining instances and releases the threads.
+   */
+  @Override
+  public void updateFinished() {
+    try {
+      if (m_Batch.size() > 0) {
+        if (m_ClusterCentroids == null) {
+          initializeCentroids();
+        }
+        processBatch();
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    } finally {
+      if (m_executorPool != null) {
+        m_executorPool.shutdown();
+        m_executorPool = null;
+      }
+    }
+  }
+
+  /**
+   * Chooses distinct instances of the current batch at random as the initial
+   * centroids and initializes the distance function with the batch.
+   */
+  protected void initializeCentroids() {
+    Instances initInstances = new Instances(m_Header, m_Batch.size());
+    for (Instance inst : m_Batch) {
+      initInstances.add(inst);
+    }
+    m_DistanceFunction.setInstances(initInstances);
+
+    m_ClusterCentroids = new Instances(m_Header, m_NumClusters);
+    HashSet<DecisionTableHashKey> initC = new HashSet<DecisionTableHashKey>();
+    Instances candidates = new Instances(initInstances);
+    for (int j = candidates.numInstances() - 1; j >= 0; j--) {
+      int instIndex = m_Random.nextInt(j + 1);
+      try {
+        DecisionTableHashKey hk = new DecisionTableHashKey(
+            candidates.instance(instIndex), candidates.numAttributes(), true);
+        if (initC.add(hk)) {
+          m_ClusterCentroids.add(candidates.instance(instIndex));
+        }
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+      candidates.swap(j, instIndex);
+
+      if (m_ClusterCentroids.numInstances() == m_NumClusters) {
+        break;
+      }
+    }
+
+    int numClusters = m_ClusterCentroids.numInstances();
+    int numAttributes = m_Header.numAttributes();
+    m_ClusterWeights = new double[numClusters][numAttributes];
+    m_ClusterNominalWeights = new double[numClusters][numAttributes][];
+    m_ClusterSizes = new int[numClusters];
+    for (int i = 0; i < numClusters; i++) {
+      Instance centroid = m_ClusterCentroids.instance(i);
+      centroid.setWeight(1.0);
+      for (int j = 0; j < numAttributes; j++) {
+        if (m_Header.attribute(j).isNominal()) {
+          m_ClusterNominalWeights[i][j] = new double[m_Header.attribute(j)
+              .numValues()];
+          if (!centroid.isMissing(j)) {
+            m_ClusterNominalWeights[i][j][(int) centroid.value(j)] = 1.0;
+          }
+        } else if (!centroid.isMissing(j)) {
+          m_ClusterWeights[i][j] = 1.0;
+        }
+      }
+    }
+  }
+
+  /**
+   * Assigns the instances of a range to their closest centroids.
+   */
+  protected class AssignTask implements Callable<Long> {
+
+    /** the first instance (inclusive) */
+    protected int m_start;
+
+    /** the last instance (exclusive) */
+    protected int m_end;
+
+    /** the assignments */
+    protected int[] m_assignments;
+
+    /**
+     * Initializes the task.
+     *
+     * @param start the first instance (inclusive)
+     * @param end the last instance (exclusive)
+     * @param assignments the array for the assignments
+     */
+    public AssignTask(int start, int end, int[] assignments) {
+      m_start = start;
+      m_end = end;
+      m_assignments = assignments;
+    }
+
+    /**
+     * Assigns the instances.
+     *
+     * @return the number of distance calculations
+     */
+    @Override
+    public Long call() {
+      for (int i = m_start; i < m_end; i++) {
+        m_assignments[i] = closestCentroid(m_Batch.get(i));
+      }
+      return (long) (m_end - m_start) * m_ClusterCentroids.numInstances();
+    }
+  }
+
+  /**
+   * Returns the index of the closest centroid.
+   *
+   * @param inst the instance
+   * @return the index of the centroid
+   */
+  protected int closestCentroid(Instance inst) {
+    double minDist = Double.POSITIVE_INFINITY;
+    int bestCluster = 0;
+    for (int i = 0; i < m_ClusterCentroids.numInstances(); i++) {
+      double dist = m_DistanceFunction.distance(inst,
+          m_ClusterCentroids.instance(i), minDist);
+      if (dist < minDist) {
+        minDist = dist;
+        bestCluster = i;
+      }
+    }
+
+    return bestCluster;
+  }
+
+  /**
+   * Processes the current mini-batch: assigns all its instances to the
+   * centroids (in parallel if more than one execution slot is used) and then
+   * moves the centroids towards them (in the order of the batch).
+   *
+   * @throws Exception if something goes wrong
+   */
+  protected void processBatch() throws Exception {
+    // the normalization ranges grow with the data
+    for (Instance inst : m_Batch) {
+      m_DistanceFunction.update(inst);
+    }
+
+    int[] assignments = new int[m_Batch.size()];
+    if (m_executionSlots <= 1 || m_Batch.size() < 2 * m_executionSlots) {
+      m_DistanceCalculations += new AssignTask(0, m_Batch.size(), assignments)
+          .call();
+    } else {
+      if (m_executorPool == null) {
+        m_executorPool = Executors.newFixedThreadPool(m_executionSlots);
+      }
+      List<Future<Long>> results = new ArrayList<Future<Long>>();
+      int numPerTask = m_Batch.size() / m_executionSlots;
+      for (int i = 0; i < m_executionSlots; i++) {
+        int start = i * numPerTask;
+        int end = (i == m_executionSlots - 1) ? m_Batch.size() : start
+            + numPerTask;
+        results.add(m_executorPool
+            .submit(new AssignTask(start, end, assignments)));
+      }
+      for (Future<Long> f : results) {
+        m_DistanceCalculations += f.get();
+      }
+    }
+
+    for (int n = 0; n < assignments.length; n++) {
+      Instance inst = m_Batch.get(n);
+      int c = assignments[n];
+      Instance centroid = m_ClusterCentroids.instance(c);
+      m_ClusterSizes[c]++;
+      for (int j = 0; j < m_Header.numAttributes(); j++) {
+        if (inst.isMissing(j)) {
+          continue;
+        }
+        if (m_ClusterNominalWeights[c][j] != null) {
+          m_ClusterNominalWeights[c][j][(int) inst.value(j)] += inst.weight();
+          centroid.setValue(j, Utils.maxIndex(m_ClusterNominalWeights[c][j]));
+        } else {
+          // per-centroid learning rate
+          m_ClusterWeights[c][j] += inst.weight();
+          if (centroid.isMissing(j)) {
+            centroid.setValue(j, inst.value(j));
+          } else {
+            double eta = inst.weight() / m_ClusterWeights[c][j];
+            centroid.setValue(j, (1 - eta) * centroid.value(j) + eta
+                * inst.value(j));
+          }
+        }
+      }
+    }
+
+    m_NumInstances += m_Batch.size();
+    m_NumBatches++;
+    m_Batch = new ArrayList<Instance>();
+  }
+
+  /**
+   * Classifies a given instance.
+   *
+   * @param instance the instance to be assigned to a cluster
+   * @return the number of the assigned cluster
+   * @throws Exception if instance could not be classified successfully
+   */
+  @Override
+  public int clusterInstance(Instance instance) throws Exception {
+    if (m_ClusterCentroids == null) {
+      throw new Exception("No training instances processed yet!");
+    }
+
+    return closestCentroid(instance);
+  }
+
+  /**
+   * Returns the number of clusters.
+   *
+   * @return the number of clusters generated for a training dataset.
+   * @throws Exception if number of clusters could not be returned successfully
+   */
+  @Override
+  public int numberOfClusters() throws Exception {
+    if (m_ClusterCentroids == null) {
+      return m_NumClusters;
+    }
+    return m_ClusterCentroids.numInstances();
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  @Override
+  public Enumeration listOptions() {
+    Vector result = new Vector();
+
+    result.addElement(new Option("\tnumber of clusters.\n" + "\t(default 2).",
+        "N", 1, "-N <num>"));
+
+    result.addElement(new Option("\tThe number of instances in a mini-batch.\n"
+        + "\t(default 1000).", "batch-size", 1, "-batch-size <num>"));
+
+    result.addElement(new Option(
+        "\tNumber of passes over the training data, if it is\n"
+            + "\tnot processed incrementally.\n" + "\t(default 1).", "I", 1,
+        "-I <num>"));
+
+    result.addElement(new Option("\tNumber of execution slots.\n"
+        + "\t(default 1 - i.e. no parallelism)", "num-slots", 1,
+        "-num-slots <num>"));
+
+    Enumeration en = super.listOptions();
+    while (en.hasMoreElements())
+      result.addElement(en.nextElement());
+
+    return result.elements();
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numClustersTipText() {
+    return "set number of clusters";
+  }
+
+  /**
+   * set the number of clusters to generate.
+   *
+   * @param n the number of clusters to generate
+   * @throws Exception if number of clusters is negative
+   */
+  @Override
+  public void setNumClusters(int n) throws Exception {
+    if (n <= 0) {
+      throw new Exception("Number of clusters must be > 0");
+    }
+    m_NumClusters = n;
+  }
+
+  /**
+   * gets the number of clusters to generate.
+   *
+   * @return the number of clusters to generate
+   */
+  public int getNumClusters() {
+    return m_NumClusters;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The number of instances in a mini-batch. The initial centroids "
+        + "are chosen from the first batch (or the first numClusters "
+        + "instances, if more).";
+  }
+
+  /**
+   * Sets the number of instances in a mini-batch.
+   *
+   * @param value the batch size
+   * @throws Exception if the batch size is smaller than 1
+   */
+  public void setBatchSize(int value) throws Exception {
+    if (value <= 0) {
+      throw new Exception("Batch size must be > 0");
+    }
+    m_BatchSize = value;
+  }
+
+  /**
+   * Gets the number of instances in a mini-batch.
+   *
+   * @return the batch size
+   */
+  public int getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numPassesTipText() {
+    return "The number of passes over the training data, each in a different "
+        + "random order. Only used if the training data is given as a whole, "
+        + "not incrementally.";
+  }
+
+  /**
+   * Sets the number of passes over the training data.
+   *
+   * @param n the number of passes
+   * @throws Exception if the number is smaller than 1
+   */
+  public void setNumPasses(int n) throws Exception {
+    if (n <= 0) {
+      throw new Exception("Number of passes must be > 0");
+    }
+    m_NumPasses = n;
+  }
+
+  /**
+   * Gets the number of passes over the training data.
+   *
+   * @return the number of passes
+   */
+  public int getNumPasses() {
+    return m_NumPasses;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for assigning the "
+        + "instances of a mini-batch. The result does not depend on it.";
+  }
+
+  /**
+   * Set the degree of parallelism to use.
+   *
+   * @param slots the number of threads
+   */
+  public void setNumExecutionSlots(int slots) {
+    m_executionSlots = slots;
+  }
+
+  /**
+   * Get the degree of parallelism to use.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_executionSlots;
+  }
+
+  /**
+   * Parses a given list of options.
+   * <p/>
+   *
+   <!-- options-start -->
+   * Valid options are: <p/>
+   *
+   * <pre> -N &lt;num&gt;
+   *  number of clusters.
+   *  (default 2).</pre>
+   *
+   * <pre> -batch-size &lt;num&gt;
+   *  The number of instances in a mini-batch.
+   *  (default 1000).</pre>
+   *
+   * <pre> -I &lt;num&gt;
+   *  Number of passes over the training data, if it is
+   *  not processed incrementally.
+   *  (default 1).</pre>
+   *
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   *
+   * <pre> -S &lt;num&gt;
+   *  Random number seed.
+   *  (default 10)</pre>
+   *
+   <!-- options-end -->
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  @Override
+  public void setOptions(String[] options) throws Exception {
+    String optionString = Utils.getOption('N', options);
+    if (optionString.length() != 0) {
+      setNumClusters(Integer.parseInt(optionString));
+    } else {
+      setNumClusters(2);
+    }
+
+    optionString = Utils.getOption("batch-size", options);
+    if (optionString.length() != 0) {
+      setBatchSize(Integer.parseInt(optionString));
+    } else {
+      setBatchSize(1000);
+    }
+
+    optionString = Utils.getOption('I', options);
+    if (optionString.length() != 0) {
+      setNumPasses(Integer.parseInt(optionString));
+    } else {
+      setNumPasses(1);
+    }
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of MiniBatchKMeans.
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  @Override
+  public String[] getOptions() {
+    Vector<String> result = new Vector<String>();
+
+    result.add("-N");
+    result.add("" + getNumClusters());
+
+    result.add("-batch-size");
+    result.add("" + getBatchSize());
+
+    result.add("-I");
+    result.add("" + getNumPasses());
+
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+
+    String[] options = super.getOptions();
+    for (int i = 0; i < options.length; i++)
+      result.add(options[i]);
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Gets the the cluster centroids.
+   *
+   * @return the cluster centroids, null if no instances have been processed
+   */
+  public Instances getClusterCentroids() {
+    return m_ClusterCentroids;
+  }
+
+  /**
+   * Gets the number of instances assigned to each cluster during training.
+   *
+   * @return The number of instances in each cluster
+   */
+  public int[] getClusterSizes() {
+    return m_ClusterSizes;
+  }
+
+  /**
+   * Gets the number of distance calculations performed for training.
+   *
+   * @return the number of distance calculations
+   */
+  public long getDistanceCalculations() {
+    return m_DistanceCalculations;
+  }
+
+  /**
+   * return a string describing this clusterer.
+   *
+   * @return a description of the clusterer as a string
+   */
+  @Override
+  public String toString() {
+    if (m_ClusterCentroids == null) {
+      return "No clusterer built yet!";
+    }
+
+    StringBuffer temp = new StringBuffer();
+    temp.append("\nMini-batch kMeans\n=================\n");
+    temp.append("\nNumber of instances: " + m_NumInstances);
+    temp.append("\nNumber of mini-batches: " + m_NumBatches);
+    temp.append("\nNumber of distance calculations: " + m_DistanceCalculations);
+    temp.append("\n\nCluster centroids:\n");
+    for (int i = 0; i < m_ClusterCentroids.numInstances(); i++) {
+      temp.append("\nCluster " + i + " (" + m_ClusterSizes[i] + ")\n");
+      for (int j = 0; j < m_Header.numAttributes(); j++) {
+        Instance centroid = m_ClusterCentroids.instance(i);
+        temp.append("  " + m_Header.attribute(j).name() + ": ");
+        if (centroid.isMissing(j)) {
+          temp.append("missing");
+        } else if (m_Header.attribute(j).isNominal()) {
+          temp.append(m_Header.attribute(j).value((int) centroid.value(j)));
+        } else {
+          temp.append(Utils.doubleToString(centroid.value(j), 4));
+        }
+        temp.append("\n");
+      }
+    }
+
+    return temp.toString();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+
+  /**
+   * Main method for executing this class.
+   *
+   * @param args use -h to list all parameters
+   */
+  public static void main(String[] args) {
+    runClusterer(new MiniBatchKMeans(), args);
+  }
+}
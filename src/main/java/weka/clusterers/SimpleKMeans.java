@@ -21,6 +21,7 @@
 package weka.clusterers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
@@ -224,6 +225,42 @@ public class SimpleKMeans extends RandomizableClusterer implements
   /** For parallel execution mode */
   protected transient ExecutorService m_executorPool;
 
+  /**
+   * Tolerance for the bounds of the triangle inequality pruning, which covers
+   * the rounding errors of maintaining them.
+   */
+  protected static final double BOUND_TOLERANCE = 1e-10;
+
+  /**
+   * The number of distance calculations in each iteration (including those
+   * for updating the bounds).
+   */
+  protected long[] m_DistanceCalculations;
+
+  /**
+   * Upper bounds of the distances of the instances to their cluster centroids,
+   * null if triangle inequality pruning is not used.
+   */
+  protected transient double[] m_UpperBounds;
+
+  /** Lower bounds of the distances of the instances to all other centroids. */
+  protected transient double[] m_LowerBounds;
+
+  /** Whether the bounds are valid, otherwise all distances are calculated. */
+  protected transient boolean m_BoundsValid;
+
+  /** Half the distance of each centroid to the closest other centroid. */
+  protected transient double[] m_HalfMinCentroidDist;
+
+  /** The distance each centroid moved in the last iteration. */
+  protected transient double[] m_CentroidShift;
+
+  /** The index of the centroid that moved furthest in the last iteration. */
+  protected transient int m_MaxShiftIndex;
+
+  /** The furthest and the second furthest distance a centroid moved. */
+  protected transient double m_MaxShift, m_SecondMaxShift;
+
   /**
    * the default constructor.
    */
@@ -351,6 +388,7 @@ public class SimpleKMeans extends RandomizableClusterer implements
     protected int m_end;
     protected Instances m_inst;
     protected int[] m_clusterAssignments;
+    protected long m_numDistanceCalcs;
 
     public KMeansClusterTask(Instances inst, int start, int end,
         int[] clusterAssignments) {
@@ -365,7 +403,12 @@ public class SimpleKMeans extends RandomizableClusterer implements
       boolean converged = true;
       for (int i = m_start; i < m_end; i++) {
         Instance toCluster = m_inst.instance(i);
-        int newC = clusterInstance(toCluster);
+        int newC;
+        if (m_UpperBounds == null) {
+          newC = clusterInstance(toCluster);
+        } else {
+          newC = clusterInstancePruned(toCluster, i, m_clusterAssignments[i]);
+        }
         if (newC != m_clusterAssignments[i]) {
           converged = false;
         }
@@ -375,6 +418,61 @@ public class SimpleKMeans extends RandomizableClusterer implements
       return converged;
     }
 
+    /**
+     * Assigns an instance with Hamerly's triangle inequality pruning: the
+     * distances to the centroids are only calculated if the bounds do not
+     * show that the instance is still closest to its current centroid.
+     * Gives the same assignment as clusterInstance(Instance).
+     * 
+     * @param inst the instance
+     * @param index the index of the instance
+     * @param current the current cluster of the instance
+     * @return the cluster of the instance
+     */
+    protected int clusterInstancePruned(Instance inst, int index, int current) {
+      if (m_BoundsValid) {
+        // the centroids have moved since the bounds were computed
+        m_UpperBounds[index] += m_CentroidShift[current];
+        m_LowerBounds[index] -= (current == m_MaxShiftIndex) ? m_SecondMaxShift
+            : m_MaxShift;
+
+        double bound = Math.max(m_HalfMinCentroidDist[current],
+            m_LowerBounds[index]);
+        if (m_UpperBounds[index] + BOUND_TOLERANCE
+            * (1 + m_UpperBounds[index]) < bound) {
+          return current;
+        }
+        m_UpperBounds[index] = m_DistanceFunction.distance(inst,
+            m_ClusterCentroids.instance(current));
+        m_numDistanceCalcs++;
+        if (m_UpperBounds[index] + BOUND_TOLERANCE
+            * (1 + m_UpperBounds[index]) < bound) {
+          return current;
+        }
+      }
+
+      // compute the distances to all centroids, and the bounds
+      double minDist = Double.POSITIVE_INFINITY;
+      double secondDist = Double.POSITIVE_INFINITY;
+      int bestCluster = 0;
+      for (int i = 0; i < m_NumClusters; i++) {
+        double dist = m_DistanceFunction.distance(inst,
+            m_ClusterCentroids.instance(i));
+        if (dist < minDist) {
+          secondDist = minDist;
+          minDist = dist;
+          bestCluster = i;
+        } else if (dist < secondDist) {
+          secondDist = dist;
+        }
+      }
+      m_numDistanceCalcs += m_NumClusters;
+      m_UpperBounds[index] = minDist;
+      m_LowerBounds[index] = secondDist;
+
+      return bestCluster;
+    }
+
     protected int clusterInstance(Instance inst) {
       double minDist = Integer.MAX_VALUE;
       int bestCluster = 0;
@@ -387,23 +485,44 @@ public class SimpleKMeans extends RandomizableClusterer implements
           bestCluster = i;
         }
       }
+      m_numDistanceCalcs += m_NumClusters;
 
       return bestCluster;
     }
   }
 
+  /**
+   * Assign the instances to clusters in the calling thread
+   * 
+   * @param insts the instances to be clustered
+   * @param clusterAssignments the array of cluster assignments
+   * @param distanceCalcs the number of distance calculations, gets updated
+   * @return true if k means has converged
+   */
+  protected boolean assignToClusters(Instances insts, int[] clusterAssignments,
+      long[] distanceCalcs) {
+    KMeansClusterTask task = new KMeansClusterTask(insts, 0,
+        insts.numInstances(), clusterAssignments);
+    boolean converged = task.call();
+    distanceCalcs[0] += task.m_numDistanceCalcs;
+
+    return converged;
+  }
+
   /**
    * Launch the tasks that assign instances to clusters
    * 
    * @param insts the instances to be clustered
    * @param clusterAssignments the array of cluster assignments
+   * @param distanceCalcs the number of distance calculations, gets updated
    * @return true if k means has converged
    * @throws Exception if a problem occurs
    */
   protected boolean launchAssignToClusters(Instances insts,
-      int[] clusterAssignments) throws Exception {
+      int[] clusterAssignments, long[] distanceCalcs) throws Exception {
     int numPerTask = insts.numInstances() / m_executionSlots;
 
+    List<KMeansClusterTask> tasks = new ArrayList<KMeansClusterTask>();
     List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
     for (int i = 0; i < m_executionSlots; i++) {
       int start = i * numPerTask;
@@ -412,8 +531,10 @@ public class SimpleKMeans extends RandomizableClusterer implements
         end = insts.numInstances();
       }
 
-      Future<Boolean> futureKM = m_executorPool.submit(new KMeansClusterTask(
-          insts, start, end, clusterAssignments));
+      KMeansClusterTask task = new KMeansClusterTask(insts, start, end,
+          clusterAssignments);
+      tasks.add(task);
+      Future<Boolean> futureKM = m_executorPool.submit(task);
       results.add(futureKM);
     }
 
@@ -423,10 +544,60 @@ public class SimpleKMeans extends RandomizableClusterer implements
         converged = false;
       }
     }
+    for (KMeansClusterTask task : tasks) {
+      distanceCalcs[0] += task.m_numDistanceCalcs;
+    }
 
     return converged;
   }
 
+  /**
+   * Updates the information for the triangle inequality pruning after the
+   * centroids have moved: how far each centroid moved and half the distance
+   * to the closest other centroid.
+   * 
+   * @param oldCentroids the centroids of the previous iteration
+   * @return the number of distance calculations
+   */
+  protected long updatePruningBounds(Instances oldCentroids) {
+    long distanceCalcs = 0;
+
+    m_CentroidShift = new double[m_NumClusters];
+    m_MaxShift = 0;
+    m_SecondMaxShift = 0;
+    m_MaxShiftIndex = -1;
+    for (int i = 0; i < m_NumClusters; i++) {
+      m_CentroidShift[i] = m_DistanceFunction.distance(
+          oldCentroids.instance(i), m_ClusterCentroids.instance(i));
+      if (m_CentroidShift[i] > m_MaxShift) {
+        m_SecondMaxShift = m_MaxShift;
+        m_MaxShift = m_CentroidShift[i];
+        m_MaxShiftIndex = i;
+      } else if (m_CentroidShift[i] > m_SecondMaxShift) {
+        m_SecondMaxShift = m_CentroidShift[i];
+      }
+    }
+    distanceCalcs += m_NumClusters;
+
+    m_HalfMinCentroidDist = new double[m_NumClusters];
+    Arrays.fill(m_HalfMinCentroidDist, Double.POSITIVE_INFINITY);
+    for (int i = 0; i < m_NumClusters; i++) {
+      for (int j = i + 1; j < m_NumClusters; j++) {
+        double dist = m_DistanceFunction.distance(
+            m_ClusterCentroids.instance(i), m_ClusterCentroids.instance(j)) / 2;
+        if (dist < m_HalfMinCentroidDist[i]) {
+          m_HalfMinCentroidDist[i] = dist;
+        }
+        if (dist < m_HalfMinCentroidDist[j]) {
+          m_HalfMinCentroidDist[j] = dist;
+        }
+      }
+    }
+    distanceCalcs += (long) m_NumClusters * (m_NumClusters - 1) / 2;
+
+    return distanceCalcs;
+  }
+
   /**
    * Generates a clusterer. Has to initialize all fields of the clusterer that
    * are not being set via options.
@@ -529,26 +700,35 @@ public class SimpleKMeans extends RandomizableClusterer implements
     m_ClusterMissingCounts = new int[m_NumClusters][instances.numAttributes()];
     startExecutorPool();
 
+    // triangle inequality pruning requires a metric, which the distance
+    // functions are as long as there are no missing values
+    m_UpperBounds = null;
+    m_LowerBounds = null;
+    m_BoundsValid = false;
+    if (Utils.sum(m_FullMissingCounts) == 0) {
+      m_UpperBounds = new double[instances.numInstances()];
+      m_LowerBounds = new double[instances.numInstances()];
+    }
+    long[] distanceCalcs = new long[1];
+    List<Long> iterationDistanceCalcs = new ArrayList<Long>();
+
     while (!converged) {
       emptyClusterCount = 0;
       m_Iterations++;
       converged = true;
+      distanceCalcs[0] = 0;
 
       if (m_executionSlots <= 1
           || instances.numInstances() < 2 * m_executionSlots) {
-        for (i = 0; i < instances.numInstances(); i++) {
-          Instance toCluster = instances.instance(i);
-          int newC = clusterProcessedInstance(toCluster, false, true);
-          if (newC != clusterAssignments[i]) {
-            converged = false;
-          }
-          clusterAssignments[i] = newC;
-        }
+        converged = assignToClusters(instances, clusterAssignments,
+            distanceCalcs);
       } else {
-        converged = launchAssignToClusters(instances, clusterAssignments);
+        converged = launchAssignToClusters(instances, clusterAssignments,
+            distanceCalcs);
       }
 
       // update centroids
+      Instances oldCentroids = m_ClusterCentroids;
       m_ClusterCentroids = new Instances(instances, m_NumClusters);
       for (i = 0; i < m_NumClusters; i++) {
         tempI[i] = new Instances(instances, 0);
@@ -573,6 +753,14 @@ public class SimpleKMeans extends RandomizableClusterer implements
       if (m_Iterations == m_MaxIterations)
         converged = true;
 
+      // the bounds can only be kept if the centroids keep their indices
+      m_BoundsValid = false;
+      if (m_UpperBounds != null && !converged && emptyClusterCount == 0) {
+        distanceCalcs[0] += updatePruningBounds(oldCentroids);
+        m_BoundsValid = true;
+      }
+      iterationDistanceCalcs.add(distanceCalcs[0]);
+
       if (emptyClusterCount > 0) {
         m_NumClusters -= emptyClusterCount;
         if (converged) {
@@ -595,6 +783,15 @@ public class SimpleKMeans extends RandomizableClusterer implements
       }
     }
 
+    m_DistanceCalculations = new long[iterationDistanceCalcs.size()];
+    for (i = 0; i < m_DistanceCalculations.length; i++) {
+      m_DistanceCalculations[i] = iterationDistanceCalcs.get(i);
+    }
+    m_UpperBounds = null;
+    m_LowerBounds = null;
+    m_HalfMinCentroidDist = null;
+    m_CentroidShift = null;
+
     // calculate errors
     if (!m_FastDistanceCalc) {
       for (i = 0; i < instances.numInstances(); i++) {
@@ -746,10 +943,41 @@ public class SimpleKMeans extends RandomizableClusterer implements
 
       // in case of Euclidian distance the centroid is the mean point
       // in case of Manhattan distance the centroid is the median point
-      // in both cases, if the attribute is nominal, the centroid is the mode
+      // in both cases, if the attribute is nominal, the centroid is the mode.
+      // The mean/mode and the counts are collected in a single pass over the
+      // members, rather than with meanOrMode() and attributeStats(), which
+      // sorts the values
+      double sum = 0;
+      double found = 0;
+      int missingCount = 0;
+      int[] nominalCounts = null;
+      int[] weightedCounts = null;
+      if (members.attribute(j).isNominal()) {
+        nominalCounts = new int[members.attribute(j).numValues()];
+        weightedCounts = new int[members.attribute(j).numValues()];
+      }
+      for (int i = 0; i < members.numInstances(); i++) {
+        Instance member = members.instance(i);
+        if (member.isMissing(j)) {
+          missingCount++;
+        } else if (nominalCounts != null) {
+          nominalCounts[(int) member.value(j)]++;
+          weightedCounts[(int) member.value(j)] += member.weight();
+        } else {
+          found += member.weight();
+          sum += member.weight() * member.value(j);
+        }
+      }
+
       if (m_DistanceFunction instanceof EuclideanDistance
           || members.attribute(j).isNominal()) {
-        vals[j] = members.meanOrMode(j);
+        if (nominalCounts != null) {
+          vals[j] = Utils.maxIndex(weightedCounts);
+        } else if (members.attribute(j).isNumeric()) {
+          vals[j] = (found <= 0) ? 0 : sum / found;
+        } else {
+          vals[j] = members.meanOrMode(j);
+        }
       } else if (m_DistanceFunction instanceof ManhattanDistance) {
         // singleton special case
         if (members.numInstances() == 1) {
@@ -763,8 +991,8 @@ public class SimpleKMeans extends RandomizableClusterer implements
       }
 
       if (updateClusterInfo) {
-        m_ClusterMissingCounts[centroidIndex][j] = members.attributeStats(j).missingCount;
-        m_ClusterNominalCounts[centroidIndex][j] = members.attributeStats(j).nominalCounts;
+        m_ClusterMissingCounts[centroidIndex][j] = missingCount;
+        m_ClusterNominalCounts[centroidIndex][j] = nominalCounts;
         if (members.attribute(j).isNominal()) {
           if (m_ClusterMissingCounts[centroidIndex][j] > m_ClusterNominalCounts[centroidIndex][j][Utils
               .maxIndex(m_ClusterNominalCounts[centroidIndex][j])]) {
@@ -1440,6 +1668,13 @@ public class SimpleKMeans extends RandomizableClusterer implements
     StringBuffer temp = new StringBuffer();
     temp.append("\nkMeans\n======\n");
     temp.append("\nNumber of iterations: " + m_Iterations);
+    if (m_DistanceCalculations != null) {
+      long total = 0;
+      for (long calcs : m_DistanceCalculations) {
+        total += calcs;
+      }
+      temp.append("\nNumber of distance calculations: " + total);
+    }
 
     if (!m_FastDistanceCalc) {
       temp.append("\n");
@@ -1716,6 +1951,18 @@ public class SimpleKMeans extends RandomizableClusterer implements
     return m_ClusterSizes;
   }
 
+  /**
+   * Gets the number of distance calculations in each iteration. Triangle
+   * inequality pruning, which is used when the data has no missing values,
+   * avoids most of them in the later iterations.
+   * 
+   * @return the number of distance calculations, null if no clusterer has
+   *         been built yet
+   */
+  public long[] getDistanceCalculations() {
+    return m_DistanceCalculations;
+  }
+
   /**
    * Gets the assignments for each instance.
    * 
@@ -0,0 +1,302 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ColumnarInstance.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+/**
+ * Lightweight view of a single row of a ColumnarInstances object. The view
+ * does not hold any values itself, all reads and writes (values and weight)
+ * go straight to the columns of the dataset. Copies created with
+ * <code>copy()</code> are detached DenseInstance objects (or MappedInstance
+ * objects, if the dataset is a MappedInstances object). <p/>
+ *
+ * The number of attributes of a view cannot be changed, use the
+ * corresponding methods of the dataset instead.
+ *
+ * @version $Revision: 9500 $
+ * @see ColumnarInstances
+ */
+public class ColumnarInstance
+  extends AbstractInstance {
+
+  /** for serialization */
+  private static final long serialVersionUID = 5262930470413565364L;
+
+  /** the dataset that stores the values. */
+  protected ColumnarInstances m_Store;
+
+  /** the (physical) row in the dataset. */
+  protected int m_Row;
+
+  /**
+   * Creates a view of the given (physical) row.
+   *
+   * @param store the dataset that stores the values
+   * @param row the (physical) row
+   */
+  protected ColumnarInstance(ColumnarInstances store, int row) {
+    m_Store = store;
+    m_Row = row;
+    m_Dataset = store;
+  }
+
+  /**
+   * Produces a detached copy of the row (see
+   * <code>ColumnarInstances.copyRow(int)</code>). The copy has access to the
+   * same dataset.
+   *
+   * @return the copy
+   */
+  @Override
+  public Object copy() {
+    Instance result = m_Store.copyRow(m_Row);
+    result.setDataset(m_Dataset);
+    return result;
+  }
+
+  /**
+   * Returns the index of the attribute stored at the given position. Just
+   * returns the given value.
+   *
+   * @param position the position
+   * @return the index of the attribute stored at the given position
+   */
+  @Override
+  public int index(int position) {
+    return position;
+  }
+
+  /**
+   * Merges this instance with the given instance and returns the result.
+   * Dataset is set to null. The returned instance is a DenseInstance, since
+   * a row view can't exist without its dataset.
+   *
+   * @param inst the instance to be merged with this one
+   * @return the merged instances
+   */
+  @Override
+  public Instance mergeInstance(Instance inst) {
+    int m = 0;
+    double[] newVals = new double[numAttributes() + inst.numAttributes()];
+    for (int j = 0; j < numAttributes(); j++, m++) {
+      newVals[m] = value(j);
+    }
+    for (int j = 0; j < inst.numAttributes(); j++, m++) {
+      newVals[m] = inst.value(j);
+    }
+    return new DenseInstance(1.0, newVals);
+  }
+
+  /**
+   * Returns the number of attributes.
+   *
+   * @return the number of attributes as an integer
+   */
+  @Override
+  public int numAttributes() {
+    return m_Store.numAttributes();
+  }
+
+  /**
+   * Returns the number of values present. Always the same as numAttributes().
+   *
+   * @return the number of values
+   */
+  @Override
+  public int numValues() {
+    return m_Store.numAttributes();
+  }
+
+  /**
+   * Replaces all missing values in the instance with the values contained in
+   * the given array. The values are written to the dataset.
+   *
+   * @param array containing the means and modes
+   * @throws IllegalArgumentException if numbers of attributes are unequal
+   */
+  @Override
+  public void replaceMissingValues(double[] array) {
+    if ((array == null) || (array.length != numAttributes())) {
+      throw new IllegalArgumentException("Unequal number of attributes!");
+    }
+    for (int i = 0; i < array.length; i++) {
+      if (isMissing(i)) {
+        setValue(i, array[i]);
+      }
+    }
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value (internal
+   * floating-point format). The value is written to the dataset.
+   *
+   * @param attIndex the attribute's index
+   * @param value the new attribute value (If the corresponding attribute is
+   *          nominal (or a string) then this is the new value's index as a
+   *          double).
+   */
+  @Override
+  public void setValue(int attIndex, double value) {
+    m_Store.setRowValue(m_Row, attIndex, value);
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value (internal
+   * floating-point format), given an index into the sparse representation.
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @param value the new attribute value (If the corresponding attribute is
+   *          nominal (or a string) then this is the new value's index as a
+   *          double).
+   */
+  @Override
+  public void setValueSparse(int indexOfIndex, double value) {
+    setValue(indexOfIndex, value);
+  }
+
+  /**
+   * Returns the values of each attribute as an array of doubles.
+   *
+   * @return an array containing all the instance attribute values
+   */
+  @Override
+  public double[] toDoubleArray() {
+    double[] result = new double[numAttributes()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = value(i);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the description of one instance (without weight appended). If
+   * the instance doesn't have access to a dataset, it returns the internal
+   * floating-point values. Quotes string values that contain whitespace
+   * characters.
+   *
+   * @return the instance's description as a string
+   */
+  @Override
+  public String toStringNoWeight() {
+    return toStringNoWeight(AbstractInstance.s_numericAfterDecimalPoint);
+  }
+
+  /**
+   * Returns the description of one instance (without weight appended). If
+   * the instance doesn't have access to a dataset, it returns the internal
+   * floating-point values. Quotes string values that contain whitespace
+   * characters.
+   *
+   * @param afterDecimalPoint maximum number of digits after the decimal point
+   *          for numeric values
+   * @return the instance's description as a string
+   */
+  @Override
+  public String toStringNoWeight(int afterDecimalPoint) {
+    StringBuffer text = new StringBuffer();
+
+    for (int i = 0; i < numAttributes(); i++) {
+      if (i > 0) {
+        text.append(",");
+      }
+      text.append(toString(i, afterDecimalPoint));
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format.
+   *
+   * @param attIndex the attribute's index
+   * @return the specified value as a double (If the corresponding attribute
+   *         is nominal (or a string) then it returns the value's index as a
+   *         double).
+   */
+  @Override
+  public double value(int attIndex) {
+    return m_Store.rowValue(m_Row, attIndex);
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format, given an index
+   * in the sparse representation.
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return the specified value as a double
+   */
+  @Override
+  public double valueSparse(int indexOfIndex) {
+    return value(indexOfIndex);
+  }
+
+  /**
+   * Returns the instance's weight.
+   *
+   * @return the instance's weight as a double
+   */
+  @Override
+  public double weight() {
+    return m_Store.rowWeight(m_Row);
+  }
+
+  /**
+   * Sets the weight of an instance. The weight is written to the dataset.
+   *
+   * @param weight the weight
+   */
+  @Override
+  public void setWeight(double weight) {
+    m_Store.setRowWeight(m_Row, weight);
+  }
+
+  /**
+   * Not supported, the attributes have to be deleted via the dataset.
+   *
+   * @param position the attribute's position
+   */
+  @Override
+  protected void forceDeleteAttributeAt(int position) {
+    throw new UnsupportedOperationException(
+      "Attributes of a ColumnarInstance can only be deleted via its dataset!");
+  }
+
+  /**
+   * Not supported, the attributes have to be inserted via the dataset.
+   *
+   * @param position the attribute's position
+   */
+  @Override
+  protected void forceInsertAttributeAt(int position) {
+    throw new UnsupportedOperationException(
+      "Attributes of a ColumnarInstance can only be inserted via its dataset!");
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
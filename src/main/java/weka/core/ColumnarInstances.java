@@ -0,0 +1,1204 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ColumnarInstances.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Enumeration;
+
+/**
+ * Set of instances that stores its data column by column, i.e., one
+ * primitive array per attribute, instead of one DenseInstance (with its own
+ * array of doubles) per row. Nominal attributes are stored as bytes or shorts
+ * if the number of labels permits it, numeric attributes can optionally be
+ * stored as floats. Weights are only stored once an instance with a weight
+ * other than 1 is encountered. <p/>
+ *
+ * The objects returned by <code>instance(int)</code> are lightweight views
+ * (see <code>ColumnarInstance</code>) that read and write through to the
+ * columns. Reordering the data (<code>sort(int)</code>,
+ * <code>randomize(Random)</code>, <code>stratify(int)</code>, ...) only
+ * permutes an array of row indices, and per-attribute computations like
+ * <code>variance(int)</code>, <code>meanOrMode(int)</code>,
+ * <code>kthSmallestValue(int, int)</code> and
+ * <code>attributeStats(int)</code> scan the primitive columns directly. <p/>
+ *
+ * Typical usage: <p/>
+ *
+ * <pre>
+ * Instances data = DataSource.read(filename);
+ * Instances columnar = new ColumnarInstances(data, true);
+ * data = null;
+ * </pre><p/>
+ *
+ * Notes:
+ * <ul>
+ *   <li>datasets derived from this one (e.g., via the copy constructor of
+ *   Instances, <code>trainCV(int, int)</code> or <code>resample(Random)</code>)
+ *   are regular Instances objects, with copies of the rows (see
+ *   <code>copyRow(int)</code>).</li>
+ *   <li>rows that get removed or replaced keep occupying memory until
+ *   <code>compactify()</code> is called.</li>
+ *   <li>views obtained before a call to <code>delete()</code> or
+ *   <code>compactify()</code> must not be used afterwards.</li>
+ * </ul>
+ *
+ * @version $Revision: 9500 $
+ * @see ColumnarInstance
+ */
+public class ColumnarInstances
+  extends Instances {
+
+  /** for serialization */
+  private static final long serialVersionUID = -4493536416452370549L;
+
+  /**
+   * Storage for the values of a single attribute.
+   */
+  protected static abstract class Column
+    implements Serializable {
+
+    /** for serialization */
+    private static final long serialVersionUID = 3395217052596380520L;
+
+    /**
+     * Returns the value stored for the given row.
+     *
+     * @param row the (physical) row
+     * @return the value in internal floating-point format
+     */
+    public abstract double value(int row);
+
+    /**
+     * Sets the value for the given row.
+     *
+     * @param row the (physical) row
+     * @param value the value in internal floating-point format
+     */
+    public abstract void setValue(int row, double value);
+
+    /**
+     * Changes the number of rows the column can hold.
+     *
+     * @param capacity the new capacity
+     */
+    public abstract void resize(int capacity);
+
+    /**
+     * Returns a new column that contains the given rows, in the given order.
+     *
+     * @param rows the (physical) rows to copy
+     * @param num the number of rows to copy
+     * @return the new column
+     */
+    public abstract Column select(int[] rows, int num);
+
+    /**
+     * Returns the number of bytes used per value.
+     *
+     * @return the number of bytes
+     */
+    public abstract int bytesPerValue();
+  }
+
+  /**
+   * Column that stores its values as doubles.
+   */
+  protected static class DoubleColumn
+    extends Column {
+
+    /** for serialization */
+    private static final long serialVersionUID = -6307357463432327766L;
+
+    /** the values */
+    protected double[] m_Values;
+
+    /**
+     * Initializes the column.
+     *
+     * @param capacity the number of rows to reserve
+     */
+    public DoubleColumn(int capacity) {
+      m_Values = new double[capacity];
+    }
+
+    @Override
+    public double value(int row) {
+      return m_Values[row];
+    }
+
+    @Override
+    public void setValue(int row, double value) {
+      m_Values[row] = value;
+    }
+
+    @Override
+    public void resize(int capacity) {
+      m_Values = Arrays.copyOf(m_Values, capacity);
+    }
+
+    @Override
+    public Column select(int[] rows, int num) {
+      DoubleColumn result = new DoubleColumn(num);
+      for (int i = 0; i < num; i++) {
+        result.m_Values[i] = m_Values[rows[i]];
+      }
+      return result;
+    }
+
+    @Override
+    public int bytesPerValue() {
+      return 8;
+    }
+  }
+
+  /**
+   * Column that stores its values as floats. Missing values are stored as
+   * Float.NaN.
+   */
+  protected static class FloatColumn
+    extends Column {
+
+    /** for serialization */
+    private static final long serialVersionUID = 2254658137420460946L;
+
+    /** the values */
+    protected float[] m_Values;
+
+    /**
+     * Initializes the column.
+     *
+     * @param capacity the number of rows to reserve
+     */
+    public FloatColumn(int capacity) {
+      m_Values = new float[capacity];
+    }
+
+    @Override
+    public double value(int row) {
+      return m_Values[row];
+    }
+
+    @Override
+    public void setValue(int row, double value) {
+      m_Values[row] = (float) value;
+    }
+
+    @Override
+    public void resize(int capacity) {
+      m_Values = Arrays.copyOf(m_Values, capacity);
+    }
+
+    @Override
+    public Column select(int[] rows, int num) {
+      FloatColumn result = new FloatColumn(num);
+      for (int i = 0; i < num; i++) {
+        result.m_Values[i] = m_Values[rows[i]];
+      }
+      return result;
+    }
+
+    @Override
+    public int bytesPerValue() {
+      return 4;
+    }
+  }
+
+  /**
+   * Column that stores label indices of nominal attributes with at most
+   * Byte.MAX_VALUE labels. Missing values are stored as -1.
+   */
+  protected static class ByteColumn
+    extends Column {
+
+    /** for serialization */
+    private static final long serialVersionUID = -1000829932424598651L;
+
+    /** the values */
+    protected byte[] m_Values;
+
+    /**
+     * Initializes the column.
+     *
+     * @param capacity the number of rows to reserve
+     */
+    public ByteColumn(int capacity) {
+      m_Values = new byte[capacity];
+    }
+
+    @Override
+    public double value(int row) {
+      byte value = m_Values[row];
+      if (value < 0) {
+        return Utils.missingValue();
+      }
+      return value;
+    }
+
+    @Override
+    public void setValue(int row, double value) {
+      if (Utils.isMissingValue(value)) {
+        m_Values[row] = -1;
+      } else {
+        m_Values[row] = (byte) value;
+      }
+    }
+
+    @Override
+    public void resize(int capacity) {
+      m_Values = Arrays.copyOf(m_Values, capacity);
+    }
+
+    @Override
+    public Column select(int[] rows, int num) {
+      ByteColumn result = new ByteColumn(num);
+      for (int i = 0; i < num; i++) {
+        result.m_Values[i] = m_Values[rows[i]];
+      }
+      return result;
+    }
+
+    @Override
+    public int bytesPerValue() {
+      return 1;
+    }
+  }
+
+  /**
+   * Column that stores label indices of nominal attributes with at most
+   * Short.MAX_VALUE labels. Missing values are stored as -1.
+   */
+  protected static class ShortColumn
+    extends Column {
+
+    /** for serialization */
+    private static final long serialVersionUID = 6588337580929457476L;
+
+    /** the values */
+    protected short[] m_Values;
+
+    /**
+     * Initializes the column.
+     *
+     * @param capacity the number of rows to reserve
+     */
+    public ShortColumn(int capacity) {
+      m_Values = new short[capacity];
+    }
+
+    @Override
+    public double value(int row) {
+      short value = m_Values[row];
+      if (value < 0) {
+        return Utils.missingValue();
+      }
+      return value;
+    }
+
+    @Override
+    public void setValue(int row, double value) {
+      if (Utils.isMissingValue(value)) {
+        m_Values[row] = -1;
+      } else {
+        m_Values[row] = (short) value;
+      }
+    }
+
+    @Override
+    public void resize(int capacity) {
+      m_Values = Arrays.copyOf(m_Values, capacity);
+    }
+
+    @Override
+    public Column select(int[] rows, int num) {
+      ShortColumn result = new ShortColumn(num);
+      for (int i = 0; i < num; i++) {
+        result.m_Values[i] = m_Values[rows[i]];
+      }
+      return result;
+    }
+
+    @Override
+    public int bytesPerValue() {
+      return 2;
+    }
+  }
+
+  /** whether to store numeric attributes as floats. */
+  protected boolean m_UseFloat;
+
+  /** the columns, one per attribute. */
+  protected Column[] m_Columns;
+
+  /** the weights per (physical) row, null if all weights are 1. */
+  protected double[] m_Weights;
+
+  /** the (physical) rows in the order of the dataset. */
+  protected int[] m_Rows;
+
+  /** the number of instances in the dataset. */
+  protected int m_NumRows;
+
+  /** the number of (physical) rows in use. */
+  protected int m_NumStored;
+
+  /** the number of (physical) rows the columns can hold. */
+  protected int m_Capacity;
+
+  /**
+   * Constructor copying all instances and references to the header
+   * information from the given set of instances. Numeric attributes are
+   * stored as doubles.
+   *
+   * @param dataset the set to be copied
+   */
+  public ColumnarInstances(Instances dataset) {
+    this(dataset, false);
+  }
+
+  /**
+   * Constructor copying all instances and references to the header
+   * information from the given set of instances.
+   *
+   * @param dataset the set to be copied
+   * @param useFloat whether to store numeric attributes as floats
+   */
+  public ColumnarInstances(Instances dataset, boolean useFloat) {
+    this(dataset, dataset.numInstances(), useFloat);
+
+    for (int i = 0; i < dataset.numInstances(); i++) {
+      add(dataset.instance(i));
+    }
+  }
+
+  /**
+   * Constructor creating an empty set of instances. Copies references to the
+   * header information from the given set of instances. Numeric attributes
+   * are stored as doubles.
+   *
+   * @param dataset the instances from which the header information is to be
+   *          taken
+   * @param capacity the capacity of the new dataset
+   */
+  public ColumnarInstances(Instances dataset, int capacity) {
+    this(dataset, capacity, false);
+  }
+
+  /**
+   * Constructor creating an empty set of instances. Copies references to the
+   * header information from the given set of instances.
+   *
+   * @param dataset the instances from which the header information is to be
+   *          taken
+   * @param capacity the capacity of the new dataset
+   * @param useFloat whether to store numeric attributes as floats
+   */
+  public ColumnarInstances(Instances dataset, int capacity, boolean useFloat) {
+    super(dataset, 0);
+
+    m_UseFloat = useFloat;
+    initColumns(capacity);
+  }
+
+  /**
+   * Returns whether numeric attributes are stored as floats.
+   *
+   * @return true if floats are used
+   */
+  public boolean getUseFloat() {
+    return m_UseFloat;
+  }
+
+  /**
+   * Creates empty columns for all attributes.
+   *
+   * @param capacity the number of rows to reserve
+   */
+  protected void initColumns(int capacity) {
+    if (capacity < 0) {
+      capacity = 0;
+    }
+
+    m_Columns = new Column[numAttributes()];
+    for (int i = 0; i < m_Columns.length; i++) {
+      m_Columns[i] = newColumn(attribute(i), capacity);
+    }
+    m_Weights = null;
+    m_Rows = new int[capacity];
+    m_NumRows = 0;
+    m_NumStored = 0;
+    m_Capacity = capacity;
+  }
+
+  /**
+   * Creates a column suitable for the given attribute.
+   *
+   * @param att the attribute
+   * @param capacity the number of rows to reserve
+   * @return the column
+   */
+  protected Column newColumn(Attribute att, int capacity) {
+    switch (att.type()) {
+    case Attribute.NOMINAL:
+      if (att.numValues() <= Byte.MAX_VALUE) {
+        return new ByteColumn(capacity);
+      } else if (att.numValues() <= Short.MAX_VALUE) {
+        return new ShortColumn(capacity);
+      } else {
+        return new DoubleColumn(capacity);
+      }
+    case Attribute.NUMERIC:
+      if (m_UseFloat) {
+        return new FloatColumn(capacity);
+      } else {
+        return new DoubleColumn(capacity);
+      }
+    default:
+      return new DoubleColumn(capacity);
+    }
+  }
+
+  /**
+   * Makes sure that the columns can hold at least the given number of rows.
+   *
+   * @param minCapacity the minimum number of rows
+   */
+  protected void ensureCapacity(int minCapacity) {
+    if (minCapacity <= m_Capacity) {
+      return;
+    }
+
+    int capacity = Math.max(minCapacity, m_Capacity + (m_Capacity >> 1) + 1);
+    for (Column column : m_Columns) {
+      column.resize(capacity);
+    }
+    if (m_Weights != null) {
+      int old = m_Weights.length;
+      m_Weights = Arrays.copyOf(m_Weights, capacity);
+      Arrays.fill(m_Weights, old, capacity, 1.0);
+    }
+    m_Rows = Arrays.copyOf(m_Rows, capacity);
+    m_Capacity = capacity;
+  }
+
+  /**
+   * Copies the values and the weight of the instance into a new (physical)
+   * row.
+   *
+   * @param instance the instance to store
+   * @return the (physical) row
+   */
+  protected int store(Instance instance) {
+    ensureCapacity(m_NumStored + 1);
+    int row = m_NumStored++;
+
+    if (instance.numValues() < m_Columns.length) {
+      for (int j = 0; j < m_Columns.length; j++) {
+        m_Columns[j].setValue(row, 0);
+      }
+    }
+    for (int j = 0; j < instance.numValues(); j++) {
+      m_Columns[instance.index(j)].setValue(row, instance.valueSparse(j));
+    }
+    setRowWeight(row, instance.weight());
+
+    return row;
+  }
+
+  /**
+   * Returns the (physical) row of the instance at the given position.
+   *
+   * @param index the instance's index
+   * @return the (physical) row
+   */
+  protected int physicalRow(int index) {
+    if ((index < 0) || (index >= m_NumRows)) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+        + m_NumRows);
+    }
+    return m_Rows[index];
+  }
+
+  /**
+   * Returns the value stored for an attribute of a (physical) row.
+   *
+   * @param row the (physical) row
+   * @param attIndex the attribute's index
+   * @return the value in internal floating-point format
+   */
+  final double rowValue(int row, int attIndex) {
+    return m_Columns[attIndex].value(row);
+  }
+
+  /**
+   * Sets the value of an attribute of a (physical) row.
+   *
+   * @param row the (physical) row
+   * @param attIndex the attribute's index
+   * @param value the value in internal floating-point format
+   */
+  final void setRowValue(int row, int attIndex, double value) {
+    m_Columns[attIndex].setValue(row, value);
+  }
+
+  /**
+   * Returns the weight of a (physical) row.
+   *
+   * @param row the (physical) row
+   * @return the weight
+   */
+  protected double rowWeight(int row) {
+    if (m_Weights == null) {
+      return 1.0;
+    }
+    return m_Weights[row];
+  }
+
+  /**
+   * Sets the weight of a (physical) row.
+   *
+   * @param row the (physical) row
+   * @param weight the weight
+   */
+  protected void setRowWeight(int row, double weight) {
+    if (m_Weights == null) {
+      if (weight == 1.0) {
+        return;
+      }
+      m_Weights = new double[m_Capacity];
+      Arrays.fill(m_Weights, 1.0);
+    }
+    m_Weights[row] = weight;
+  }
+
+  /**
+   * Returns a detached copy of a (physical) row, which is used by the
+   * <code>copy()</code> method of the views and hence by all methods of
+   * Instances that copy instances.
+   *
+   * @param row the (physical) row
+   * @return the copy, a DenseInstance
+   */
+  protected Instance copyRow(int row) {
+    double[] values = new double[m_Columns.length];
+    for (int j = 0; j < values.length; j++) {
+      values[j] = m_Columns[j].value(row);
+    }
+    return new DenseInstance(rowWeight(row), values);
+  }
+
+  /**
+   * Returns an estimate of the number of bytes occupied by the values and
+   * weights of this dataset (excluding the header information).
+   *
+   * @return the estimated size in bytes
+   */
+  public long estimatedSizeInBytes() {
+    long result = 4L * m_Capacity;
+    for (Column column : m_Columns) {
+      result += (long) column.bytesPerValue() * m_Capacity;
+    }
+    if (m_Weights != null) {
+      result += 8L * m_Capacity;
+    }
+    return result;
+  }
+
+  /**
+   * Adds one instance to the end of the set. Copies the instance's values
+   * into the columns. Does not check if the instance is compatible with the
+   * dataset. Note: String or relational values are not transferred.
+   *
+   * @param instance the instance to be added
+   */
+  @Override
+  public boolean add(Instance instance) {
+    int row = store(instance);
+    m_Rows[m_NumRows++] = row;
+
+    return true;
+  }
+
+  /**
+   * Adds one instance at the given position. Copies the instance's values
+   * into the columns. Does not check if the instance is compatible with the
+   * dataset. Note: String or relational values are not transferred.
+   *
+   * @param index position where instance is to be inserted
+   * @param instance the instance to be added
+   */
+  @Override
+  public void add(int index, Instance instance) {
+    if ((index < 0) || (index > m_NumRows)) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+        + m_NumRows);
+    }
+    int row = store(instance);
+    System.arraycopy(m_Rows, index, m_Rows, index + 1, m_NumRows - index);
+    m_Rows[index] = row;
+    m_NumRows++;
+  }
+
+  /**
+   * Replaces the instance at the given position. Copies the instance's
+   * values into the columns, the view of the previous instance remains
+   * valid.
+   *
+   * @param index position where instance is to be inserted
+   * @param instance the instance to be inserted
+   * @return the instance previously at that position
+   */
+  @Override
+  public Instance set(int index, Instance instance) {
+    Instance oldInstance = instance(index);
+    m_Rows[index] = store(instance);
+
+    return oldInstance;
+  }
+
+  /**
+   * Returns a view of the instance at the given position.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @return the instance at the given position
+   */
+  @Override
+  public Instance instance(int index) {
+    return new ColumnarInstance(this, physicalRow(index));
+  }
+
+  /**
+   * Returns a view of the instance at the given position.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @return the instance at the given position
+   */
+  @Override
+  public Instance get(int index) {
+    return instance(index);
+  }
+
+  /**
+   * Returns a view of the first instance in the set.
+   *
+   * @return the first instance in the set
+   */
+  @Override
+  public Instance firstInstance() {
+    return instance(0);
+  }
+
+  /**
+   * Returns a view of the last instance in the set.
+   *
+   * @return the last instance in the set
+   */
+  @Override
+  public Instance lastInstance() {
+    return instance(m_NumRows - 1);
+  }
+
+  /**
+   * Returns an enumeration of all instances in the dataset.
+   *
+   * @return enumeration of all instances in the dataset
+   */
+  @Override
+  public Enumeration enumerateInstances() {
+    return new WekaEnumeration(this);
+  }
+
+  /**
+   * Returns the number of instances in the dataset.
+   *
+   * @return the number of instances in the dataset as an integer
+   */
+  @Override
+  public int numInstances() {
+    return m_NumRows;
+  }
+
+  /**
+   * Returns the number of instances in the dataset.
+   *
+   * @return the number of instances in the dataset as an integer
+   */
+  @Override
+  public int size() {
+    return m_NumRows;
+  }
+
+  /**
+   * Compactifies the set of instances. Drops the storage of removed rows and
+   * stores the remaining ones in the current order of the dataset. Views
+   * obtained before must not be used anymore.
+   */
+  @Override
+  public void compactify() {
+    for (int j = 0; j < m_Columns.length; j++) {
+      m_Columns[j] = m_Columns[j].select(m_Rows, m_NumRows);
+    }
+    if (m_Weights != null) {
+      double[] weights = new double[m_NumRows];
+      for (int i = 0; i < m_NumRows; i++) {
+        weights[i] = m_Weights[m_Rows[i]];
+      }
+      m_Weights = weights;
+    }
+    m_Rows = new int[m_NumRows];
+    for (int i = 0; i < m_NumRows; i++) {
+      m_Rows[i] = i;
+    }
+    m_NumStored = m_NumRows;
+    m_Capacity = m_NumRows;
+  }
+
+  /**
+   * Removes all instances from the set. Views obtained before must not be
+   * used anymore.
+   */
+  @Override
+  public void delete() {
+    initColumns(0);
+  }
+
+  /**
+   * Removes an instance at the given position from the set.
+   *
+   * @param index the instance's position (index starts with 0)
+   */
+  @Override
+  public void delete(int index) {
+    physicalRow(index);
+    System.arraycopy(m_Rows, index + 1, m_Rows, index, m_NumRows - index - 1);
+    m_NumRows--;
+  }
+
+  /**
+   * Removes the instance at the given position.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @return the instance at the given position
+   */
+  @Override
+  public Instance remove(int index) {
+    Instance result = instance(index);
+    delete(index);
+
+    return result;
+  }
+
+  /**
+   * Removes all instances with missing values for a particular attribute from
+   * the dataset.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   */
+  @Override
+  public void deleteWithMissing(int attIndex) {
+    Column column = m_Columns[attIndex];
+    int num = 0;
+    for (int i = 0; i < m_NumRows; i++) {
+      if (!Utils.isMissingValue(column.value(m_Rows[i]))) {
+        m_Rows[num++] = m_Rows[i];
+      }
+    }
+    m_NumRows = num;
+  }
+
+  /**
+   * Deletes an attribute at the given position (0 to numAttributes() - 1). A
+   * deep copy of the attribute information is performed before the attribute
+   * is deleted.
+   *
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range or
+   *           the class attribute is being deleted
+   */
+  @Override
+  public void deleteAttributeAt(int position) {
+    if ((position < 0) || (position >= m_Attributes.size())) {
+      throw new IllegalArgumentException("Index out of range");
+    }
+    if (position == m_ClassIndex) {
+      throw new IllegalArgumentException("Can't delete class attribute");
+    }
+    freshAttributeInfo();
+    if (m_ClassIndex > position) {
+      m_ClassIndex--;
+    }
+    m_Attributes.remove(position);
+    for (int i = position; i < m_Attributes.size(); i++) {
+      Attribute current = m_Attributes.get(i);
+      current.setIndex(current.index() - 1);
+    }
+
+    Column[] columns = new Column[m_Columns.length - 1];
+    System.arraycopy(m_Columns, 0, columns, 0, position);
+    System.arraycopy(m_Columns, position + 1, columns, position,
+      columns.length - position);
+    m_Columns = columns;
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to numAttributes()) and
+   * sets all values to be missing. Shallow copies the attribute before it is
+   * inserted, and performs a deep copy of the existing attribute information.
+   *
+   * @param att the attribute to be inserted
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   */
+  @Override
+  public void insertAttributeAt(Attribute att, int position) {
+    if ((position < 0) || (position > m_Attributes.size())) {
+      throw new IllegalArgumentException("Index out of range");
+    }
+    if (attribute(att.name()) != null) {
+      throw new IllegalArgumentException("Attribute name '" + att.name()
+        + "' already in use at position #" + attribute(att.name()).index());
+    }
+    att = (Attribute) att.copy();
+    freshAttributeInfo();
+    att.setIndex(position);
+    m_Attributes.add(position, att);
+    for (int i = position + 1; i < m_Attributes.size(); i++) {
+      Attribute current = m_Attributes.get(i);
+      current.setIndex(current.index() + 1);
+    }
+    if (m_ClassIndex >= position) {
+      m_ClassIndex++;
+    }
+
+    Column column = newColumn(att, m_Capacity);
+    for (int i = 0; i < m_NumStored; i++) {
+      column.setValue(i, Utils.missingValue());
+    }
+    Column[] columns = new Column[m_Columns.length + 1];
+    System.arraycopy(m_Columns, 0, columns, 0, position);
+    columns[position] = column;
+    System.arraycopy(m_Columns, position, columns, position + 1,
+      m_Columns.length - position);
+    m_Columns = columns;
+  }
+
+  /**
+   * Sorts the instances based on an attribute. For numeric attributes,
+   * instances are sorted in ascending order. For nominal attributes,
+   * instances are sorted based on the attribute label ordering specified in
+   * the header. Instances with missing values for the attribute are placed at
+   * the end of the dataset. Only the order of the rows is changed, the values
+   * stay where they are.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   */
+  @Override
+  public void sort(int attIndex) {
+    double[] vals = new double[m_NumRows];
+    Column column = m_Columns[attIndex];
+    for (int i = 0; i < vals.length; i++) {
+      double val = column.value(m_Rows[i]);
+      if (Utils.isMissingValue(val)) {
+        vals[i] = Double.MAX_VALUE;
+      } else {
+        vals[i] = val;
+      }
+    }
+
+    int[] sortOrder = Utils.sortWithNoMissingValues(vals);
+    int[] rows = new int[m_Rows.length];
+    for (int i = 0; i < vals.length; i++) {
+      rows[i] = m_Rows[sortOrder[i]];
+    }
+    m_Rows = rows;
+  }
+
+  /**
+   * Swaps two instances in the set.
+   *
+   * @param i the first instance's index (index starts with 0)
+   * @param j the second instance's index (index starts with 0)
+   */
+  @Override
+  public void swap(int i, int j) {
+    int row = physicalRow(i);
+    m_Rows[i] = physicalRow(j);
+    m_Rows[j] = row;
+  }
+
+  /**
+   * Help function needed for stratification of set.
+   *
+   * @param numFolds the number of folds for the stratification
+   */
+  @Override
+  protected void stratStep(int numFolds) {
+    int[] rows = new int[m_Rows.length];
+    int num = 0;
+    int start = 0;
+
+    // create stratified batch
+    while (num < m_NumRows) {
+      for (int j = start; j < m_NumRows; j += numFolds) {
+        rows[num++] = m_Rows[j];
+      }
+      start++;
+    }
+    m_Rows = rows;
+  }
+
+  /**
+   * Returns the kth-smallest attribute value of a numeric attribute. Missing
+   * values are treated as Double.MAX_VALUE.
+   *
+   * @param attIndex the attribute's index
+   * @param k the value of k
+   * @return the kth-smallest value
+   */
+  @Override
+  public double kthSmallestValue(int attIndex, int k) {
+    if (!attribute(attIndex).isNumeric()) {
+      throw new IllegalArgumentException(
+        "Instances: attribute must be numeric to compute kth-smallest value.");
+    }
+    if ((k < 1) || (k > numInstances())) {
+      throw new IllegalArgumentException(
+        "Instances: value for k for computing kth-smallest value too large.");
+    }
+
+    double[] vals = new double[m_NumRows];
+    Column column = m_Columns[attIndex];
+    for (int i = 0; i < vals.length; i++) {
+      double val = column.value(m_Rows[i]);
+      if (Utils.isMissingValue(val)) {
+        vals[i] = Double.MAX_VALUE;
+      } else {
+        vals[i] = val;
+      }
+    }
+    return Utils.kthSmallestValue(vals, k);
+  }
+
+  /**
+   * Returns the mean (mode) for a numeric (nominal) attribute as a
+   * floating-point value. Returns 0 if the attribute is neither nominal nor
+   * numeric. If all values are missing it returns zero.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   * @return the mean or the mode
+   */
+  @Override
+  public double meanOrMode(int attIndex) {
+    Column column = m_Columns[attIndex];
+
+    if (attribute(attIndex).isNumeric()) {
+      double result = 0;
+      double found = 0;
+      for (int i = 0; i < m_NumRows; i++) {
+        int row = m_Rows[i];
+        double val = column.value(row);
+        if (!Utils.isMissingValue(val)) {
+          double weight = rowWeight(row);
+          found += weight;
+          result += weight * val;
+        }
+      }
+      if (found <= 0) {
+        return 0;
+      } else {
+        return result / found;
+      }
+    } else if (attribute(attIndex).isNominal()) {
+      int[] counts = new int[attribute(attIndex).numValues()];
+      for (int i = 0; i < m_NumRows; i++) {
+        int row = m_Rows[i];
+        double val = column.value(row);
+        if (!Utils.isMissingValue(val)) {
+          counts[(int) val] += rowWeight(row);
+        }
+      }
+      return Utils.maxIndex(counts);
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Computes the variance for a numeric attribute.
+   *
+   * @param attIndex the numeric attribute (index starts with 0)
+   * @return the variance if the attribute is numeric
+   * @throws IllegalArgumentException if the attribute is not numeric
+   */
+  @Override
+  public double variance(int attIndex) {
+    double sum = 0, sumSquared = 0, sumOfWeights = 0;
+
+    if (!attribute(attIndex).isNumeric()) {
+      throw new IllegalArgumentException(
+        "Can't compute variance because attribute is " + "not numeric!");
+    }
+    Column column = m_Columns[attIndex];
+    for (int i = 0; i < m_NumRows; i++) {
+      int row = m_Rows[i];
+      double val = column.value(row);
+      if (!Utils.isMissingValue(val)) {
+        double weight = rowWeight(row);
+        sum += weight * val;
+        sumSquared += weight * val * val;
+        sumOfWeights += weight;
+      }
+    }
+    if (sumOfWeights <= 1) {
+      return 0;
+    }
+    double result = (sumSquared - (sum * sum / sumOfWeights))
+      / (sumOfWeights - 1);
+
+    // We don't like negative variance
+    if (result < 0) {
+      return 0;
+    } else {
+      return result;
+    }
+  }
+
+  /**
+   * Computes the sum of all the instances' weights.
+   *
+   * @return the sum of all the instances' weights as a double
+   */
+  @Override
+  public double sumOfWeights() {
+    double sum = 0;
+
+    for (int i = 0; i < m_NumRows; i++) {
+      sum += rowWeight(m_Rows[i]);
+    }
+    return sum;
+  }
+
+  /**
+   * Calculates summary statistics on the values that appear in this set of
+   * instances for a specified attribute.
+   *
+   * @param index the index of the attribute to summarize (index starts with
+   *          0)
+   * @return an AttributeStats object with it's fields calculated.
+   */
+  @Override
+  public AttributeStats attributeStats(int index) {
+    AttributeStats result = new AttributeStats();
+    if (attribute(index).isNominal()) {
+      result.nominalCounts = new int[attribute(index).numValues()];
+      result.nominalWeights = new double[attribute(index).numValues()];
+    }
+    if (attribute(index).isNumeric()) {
+      result.numericStats = new weka.experiment.Stats();
+    }
+    result.totalCount = m_NumRows;
+
+    double[] attVals = attributeToDoubleArray(index);
+    int[] sorted = Utils.sort(attVals);
+    int currentCount = 0;
+    double currentWeight = 0;
+    double prev = Double.NaN;
+    for (int j = 0; j < m_NumRows; j++) {
+      double val = attVals[sorted[j]];
+      double weight = rowWeight(m_Rows[sorted[j]]);
+      if (Utils.isMissingValue(val)) {
+        result.missingCount = m_NumRows - j;
+        break;
+      }
+      if (val == prev) {
+        currentCount++;
+        currentWeight += weight;
+      } else {
+        result.addDistinct(prev, currentCount, currentWeight);
+        currentCount = 1;
+        currentWeight = weight;
+        prev = val;
+      }
+    }
+    result.addDistinct(prev, currentCount, currentWeight);
+    result.distinctCount--; // So we don't count "missing" as a value
+    return result;
+  }
+
+  /**
+   * Gets the value of all instances in this dataset for a particular
+   * attribute.
+   *
+   * @param index the index of the attribute.
+   * @return an array containing the value of the desired attribute for each
+   *         instance in the dataset.
+   */
+  @Override
+  public double[] attributeToDoubleArray(int index) {
+    double[] result = new double[m_NumRows];
+    Column column = m_Columns[index];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = column.value(m_Rows[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+
+  /**
+   * Converts the given ARFF file into a columnar dataset and outputs some
+   * statistics about the memory usage.
+   *
+   * @param args the ARFF file and, optionally, "-float" to store numeric
+   *          attributes as floats
+   */
+  public static void main(String[] args) {
+    try {
+      if (args.length == 0) {
+        System.err.println("\nUsage: " + ColumnarInstances.class.getName()
+          + " <file.arff> [-float]\n");
+        System.exit(1);
+      }
+
+      Instances data = weka.core.converters.ConverterUtils.DataSource
+        .read(args[0]);
+      boolean useFloat = (args.length > 1) && args[1].equals("-float");
+      ColumnarInstances columnar = new ColumnarInstances(data, useFloat);
+      System.out.println("Instances:  " + columnar.numInstances());
+      System.out.println("Attributes: " + columnar.numAttributes());
+      System.out.println("Estimated size of values (bytes):  "
+        + columnar.estimatedSizeInBytes());
+      System.out.println("Same values as dense rows (bytes): "
+        + (8L * data.numInstances() * (data.numAttributes() + 1)));
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
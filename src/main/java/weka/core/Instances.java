@@ -972,6 +972,8 @@ public class Instances extends AbstractList<Instance>
   @Deprecated public boolean readInstance(Reader reader) throws IOException {
 
     ArffReader arff = new ArffReader(reader, this, m_Lines, 1);
+    // the reader is used for further instances
+    arff.setReadAhead(false);
     Instance inst = arff.readInstance(arff.getData(), false);
     m_Lines = arff.getLineNo();
     if (inst != null) {
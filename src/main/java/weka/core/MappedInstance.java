@@ -0,0 +1,349 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    MappedInstance.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import weka.core.ColumnarInstances.Column;
+
+/**
+ * Copy of a row of a MappedInstances object. The copy has a weight of its
+ * own, but reads its values from the mapped file until one of them is
+ * changed; only then are the values copied onto the heap. Since the values
+ * of a MappedInstances object cannot be changed, the copy behaves like a
+ * DenseInstance with the same values, while occupying only a few bytes as
+ * long as it is only read from. Datasets derived from a MappedInstances
+ * object (via the copy constructor of Instances, <code>trainCV(int,
+ * int)</code>, <code>resampleWithWeights(Random)</code>, ...) consist of such
+ * copies. <p/>
+ *
+ * When serialized, the copy is replaced by a DenseInstance.
+ *
+ * @version $Revision: 9500 $
+ * @see MappedInstances
+ */
+public class MappedInstance
+  extends AbstractInstance {
+
+  /** for serialization */
+  private static final long serialVersionUID = -1807152540004155101L;
+
+  /** the columns of the mapped dataset at the time the copy was made. */
+  protected Column[] m_Columns;
+
+  /** the (physical) row in the mapped dataset. */
+  protected int m_Row;
+
+  /**
+   * Creates a copy of the given (physical) row. The values stay in the
+   * columns until they get changed.
+   *
+   * @param columns the columns of the mapped dataset
+   * @param row the (physical) row
+   * @param weight the weight of the copy
+   */
+  protected MappedInstance(Column[] columns, int row, double weight) {
+    m_Columns = columns;
+    m_Row = row;
+    m_Weight = weight;
+    m_AttValues = null;
+  }
+
+  /**
+   * Produces a shallow copy of this instance. The copy has access to the
+   * same dataset and reads from the same row, unless values have been
+   * changed.
+   *
+   * @return the copy
+   */
+  @Override
+  public Object copy() {
+    MappedInstance result = new MappedInstance(m_Columns, m_Row, m_Weight);
+    if (m_AttValues != null) {
+      result.m_AttValues = m_AttValues.clone();
+    }
+    result.m_Dataset = m_Dataset;
+    return result;
+  }
+
+  /**
+   * Copies the values onto the heap, if that hasn't happened yet. Called
+   * before values are changed.
+   */
+  protected void materialize() {
+    if (m_AttValues == null) {
+      m_AttValues = toDoubleArray();
+      m_Columns = null;
+    }
+  }
+
+  /**
+   * Returns whether the values have been copied onto the heap.
+   *
+   * @return true if the values don't reside in the mapped file anymore
+   */
+  public boolean isMaterialized() {
+    return (m_AttValues != null);
+  }
+
+  /**
+   * Returns the index of the attribute stored at the given position. Just
+   * returns the given value.
+   *
+   * @param position the position
+   * @return the index of the attribute stored at the given position
+   */
+  @Override
+  public int index(int position) {
+    return position;
+  }
+
+  /**
+   * Merges this instance with the given instance and returns the result.
+   * Dataset is set to null.
+   *
+   * @param inst the instance to be merged with this one
+   * @return the merged instances
+   */
+  @Override
+  public Instance mergeInstance(Instance inst) {
+    int m = 0;
+    double[] newVals = new double[numAttributes() + inst.numAttributes()];
+    for (int j = 0; j < numAttributes(); j++, m++) {
+      newVals[m] = value(j);
+    }
+    for (int j = 0; j < inst.numAttributes(); j++, m++) {
+      newVals[m] = inst.value(j);
+    }
+    return new DenseInstance(1.0, newVals);
+  }
+
+  /**
+   * Returns the number of attributes.
+   *
+   * @return the number of attributes as an integer
+   */
+  @Override
+  public int numAttributes() {
+    if (m_AttValues != null) {
+      return m_AttValues.length;
+    }
+    return m_Columns.length;
+  }
+
+  /**
+   * Returns the number of values present. Always the same as numAttributes().
+   *
+   * @return the number of values
+   */
+  @Override
+  public int numValues() {
+    return numAttributes();
+  }
+
+  /**
+   * Replaces all missing values in the instance with the values contained in
+   * the given array.
+   *
+   * @param array containing the means and modes
+   * @throws IllegalArgumentException if numbers of attributes are unequal
+   */
+  @Override
+  public void replaceMissingValues(double[] array) {
+    if ((array == null) || (array.length != numAttributes())) {
+      throw new IllegalArgumentException("Unequal number of attributes!");
+    }
+    for (int i = 0; i < array.length; i++) {
+      if (isMissing(i)) {
+        setValue(i, array[i]);
+      }
+    }
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value (internal
+   * floating-point format). Copies the values onto the heap first.
+   *
+   * @param attIndex the attribute's index
+   * @param value the new attribute value (If the corresponding attribute is
+   *          nominal (or a string) then this is the new value's index as a
+   *          double).
+   */
+  @Override
+  public void setValue(int attIndex, double value) {
+    materialize();
+    m_AttValues[attIndex] = value;
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value (internal
+   * floating-point format), given an index into the sparse representation.
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @param value the new attribute value (If the corresponding attribute is
+   *          nominal (or a string) then this is the new value's index as a
+   *          double).
+   */
+  @Override
+  public void setValueSparse(int indexOfIndex, double value) {
+    setValue(indexOfIndex, value);
+  }
+
+  /**
+   * Returns the values of each attribute as an array of doubles.
+   *
+   * @return an array containing all the instance attribute values
+   */
+  @Override
+  public double[] toDoubleArray() {
+    if (m_AttValues != null) {
+      return m_AttValues.clone();
+    }
+    double[] result = new double[m_Columns.length];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = m_Columns[i].value(m_Row);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the description of one instance (without weight appended). If
+   * the instance doesn't have access to a dataset, it returns the internal
+   * floating-point values. Quotes string values that contain whitespace
+   * characters.
+   *
+   * @return the instance's description as a string
+   */
+  @Override
+  public String toStringNoWeight() {
+    return toStringNoWeight(AbstractInstance.s_numericAfterDecimalPoint);
+  }
+
+  /**
+   * Returns the description of one instance (without weight appended). If
+   * the instance doesn't have access to a dataset, it returns the internal
+   * floating-point values. Quotes string values that contain whitespace
+   * characters.
+   *
+   * @param afterDecimalPoint maximum number of digits after the decimal point
+   *          for numeric values
+   * @return the instance's description as a string
+   */
+  @Override
+  public String toStringNoWeight(int afterDecimalPoint) {
+    StringBuffer text = new StringBuffer();
+
+    for (int i = 0; i < numAttributes(); i++) {
+      if (i > 0) {
+        text.append(",");
+      }
+      text.append(toString(i, afterDecimalPoint));
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format.
+   *
+   * @param attIndex the attribute's index
+   * @return the specified value as a double (If the corresponding attribute
+   *         is nominal (or a string) then it returns the value's index as a
+   *         double).
+   */
+  @Override
+  public double value(int attIndex) {
+    if (m_AttValues != null) {
+      return m_AttValues[attIndex];
+    }
+    return m_Columns[attIndex].value(m_Row);
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format, given an index
+   * in the sparse representation.
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return the specified value as a double
+   */
+  @Override
+  public double valueSparse(int indexOfIndex) {
+    return value(indexOfIndex);
+  }
+
+  /**
+   * Deletes an attribute at the given position (0 to numAttributes() - 1).
+   * Copies the values onto the heap first.
+   *
+   * @param position the attribute's position
+   */
+  @Override
+  protected void forceDeleteAttributeAt(int position) {
+    materialize();
+
+    double[] newValues = new double[m_AttValues.length - 1];
+    System.arraycopy(m_AttValues, 0, newValues, 0, position);
+    if (position < m_AttValues.length - 1) {
+      System.arraycopy(m_AttValues, position + 1, newValues, position,
+        m_AttValues.length - (position + 1));
+    }
+    m_AttValues = newValues;
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to numAttributes()) and
+   * sets its value to be missing. Copies the values onto the heap first.
+   *
+   * @param position the attribute's position
+   */
+  @Override
+  protected void forceInsertAttributeAt(int position) {
+    materialize();
+
+    double[] newValues = new double[m_AttValues.length + 1];
+    System.arraycopy(m_AttValues, 0, newValues, 0, position);
+    newValues[position] = Utils.missingValue();
+    System.arraycopy(m_AttValues, position, newValues, position + 1,
+      m_AttValues.length - position);
+    m_AttValues = newValues;
+  }
+
+  /**
+   * Replaces the copy with a DenseInstance when serialized, so that the
+   * mapped dataset doesn't get serialized along with it.
+   *
+   * @return the DenseInstance to serialize instead
+   */
+  protected Object writeReplace() {
+    DenseInstance result = new DenseInstance(m_Weight, toDoubleArray());
+    result.setDataset(m_Dataset);
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
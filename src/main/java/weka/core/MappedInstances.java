@@ -0,0 +1,578 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    MappedInstances.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Set of instances whose values reside in a memory-mapped file instead of
+ * the Java heap. The operating system pages the rows in on demand, hence the
+ * size of the dataset is only limited by the available disk space (and
+ * Integer.MAX_VALUE rows). Only the order of the rows (one int per row) is
+ * kept on the heap. <p/>
+ *
+ * The values cannot be changed. Writable files are mapped privately, i.e.,
+ * changes to the weights are visible through this object, but never written
+ * back to the file. Read-only files are mapped read-only, and the weights
+ * cannot be changed either. Rows cannot be added or replaced. String and
+ * relational attributes are not supported. <p/>
+ *
+ * File layout (big endian):
+ * <ul>
+ *   <li>int: magic number, int: version, int: class index,
+ *   int: number of attributes</li>
+ *   <li>int: length of the header, followed by the ARFF header in UTF-8,
+ *   padded with zeros to a multiple of 8 bytes</li>
+ *   <li>one row per instance: the weight followed by the values of all
+ *   attributes (doubles, missing values are NaN)</li>
+ * </ul>
+ *
+ * Conversion from any format supported by DataSource, e.g.: <p/>
+ *
+ * <pre>
+ * java weka.core.MappedInstances data.arff data.wmi
+ * </pre>
+ *
+ * Copies of the rows (e.g., the ones that end up in datasets created with
+ * the copy constructor of Instances, <code>trainCV(int, int)</code> or
+ * <code>resampleWithWeights(Random)</code>) are MappedInstance objects,
+ * which keep reading the values from the file. Learners that copy their
+ * training data therefore only need a few bytes of heap per row, as long
+ * as they don't change the values or filter the data.
+ *
+ * @version $Revision: 9500 $
+ * @see weka.core.converters.MappedInstancesLoader
+ * @see weka.core.converters.MappedInstancesSaver
+ */
+public class MappedInstances
+  extends ColumnarInstances {
+
+  /** for serialization */
+  private static final long serialVersionUID = 2969417301133373282L;
+
+  /** the file extension. */
+  public final static String FILE_EXTENSION = ".wmi";
+
+  /** the magic number at the start of the file. */
+  public final static int MAGIC = 0x574d4931;
+
+  /** the version of the file format. */
+  public final static int VERSION = 1;
+
+  /** the maximum number of bytes mapped per segment. */
+  protected final static int SEGMENT_SIZE = 1 << 30;
+
+  /**
+   * The information stored in front of the rows.
+   */
+  protected static class Preamble {
+
+    /** the structure of the data. */
+    public Instances m_Structure;
+
+    /** the offset of the first row in the file. */
+    public long m_DataOffset;
+  }
+
+  /**
+   * Column that reads and writes its values from/to the mapped segments.
+   */
+  protected class MappedColumn
+    extends Column {
+
+    /** for serialization */
+    private static final long serialVersionUID = -3924167617713342138L;
+
+    /** the position of the attribute in a row of the file. */
+    protected int m_Position;
+
+    /**
+     * Initializes the column.
+     *
+     * @param position the position of the attribute in a row of the file
+     */
+    public MappedColumn(int position) {
+      m_Position = position;
+    }
+
+    @Override
+    public double value(int row) {
+      return getDouble(row, m_Position + 1);
+    }
+
+    @Override
+    public void setValue(int row, double value) {
+      throw new UnsupportedOperationException(
+        "Values of MappedInstances cannot be changed!");
+    }
+
+    @Override
+    public void resize(int capacity) {
+      throw new UnsupportedOperationException(
+        "Columns of MappedInstances cannot be resized!");
+    }
+
+    @Override
+    public Column select(int[] rows, int num) {
+      DoubleColumn result = new DoubleColumn(num);
+      for (int i = 0; i < num; i++) {
+        result.setValue(i, value(rows[i]));
+      }
+      return result;
+    }
+
+    @Override
+    public int bytesPerValue() {
+      return 0;
+    }
+  }
+
+  /** the mapped file. */
+  protected File m_File;
+
+  /** the offset of the first row in the file. */
+  protected long m_DataOffset;
+
+  /** the number of attributes per row in the file. */
+  protected int m_RowLength;
+
+  /** the number of rows per segment. */
+  protected int m_RowsPerSegment;
+
+  /** the mapped segments of the file. */
+  protected transient ByteBuffer[] m_Segments;
+
+  /** whether all columns read from the file (and are hence read-only). */
+  protected boolean m_AllColumnsMapped = true;
+
+  /**
+   * Maps the given file.
+   *
+   * @param file the file in the format written by MappedInstancesSaver
+   * @throws IOException if the file cannot be read or has the wrong format
+   */
+  public MappedInstances(File file) throws IOException {
+    this(file, readPreamble(file));
+  }
+
+  /**
+   * Maps the given file.
+   *
+   * @param file the file to map
+   * @param preamble the information stored in front of the rows
+   * @throws IOException if the file cannot be mapped
+   */
+  protected MappedInstances(File file, Preamble preamble) throws IOException {
+    super(preamble.m_Structure, 0, false);
+
+    m_File = file.getAbsoluteFile();
+    m_DataOffset = preamble.m_DataOffset;
+    m_RowLength = numAttributes() + 1;
+    map();
+
+    for (int j = 0; j < m_Columns.length; j++) {
+      m_Columns[j] = new MappedColumn(j);
+    }
+    long numRows = (m_File.length() - m_DataOffset) / (8L * m_RowLength);
+    if (numRows > Integer.MAX_VALUE) {
+      throw new IOException("Too many rows in file: " + numRows);
+    }
+    m_NumRows = (int) numRows;
+    m_NumStored = m_NumRows;
+    m_Capacity = m_NumRows;
+    m_Rows = new int[m_NumRows];
+    for (int i = 0; i < m_NumRows; i++) {
+      m_Rows[i] = i;
+    }
+  }
+
+  /**
+   * Maps the rows of the file, in segments of at most SEGMENT_SIZE bytes.
+   *
+   * @throws IOException if mapping fails
+   */
+  protected void map() throws IOException {
+    long rowSize = 8L * m_RowLength;
+    m_RowsPerSegment = (int) Math.max(1, SEGMENT_SIZE / rowSize);
+    long numRows = (m_File.length() - m_DataOffset) / rowSize;
+    int numSegments = (int) ((numRows + m_RowsPerSegment - 1) / m_RowsPerSegment);
+
+    // private (copy-on-write) mappings require a writable channel
+    boolean writable = m_File.canWrite();
+    RandomAccessFile raf = new RandomAccessFile(m_File, writable ? "rw" : "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      FileChannel.MapMode mode = writable ? FileChannel.MapMode.PRIVATE
+        : FileChannel.MapMode.READ_ONLY;
+      m_Segments = new ByteBuffer[numSegments];
+      for (int i = 0; i < numSegments; i++) {
+        long first = (long) i * m_RowsPerSegment;
+        long rows = Math.min(m_RowsPerSegment, numRows - first);
+        m_Segments[i] = channel.map(mode, m_DataOffset + first * rowSize, rows
+          * rowSize);
+      }
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * Returns the number stored at the given position of a (physical) row.
+   *
+   * @param row the (physical) row
+   * @param position the position in the row (0 is the weight)
+   * @return the stored value
+   */
+  protected final double getDouble(int row, int position) {
+    return m_Segments[row / m_RowsPerSegment].getDouble(
+      ((row % m_RowsPerSegment) * m_RowLength + position) << 3);
+  }
+
+  /**
+   * Changes the number stored at the given position of a (physical) row. The
+   * change is not written back to the file. Only used for the weights.
+   *
+   * @param row the (physical) row
+   * @param position the position in the row (0 is the weight)
+   * @param value the new value
+   */
+  protected final void putDouble(int row, int position, double value) {
+    m_Segments[row / m_RowsPerSegment].putDouble(
+      ((row % m_RowsPerSegment) * m_RowLength + position) << 3, value);
+  }
+
+  /**
+   * Returns the mapped file.
+   *
+   * @return the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns the weight of a (physical) row.
+   *
+   * @param row the (physical) row
+   * @return the weight
+   */
+  @Override
+  protected double rowWeight(int row) {
+    return getDouble(row, 0);
+  }
+
+  /**
+   * Sets the weight of a (physical) row. The change is not written back to
+   * the file.
+   *
+   * @param row the (physical) row
+   * @param weight the weight
+   */
+  @Override
+  protected void setRowWeight(int row, double weight) {
+    putDouble(row, 0, weight);
+  }
+
+  /**
+   * Returns a copy of a (physical) row that keeps reading the values from
+   * the file. Copies of rows of attributes that got inserted afterwards,
+   * which are stored on the heap and can be changed, are DenseInstance
+   * objects.
+   *
+   * @param row the (physical) row
+   * @return the copy
+   */
+  @Override
+  protected Instance copyRow(int row) {
+    if (!m_AllColumnsMapped) {
+      return super.copyRow(row);
+    }
+    return new MappedInstance(m_Columns, row, rowWeight(row));
+  }
+
+  /**
+   * Deletes an attribute at the given position (0 to numAttributes() - 1).
+   *
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range or
+   *           the class attribute is being deleted
+   */
+  @Override
+  public void deleteAttributeAt(int position) {
+    super.deleteAttributeAt(position);
+    updateAllColumnsMapped();
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to numAttributes()) and
+   * sets all values to be missing. The values of the new attribute are
+   * stored on the heap.
+   *
+   * @param att the attribute to be inserted
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   */
+  @Override
+  public void insertAttributeAt(Attribute att, int position) {
+    super.insertAttributeAt(att, position);
+    updateAllColumnsMapped();
+  }
+
+  /**
+   * Determines whether all columns read from the file.
+   */
+  protected void updateAllColumnsMapped() {
+    m_AllColumnsMapped = true;
+    for (Column column : m_Columns) {
+      if (!(column instanceof MappedColumn)) {
+        m_AllColumnsMapped = false;
+        break;
+      }
+    }
+  }
+
+  /**
+   * Not supported, rows cannot be added to a mapped file.
+   *
+   * @param instance ignored
+   * @return nothing
+   */
+  @Override
+  protected int store(Instance instance) {
+    throw new UnsupportedOperationException(
+      "Instances cannot be added to MappedInstances!");
+  }
+
+  /**
+   * Removes all instances from the set. The file stays mapped.
+   */
+  @Override
+  public void delete() {
+    m_NumRows = 0;
+  }
+
+  /**
+   * Does nothing, the rows stay in the file.
+   */
+  @Override
+  public void compactify() {
+  }
+
+  /**
+   * Returns the number of bytes occupied on the heap by the row order; the
+   * values themselves are not counted, since they reside in the mapped file.
+   *
+   * @return the estimated size in bytes
+   */
+  @Override
+  public long estimatedSizeInBytes() {
+    return 4L * m_Rows.length;
+  }
+
+  /**
+   * Re-maps the file after deserialization.
+   *
+   * @param in the stream to read from
+   * @throws IOException if the file cannot be mapped
+   * @throws ClassNotFoundException if a class cannot be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException,
+    ClassNotFoundException {
+
+    in.defaultReadObject();
+    map();
+  }
+
+  /**
+   * Reads the information stored in front of the rows.
+   *
+   * @param file the file to read from
+   * @return the preamble
+   * @throws IOException if the file has the wrong format
+   */
+  protected static Preamble readPreamble(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a mapped instances file: " + file);
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported version of mapped instances file: "
+          + version);
+      }
+      int classIndex = in.readInt();
+      int numAttributes = in.readInt();
+      byte[] header = new byte[in.readInt()];
+      in.readFully(header);
+
+      Preamble result = new Preamble();
+      result.m_Structure = new Instances(new StringReader(new String(header,
+        "UTF-8")));
+      if (result.m_Structure.numAttributes() != numAttributes) {
+        throw new IOException("Header does not match number of attributes!");
+      }
+      result.m_Structure.setClassIndex(classIndex);
+      result.m_DataOffset = padding(20 + header.length);
+
+      return result;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Returns the given length rounded up to a multiple of 8.
+   *
+   * @param length the length
+   * @return the padded length
+   */
+  protected static int padding(int length) {
+    return (length + 7) & ~7;
+  }
+
+  /**
+   * Checks whether the structure can be stored in a mapped instances file.
+   *
+   * @param structure the structure to check
+   * @throws IOException if the structure contains string or relational
+   *           attributes
+   */
+  public static void checkStructure(Instances structure) throws IOException {
+    if (structure.checkForAttributeType(Attribute.STRING)
+      || structure.checkForAttributeType(Attribute.RELATIONAL)) {
+      throw new IOException(
+        "String and relational attributes cannot be stored in mapped instances files!");
+    }
+  }
+
+  /**
+   * Writes the information stored in front of the rows.
+   *
+   * @param out the stream to write to
+   * @param structure the structure of the data
+   * @throws IOException if writing fails or the structure contains string or
+   *           relational attributes
+   */
+  public static void writePreamble(DataOutputStream out, Instances structure)
+    throws IOException {
+
+    checkStructure(structure);
+    byte[] header = new Instances(structure, 0).toString().getBytes("UTF-8");
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(structure.classIndex());
+    out.writeInt(structure.numAttributes());
+    out.writeInt(header.length);
+    out.write(header);
+    for (int i = 20 + header.length; i < padding(20 + header.length); i++) {
+      out.writeByte(0);
+    }
+  }
+
+  /**
+   * Writes a single row.
+   *
+   * @param out the stream to write to
+   * @param inst the instance to write
+   * @throws IOException if writing fails
+   */
+  public static void writeInstance(DataOutputStream out, Instance inst)
+    throws IOException {
+
+    out.writeDouble(inst.weight());
+    for (int j = 0; j < inst.numAttributes(); j++) {
+      out.writeDouble(inst.value(j));
+    }
+  }
+
+  /**
+   * Converts the given data source into a mapped instances file, instance by
+   * instance if the source supports incremental reading.
+   *
+   * @param source the data source
+   * @param output the file to write to
+   * @return the number of instances written
+   * @throws Exception if reading or writing fails
+   */
+  public static int convert(DataSource source, File output) throws Exception {
+    Instances structure = source.getStructure();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(output), 1 << 20));
+    int result = 0;
+    try {
+      writePreamble(out, structure);
+      while (source.hasMoreElements(structure)) {
+        writeInstance(out, source.nextElement(structure));
+        result++;
+      }
+    } finally {
+      out.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return the revision
+   */
+  @Override
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+
+  /**
+   * Converts a dataset into a mapped instances file.
+   *
+   * @param args the input file (any format supported by DataSource) and the
+   *          output file
+   */
+  public static void main(String[] args) {
+    try {
+      if (args.length != 2) {
+        System.err.println("\nUsage: " + MappedInstances.class.getName()
+          + " <input> <output" + FILE_EXTENSION + ">\n");
+        System.exit(1);
+      }
+
+      int num = convert(new DataSource(args[0]), new File(args[1]));
+      System.out.println("Instances written: " + num);
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,292 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ParallelObjective.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Helper for objective functions (and their gradients) that are sums over
+ * the instances of a dataset, as used by subclasses of Optimization. The
+ * instances are split into contiguous partitions, one per thread, the
+ * partial sums of the partitions are computed concurrently, each into an
+ * accumulator of its own, and then added up in the order of the partitions.
+ * Hence the result only depends on the number of threads, not on the
+ * scheduling, and with a single thread the sums are computed exactly like
+ * a plain loop over all instances. <p/>
+ *
+ * A typical usage is to let the objective of an Optimization subclass
+ * extend this class and delegate to it:<p/>
+ * <pre>
+ * class MyObjective extends ParallelObjective {
+ *   protected int numInstances() { ... }
+ *   protected double objective(double[] x, int from, int to) { ... }
+ *   protected void gradient(double[] x, int from, int to, double[] grad) { ... }
+ * }
+ *
+ * class MyOpt extends Optimization {
+ *   MyObjective m_Objective;
+ *   protected double objectiveFunction(double[] x) throws Exception {
+ *     return m_Objective.sumObjective(x) + penalty(x);
+ *   }
+ *   protected double[] evaluateGradient(double[] x) throws Exception {
+ *     double[] grad = m_Objective.sumGradient(x, x.length);
+ *     ...
+ *     return grad;
+ *   }
+ * }
+ * </pre><p/>
+ *
+ * The threads are kept between evaluations and released with shutdown().
+ *
+ * @version $Revision: 9500 $
+ * @see Optimization
+ */
+public abstract class ParallelObjective
+  implements RevisionHandler {
+
+  /** the number of threads to use */
+  protected int m_NumThreads = 1;
+
+  /** the threads, created when first needed */
+  protected ExecutorService m_Executor = null;
+
+  /**
+   * Sets the number of threads to use for the evaluations.
+   *
+   * @param value	the number of threads
+   */
+  public void setNumThreads(int value) {
+    if (value != m_NumThreads) {
+      shutdown();
+    }
+    m_NumThreads = Math.max(1, value);
+  }
+
+  /**
+   * Returns the number of threads to use for the evaluations.
+   *
+   * @return		the number of threads
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the number of instances the sums run over.
+   *
+   * @return		the number of instances
+   */
+  protected abstract int numInstances();
+
+  /**
+   * Computes the part of the objective function that is due to the given
+   * range of instances.
+   *
+   * @param x		the variable values
+   * @param from	the first instance (inclusive)
+   * @param to		the last instance (exclusive)
+   * @return		the partial sum
+   * @throws Exception	if something goes wrong
+   */
+  protected abstract double objective(double[] x, int from, int to)
+    throws Exception;
+
+  /**
+   * Adds the part of the gradient that is due to the given range of
+   * instances to the accumulator.
+   *
+   * @param x		the variable values
+   * @param from	the first instance (inclusive)
+   * @param to		the last instance (exclusive)
+   * @param grad	the accumulator, owned by the calling thread
+   * @throws Exception	if something goes wrong
+   */
+  protected abstract void gradient(double[] x, int from, int to, double[] grad)
+    throws Exception;
+
+  /**
+   * Returns the number of partitions to use.
+   *
+   * @return		the number of partitions
+   */
+  protected int numPartitions() {
+    return Math.max(1, Math.min(m_NumThreads, numInstances()));
+  }
+
+  /**
+   * Returns the first instance of the given partition.
+   *
+   * @param part	the partition
+   * @param numParts	the number of partitions
+   * @return		the index of the first instance
+   */
+  protected int partitionStart(int part, int numParts) {
+    return (int) ((long) numInstances() * part / numParts);
+  }
+
+  /**
+   * Returns the threads, creating them if necessary.
+   *
+   * @return		the executor service
+   */
+  protected synchronized ExecutorService getExecutor() {
+    if (m_Executor == null) {
+      m_Executor = Executors.newFixedThreadPool(m_NumThreads, new ThreadFactory() {
+	public Thread newThread(Runnable r) {
+	  Thread result = new Thread(r, "ParallelObjective");
+	  result.setDaemon(true);
+	  return result;
+	}
+      });
+    }
+    return m_Executor;
+  }
+
+  /**
+   * Runs the tasks and returns their results in the order of the tasks.
+   *
+   * @param tasks	the tasks to run
+   * @return		the results
+   * @throws Exception	if a task fails
+   */
+  protected <T> List<T> run(List<Callable<T>> tasks) throws Exception {
+    List<Future<T>> futures = new ArrayList<Future<T>>();
+    for (Callable<T> task : tasks) {
+      futures.add(getExecutor().submit(task));
+    }
+
+    List<T> result = new ArrayList<T>();
+    for (Future<T> future : futures) {
+      try {
+	result.add(future.get());
+      } catch (ExecutionException e) {
+	if (e.getCause() instanceof Exception) {
+	  throw (Exception) e.getCause();
+	}
+	throw e;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Computes the sum of the objective function over all instances.
+   *
+   * @param x		the variable values
+   * @return		the sum
+   * @throws Exception	if something goes wrong
+   */
+  public double sumObjective(final double[] x) throws Exception {
+    int numParts = numPartitions();
+    if (numParts == 1) {
+      return objective(x, 0, numInstances());
+    }
+
+    List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+    for (int i = 0; i < numParts; i++) {
+      final int from = partitionStart(i, numParts);
+      final int to = partitionStart(i + 1, numParts);
+      tasks.add(new Callable<Double>() {
+	public Double call() throws Exception {
+	  return objective(x, from, to);
+	}
+      });
+    }
+
+    double result = 0;
+    for (Double part : run(tasks)) {
+      result += part;
+    }
+
+    return result;
+  }
+
+  /**
+   * Computes the sum of the gradient over all instances.
+   *
+   * @param x		the variable values
+   * @param length	the length of the gradient vector
+   * @return		the sum
+   * @throws Exception	if something goes wrong
+   */
+  public double[] sumGradient(final double[] x, final int length)
+    throws Exception {
+
+    int numParts = numPartitions();
+    if (numParts == 1) {
+      double[] result = new double[length];
+      gradient(x, 0, numInstances(), result);
+      return result;
+    }
+
+    List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+    for (int i = 0; i < numParts; i++) {
+      final int from = partitionStart(i, numParts);
+      final int to = partitionStart(i + 1, numParts);
+      tasks.add(new Callable<double[]>() {
+	public double[] call() throws Exception {
+	  double[] part = new double[length];
+	  gradient(x, from, to, part);
+	  return part;
+	}
+      });
+    }
+
+    List<double[]> parts = run(tasks);
+    double[] result = parts.get(0);
+    for (int i = 1; i < parts.size(); i++) {
+      double[] part = parts.get(i);
+      for (int j = 0; j < length; j++) {
+	result[j] += part[j];
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Releases the threads. They are created again if needed.
+   */
+  public synchronized void shutdown() {
+    if (m_Executor != null) {
+      m_Executor.shutdownNow();
+      m_Executor = null;
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
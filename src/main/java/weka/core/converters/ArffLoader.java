@@ -22,6 +22,7 @@
 package weka.core.converters;
 
 import java.io.BufferedReader;
+import java.io.CharArrayReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,6 +33,13 @@ import java.io.StringReader;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Attribute;
 import weka.core.DenseInstance;
@@ -74,6 +82,9 @@ public class ArffLoader
   /** The parser for the ARFF file */
   protected transient ArffReader m_ArffReader = null;  
   
+  /** the number of threads used for parsing the data in batch mode */
+  protected int m_NumExecutionSlots = 1;
+  
   /**
    * Reads data from an ARFF file, either in incremental or batch mode. <p/>
    * 
@@ -97,6 +108,11 @@ public class ArffLoader
    * }
    * </pre>
    * 
+   * The data section is parsed with a scanner that works directly on a
+   * character buffer; a header that was read via the incremental
+   * constructor can be followed by <code>readInstances(Instances, int)</code>
+   * to parse the remaining data with several threads. <p/>
+   * 
    * @author  Eibe Frank (eibe@cs.waikato.ac.nz)
    * @author  Len Trigg (trigg@cs.waikato.ac.nz)
    * @author  fracpete (fracpete at waikato dot ac dot nz)
@@ -105,7 +121,221 @@ public class ArffLoader
   public static class ArffReader
     implements RevisionHandler {
 
-    /** the tokenizer for reading the stream */
+    /** the initial size of the character buffer */
+    protected final static int BUFFER_SIZE = 1 << 16;
+
+    /** the approximate number of characters per chunk in parallel mode */
+    protected final static int CHUNK_SIZE = 1 << 20;
+
+    /** the powers of ten that can be represented exactly as doubles */
+    protected final static double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /** the largest mantissa that can be represented exactly as double */
+    protected final static long MAX_EXACT_MANTISSA = (1L << 53) - 1;
+
+    /**
+     * Fast lookup of nominal values directly from the character buffer,
+     * without creating a string for every value.
+     */
+    protected static class NominalLookup {
+
+      /** the attribute the lookup was created for */
+      protected Attribute m_Attribute;
+
+      /** the labels of the attribute */
+      protected char[][] m_Values;
+
+      /** the hash table, containing label index + 1 (0 = empty slot) */
+      protected int[] m_Table;
+
+      /**
+       * Initializes the lookup with the labels of the given attribute.
+       *
+       * @param att	the nominal attribute
+       */
+      public NominalLookup(Attribute att) {
+        int size;
+        int slot;
+
+        m_Attribute = att;
+        m_Values    = new char[att.numValues()][];
+        size        = 2;
+        while (size < 2 * m_Values.length)
+          size *= 2;
+        m_Table = new int[size];
+        for (int i = 0; i < m_Values.length; i++) {
+          m_Values[i] = att.value(i).toCharArray();
+          slot = hash(m_Values[i], 0, m_Values[i].length) & (size - 1);
+          while (m_Table[slot] != 0)
+            slot = (slot + 1) & (size - 1);
+          m_Table[slot] = i + 1;
+        }
+      }
+
+      /**
+       * Computes the hash code of the given characters.
+       *
+       * @param buf		the buffer
+       * @param start	the first character
+       * @param end		the position after the last character
+       * @return		the hash code
+       */
+      protected static int hash(char[] buf, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+          h = 31 * h + buf[i];
+        return h ^ (h >>> 16);
+      }
+
+      /**
+       * Returns whether the lookup is still valid for the given attribute.
+       *
+       * @param att		the attribute to check
+       * @return		true if the lookup can be used
+       */
+      public boolean isFor(Attribute att) {
+        return (m_Attribute == att) && (m_Values.length == att.numValues());
+      }
+
+      /**
+       * Returns the index of the label stored in the given characters.
+       *
+       * @param buf		the buffer
+       * @param start	the first character
+       * @param end		the position after the last character
+       * @return		the index of the label, -1 if not declared
+       */
+      public int indexOf(char[] buf, int start, int end) {
+        int mask = m_Table.length - 1;
+        int slot = hash(buf, start, end) & mask;
+        int entry;
+        char[] value;
+        int i;
+
+        while ((entry = m_Table[slot]) != 0) {
+          value = m_Values[entry - 1];
+          if (value.length == end - start) {
+            for (i = 0; i < value.length; i++) {
+              if (value[i] != buf[start + i])
+                break;
+            }
+            if (i == value.length)
+              return entry - 1;
+          }
+          slot = (slot + 1) & mask;
+        }
+
+        return -1;
+      }
+    }
+
+    /**
+     * Reader that hands the characters of the buffer to the tokenizer
+     * that parses the header.
+     */
+    protected class HeaderReader
+      extends Reader {
+
+      /**
+       * Reads a single character.
+       *
+       * @return		the character, -1 at the end of the stream
+       * @throws IOException	if reading fails
+       */
+      public int read() throws IOException {
+        return ArffReader.this.read();
+      }
+
+      /**
+       * Reads at most one character into the array, since the tokenizer
+       * reads character by character anyway.
+       *
+       * @param cbuf	the array to read into
+       * @param off		the offset in the array
+       * @param len		the maximum number of characters to read
+       * @return		the number of characters read, -1 at the end of the
+       * 			stream
+       * @throws IOException	if reading fails
+       */
+      public int read(char[] cbuf, int off, int len) throws IOException {
+        int c;
+
+        if (len == 0)
+          return 0;
+        c = read();
+        if (c == -1)
+          return -1;
+        cbuf[off] = (char) c;
+        return 1;
+      }
+
+      /**
+       * Does nothing, the underlying reader is closed by the owner.
+       */
+      public void close() {
+      }
+    }
+
+    /**
+     * Parses a chunk of complete lines of the data section with its own
+     * reader. Used in parallel mode.
+     */
+    protected class ChunkParser
+      implements Callable<ArrayList<Instance>> {
+
+      /** the header */
+      protected Instances m_Header;
+
+      /** the characters of the lines */
+      protected char[] m_Chunk;
+
+      /** the number of valid characters */
+      protected int m_Length;
+
+      /** the number of the first line of the chunk */
+      protected int m_FirstLine;
+
+      /**
+       * Initializes the parser.
+       *
+       * @param header	the header
+       * @param chunk	the characters of the lines
+       * @param length	the number of valid characters
+       * @param firstLine	the number of the first line of the chunk
+       */
+      public ChunkParser(Instances header, char[] chunk, int length, int firstLine) {
+        m_Header    = header;
+        m_Chunk     = chunk;
+        m_Length    = length;
+        m_FirstLine = firstLine;
+      }
+
+      /**
+       * Parses the instances of the chunk.
+       *
+       * @return		the instances
+       * @throws Exception	if parsing fails
+       */
+      public ArrayList<Instance> call() throws Exception {
+        ArrayList<Instance> result = new ArrayList<Instance>();
+        ArffReader reader;
+        Instance inst;
+
+        reader = new ArffReader(
+            new CharArrayReader(m_Chunk, 0, m_Length), m_Header, m_FirstLine, 0, m_batchMode);
+        reader.m_SharedHeader = true;
+        reader.m_Lookups      = m_Lookups.clone();
+        reader.m_LookupData   = reader.m_Data;
+        while ((inst = reader.readInstance(reader.m_Data)) != null)
+          result.add(inst);
+
+        return result;
+      }
+    }
+
+    /** the tokenizer for reading the header */
     protected StreamTokenizer m_Tokenizer;
     
     /** Buffer of values for sparse instance */
@@ -124,6 +354,55 @@ public class ArffLoader
     
     protected boolean m_retainStringValues = true;
     
+    /** the reader the ARFF file is read from */
+    protected Reader m_Reader;
+
+    /** the character buffer */
+    protected char[] m_Buffer = new char[BUFFER_SIZE];
+
+    /** the position of the next character in the buffer */
+    protected int m_Pos = 0;
+
+    /** the number of valid characters in the buffer */
+    protected int m_Limit = 0;
+
+    /** the start of the word currently read (-1 if none), kept when
+     * refilling the buffer */
+    protected int m_Mark = -1;
+
+    /** whether characters following the current instance may be buffered */
+    protected boolean m_ReadAhead = true;
+
+    /** whether the header has been read and the data section is parsed */
+    protected boolean m_ReadingData = false;
+
+    /** the current line in the data section */
+    protected int m_Line = 1;
+
+    /** the type of the current token in the data section */
+    protected int m_TokenType = StreamTokenizer.TT_EOF;
+
+    /** the start of an unquoted word in the buffer (-1 otherwise) */
+    protected int m_TokenStart = -1;
+
+    /** the position after the end of an unquoted word in the buffer */
+    protected int m_TokenEnd = -1;
+
+    /** the string value of the current token (null if not created yet) */
+    protected String m_TokenValue;
+
+    /** for assembling quoted tokens */
+    protected StringBuilder m_QuoteBuffer = new StringBuilder();
+
+    /** the lookups for the labels of nominal attributes */
+    protected NominalLookup[] m_Lookups;
+
+    /** the header the lookups were created for */
+    protected Instances m_LookupData;
+
+    /** whether the header is used by other readers at the same time */
+    protected boolean m_SharedHeader = false;
+
     /**
      * Reads the data completely from the reader. The data can be accessed
      * via the <code>getData()</code> method.
@@ -133,11 +412,13 @@ public class ArffLoader
      * @see			#getData()
      */
     public ArffReader(Reader reader) throws IOException {
-      m_Tokenizer = new StreamTokenizer(reader);
+      m_Reader    = reader;
+      m_Tokenizer = new StreamTokenizer(new HeaderReader());
       initTokenizer();
 
       readHeader(1000);
       initBuffers();
+      startData();
       
       Instance inst;
       while ((inst = readInstance(m_Data)) != null) {
@@ -175,11 +456,13 @@ public class ArffLoader
       if (capacity < 0)
 	throw new IllegalArgumentException("Capacity has to be positive!");
 
-      m_Tokenizer = new StreamTokenizer(reader);
+      m_Reader    = reader;
+      m_Tokenizer = new StreamTokenizer(new HeaderReader());
       initTokenizer();
 
       readHeader(capacity);
       initBuffers();
+      startData();
     }
     
     /**
@@ -241,11 +524,13 @@ public class ArffLoader
       }
       
       m_Lines     = lines;
-      m_Tokenizer = new StreamTokenizer(reader);
+      m_Reader    = reader;
+      m_Tokenizer = new StreamTokenizer(new HeaderReader());
       initTokenizer();
 
       m_Data = new Instances(template, capacity);
       initBuffers();
+      m_ReadingData = true;
     }
 
     /**
@@ -259,6 +544,24 @@ public class ArffLoader
       m_IndicesBuffer = new int[m_Data.numAttributes()];
     }
     
+    /**
+     * Switches from the tokenizer to the scanner for the data section,
+     * after the header has been read.
+     */
+    protected void startData() {
+      char	c;
+
+      // the tokenizer has already consumed the character following the
+      // "@data" keyword, which has to be scanned again
+      if (m_Pos > 0) {
+        c = m_Buffer[m_Pos - 1];
+        if ((c <= ' ') || (c == ',') || (c == '%') || (c == '{') || (c == '}'))
+          m_Pos--;
+      }
+      m_Line        = m_Tokenizer.lineno();
+      m_ReadingData = true;
+    }
+
     /**
      * compactifies the data
      */
@@ -266,6 +569,277 @@ public class ArffLoader
       if (m_Data != null)
         m_Data.compactify();
     }
+
+    /**
+     * Sets whether characters following the current instance may be read
+     * from the reader in advance. Needs to be disabled if the reader is
+     * shared with other code, e.g., when only a single instance is read
+     * with this ArffReader. Buffering is enabled by default.
+     *
+     * @param value		true if buffering is allowed
+     */
+    public void setReadAhead(boolean value) {
+      m_ReadAhead = value;
+    }
+
+    /**
+     * Returns whether characters following the current instance may be read
+     * from the reader in advance.
+     *
+     * @return			true if buffering is allowed
+     */
+    public boolean getReadAhead() {
+      return m_ReadAhead;
+    }
+
+    /**
+     * Moves the unprocessed characters to the start of the buffer and reads
+     * further characters from the reader. The last character read as well
+     * as the word currently being read are kept. Only reads a single
+     * character while the header is read or if read ahead is disabled.
+     *
+     * @return			false if the end of the stream has been reached
+     * @throws IOException	if reading fails
+     */
+    protected boolean fill() throws IOException {
+      int keep;
+      int read;
+      int c;
+
+      keep = (m_Pos > 0) ? m_Pos - 1 : 0;
+      if ((m_Mark >= 0) && (m_Mark < keep))
+        keep = m_Mark;
+      if (keep > 0) {
+        System.arraycopy(m_Buffer, keep, m_Buffer, 0, m_Limit - keep);
+        m_Limit -= keep;
+        m_Pos   -= keep;
+        if (m_Mark >= 0)
+          m_Mark -= keep;
+      }
+      if (m_Limit == m_Buffer.length)
+        m_Buffer = Arrays.copyOf(m_Buffer, m_Buffer.length * 2);
+
+      if (m_ReadingData && m_ReadAhead) {
+        read = m_Reader.read(m_Buffer, m_Limit, m_Buffer.length - m_Limit);
+      }
+      else {
+        c = m_Reader.read();
+        if (c == -1) {
+          read = -1;
+        }
+        else {
+          m_Buffer[m_Limit] = (char) c;
+          read = 1;
+        }
+      }
+      if (read <= 0)
+        return false;
+      m_Limit += read;
+
+      return true;
+    }
+
+    /**
+     * Reads the next character.
+     *
+     * @return			the character, -1 at the end of the stream
+     * @throws IOException	if reading fails
+     */
+    protected int read() throws IOException {
+      if ((m_Pos == m_Limit) && !fill())
+        return -1;
+      return m_Buffer[m_Pos++];
+    }
+
+    /**
+     * Reads the next token of the data section, following the same rules
+     * as the tokenizer set up by <code>initTokenizer()</code>. Unquoted
+     * words are not turned into strings, their characters stay in the
+     * buffer. Quoted words are returned as TT_WORD, an unquoted question
+     * mark as '?'.
+     *
+     * @return			the type of the token
+     * @throws IOException	if reading fails
+     * @see			#initTokenizer()
+     */
+    protected int nextDataToken() throws IOException {
+      int c;
+
+      m_TokenValue = null;
+      m_TokenStart = -1;
+      m_TokenEnd   = -1;
+
+      while (true) {
+        c = read();
+        if (c == -1)
+          return m_TokenType = StreamTokenizer.TT_EOF;
+        if (c == '\n') {
+          m_Line++;
+          return m_TokenType = StreamTokenizer.TT_EOL;
+        }
+        if (c == '\r') {
+          m_Line++;
+          c = read();
+          if ((c != '\n') && (c != -1))
+            m_Pos--;
+          return m_TokenType = StreamTokenizer.TT_EOL;
+        }
+        if ((c <= ' ') || (c == ','))
+          continue;
+        if (c == '%') {
+          do {
+            c = read();
+          }
+          while ((c != '\n') && (c != '\r') && (c != -1));
+          if (c != -1)
+            m_Pos--;
+          continue;
+        }
+        break;
+      }
+
+      if ((c == '"') || (c == '\''))
+        return readQuoted(c);
+      if ((c == '{') || (c == '}'))
+        return m_TokenType = c;
+
+      // unquoted word
+      m_Mark = m_Pos - 1;
+      while ((m_Pos < m_Limit) || fill()) {
+        c = m_Buffer[m_Pos];
+        if ((c <= ' ') || (c == ',') || (c == '%') || (c == '"') || (c == '\'')
+            || (c == '{') || (c == '}'))
+          break;
+        m_Pos++;
+      }
+      m_TokenStart = m_Mark;
+      m_TokenEnd   = m_Pos;
+      m_Mark       = -1;
+
+      if ((m_TokenEnd - m_TokenStart == 1) && (m_Buffer[m_TokenStart] == '?'))
+        return m_TokenType = '?';
+      else
+        return m_TokenType = StreamTokenizer.TT_WORD;
+    }
+
+    /**
+     * Reads a quoted word, handling escape sequences like the tokenizer.
+     * A quote is terminated by the end of the line as well.
+     *
+     * @param quote		the quote character
+     * @return			the type of the token (TT_WORD)
+     * @throws IOException	if reading fails
+     */
+    protected int readQuoted(int quote) throws IOException {
+      int c;
+      int d;
+      int c2;
+      int first;
+
+      m_QuoteBuffer.setLength(0);
+      d = read();
+      while ((d >= 0) && (d != quote) && (d != '\n') && (d != '\r')) {
+        if (d == '\\') {
+          c     = read();
+          first = c;
+          if ((c >= '0') && (c <= '7')) {
+            c  = c - '0';
+            c2 = read();
+            if (('0' <= c2) && (c2 <= '7')) {
+              c  = (c << 3) + (c2 - '0');
+              c2 = read();
+              if (('0' <= c2) && (c2 <= '7') && (first <= '3')) {
+                c = (c << 3) + (c2 - '0');
+                d = read();
+              }
+              else {
+                d = c2;
+              }
+            }
+            else {
+              d = c2;
+            }
+          }
+          else {
+            switch (c) {
+              case 'a': c = 0x7;  break;
+              case 'b': c = '\b'; break;
+              case 'f': c = 0xC;  break;
+              case 'n': c = '\n'; break;
+              case 'r': c = '\r'; break;
+              case 't': c = '\t'; break;
+              case 'v': c = 0xB;  break;
+            }
+            d = read();
+          }
+        }
+        else {
+          c = d;
+          d = read();
+        }
+        m_QuoteBuffer.append((char) c);
+      }
+      // the end of the line is a token of its own
+      if ((d != quote) && (d != -1))
+        m_Pos--;
+      m_TokenValue = m_QuoteBuffer.toString();
+
+      return m_TokenType = StreamTokenizer.TT_WORD;
+    }
+
+    /**
+     * Returns the current token of the data section as string.
+     *
+     * @return			the token
+     */
+    protected String tokenString() {
+      if (m_TokenValue == null) {
+        if (m_TokenStart >= 0)
+          m_TokenValue = new String(m_Buffer, m_TokenStart, m_TokenEnd - m_TokenStart);
+        else if (m_TokenType >= 0)
+          m_TokenValue = String.valueOf((char) m_TokenType);
+      }
+      return m_TokenValue;
+    }
+
+    /**
+     * Returns a description of the current token of the data section, in
+     * the same format as the tokenizer.
+     *
+     * @return			the description
+     */
+    protected String tokenDescription() {
+      String	result;
+
+      switch (m_TokenType) {
+        case StreamTokenizer.TT_EOF:
+          result = "EOF";
+          break;
+        case StreamTokenizer.TT_EOL:
+          result = "EOL";
+          break;
+        case StreamTokenizer.TT_WORD:
+          result = tokenString();
+          break;
+        default:
+          result = "'" + (char) m_TokenType + "'";
+      }
+
+      return "Token[" + result + "]";
+    }
+
+    /**
+     * Returns the number of the current line in the data section, taking
+     * the lines read before into account.
+     *
+     * @return			the line number
+     */
+    protected int getDataLineNo() {
+      if (m_Lines > 0)
+        return m_Lines + m_Line - 1;
+      else
+        return m_Line;
+    }
     
     /**
      * Throws error message with line number and last token read.
@@ -274,6 +848,10 @@ public class ArffLoader
      * @throws IOException 	containing the error message
      */
     protected void errorMessage(String msg) throws IOException {
+      if (m_ReadingData)
+        throw new IOException(
+            msg + ", read " + tokenDescription() + ", line " + getDataLineNo());
+
       String str = msg + ", read " + m_Tokenizer.toString();
       if (m_Lines > 0) {
 	int line = Integer.parseInt(str.replaceAll(".* line ", ""));
@@ -288,6 +866,9 @@ public class ArffLoader
      * @return			the current line number
      */
     public int getLineNo() {
+      if (m_ReadingData)
+        return m_Lines + m_Line;
+      else
       return m_Lines + m_Tokenizer.lineno();
     }
     
@@ -308,16 +889,25 @@ public class ArffLoader
       }
     }
 
+    /**
+     * Gets next token of the data section, skipping empty lines.
+     *
+     * @throws IOException 	if reading the next token fails
+     */
+    protected void getFirstDataToken() throws IOException {
+      while (nextDataToken() == StreamTokenizer.TT_EOL) {};
+    }
+
     /**
      * Gets index, checking for a premature and of line.
      *
      * @throws IOException 	if it finds a premature end of line
      */
     protected void getIndex() throws IOException {
-      if (m_Tokenizer.nextToken() == StreamTokenizer.TT_EOL) {
+      if (nextDataToken() == StreamTokenizer.TT_EOL) {
         errorMessage("premature end of line");
       }
-      if (m_Tokenizer.ttype == StreamTokenizer.TT_EOF) {
+      if (m_TokenType == StreamTokenizer.TT_EOF) {
         errorMessage("premature end of file");
       }
     }
@@ -335,6 +925,19 @@ public class ArffLoader
       }
     }
 
+    /**
+     * Gets token of the data section and checks if its end of line.
+     *
+     * @param endOfFileOk 	whether EOF is OK
+     * @throws IOException 	if it doesn't find an end of line
+     */
+    protected void getLastDataToken(boolean endOfFileOk) throws IOException {
+      if ((nextDataToken() != StreamTokenizer.TT_EOL) &&
+  	((m_TokenType != StreamTokenizer.TT_EOF) || !endOfFileOk)) {
+        errorMessage("end of line expected");
+      }
+    }
+
     /**
      * Gets the value of an instance's weight (if one exists)
      *
@@ -343,26 +946,27 @@ public class ArffLoader
      */
     protected double getInstanceWeight() throws IOException {
       double weight = Double.NaN;
-      m_Tokenizer.nextToken();
-      if (m_Tokenizer.ttype == StreamTokenizer.TT_EOL || 
-          m_Tokenizer.ttype == StreamTokenizer.TT_EOF) {
+      nextDataToken();
+      if (m_TokenType == StreamTokenizer.TT_EOL ||
+          m_TokenType == StreamTokenizer.TT_EOF) {
         return weight;
       }
       // see if we can read an instance weight
-      //      m_Tokenizer.pushBack();
-      if (m_Tokenizer.ttype == '{') {
-        m_Tokenizer.nextToken();
-        String weightS = m_Tokenizer.sval;
+      if (m_TokenType == '{') {
+        nextDataToken();
+        if ((m_TokenType != StreamTokenizer.TT_WORD) && (m_TokenType != '?')) {
+          return weight;
+        }
         // try to parse weight as a double
         try {
-          weight = Double.parseDouble(weightS);
+          weight = Double.parseDouble(tokenString());
         } catch (NumberFormatException e) {
           // quietly ignore
           return weight;
         }
         // see if we have the closing brace
-        m_Tokenizer.nextToken();
-        if (m_Tokenizer.ttype != '}') {
+        nextDataToken();
+        if (m_TokenType != '}') {
           errorMessage("Problem reading instance weight");
         }
       }
@@ -389,6 +993,21 @@ public class ArffLoader
       }
     }
   	
+    /**
+     * Gets next token of the data section, checking for a premature end
+     * of line.
+     *
+     * @throws IOException 	if it finds a premature end of line
+     */
+    protected void getNextDataToken() throws IOException {
+      if (nextDataToken() == StreamTokenizer.TT_EOL) {
+        errorMessage("premature end of line");
+      }
+      if (m_TokenType == StreamTokenizer.TT_EOF) {
+        errorMessage("premature end of file");
+      }
+    }
+
     /**
      * Initializes the StreamTokenizer used for reading the ARFF file.
      */
@@ -404,6 +1023,245 @@ public class ArffLoader
       m_Tokenizer.ordinaryChar('}');
       m_Tokenizer.eolIsSignificant(true);
     }
+
+    /**
+     * Parses a number. Decimal numbers with at most 15 significant digits
+     * and a small exponent are computed directly from the characters,
+     * which gives the same (correctly rounded) result as
+     * <code>Double.parseDouble(String)</code>. All other numbers are
+     * handed on to <code>Double.parseDouble(String)</code>.
+     *
+     * @param buf		the buffer
+     * @param start		the first character
+     * @param end		the position after the last character
+     * @return			the number
+     * @throws NumberFormatException	if the characters are not a number
+     */
+    public static double parseDouble(char[] buf, int start, int end) {
+      int	i;
+      char	c;
+      boolean	negative;
+      boolean	digits;
+      long	mantissa;
+      int	exponent;
+      int	exp;
+      boolean	negativeExp;
+      double	result;
+
+      i        = start;
+      negative = false;
+      digits   = false;
+      mantissa = 0;
+      exponent = 0;
+
+      if ((i < end) && ((buf[i] == '-') || (buf[i] == '+'))) {
+        negative = (buf[i] == '-');
+        i++;
+      }
+
+      // integer part
+      for (; i < end; i++) {
+        c = buf[i];
+        if ((c < '0') || (c > '9'))
+          break;
+        if (mantissa > (MAX_EXACT_MANTISSA - (c - '0')) / 10)
+          return Double.parseDouble(new String(buf, start, end - start));
+        mantissa = mantissa * 10 + (c - '0');
+        digits   = true;
+      }
+
+      // fraction
+      if ((i < end) && (buf[i] == '.')) {
+        for (i++; i < end; i++) {
+          c = buf[i];
+          if ((c < '0') || (c > '9'))
+            break;
+          if (mantissa > (MAX_EXACT_MANTISSA - (c - '0')) / 10)
+            return Double.parseDouble(new String(buf, start, end - start));
+          mantissa = mantissa * 10 + (c - '0');
+          exponent--;
+          digits = true;
+        }
+      }
+      if (!digits)
+        return Double.parseDouble(new String(buf, start, end - start));
+
+      // exponent
+      if ((i < end) && ((buf[i] == 'e') || (buf[i] == 'E'))) {
+        i++;
+        negativeExp = false;
+        if ((i < end) && ((buf[i] == '-') || (buf[i] == '+'))) {
+          negativeExp = (buf[i] == '-');
+          i++;
+        }
+        if (i == end)
+          return Double.parseDouble(new String(buf, start, end - start));
+        exp = 0;
+        for (; i < end; i++) {
+          c = buf[i];
+          if ((c < '0') || (c > '9') || (exp > 1000))
+            return Double.parseDouble(new String(buf, start, end - start));
+          exp = exp * 10 + (c - '0');
+        }
+        exponent += negativeExp ? -exp : exp;
+      }
+      if (i != end)
+        return Double.parseDouble(new String(buf, start, end - start));
+
+      if ((mantissa == 0) || (exponent == 0))
+        result = mantissa;
+      else if ((exponent > 0) && (exponent < POWERS_OF_TEN.length))
+        result = mantissa * POWERS_OF_TEN[exponent];
+      else if ((exponent < 0) && (-exponent < POWERS_OF_TEN.length))
+        result = mantissa / POWERS_OF_TEN[-exponent];
+      else
+        return Double.parseDouble(new String(buf, start, end - start));
+
+      return negative ? -result : result;
+    }
+
+    /**
+     * Parses the current token as index of a sparse instance.
+     *
+     * @return			the index
+     * @throws NumberFormatException	if the token is not an integer
+     */
+    protected int parseIndex() {
+      int	result;
+      int	i;
+      char	c;
+
+      if (m_TokenType != StreamTokenizer.TT_WORD)
+        throw new NumberFormatException("index number expected");
+
+      if ((m_TokenStart >= 0) && (m_TokenEnd - m_TokenStart <= 9)) {
+        result = 0;
+        for (i = m_TokenStart; i < m_TokenEnd; i++) {
+          c = m_Buffer[i];
+          if ((c < '0') || (c > '9'))
+            break;
+          result = result * 10 + (c - '0');
+        }
+        if (i == m_TokenEnd)
+          return result;
+      }
+
+      return Integer.valueOf(tokenString()).intValue();
+    }
+
+    /**
+     * Discards the lookups if they were created for a different header.
+     */
+    protected void initLookups() {
+      if ((m_Lookups == null) || (m_LookupData != m_Data)
+          || (m_Lookups.length != m_Data.numAttributes())) {
+        m_Lookups    = new NominalLookup[m_Data.numAttributes()];
+        m_LookupData = m_Data;
+      }
+    }
+
+    /**
+     * Returns the lookup for the labels of the specified nominal attribute.
+     *
+     * @param index		the index of the attribute
+     * @return			the lookup
+     */
+    protected NominalLookup getLookup(int index) {
+      Attribute	att;
+
+      initLookups();
+      att = m_Data.attribute(index);
+      if ((m_Lookups[index] == null) || !m_Lookups[index].isFor(att))
+        m_Lookups[index] = new NominalLookup(att);
+
+      return m_Lookups[index];
+    }
+
+    /**
+     * Parses the current token as value of the specified attribute.
+     *
+     * @param index		the index of the attribute
+     * @return			the internal value
+     * @throws IOException	if the token is not a valid value
+     */
+    protected double parseValue(int index) throws IOException {
+      double	result;
+      int	valIndex;
+      Attribute	att;
+
+      // Check if value is missing.
+      if (m_TokenType == '?')
+        return Utils.missingValue();
+
+      // Check if token is valid.
+      if (m_TokenType != StreamTokenizer.TT_WORD) {
+        errorMessage("not a valid value");
+      }
+
+      result = 0;
+      att    = m_Data.attribute(index);
+      switch (att.type()) {
+        case Attribute.NOMINAL:
+          // Check if value appears in header.
+          if (m_TokenStart >= 0)
+            valIndex = getLookup(index).indexOf(m_Buffer, m_TokenStart, m_TokenEnd);
+          else
+            valIndex = att.indexOfValue(m_TokenValue);
+          if (valIndex == -1) {
+            errorMessage("nominal value not declared in header");
+          }
+          result = (double) valIndex;
+          break;
+        case Attribute.NUMERIC:
+          // Check if value is really a number.
+          try {
+            if (m_TokenStart >= 0)
+              result = parseDouble(m_Buffer, m_TokenStart, m_TokenEnd);
+            else
+              result = Double.valueOf(m_TokenValue).doubleValue();
+          } catch (NumberFormatException e) {
+            errorMessage("number expected");
+          }
+          break;
+        case Attribute.STRING:
+          if (m_batchMode || m_retainStringValues) {
+            result = att.addStringValue(tokenString());
+          } else {
+            result = 0;
+            att.setStringValue(tokenString());
+          }
+          break;
+        case Attribute.DATE:
+          try {
+            // the date format of the attribute is not thread-safe
+            if (m_SharedHeader) {
+              synchronized (att) {
+                result = att.parseDate(tokenString());
+              }
+            }
+            else {
+              result = att.parseDate(tokenString());
+            }
+          } catch (ParseException e) {
+            errorMessage("unparseable date: " + tokenString());
+          }
+          break;
+        case Attribute.RELATIONAL:
+          try {
+            ArffReader arff = new ArffReader(new StringReader(tokenString()), att.relation(), 0);
+            Instances data = arff.getData();
+            result = att.addRelation(data);
+          }
+          catch (Exception e) {
+            throw new IOException(e.toString() + " of line " + getLineNo());
+          }
+          break;
+        default:
+          errorMessage("unknown attribute type in column " + index);
+      }
+
+      return result;
+    }
     
     /**
      * Reads a single instance using the tokenizer and returns it. 
@@ -433,6 +1291,163 @@ public class ArffLoader
       return getInstance(structure, flag);
     }
     
+    /**
+     * Reads all remaining instances and adds them to the given dataset.
+     * With more than one thread, the data section is split into chunks of
+     * complete lines that are parsed in parallel; the instances are added
+     * in the order of the file. Data with string or relational attributes
+     * is always read sequentially, since their values get added to the
+     * header.
+     *
+     * @param data		the dataset to add the instances to, also used
+     * 				as header
+     * @param numThreads	the number of threads to use for parsing
+     * @throws IOException	if the data cannot be read
+     */
+    public void readInstances(Instances data, int numThreads) throws IOException {
+      readInstances(data, numThreads, CHUNK_SIZE);
+    }
+
+    /**
+     * Reads all remaining instances and adds them to the given dataset.
+     *
+     * @param data		the dataset to add the instances to, also used
+     * 				as header
+     * @param numThreads	the number of threads to use for parsing
+     * @param chunkSize		the approximate number of characters per chunk
+     * @throws IOException	if the data cannot be read
+     * @see			#readInstances(Instances, int)
+     */
+    protected void readInstances(Instances data, int numThreads, int chunkSize) throws IOException {
+      ExecutorService				pool;
+      LinkedList<Future<ArrayList<Instance>>>	pending;
+      ChunkParser				chunk;
+      Instance					inst;
+      Instances					header;
+
+      m_Data = data;
+      if ((numThreads <= 1)
+          || data.checkForAttributeType(Attribute.STRING)
+          || data.checkForAttributeType(Attribute.RELATIONAL)) {
+        while ((inst = readInstance(data)) != null)
+          data.add(inst);
+        return;
+      }
+
+      // the lookups are created once and shared by all chunks
+      initLookups();
+      for (int i = 0; i < data.numAttributes(); i++) {
+        if (data.attribute(i).isNominal())
+          getLookup(i);
+      }
+      header = new Instances(data, 0);
+
+      pool    = Executors.newFixedThreadPool(numThreads);
+      pending = new LinkedList<Future<ArrayList<Instance>>>();
+      try {
+        while ((chunk = readChunk(header, chunkSize)) != null) {
+          pending.add(pool.submit(chunk));
+          // limit the number of chunks held in memory
+          if (pending.size() > 2 * numThreads)
+            addInstances(data, pending.removeFirst());
+        }
+        while (!pending.isEmpty())
+          addInstances(data, pending.removeFirst());
+      }
+      finally {
+        pool.shutdownNow();
+      }
+    }
+
+    /**
+     * Waits for the parsing of a chunk to finish and adds its instances to
+     * the dataset.
+     *
+     * @param data		the dataset to add the instances to
+     * @param future		the parsed chunk
+     * @throws IOException	if parsing failed
+     */
+    protected void addInstances(Instances data, Future<ArrayList<Instance>> future) throws IOException {
+      ArrayList<Instance>	insts;
+
+      try {
+        insts = future.get();
+      }
+      catch (InterruptedException e) {
+        throw new IOException("Interrupted while reading data", e);
+      }
+      catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException)
+          throw new IOException(e.getCause().getMessage(), e.getCause());
+        throw new IOException(e.getCause().toString(), e.getCause());
+      }
+
+      for (Instance inst: insts)
+        data.add(inst);
+    }
+
+    /**
+     * Reads the next chunk of complete lines from the data section.
+     *
+     * @param header		the header for parsing the chunk
+     * @param size		the minimum number of characters to read (unless
+     * 				the end of the stream is reached)
+     * @return			the parser for the chunk, null if the end of the
+     * 				stream has been reached
+     * @throws IOException	if reading fails
+     */
+    protected ChunkParser readChunk(Instances header, int size) throws IOException {
+      char[]	chunk;
+      int	len;
+      int	n;
+      int	c;
+      int	firstLine;
+
+      chunk     = new char[size + 256];
+      len       = 0;
+      firstLine = getDataLineNo();
+
+      while ((len < size) && ((m_Pos < m_Limit) || fill())) {
+        n = Math.min(m_Limit - m_Pos, size - len);
+        System.arraycopy(m_Buffer, m_Pos, chunk, len, n);
+        m_Pos += n;
+        len   += n;
+      }
+
+      // complete the last line
+      if (len == size) {
+        while ((c = read()) != -1) {
+          if (len == chunk.length)
+            chunk = Arrays.copyOf(chunk, chunk.length * 2);
+          chunk[len++] = (char) c;
+          if (c == '\n')
+            break;
+          if (c == '\r') {
+            c = read();
+            if (c == '\n') {
+              if (len == chunk.length)
+                chunk = Arrays.copyOf(chunk, chunk.length + 1);
+              chunk[len++] = '\n';
+            }
+            else if (c != -1) {
+              m_Pos--;
+            }
+            break;
+          }
+        }
+      }
+
+      if (len == 0)
+        return null;
+
+      for (int i = 0; i < len; i++) {
+        if ((chunk[i] == '\n') || ((chunk[i] == '\r') && ((i + 1 == len) || (chunk[i + 1] != '\n'))))
+          m_Line++;
+      }
+
+      return new ChunkParser(header, chunk, len, firstLine);
+    }
+
     /**
      * Reads a single instance using the tokenizer and returns it. 
      *
@@ -453,13 +1468,13 @@ public class ArffLoader
       }
 
       // Check if end of file reached.
-      getFirstToken();
-      if (m_Tokenizer.ttype == StreamTokenizer.TT_EOF) {
+      getFirstDataToken();
+      if (m_TokenType == StreamTokenizer.TT_EOF) {
         return null;
       }
       
       // Parse instance
-      if (m_Tokenizer.ttype == '{') {
+      if (m_TokenType == '{') {
         return getInstanceSparse(flag);
       } else {
         return getInstanceFull(flag);
@@ -476,19 +1491,19 @@ public class ArffLoader
      * 				successfully
      */ 
     protected Instance getInstanceSparse(boolean flag) throws IOException {
-      int valIndex, numValues = 0, maxIndex = -1;
+      int numValues = 0, maxIndex = -1;
       
       // Get values
       do {
         // Get index
         getIndex();
-        if (m_Tokenizer.ttype == '}') {
+        if (m_TokenType == '}') {
   	break;
         }
    
         // Is index valid?
         try{
-  	m_IndicesBuffer[numValues] = Integer.valueOf(m_Tokenizer.sval).intValue();
+  	m_IndicesBuffer[numValues] = parseIndex();
         } catch (NumberFormatException e) {
   	errorMessage("index number expected");
         }
@@ -502,67 +1517,8 @@ public class ArffLoader
         maxIndex = m_IndicesBuffer[numValues];
 
         // Get value;
-        getNextToken();
-
-        // Check if value is missing.
-        if  (m_Tokenizer.ttype == '?') {
-          m_ValueBuffer[numValues] = Utils.missingValue();
-        } else {
-
-  	// Check if token is valid.
-  	if (m_Tokenizer.ttype != StreamTokenizer.TT_WORD) {
-  	  errorMessage("not a valid value");
-  	}
-          switch (m_Data.attribute(m_IndicesBuffer[numValues]).type()) {
-            case Attribute.NOMINAL:
-              // Check if value appears in header.
-              valIndex = 
-                m_Data.attribute(m_IndicesBuffer[numValues]).indexOfValue(m_Tokenizer.sval);
-              if (valIndex == -1) {
-                errorMessage("nominal value not declared in header");
-              }
-              m_ValueBuffer[numValues] = (double)valIndex;
-              break;
-  	case Attribute.NUMERIC:
-  	  // Check if value is really a number.
-  	  try{
-  	    m_ValueBuffer[numValues] = Double.valueOf(m_Tokenizer.sval).
-  	      doubleValue();
-  	  } catch (NumberFormatException e) {
-  	    errorMessage("number expected");
-  	  }
-            break;
-  	case Attribute.STRING:
-  	  if (m_batchMode || m_retainStringValues) {
-  	  m_ValueBuffer[numValues] = 
-  	    m_Data.attribute(m_IndicesBuffer[numValues]).addStringValue(m_Tokenizer.sval);
-  	  } else {
-  	    m_ValueBuffer[numValues] = 0; 
-            m_Data.attribute(m_IndicesBuffer[numValues]).setStringValue(m_Tokenizer.sval);
-  	  }
-            break;
-          case Attribute.DATE:
-            try {
-              m_ValueBuffer[numValues] = 
-                m_Data.attribute(m_IndicesBuffer[numValues]).parseDate(m_Tokenizer.sval);
-            } catch (ParseException e) {
-              errorMessage("unparseable date: " + m_Tokenizer.sval);
-            }
-            break;
-          case Attribute.RELATIONAL:
-            try {
-              ArffReader arff = new ArffReader(new StringReader(m_Tokenizer.sval), m_Data.attribute(m_IndicesBuffer[numValues]).relation(), 0);
-              Instances data = arff.getData();
-              m_ValueBuffer[numValues] = m_Data.attribute(m_IndicesBuffer[numValues]).addRelation(data);
-            }
-            catch (Exception e) {
-              throw new IOException(e.toString() + " of line " + getLineNo());
-            }
-            break;
-          default:
-            errorMessage("unknown attribute type in column " + m_IndicesBuffer[numValues]);
-  	}
-        }
+        getNextDataToken();
+        m_ValueBuffer[numValues] = parseValue(m_IndicesBuffer[numValues]);
         numValues++;
       } while (true);
 
@@ -571,7 +1527,7 @@ public class ArffLoader
         // check for an instance weight
         weight = getInstanceWeight();
         if (!Double.isNaN(weight)) {
-          getLastToken(true);
+          getLastDataToken(true);
         } else {
           weight = 1.0;
         }        
@@ -599,71 +1555,14 @@ public class ArffLoader
      */ 
     protected Instance getInstanceFull(boolean flag) throws IOException {
       double[] instance = new double[m_Data.numAttributes()];
-      int index;
       
       // Get values for all attributes.
-      for (int i = 0; i < m_Data.numAttributes(); i++){
+      for (int i = 0; i < instance.length; i++){
         // Get next token
         if (i > 0) {
-  	getNextToken();
-        }
-              
-        // Check if value is missing.
-        if  (m_Tokenizer.ttype == '?') {
-  	instance[i] = Utils.missingValue();
-        } else {
-
-  	// Check if token is valid.
-  	if (m_Tokenizer.ttype != StreamTokenizer.TT_WORD) {
-  	  errorMessage("not a valid value");
-  	}
-          switch (m_Data.attribute(i).type()) {
-          case Attribute.NOMINAL:
-  	  // Check if value appears in header.
-  	  index = m_Data.attribute(i).indexOfValue(m_Tokenizer.sval);
-  	  if (index == -1) {
-  	    errorMessage("nominal value not declared in header");
-  	  }
-  	  instance[i] = (double)index;
-            break;
-  	case Attribute.NUMERIC:
-  	  // Check if value is really a number.
-  	  try{
-  	    instance[i] = Double.valueOf(m_Tokenizer.sval).
-  	      doubleValue();
-  	  } catch (NumberFormatException e) {
-  	    errorMessage("number expected");
-  	  }
-            break;
-  	case Attribute.STRING:
-  	  if (m_batchMode || m_retainStringValues) {
-  	    instance[i] = m_Data.attribute(i).addStringValue(m_Tokenizer.sval);
-  	  } else {
-  	    instance[i] = 0;
-  	    m_Data.attribute(i).setStringValue(m_Tokenizer.sval);
-  	  }
-            break;
-          case Attribute.DATE:
-            try {
-              instance[i] = m_Data.attribute(i).parseDate(m_Tokenizer.sval);
-            } catch (ParseException e) {
-              errorMessage("unparseable date: " + m_Tokenizer.sval);
-            }
-            break;
-          case Attribute.RELATIONAL:
-            try {
-              ArffReader arff = new ArffReader(new StringReader(m_Tokenizer.sval), m_Data.attribute(i).relation(), 0);
-              Instances data = arff.getData();
-              instance[i] = m_Data.attribute(i).addRelation(data);
-            }
-            catch (Exception e) {
-              throw new IOException(e.toString() + " of line " + getLineNo());
-            }
-            break;
-          default:
-            errorMessage("unknown attribute type in column " + i);
-  	}
+  	getNextDataToken();
         }
+        instance[i] = parseValue(i);
       }
       
       double weight = 1.0;
@@ -671,7 +1570,7 @@ public class ArffLoader
         // check for an instance weight
         weight = getInstanceWeight();
         if (!Double.isNaN(weight)) {
-          getLastToken(true);
+          getLastDataToken(true);
         } else {
           weight = 1.0;
         }
@@ -894,6 +1793,36 @@ public class ArffLoader
       +"format. ";
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for parsing the "
+      + "data when loading in batch mode. Data with string or relational "
+      + "attributes is always parsed sequentially.";
+  }
+
+  /**
+   * Sets the number of threads to use for parsing the data in batch mode.
+   *
+   * @param value the number of threads
+   */
+  public void setNumExecutionSlots(int value) {
+    m_NumExecutionSlots = value;
+  }
+
+  /**
+   * Returns the number of threads to use for parsing the data in batch mode.
+   *
+   * @return the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Get the file extension used for arff files
    *
@@ -1061,9 +1990,7 @@ public class ArffLoader
 
     // Read all instances
     Instances insts = new Instances(m_structure, 0);
-    Instance inst;
-    while ((inst = m_ArffReader.readInstance(m_structure)) != null)
-      insts.add(inst);
+    m_ArffReader.readInstances(insts, m_NumExecutionSlots);
     
     // Instances readIn = new Instances(m_structure);
 
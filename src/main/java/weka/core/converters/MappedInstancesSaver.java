@@ -0,0 +1,248 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    MappedInstancesSaver.java
+ *    Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import weka.core.Capabilities;
+import weka.core.Capabilities.Capability;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.MappedInstances;
+import weka.core.RevisionUtils;
+
+/**
+ <!-- globalinfo-start -->
+ * Writes the instances into a binary file with extension wmi that can be memory-mapped by MappedInstancesLoader, i.e., the data does not have to fit into the heap when loading it. String and relational attributes are not supported.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -i &lt;the input file&gt;
+ * The input file</pre>
+ *
+ * <pre> -o &lt;the output file&gt;
+ * The output file</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision: 9500 $
+ * @see Saver
+ * @see MappedInstances
+ */
+public class MappedInstancesSaver
+  extends AbstractFileSaver
+  implements BatchConverter, IncrementalConverter {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -5165632506431227925L;
+
+  /** the output stream. */
+  protected DataOutputStream m_DataStream;
+
+  /** Constructor. */
+  public MappedInstancesSaver(){
+    resetOptions();
+  }
+
+  /**
+   * Returns a string describing this Saver.
+   *
+   * @return a description of the Saver suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Writes the instances into a binary file with extension wmi that can "
+      + "be memory-mapped by MappedInstancesLoader, i.e., the data does not "
+      + "have to fit into the heap when loading it. String and relational "
+      + "attributes are not supported.";
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return a short file description
+   */
+  public String getFileDescription() {
+    return "Memory-mapped binary instances";
+  }
+
+  /**
+   * Resets the Saver.
+   */
+  public void resetOptions() {
+    super.resetOptions();
+    setFileExtension(MappedInstances.FILE_EXTENSION);
+  }
+
+  /**
+   * Returns the Capabilities of this saver.
+   *
+   * @return            the capabilities of this object
+   * @see               Capabilities
+   */
+  public Capabilities getCapabilities() {
+    Capabilities result = super.getCapabilities();
+
+    // attributes
+    result.enable(Capability.NOMINAL_ATTRIBUTES);
+    result.enable(Capability.NUMERIC_ATTRIBUTES);
+    result.enable(Capability.DATE_ATTRIBUTES);
+    result.enable(Capability.MISSING_VALUES);
+
+    // class
+    result.enable(Capability.NOMINAL_CLASS);
+    result.enable(Capability.NUMERIC_CLASS);
+    result.enable(Capability.DATE_CLASS);
+    result.enable(Capability.MISSING_CLASS_VALUES);
+    result.enable(Capability.NO_CLASS);
+
+    return result;
+  }
+
+  /**
+   * Resets the writer, setting writer and data stream to null.
+   */
+  public void resetWriter() {
+    super.resetWriter();
+
+    m_DataStream = null;
+  }
+
+  /**
+   * Sets the destination output stream.
+   *
+   * @param output the output stream.
+   * @throws IOException throws an IOException if destination cannot be set
+   */
+  public void setDestination(OutputStream output) throws IOException {
+    super.setDestination(output);
+
+    m_DataStream = new DataOutputStream(new BufferedOutputStream(output, 1 << 20));
+  }
+
+  /**
+   * Writes a Batch of instances.
+   *
+   * @throws IOException throws IOException if saving in batch mode is not possible
+   */
+  public void writeBatch() throws IOException {
+    if (getRetrieval() == INCREMENTAL)
+      throw new IOException("Batch and incremental saving cannot be mixed.");
+
+    if (getInstances() == null)
+      throw new IOException("No instances to save");
+
+    setRetrieval(BATCH);
+
+    if (m_DataStream == null)
+      throw new IOException("No output file specified.");
+
+    setWriteMode(WRITE);
+    Instances data = getInstances();
+    MappedInstances.writePreamble(m_DataStream, data);
+    for (int i = 0; i < data.numInstances(); i++)
+      MappedInstances.writeInstance(m_DataStream, data.instance(i));
+    m_DataStream.flush();
+    m_DataStream.close();
+    setWriteMode(WAIT);
+    resetWriter();
+    setWriteMode(CANCEL);
+  }
+
+  /**
+   * Saves an instances incrementally. Structure has to be set by using the
+   * setStructure() method or setInstances() method. A null instance
+   * closes the file.
+   *
+   * @param inst the instance to save
+   * @throws IOException throws IOEXception if an instance cannot be saved
+   *           incrementally.
+   */
+  public void writeIncremental(Instance inst) throws IOException {
+    int writeMode = getWriteMode();
+    Instances structure = getInstances();
+
+    if (getRetrieval() == BATCH || getRetrieval() == NONE)
+      throw new IOException("Batch and incremental saving cannot be mixed.");
+
+    if (writeMode == WAIT) {
+      if (structure == null) {
+        setWriteMode(CANCEL);
+        if (inst != null)
+          System.err.println("Structure(Header Information) has to be set in advance");
+      } else {
+        setWriteMode(STRUCTURE_READY);
+      }
+      writeMode = getWriteMode();
+    }
+    if (writeMode == CANCEL) {
+      if (m_DataStream != null)
+        m_DataStream.close();
+      cancel();
+    }
+    if (writeMode == STRUCTURE_READY) {
+      if (m_DataStream == null)
+        throw new IOException("No output file specified.");
+      setWriteMode(WRITE);
+      MappedInstances.writePreamble(m_DataStream, structure);
+      writeMode = getWriteMode();
+    }
+    if (writeMode == WRITE) {
+      if (structure == null)
+        throw new IOException("No instances information available.");
+      if (inst != null) {
+        MappedInstances.writeInstance(m_DataStream, inst);
+      } else {
+        // close
+        m_DataStream.flush();
+        m_DataStream.close();
+        resetStructure();
+        resetWriter();
+      }
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args should contain the options of a Saver.
+   */
+  public static void main(String[] args) {
+    runFileSaver(new MappedInstancesSaver(), args);
+  }
+}
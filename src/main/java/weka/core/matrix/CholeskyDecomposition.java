@@ -70,6 +70,11 @@ public class CholeskyDecomposition
     n = Arg.getRowDimension();
     L = new double[n][n];
     isspd = (Arg.getColumnDimension() == n);
+    // Large matrices: blocked and in parallel.
+    if (isspd && ParallelOperations.useFor((double) n * n * n)) {
+      isspd = ParallelOperations.cholesky(A, L, n);
+      return;
+    }
     // Main loop.
     for (int j = 0; j < n; j++) {
       double[] Lrowj = L[j];
@@ -128,6 +133,11 @@ public class CholeskyDecomposition
     double[][] X = B.getArrayCopy();
     int nx = B.getColumnDimension();
 
+    if (ParallelOperations.useFor((double) n * n * nx)) {
+      ParallelOperations.choleskySolve(L, X, n, nx);
+      return new Matrix(X,n,nx);
+    }
+
     // Solve L*Y = B;
     for (int k = 0; k < n; k++) {
       for (int j = 0; j < nx; j++) {
@@ -82,6 +82,7 @@ public class LUDecomposition
     pivsign = 1;
     double[] LUrowi;
     double[] LUcolj = new double[m];
+    boolean parallel = ParallelOperations.useFor((double) m * n * n);
 
     // Outer loop.
 
@@ -95,18 +96,23 @@ public class LUDecomposition
 
       // Apply previous transformations.
 
-      for (int i = 0; i < m; i++) {
-        LUrowi = LU[i];
+      if (parallel) {
+        ParallelOperations.luColumn(LU, LUcolj, m, j);
+      }
+      else {
+        for (int i = 0; i < m; i++) {
+          LUrowi = LU[i];
 
-        // Most of the time is spent in the following dot product.
+          // Most of the time is spent in the following dot product.
 
-        int kmax = Math.min(i,j);
-        double s = 0.0;
-        for (int k = 0; k < kmax; k++) {
-          s += LUrowi[k]*LUcolj[k];
-        }
+          int kmax = Math.min(i,j);
+          double s = 0.0;
+          for (int k = 0; k < kmax; k++) {
+            s += LUrowi[k]*LUcolj[k];
+          }
 
-        LUrowi[j] = LUcolj[i] -= s;
+          LUrowi[j] = LUcolj[i] -= s;
+        }
       }
 
       // Find pivot and exchange if necessary.
@@ -247,6 +253,11 @@ public class LUDecomposition
     Matrix Xmat = B.getMatrix(piv,0,nx-1);
     double[][] X = Xmat.getArray();
 
+    if (ParallelOperations.useFor((double) n * n * nx)) {
+      ParallelOperations.luSolve(LU, X, n, nx);
+      return Xmat;
+    }
+
     // Solve L*Y = B(piv,:)
     for (int k = 0; k < n; k++) {
       for (int i = k+1; i < n; i++) {
@@ -858,6 +858,9 @@ public class Matrix
     if (B.m != n) {
       throw new IllegalArgumentException("Matrix inner dimensions must agree.");
     }
+    if (ParallelOperations.useFor((double) m * n * B.n)) {
+      return new Matrix(ParallelOperations.times(A, B.A, m, n, B.n), m, B.n);
+    }
     Matrix X = new Matrix(m,B.n);
     double[][] C = X.getArray();
     double[] Bcolj = new double[n];
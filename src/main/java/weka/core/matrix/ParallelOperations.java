@@ -0,0 +1,543 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ParallelOperations.java
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+/**
+ * Cache-blocked and multi-threaded implementations of the expensive dense
+ * matrix operations (multiplication and the Cholesky, LU and QR
+ * factorizations), working on the row arrays of a Matrix. Matrix and the
+ * decomposition classes switch to these implementations automatically for
+ * matrices above a size threshold.<p/>
+ *
+ * Every entry of a result is computed with exactly the same sequence of
+ * floating point operations as in the sequential JAMA code; only the order
+ * in which independent entries are computed differs. The results are
+ * therefore identical, regardless of the number of threads.<p/>
+ *
+ * The work is distributed over a shared pool of daemon threads. The number
+ * of threads (default: the number of available processors) and the size
+ * threshold can be changed globally.
+ *
+ * @version $Revision: 9500 $
+ */
+public class ParallelOperations
+  implements RevisionHandler {
+
+  /** the default size threshold (dimension of a square matrix) */
+  public final static int DEFAULT_THRESHOLD = 100;
+
+  /** the block size used for multiplication and the factorizations */
+  public final static int BLOCK_SIZE = 64;
+
+  /** the minimum number of floating point operations per chunk of work */
+  public final static int MIN_WORK = 16384;
+
+  /** the number of chunks per thread, for balancing uneven work */
+  public final static int CHUNKS_PER_THREAD = 4;
+
+  /** the number of threads to use */
+  protected static volatile int m_NumThreads = Runtime.getRuntime().availableProcessors();
+
+  /** the size threshold */
+  protected static volatile int m_Threshold = DEFAULT_THRESHOLD;
+
+  /** the thread pool (created on demand) */
+  protected static ExecutorService m_Executor;
+
+  /**
+   * A range of independent work items, e.g., rows or columns.
+   */
+  public static interface RangeTask {
+
+    /**
+     * Processes the items from (inclusive) to (exclusive).
+     *
+     * @param from	the first item
+     * @param to		the item after the last one
+     */
+    public void run(int from, int to);
+  }
+
+  /**
+   * The threads of the pool. Nested parallel operations run in the calling
+   * worker thread.
+   */
+  protected static class Worker
+    extends Thread {
+
+    /**
+     * Initializes the thread.
+     *
+     * @param target	the runnable to execute
+     * @param name	the name of the thread
+     */
+    public Worker(Runnable target, String name) {
+      super(target, name);
+      setDaemon(true);
+    }
+  }
+
+  /**
+   * Sets the number of threads to use.
+   *
+   * @param value	the number of threads, 1 for sequential execution
+   */
+  public static void setNumThreads(int value) {
+    m_NumThreads = Math.max(1, value);
+  }
+
+  /**
+   * Returns the number of threads to use.
+   *
+   * @return		the number of threads
+   */
+  public static int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Sets the size threshold: the blocked/parallel implementations are used
+   * if the work exceeds that of a square matrix of that dimension.
+   *
+   * @param value	the threshold, Integer.MAX_VALUE to disable
+   */
+  public static void setThreshold(int value) {
+    m_Threshold = Math.max(0, value);
+  }
+
+  /**
+   * Returns the size threshold.
+   *
+   * @return		the threshold
+   */
+  public static int getThreshold() {
+    return m_Threshold;
+  }
+
+  /**
+   * Returns whether the blocked/parallel implementations should be used for
+   * an operation of the given size (e.g., m*n*p for a multiplication).
+   *
+   * @param work	the number of floating point operations (roughly)
+   * @return		true if the size exceeds the threshold
+   */
+  public static boolean useFor(double work) {
+    double	threshold;
+
+    threshold = m_Threshold;
+
+    return (work >= threshold * threshold * threshold);
+  }
+
+  /**
+   * Returns the thread pool, creating it if necessary.
+   *
+   * @return		the pool
+   */
+  protected static synchronized ExecutorService getExecutor() {
+    if (m_Executor == null) {
+      m_Executor = Executors.newCachedThreadPool(new ThreadFactory() {
+	protected int m_Count = 0;
+	public synchronized Thread newThread(Runnable r) {
+	  m_Count++;
+	  return new Worker(r, "weka-matrix-" + m_Count);
+	}
+      });
+    }
+
+    return m_Executor;
+  }
+
+  /**
+   * Processes the items of a range in parallel, in chunks that are handed
+   * out to the threads on demand. The calling thread takes part in the work.
+   * Small ranges are processed in the calling thread.
+   *
+   * @param from	the first item
+   * @param to		the item after the last one
+   * @param workPerItem	the (rough) number of floating point operations per
+   * 			item, for determining the chunk size
+   * @param task	the task to run on the chunks
+   */
+  public static void forRange(final int from, final int to, int workPerItem,
+      final RangeTask task) {
+
+    final int			chunkSize;
+    final AtomicInteger		next;
+    int				numThreads;
+    int				numChunks;
+    int				minItems;
+    Runnable			runner;
+    List<Future<?>>		futures;
+    Throwable			cause;
+    int				i;
+
+    numThreads = m_NumThreads;
+    minItems   = Math.max(1, MIN_WORK / Math.max(1, workPerItem));
+    numChunks  = Math.min(numThreads * CHUNKS_PER_THREAD, (to - from) / minItems);
+    if ((numThreads == 1) || (numChunks < 2) || (Thread.currentThread() instanceof Worker)) {
+      if (to > from)
+	task.run(from, to);
+      return;
+    }
+
+    chunkSize = (to - from + numChunks - 1) / numChunks;
+    next      = new AtomicInteger(from);
+    runner    = new Runnable() {
+      public void run() {
+	int	start;
+	while ((start = next.getAndAdd(chunkSize)) < to)
+	  task.run(start, Math.min(start + chunkSize, to));
+      }
+    };
+
+    futures = new ArrayList<Future<?>>();
+    for (i = 1; i < Math.min(numThreads, numChunks); i++)
+      futures.add(getExecutor().submit(runner));
+    runner.run();
+
+    cause = null;
+    for (Future<?> future: futures) {
+      try {
+	future.get();
+      }
+      catch (ExecutionException e) {
+	if (cause == null)
+	  cause = e.getCause();
+      }
+      catch (InterruptedException e) {
+	Thread.currentThread().interrupt();
+	if (cause == null)
+	  cause = e;
+      }
+    }
+    if (cause instanceof RuntimeException)
+      throw (RuntimeException) cause;
+    else if (cause instanceof Error)
+      throw (Error) cause;
+    else if (cause != null)
+      throw new RuntimeException(cause);
+  }
+
+  /**
+   * Multiplies two matrices, C = A * B. Works on blocks of rows, columns and
+   * inner dimension, accumulating the products of every entry in the order
+   * of the inner dimension, like Matrix.times(Matrix).
+   *
+   * @param A		the rows of the left matrix (m x n)
+   * @param B		the rows of the right matrix (n x p)
+   * @param m		the number of rows of A
+   * @param n		the number of columns of A (rows of B)
+   * @param p		the number of columns of B
+   * @return		the rows of the product (m x p)
+   */
+  public static double[][] times(final double[][] A, final double[][] B,
+      final int m, final int n, final int p) {
+
+    final double[][]	C;
+
+    C = new double[m][p];
+    forRange(0, m, n * p, new RangeTask() {
+      public void run(int from, int to) {
+	for (int i0 = from; i0 < to; i0 += BLOCK_SIZE) {
+	  int i1 = Math.min(i0 + BLOCK_SIZE, to);
+	  for (int k0 = 0; k0 < n; k0 += BLOCK_SIZE) {
+	    int k1 = Math.min(k0 + BLOCK_SIZE, n);
+	    for (int j0 = 0; j0 < p; j0 += BLOCK_SIZE) {
+	      int j1 = Math.min(j0 + BLOCK_SIZE, p);
+	      for (int i = i0; i < i1; i++) {
+		double[] Arowi = A[i];
+		double[] Crowi = C[i];
+		for (int k = k0; k < k1; k++) {
+		  double a = Arowi[k];
+		  double[] Browk = B[k];
+		  for (int j = j0; j < j1; j++)
+		    Crowi[j] += a * Browk[j];
+		}
+	      }
+	    }
+	  }
+	}
+      }
+    });
+
+    return C;
+  }
+
+  /**
+   * Computes the Cholesky factor L of a square matrix A (the lower triangle
+   * of L has to be zero initially). Proceeds in panels of columns: the rows
+   * of the diagonal block are computed first, then all rows below the block
+   * in parallel. The entries are computed as in CholeskyDecomposition.
+   *
+   * @param A		the rows of the matrix
+   * @param L		the rows of the factor, filled in
+   * @param n		the dimension
+   * @return		true if the matrix is symmetric and positive definite
+   */
+  public static boolean cholesky(final double[][] A, final double[][] L,
+      final int n) {
+
+    final double[]	d;
+    final boolean[]	symmetric;
+    boolean		result;
+    int			k0;
+    int			j;
+
+    d         = new double[n];
+    symmetric = new boolean[n];
+    result    = true;
+
+    for (j = 0; j < n; j++)
+      symmetric[j] = true;
+
+    for (k0 = 0; k0 < n; k0 += BLOCK_SIZE) {
+      final int start = k0;
+      final int end   = Math.min(k0 + BLOCK_SIZE, n);
+
+      // diagonal block
+      for (j = start; j < end; j++) {
+	choleskyRow(A, L, d, symmetric, j, start, j);
+	d[j] = A[j][j] - d[j];
+	result = result & (d[j] > 0.0);
+	L[j][j] = Math.sqrt(Math.max(d[j], 0.0));
+      }
+
+      // rows below the diagonal block
+      forRange(end, n, end * (end - start), new RangeTask() {
+	public void run(int from, int to) {
+	  for (int j = from; j < to; j++)
+	    choleskyRow(A, L, d, symmetric, j, start, end);
+	}
+      });
+    }
+
+    for (j = 0; j < n; j++)
+      result = result & symmetric[j];
+
+    return result;
+  }
+
+  /**
+   * Computes the entries of a row of the Cholesky factor for the given
+   * columns.
+   *
+   * @param A		the rows of the matrix
+   * @param L		the rows of the factor
+   * @param d		the sums of squares of the rows computed so far
+   * @param symmetric	whether the rows are symmetric so far
+   * @param j		the row
+   * @param start	the first column
+   * @param end		the column after the last one
+   */
+  protected static void choleskyRow(double[][] A, double[][] L, double[] d,
+      boolean[] symmetric, int j, int start, int end) {
+
+    double[]	Lrowj;
+    double[]	Lrowk;
+    double	s;
+    int		k;
+    int		i;
+
+    Lrowj = L[j];
+    for (k = start; k < end; k++) {
+      Lrowk = L[k];
+      s = 0.0;
+      for (i = 0; i < k; i++)
+	s += Lrowk[i]*Lrowj[i];
+      Lrowj[k] = s = (A[j][k] - s)/L[k][k];
+      d[j] = d[j] + s*s;
+      symmetric[j] = symmetric[j] & (A[k][j] == A[j][k]);
+    }
+  }
+
+  /**
+   * Solves L*L'*X = B in place, with L the Cholesky factor. The columns of
+   * the right-hand side are processed in parallel.
+   *
+   * @param L		the rows of the Cholesky factor
+   * @param X		the rows of the right-hand side, replaced by the
+   * 			solution
+   * @param n		the dimension of L
+   * @param nx		the number of columns of X
+   */
+  public static void choleskySolve(final double[][] L, final double[][] X,
+      final int n, final int nx) {
+
+    forRange(0, nx, n * n, new RangeTask() {
+      public void run(int from, int to) {
+	// Solve L*Y = B;
+	for (int k = 0; k < n; k++) {
+	  for (int j = from; j < to; j++) {
+	    for (int i = 0; i < k ; i++) {
+	      X[k][j] -= X[i][j]*L[k][i];
+	    }
+	    X[k][j] /= L[k][k];
+	  }
+	}
+
+	// Solve L'*X = Y;
+	for (int k = n-1; k >= 0; k--) {
+	  for (int j = from; j < to; j++) {
+	    for (int i = k+1; i < n ; i++) {
+	      X[k][j] -= X[i][j]*L[i][k];
+	    }
+	    X[k][j] /= L[k][k];
+	  }
+	}
+      }
+    });
+  }
+
+  /**
+   * Applies the previous transformations of the LU decomposition to a
+   * column (the "left-looking" step of LUDecomposition). The entries above
+   * the diagonal depend on each other and are computed sequentially, the
+   * ones on and below the diagonal in parallel.
+   *
+   * @param LU		the rows of the decomposition
+   * @param LUcolj	the copy of the column
+   * @param m		the number of rows
+   * @param j		the column
+   */
+  public static void luColumn(final double[][] LU, final double[] LUcolj,
+      final int m, final int j) {
+
+    double[]	LUrowi;
+    double	s;
+    int		i;
+    int		k;
+
+    for (i = 0; i < Math.min(j, m); i++) {
+      LUrowi = LU[i];
+      s = 0.0;
+      for (k = 0; k < i; k++)
+	s += LUrowi[k]*LUcolj[k];
+      LUrowi[j] = LUcolj[i] -= s;
+    }
+
+    forRange(Math.min(j, m), m, j, new RangeTask() {
+      public void run(int from, int to) {
+	for (int i = from; i < to; i++) {
+	  double[] LUrowi = LU[i];
+	  double s = 0.0;
+	  for (int k = 0; k < j; k++)
+	    s += LUrowi[k]*LUcolj[k];
+	  LUrowi[j] = LUcolj[i] -= s;
+	}
+      }
+    });
+  }
+
+  /**
+   * Solves L*U*X = B(piv,:) in place, with the factors of an LU
+   * decomposition. The columns of the right-hand side are processed in
+   * parallel.
+   *
+   * @param LU		the rows of the decomposition
+   * @param X		the rows of the permuted right-hand side, replaced by
+   * 			the solution
+   * @param n		the number of columns of LU
+   * @param nx		the number of columns of X
+   */
+  public static void luSolve(final double[][] LU, final double[][] X,
+      final int n, final int nx) {
+
+    forRange(0, nx, n * n, new RangeTask() {
+      public void run(int from, int to) {
+	// Solve L*Y = B(piv,:)
+	for (int k = 0; k < n; k++) {
+	  for (int i = k+1; i < n; i++) {
+	    for (int j = from; j < to; j++) {
+	      X[i][j] -= X[k][j]*LU[i][k];
+	    }
+	  }
+	}
+	// Solve U*X = Y;
+	for (int k = n-1; k >= 0; k--) {
+	  for (int j = from; j < to; j++) {
+	    X[k][j] /= LU[k][k];
+	  }
+	  for (int i = 0; i < k; i++) {
+	    for (int j = from; j < to; j++) {
+	      X[i][j] -= X[k][j]*LU[i][k];
+	    }
+	  }
+	}
+      }
+    });
+  }
+
+  /**
+   * Applies the k-th Householder reflection of the QR decomposition to the
+   * remaining columns. The columns are processed in parallel, each thread
+   * traversing its columns row by row.
+   *
+   * @param QR		the rows of the decomposition
+   * @param m		the number of rows
+   * @param n		the number of columns
+   * @param k		the index of the Householder vector
+   */
+  public static void qrReflect(final double[][] QR, final int m, final int n,
+      final int k) {
+
+    forRange(k + 1, n, 2 * (m - k), new RangeTask() {
+      public void run(int from, int to) {
+	double[] s = new double[to - from];
+	for (int i = k; i < m; i++) {
+	  double[] QRrowi = QR[i];
+	  double q = QRrowi[k];
+	  for (int j = from; j < to; j++)
+	    s[j - from] += q*QRrowi[j];
+	}
+	for (int j = from; j < to; j++)
+	  s[j - from] = -s[j - from]/QR[k][k];
+	for (int i = k; i < m; i++) {
+	  double[] QRrowi = QR[i];
+	  double q = QRrowi[k];
+	  for (int j = from; j < to; j++)
+	    QRrowi[j] += s[j - from]*q;
+	}
+      }
+    });
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision: 9500 $");
+  }
+}
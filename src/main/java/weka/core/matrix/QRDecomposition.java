@@ -71,6 +71,7 @@ public class QRDecomposition
     m = A.getRowDimension();
     n = A.getColumnDimension();
     Rdiag = new double[n];
+    boolean parallel = ParallelOperations.useFor((double) m * n * n);
 
     // Main loop.
     for (int k = 0; k < n; k++) {
@@ -91,14 +92,19 @@ public class QRDecomposition
         QR[k][k] += 1.0;
 
         // Apply transformation to remaining columns.
-        for (int j = k+1; j < n; j++) {
-          double s = 0.0; 
-          for (int i = k; i < m; i++) {
-            s += QR[i][k]*QR[i][j];
-          }
-          s = -s/QR[k][k];
-          for (int i = k; i < m; i++) {
-            QR[i][j] += s*QR[i][k];
+        if (parallel) {
+          ParallelOperations.qrReflect(QR, m, n, k);
+        }
+        else {
+          for (int j = k+1; j < n; j++) {
+            double s = 0.0; 
+            for (int i = k; i < m; i++) {
+              s += QR[i][k]*QR[i][j];
+            }
+            s = -s/QR[k][k];
+            for (int i = k; i < m; i++) {
+              QR[i][j] += s*QR[i][k];
+            }
           }
         }
       }
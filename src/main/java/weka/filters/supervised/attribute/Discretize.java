@@ -22,8 +22,14 @@
 
 package weka.filters.supervised.attribute;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Attribute;
 import weka.core.Capabilities;
@@ -108,6 +114,10 @@ import weka.filters.SupervisedFilter;
  * <pre> -K
  *  Use Kononenko's MDL criterion.</pre>
  *
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ *
  <!-- options-end -->
  *
  * @author Len Trigg (trigg@cs.waikato.ac.nz)
@@ -140,6 +150,9 @@ public class Discretize
   /** Use Kononenko's MDL criterion instead of Fayyad et al.'s */
   protected boolean m_UseKononenko = false;
 
+  /** The number of threads used to compute the cutpoints */
+  protected int m_NumExecutionSlots = 1;
+
   /** Constructor - initialises the filter */
   public Discretize() {
 
@@ -154,7 +167,7 @@ public class Discretize
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(7);
+    Vector newVector = new Vector(8);
 
     newVector.addElement(new Option(
               "\tSpecifies list of columns to Discretize. First"
@@ -182,6 +195,11 @@ public class Discretize
               "\tUse Kononenko's MDL criterion.",
               "K", 0, "-K"));
 
+    newVector.addElement(new Option(
+              "\tNumber of execution slots.\n"
+	      + "\t(default 1 - i.e. no parallelism)",
+              "num-slots", 1, "-num-slots <num>"));
+
     return newVector.elements();
   }
 
@@ -211,6 +229,10 @@ public class Discretize
    * <pre> -K
    *  Use Kononenko's MDL criterion.</pre>
    *
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   *
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -231,6 +253,13 @@ public class Discretize
       setAttributeIndices("first-last");
     }
 
+    String numSlots = Utils.getOption("num-slots", options);
+    if (numSlots.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(numSlots));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     if (getInputFormat() != null) {
       setInputFormat(getInputFormat());
     }
@@ -242,7 +271,7 @@ public class Discretize
    */
   public String [] getOptions() {
 
-    String [] options = new String [12];
+    String [] options = new String [14];
     int current = 0;
 
     if (getMakeBinary()) {
@@ -263,6 +292,10 @@ public class Discretize
     if (!getAttributeIndices().equals("")) {
       options[current++] = "-R"; options[current++] = getAttributeIndices();
     }
+    if (getNumExecutionSlots() != 1) {
+      options[current++] = "-num-slots";
+      options[current++] = "" + getNumExecutionSlots();
+    }
     while (current < options.length) {
       options[current++] = "";
     }
@@ -543,6 +576,38 @@ public class Discretize
     m_UseBetterEncoding = useBetterEncoding;
   }
 
+  /**
+   * Returns the tip text for this property
+   *
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+
+    return "The number of threads used to compute the cutpoints. The "
+      + "attributes are discretized concurrently.";
+  }
+
+  /**
+   * Gets the number of execution slots (threads).
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Sets the number of execution slots (threads).
+   *
+   * @param numSlots the number of slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+
+    m_NumExecutionSlots = numSlots;
+  }
+
   /**
    * Returns the tip text for this property
    *
@@ -717,27 +782,59 @@ public class Discretize
                    + "]";
   }
 
-  /** Generate the cutpoints for each attribute */
+  /**
+   * Generate the cutpoints for each attribute. With more than one
+   * execution slot the attributes are processed concurrently.
+   */
   protected void calculateCutPoints() {
 
-    Instances copy = null;
+    List<Integer> indices = new ArrayList<Integer>();
 
     m_CutPoints = new double [getInputFormat().numAttributes()] [];
     for(int i = getInputFormat().numAttributes() - 1; i >= 0; i--) {
       if ((m_DiscretizeCols.isInRange(i)) &&
 	  (getInputFormat().attribute(i).isNumeric())) {
+	indices.add(i);
+      }
+    }
 
-	// Use copy to preserve order
-	if (copy == null) {
-	  copy = new Instances(getInputFormat());
-	}
-	calculateCutPointsByMDL(i, copy);
+    if ((m_NumExecutionSlots <= 1) || (indices.size() < 2)) {
+      for (int index : indices) {
+	calculateCutPointsByMDL(index, getInputFormat());
       }
+      return;
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(m_NumExecutionSlots);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (final int index : indices) {
+	futures.add(pool.submit(new Runnable() {
+	  public void run() {
+	    calculateCutPointsByMDL(index, getInputFormat());
+	  }
+	}));
+      }
+      for (Future<?> future : futures) {
+	future.get();
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+	throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      pool.shutdownNow();
     }
   }
 
   /**
-   * Set cutpoints for a single attribute using MDL.
+   * Set cutpoints for a single attribute using MDL. The data is not
+   * modified: the values, weights and classes of the instances that have
+   * a value for the attribute are sorted into arrays once, and the
+   * recursive search for cutpoints works on ranges of these arrays.
    *
    * @param index the index of the attribute to set cutpoints for
    * @param data the data to work with
@@ -745,18 +842,37 @@ public class Discretize
   protected void calculateCutPointsByMDL(int index,
 					 Instances data) {
 
-    // Sort instances
-    data.sort(data.attribute(index));
-
-    // Find first instances that's missing
-    int firstMissing = data.numInstances();
+    // Collect the instances that aren't missing
+    double[] values = new double[data.numInstances()];
+    int[] instances = new int[data.numInstances()];
+    int numValues = 0;
     for (int i = 0; i < data.numInstances(); i++) {
-      if (data.instance(i).isMissing(index)) {
-        firstMissing = i;
-        break;
+      if (!data.instance(i).isMissing(index)) {
+	values[numValues] = data.instance(i).value(index);
+	instances[numValues] = i;
+	numValues++;
       }
     }
-    m_CutPoints[index] = cutPointsForSubset(data, index, 0, firstMissing);
+    if (numValues < values.length) {
+      double[] temp = new double[numValues];
+      System.arraycopy(values, 0, temp, 0, numValues);
+      values = temp;
+    }
+
+    // Sort them
+    int[] sorted = Utils.sortWithNoMissingValues(values);
+    double[] sortedValues = new double[numValues];
+    double[] weights = new double[numValues];
+    int[] classes = new int[numValues];
+    for (int i = 0; i < numValues; i++) {
+      Instance inst = data.instance(instances[sorted[i]]);
+      sortedValues[i] = values[sorted[i]];
+      weights[i] = inst.weight();
+      classes[i] = (int)inst.classValue();
+    }
+
+    m_CutPoints[index] = cutPointsForSubset(sortedValues, weights, classes,
+					    data.numClasses(), 0, numValues);
   }
 
   /**
@@ -882,13 +998,16 @@ public class Discretize
   /**
    * Selects cutpoints for sorted subset.
    *
-   * @param instances
-   * @param attIndex
-   * @param first
-   * @param lastPlusOne
-   * @return
+   * @param values the sorted attribute values
+   * @param weights the weights of the instances, in the same order
+   * @param classes the classes of the instances, in the same order
+   * @param numClasses the number of classes
+   * @param first the first instance of the subset
+   * @param lastPlusOne the last instance of the subset plus one
+   * @return the cutpoints, null if there are none
    */
-  private double[] cutPointsForSubset(Instances instances, int attIndex,
+  private double[] cutPointsForSubset(double[] values, double[] weights,
+				      int[] classes, int numClasses,
 				      int first, int lastPlusOne) {
 
     double[][] counts, bestCounts;
@@ -904,42 +1023,34 @@ public class Discretize
     }
 
     // Compute class counts.
-    counts = new double[2][instances.numClasses()];
+    counts = new double[2][numClasses];
     for (int i = first; i < lastPlusOne; i++) {
-      numInstances += instances.instance(i).weight();
-      counts[1][(int)instances.instance(i).classValue()] +=
-	instances.instance(i).weight();
+      numInstances += weights[i];
+      counts[1][classes[i]] += weights[i];
     }
 
     // Save prior counts
-    priorCounts = new double[instances.numClasses()];
-    System.arraycopy(counts[1], 0, priorCounts, 0,
-		     instances.numClasses());
+    priorCounts = new double[numClasses];
+    System.arraycopy(counts[1], 0, priorCounts, 0, numClasses);
 
     // Entropy of the full set
     priorEntropy = ContingencyTables.entropy(priorCounts);
     bestEntropy = priorEntropy;
 
     // Find best entropy.
-    bestCounts = new double[2][instances.numClasses()];
+    bestCounts = new double[2][numClasses];
     for (int i = first; i < (lastPlusOne - 1); i++) {
-      counts[0][(int)instances.instance(i).classValue()] +=
-	instances.instance(i).weight();
-      counts[1][(int)instances.instance(i).classValue()] -=
-	instances.instance(i).weight();
-      if (instances.instance(i).value(attIndex) <
-	  instances.instance(i + 1).value(attIndex)) {
-	currentCutPoint = (instances.instance(i).value(attIndex) +
-	  instances.instance(i + 1).value(attIndex)) / 2.0;
+      counts[0][classes[i]] += weights[i];
+      counts[1][classes[i]] -= weights[i];
+      if (values[i] < values[i + 1]) {
+	currentCutPoint = (values[i] + values[i + 1]) / 2.0;
 	currentEntropy = ContingencyTables.entropyConditionedOnRows(counts);
 	if (currentEntropy < bestEntropy) {
 	  bestCutPoint = currentCutPoint;
 	  bestEntropy = currentEntropy;
 	  bestIndex = i;
-	  System.arraycopy(counts[0], 0,
-			   bestCounts[0], 0, instances.numClasses());
-	  System.arraycopy(counts[1], 0,
-			   bestCounts[1], 0, instances.numClasses());
+	  System.arraycopy(counts[0], 0, bestCounts[0], 0, numClasses);
+	  System.arraycopy(counts[1], 0, bestCounts[1], 0, numClasses);
 	}
 	numCutPoints++;
       }
@@ -963,8 +1074,9 @@ public class Discretize
 					       numInstances, numCutPoints))) {
 
       // Select split points for the left and right subsets
-      left = cutPointsForSubset(instances, attIndex, first, bestIndex + 1);
-      right = cutPointsForSubset(instances, attIndex,
+      left = cutPointsForSubset(values, weights, classes, numClasses,
+				first, bestIndex + 1);
+      right = cutPointsForSubset(values, weights, classes, numClasses,
 				 bestIndex + 1, lastPlusOne);
 
       // Merge cutpoints and return them
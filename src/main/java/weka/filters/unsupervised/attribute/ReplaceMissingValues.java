@@ -231,7 +231,18 @@ public class ReplaceMissingValues
   private void convertInstance(Instance instance) {
   
     Instance inst = null;
-    if (instance instanceof SparseInstance) {
+    boolean hasMissing = false;
+    for (int j = 0; j < instance.numValues(); j++) {
+      if (instance.isMissingSparse(j) &&
+	  (getInputFormat().classIndex() != instance.index(j))) {
+	hasMissing = true;
+	break;
+      }
+    }
+    if (!hasMissing) {
+      // nothing to replace, a (possibly lightweight) copy will do
+      inst = (Instance)instance.copy();
+    } else if (instance instanceof SparseInstance) {
       double []vals = new double[instance.numValues()];
       int []indices = new int[instance.numValues()];
       int num = 0;
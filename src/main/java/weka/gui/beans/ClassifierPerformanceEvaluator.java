@@ -30,6 +30,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.AggregateableEvaluation;
 import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
@@ -370,8 +371,9 @@ public class ClassifierPerformanceEvaluator extends AbstractEvaluator implements
         plotInstances.setUp();
 
         if (m_classifier instanceof BatchPredictor) {
-          double[][] predictions = ((BatchPredictor) m_classifier)
-              .distributionsForInstances(m_testData);
+          double[][] predictions = AbstractClassifier
+              .distributionsForInstances((BatchPredictor) m_classifier,
+                  m_testData);
           plotInstances.process(m_testData, predictions, eval);
         } else {
 
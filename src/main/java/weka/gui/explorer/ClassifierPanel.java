@@ -45,10 +45,16 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -94,7 +100,6 @@ import weka.core.BatchPredictor;
 import weka.core.Capabilities;
 import weka.core.CapabilitiesHandler;
 import weka.core.Drawable;
-import weka.core.Environment;
 import weka.core.FastVector;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -286,6 +291,13 @@ public class ClassifierPanel extends JPanel implements
   protected JLabel m_RandomLab = new JLabel("Random seed for XVal / % Split",
       SwingConstants.RIGHT);
 
+  /** the number of execution slots (threads) for cross-validation. */
+  protected JTextField m_NumSlotsText = new JTextField("1", 3);
+
+  /** the label for the execution slots textfield. */
+  protected JLabel m_NumSlotsLab = new JLabel("Execution slots for XVal",
+      SwingConstants.RIGHT);
+
   /** Whether randomization is turned off to preserve order. */
   protected JCheckBox m_PreserveOrderBut = new JCheckBox(
       "Preserve order for % Split");
@@ -418,6 +430,9 @@ public class ClassifierPanel extends JPanel implements
         .setToolTipText("Evaluate errors with respect to a cost matrix");
     m_RandomLab.setToolTipText("The seed value for randomization");
     m_RandomSeedText.setToolTipText(m_RandomLab.getToolTipText());
+    m_NumSlotsLab
+        .setToolTipText("The number of threads for building the models of the folds");
+    m_NumSlotsText.setToolTipText(m_NumSlotsLab.getToolTipText());
     m_PreserveOrderBut
         .setToolTipText("Preserves the order in a percentage split");
     m_OutputSourceCode
@@ -444,6 +459,8 @@ public class ClassifierPanel extends JPanel implements
     m_OutputEntropyBut.setSelected(ExplorerDefaults
         .getClassifierOutputEntropyEvalMeasures());
     m_RandomSeedText.setText("" + ExplorerDefaults.getClassifierRandomSeed());
+    m_NumSlotsText.setText(""
+        + ExplorerDefaults.getClassifierNumExecutionSlots());
     m_PreserveOrderBut.setSelected(ExplorerDefaults
         .getClassifierPreserveOrder());
     m_OutputSourceCode.addActionListener(new ActionListener() {
@@ -612,6 +629,10 @@ public class ClassifierPanel extends JPanel implements
         seedPanel.add(m_RandomLab);
         seedPanel.add(m_RandomSeedText);
         moreOptionsPanel.add(seedPanel);
+        JPanel slotsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        slotsPanel.add(m_NumSlotsLab);
+        slotsPanel.add(m_NumSlotsText);
+        moreOptionsPanel.add(slotsPanel);
         moreOptionsPanel.add(m_PreserveOrderBut);
         JPanel sourcePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         m_OutputSourceCode.setEnabled(m_ClassifierEditor.getValue() instanceof Sourcable);
@@ -1413,8 +1434,8 @@ public class ClassifierPanel extends JPanel implements
 
               testTimeStart = System.currentTimeMillis();
               if (classifier instanceof BatchPredictor) {
-                double[][] predictions = ((BatchPredictor) classifier)
-                    .distributionsForInstances(inst);
+                double[][] predictions = AbstractClassifier.distributionsForInstances(
+                    (BatchPredictor) classifier, inst);
                 plotInstances.process(inst, predictions, eval);
                 if (outputPredictionsText) {
                   for (int jj = 0; jj < inst.numInstances(); jj++) {
@@ -1478,52 +1499,121 @@ public class ClassifierPanel extends JPanel implements
                     "test data");
               }
 
+              // the models of the folds can be built concurrently, they
+              // get evaluated in fold order below; at most numSlots folds
+              // are built ahead of the fold being evaluated, so that only
+              // that many training sets and models are held at a time
+              int numSlots = 1;
+              try {
+                numSlots = Integer.parseInt(m_NumSlotsText.getText().trim());
+              } catch (Exception ex) {
+                m_Log.logMessage("Trouble parsing number of execution slots");
+                numSlots = 1;
+              }
+              Instances[] trainSets = null;
+              List<Future<Classifier>> foldModels = null;
+              ExecutorService executorPool = null;
+              int nextFold = 0;
+              if (numSlots > 1) {
+                trainSets = new Instances[numFolds];
+                foldModels = new ArrayList<Future<Classifier>>();
+                executorPool = Executors.newFixedThreadPool(Math.min(numSlots,
+                    numFolds));
+              }
+
               // Make some splits and do a CV
-              for (int fold = 0; fold < numFolds; fold++) {
-                m_Log.statusMessage("Creating splits for fold " + (fold + 1)
-                    + "...");
-                Instances train = inst.trainCV(numFolds, fold, random);
-
-                // make adjustments if the classifier is an
-                // InputMappedClassifier
-                eval = setupEval(eval, classifier, train, costMatrix,
-                    plotInstances, classificationOutput, true);
-                eval.setMetricsToDisplay(m_selectedEvalMetrics);
-
-                // eval.setPriors(train);
-                m_Log.statusMessage("Building model for fold " + (fold + 1)
-                    + "...");
-                Classifier current = null;
-                try {
-                  current = AbstractClassifier.makeCopy(template);
-                } catch (Exception ex) {
-                  m_Log.logMessage("Problem copying classifier: "
-                      + ex.getMessage());
-                }
-                current.buildClassifier(train);
-                Instances test = inst.testCV(numFolds, fold);
-                m_Log.statusMessage("Evaluating model for fold " + (fold + 1)
-                    + "...");
+              try {
+                for (int fold = 0; fold < numFolds; fold++) {
+                  Instances train;
+                  if (trainSets == null) {
+                    m_Log.statusMessage("Creating splits for fold "
+                        + (fold + 1) + "...");
+                    train = inst.trainCV(numFolds, fold, random);
+                  } else {
+                    while ((nextFold < numFolds)
+                        && (nextFold < fold + numSlots)) {
+                      m_Log.statusMessage("Building model for fold "
+                          + (nextFold + 1) + "...");
+                      trainSets[nextFold] = inst.trainCV(numFolds, nextFold,
+                          random);
+                      final Instances foldTrain = trainSets[nextFold];
+                      final Classifier foldClassifier = AbstractClassifier
+                          .makeCopy(template);
+                      foldModels.add(executorPool
+                          .submit(new Callable<Classifier>() {
+                            @Override
+                            public Classifier call() throws Exception {
+                              foldClassifier.buildClassifier(foldTrain);
+                              return foldClassifier;
+                            }
+                          }));
+                      nextFold++;
+                    }
+                    train = trainSets[fold];
+                  }
 
-                if (classifier instanceof BatchPredictor) {
-                  double[][] predictions = ((BatchPredictor) current)
-                      .distributionsForInstances(test);
-                  plotInstances.process(test, predictions, eval);
-                  if (outputPredictionsText) {
-                    for (int jj = 0; jj < test.numInstances(); jj++) {
-                      classificationOutput.printClassification(predictions[jj],
-                          test.instance(jj), jj);
+                  // make adjustments if the classifier is an
+                  // InputMappedClassifier
+                  eval = setupEval(eval, classifier, train, costMatrix,
+                      plotInstances, classificationOutput, true);
+                  eval.setMetricsToDisplay(m_selectedEvalMetrics);
+                  if (trainSets != null) {
+                    trainSets[fold] = null;
+                  }
+
+                  // eval.setPriors(train);
+                  Classifier current = null;
+                  if (foldModels == null) {
+                    m_Log.statusMessage("Building model for fold " + (fold + 1)
+                        + "...");
+                    try {
+                      current = AbstractClassifier.makeCopy(template);
+                    } catch (Exception ex) {
+                      m_Log.logMessage("Problem copying classifier: "
+                          + ex.getMessage());
+                    }
+                    current.buildClassifier(train);
+                  } else {
+                    m_Log.statusMessage("Waiting for model of fold "
+                        + (fold + 1) + "...");
+                    try {
+                      current = foldModels.get(fold).get();
+                    } catch (ExecutionException ex) {
+                      if (ex.getCause() instanceof Exception) {
+                        throw (Exception) ex.getCause();
+                      }
+                      throw ex;
                     }
+                    foldModels.set(fold, null);
                   }
-                } else {
-                  for (int jj = 0; jj < test.numInstances(); jj++) {
-                    plotInstances.process(test.instance(jj), current, eval);
+                  Instances test = inst.testCV(numFolds, fold);
+                  m_Log.statusMessage("Evaluating model for fold " + (fold + 1)
+                      + "...");
+
+                  if (classifier instanceof BatchPredictor) {
+                    double[][] predictions = AbstractClassifier.distributionsForInstances(
+                        (BatchPredictor) current, test);
+                    plotInstances.process(test, predictions, eval);
                     if (outputPredictionsText) {
-                      classificationOutput.printClassification(current,
-                          test.instance(jj), jj);
+                      for (int jj = 0; jj < test.numInstances(); jj++) {
+                        classificationOutput.printClassification(predictions[jj],
+                            test.instance(jj), jj);
+                      }
+                    }
+                  } else {
+                    for (int jj = 0; jj < test.numInstances(); jj++) {
+                      plotInstances.process(test.instance(jj), current, eval);
+                      if (outputPredictionsText) {
+                        classificationOutput.printClassification(current,
+                            test.instance(jj), jj);
+                      }
                     }
                   }
                 }
+              } finally {
+                if (executorPool != null) {
+                  executorPool.shutdownNow();
+                }
               }
               if (outputPredictionsText)
                 classificationOutput.printFooter();
@@ -1581,8 +1671,8 @@ public class ClassifierPanel extends JPanel implements
 
               testTimeStart = System.currentTimeMillis();
               if (classifier instanceof BatchPredictor) {
-                double[][] predictions = ((BatchPredictor) current)
-                    .distributionsForInstances(test);
+                double[][] predictions = AbstractClassifier.distributionsForInstances(
+                    (BatchPredictor) current, test);
                 plotInstances.process(test, predictions, eval);
                 if (outputPredictionsText) {
                   for (int jj = 0; jj < test.numInstances(); jj++) {
@@ -1634,20 +1724,10 @@ public class ClassifierPanel extends JPanel implements
               int batchSize = 100;
               if (classifier instanceof BatchPredictor) {
                 batchInst = new Instances(userTestStructure, 0);
-                String batchSizeS = ((BatchPredictor) classifier)
-                    .getBatchSize();
-                if (batchSizeS != null && batchSizeS.length() > 0) {
-                  try {
-                    batchSizeS = Environment.getSystemWide().substitute(
-                        batchSizeS);
-                  } catch (Exception ex) {
-                  }
-
-                  try {
-                    batchSize = Integer.parseInt(batchSizeS);
-                  } catch (NumberFormatException ex) {
-                    // just go with the default
-                  }
+                int preferred = AbstractClassifier
+                    .getBatchSize((BatchPredictor) classifier);
+                if (preferred > 0) {
+                  batchSize = preferred;
                 }
               }
               testTimeStart = System.currentTimeMillis();
@@ -322,6 +322,16 @@ public class ExplorerDefaults
     return Integer.parseInt(get("ClassifierRandomSeed", "1"));
   }
 
+  /**
+   * returns the default number of execution slots (threads) for building the
+   * models of a cross-validation in the classify tab.
+   * 
+   * @return		the default number of execution slots
+   */
+  public static int getClassifierNumExecutionSlots() {
+    return Integer.parseInt(get("ClassifierNumExecutionSlots", "1"));
+  }
+
   /**
    * returns whether the order is preserved in case of the percentage split 
    * in the classify tab.
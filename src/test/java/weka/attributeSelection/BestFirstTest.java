@@ -19,6 +19,9 @@
 
 package weka.attributeSelection;
 
+import weka.core.Instances;
+import weka.test.TestData;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -46,6 +49,43 @@ public class BestFirstTest
     return new CfsSubsetEval();
   }
 
+  /**
+   * Performs the search with the given options and number of slots.
+   *
+   * @param data	the data to use
+   * @param options	the options of the search
+   * @param slots	the number of execution slots
+   * @return		the results
+   * @throws Exception	if the search fails
+   */
+  protected String search(Instances data, String[] options, int slots)
+    throws Exception {
+
+    BestFirst search = new BestFirst();
+    search.setOptions(options);
+    search.setNumExecutionSlots(slots);
+    AttributeSelection attsel = new AttributeSelection();
+    attsel.setSearch(search);
+    attsel.setEvaluator(new CfsSubsetEval());
+    attsel.SelectAttributes(data);
+
+    return attsel.toResultsString();
+  }
+
+  /**
+   * Tests whether evaluating the children of a node concurrently gives
+   * the same result as the serial search, for all search directions.
+   */
+  public void testNumExecutionSlots() throws Exception {
+    Instances data = TestData.generate(10, 10, 100);
+
+    for (int d = 0; d < BestFirst.TAGS_SELECTION.length; d++) {
+      String[] options = new String[]{"-D", "" + d, "-S", "0"};
+      assertEquals("results differ for direction " + d,
+          search(data, options.clone(), 1), search(data, options.clone(), 3));
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(BestFirstTest.class);
   }
@@ -19,6 +19,11 @@
 
 package weka.attributeSelection;
 
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.test.TestData;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -46,6 +51,49 @@ public class CfsSubsetEvalTest
     return new CfsSubsetEval();
   }
 
+  /**
+   * Selects attributes with a CfsSubsetEval using the given options.
+   *
+   * @param data	the data to use
+   * @param options	the options of the evaluator
+   * @return		the results
+   * @throws Exception	if the selection fails
+   */
+  protected String select(Instances data, String[] options) throws Exception {
+    CfsSubsetEval eval = new CfsSubsetEval();
+    eval.setOptions(options);
+    BestFirst search = new BestFirst();
+    search.setOptions(new String[]{"-D", "2"});
+    AttributeSelection attsel = new AttributeSelection();
+    attsel.setSearch(search);
+    attsel.setEvaluator(eval);
+    attsel.SelectAttributes(data);
+
+    String result = attsel.toResultsString();
+    return result.substring(result.indexOf("Search Method"));
+  }
+
+  /**
+   * Tests whether precomputing the correlations (in parallel) and storing
+   * them in a bounded hash table gives the same result as computing them
+   * on demand, for a nominal and a numeric class.
+   */
+  public void testCorrelationStorage() throws Exception {
+    String[][] options = new String[][]{
+	{"-Z"}, {"-Z", "-num-slots", "3"}, {"-S", "10"}, {"-S", "10", "-Z"}};
+    int[] classTypes = new int[]{Attribute.NOMINAL, Attribute.NUMERIC};
+
+    for (int c = 0; c < classTypes.length; c++) {
+      Instances data = TestData.generate(10, 10, 100, classTypes[c], 2);
+
+      String expected = select(data, new String[0]);
+      for (int i = 0; i < options.length; i++) {
+	assertEquals("results differ for options " + Utils.joinOptions(options[i]),
+	    expected, select(data, options[i].clone()));
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(CfsSubsetEvalTest.class);
   }
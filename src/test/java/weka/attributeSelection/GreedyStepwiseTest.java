@@ -19,6 +19,10 @@
 
 package weka.attributeSelection;
 
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.test.TestData;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -46,6 +50,43 @@ public class GreedyStepwiseTest
     return new CfsSubsetEval();
   }
 
+  /**
+   * Performs the search with the given options and number of slots.
+   *
+   * @param data	the data to use
+   * @param options	the options of the search
+   * @param slots	the number of execution slots
+   * @return		the results
+   * @throws Exception	if the search fails
+   */
+  protected String search(Instances data, String[] options, int slots)
+    throws Exception {
+
+    GreedyStepwise search = new GreedyStepwise();
+    search.setOptions(options);
+    search.setNumExecutionSlots(slots);
+    AttributeSelection attsel = new AttributeSelection();
+    attsel.setSearch(search);
+    attsel.setEvaluator(new CfsSubsetEval());
+    attsel.SelectAttributes(data);
+
+    return attsel.toResultsString();
+  }
+
+  /**
+   * Tests whether evaluating the candidate subsets of a step concurrently
+   * gives the same result as the serial search.
+   */
+  public void testNumExecutionSlots() throws Exception {
+    Instances data = TestData.generate(10, 10, 100);
+
+    String[][] options = new String[][]{{}, {"-B"}, {"-C"}, {"-R"}};
+    for (int i = 0; i < options.length; i++) {
+      assertEquals("results differ for options " + Utils.joinOptions(options[i]),
+          search(data, options[i].clone(), 1), search(data, options[i].clone(), 3));
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(GreedyStepwiseTest.class);
   }
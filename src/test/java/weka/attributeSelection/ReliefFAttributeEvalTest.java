@@ -19,6 +19,11 @@
 
 package weka.attributeSelection;
 
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.test.TestData;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -46,6 +51,58 @@ public class ReliefFAttributeEvalTest
     return new ReliefFAttributeEval();
   }
 
+  /**
+   * Computes the merits of all attributes with a ReliefFAttributeEval using
+   * the given options.
+   *
+   * @param data	the data to use
+   * @param options	the options of the evaluator
+   * @return		the merits
+   * @throws Exception	if the evaluation fails
+   */
+  protected double[] evaluate(Instances data, String[] options) throws Exception {
+    ReliefFAttributeEval eval = new ReliefFAttributeEval();
+    eval.setOptions(options);
+    eval.buildEvaluator(data);
+
+    double[] result = new double[data.numAttributes()];
+    for (int i = 0; i < result.length; i++)
+      result[i] = eval.evaluateAttribute(i);
+
+    return result;
+  }
+
+  /**
+   * Tests whether processing the sampled instances with several threads,
+   * and finding all neighbours with a search structure (k is larger than
+   * the number of instances), gives the same merits as a single thread
+   * with a linear scan, for a nominal and a numeric class.
+   */
+  public void testNeighbourSearchAndSlots() throws Exception {
+    String[][] options = new String[][]{
+	{"-K", "200", "-num-slots", "3"},
+	{"-K", "200", "-M", "50", "-num-slots", "4"},
+	{"-K", "200", "-N"},
+	{"-K", "200", "-S", "weka.core.neighboursearch.BallTree", "-num-slots", "2"},
+	{"-K", "200", "-S", "weka.core.neighboursearch.LinearNNSearch"}};
+    int[] classTypes = new int[]{Attribute.NOMINAL, Attribute.NUMERIC};
+
+    for (int c = 0; c < classTypes.length; c++) {
+      Instances data = TestData.generate(5, 5, 100, classTypes[c], 2);
+
+      for (int i = 0; i < options.length; i++) {
+	String[] serial = new String[]{"-K", "200"};
+	if (Utils.getOptionPos('M', options[i]) > -1)
+	  serial = new String[]{"-K", "200", "-M", "50"};
+	double[] expected = evaluate(data, serial);
+	double[] actual = evaluate(data, options[i].clone());
+	for (int j = 0; j < expected.length; j++)
+	  assertEquals("merits differ for options " + Utils.joinOptions(options[i]),
+	      expected[j], actual[j], 1e-10);
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(ReliefFAttributeEvalTest.class);
   }
@@ -21,11 +21,13 @@ package weka.classifiers;
 
 import weka.classifiers.evaluation.EvaluationUtils;
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.CheckGOE;
 import weka.core.CheckOptionHandler;
 import weka.core.FastVector;
 import weka.core.Instances;
 import weka.core.OptionHandler;
+import weka.core.Utils;
 import weka.core.CheckScheme.PostProcessor;
 import weka.test.Regression;
 
@@ -839,6 +841,66 @@ public abstract class AbstractClassifierTest
     }
   }
 
+  /**
+   * tests whether batch prediction produces the same distributions as
+   * predicting the instances one by one (only for batch predictors).
+   */
+  public void testBatchPrediction() throws Exception {
+    Instances		train;
+    Instances		test;
+    Classifier		classifier;
+    double[][]		batch;
+    double[][]		chunked;
+    double[]		single;
+    int			i;
+    int			n;
+    
+    if (!(m_Classifier instanceof BatchPredictor))
+      return;
+    
+    for (i = FIRST_CLASSTYPE; i <= LAST_CLASSTYPE; i++) {
+      // does the classifier support this type of class at all?
+      if (!canPredict(i))
+        continue;
+      
+      train = m_Tester.makeTestDataset(
+          42, m_Tester.getNumInstances(), 
+  	  m_NominalPredictors[i] ? m_Tester.getNumNominal() : 0,
+  	  m_NumericPredictors[i] ? m_Tester.getNumNumeric() : 0, 
+          m_StringPredictors[i] ? m_Tester.getNumString() : 0,
+          m_DatePredictors[i] ? m_Tester.getNumDate() : 0,
+          m_RelationalPredictors[i] ? m_Tester.getNumRelational() : 0,
+          m_NClasses, 
+          i,
+          m_multiInstanceHandler);
+      test = new Instances(train, train.numInstances() / 2, 
+	  train.numInstances() - train.numInstances() / 2);
+      train = new Instances(train, 0, train.numInstances() / 2);
+      
+      classifier = AbstractClassifier.makeCopy(m_Classifier);
+      try {
+	classifier.buildClassifier(train);
+      }
+      catch (Exception e) {
+	// not every setup is guaranteed to work, see testRegression()
+	continue;
+      }
+      batch = ((BatchPredictor) classifier).distributionsForInstances(test);
+      ((BatchPredictor) classifier).setBatchSize("3");
+      chunked = AbstractClassifier.distributionsForInstances(
+	  (BatchPredictor) classifier, test);
+      assertEquals("number of distributions differs (" + getClassTypeString(i) 
+	  + " class)", test.numInstances(), batch.length);
+      for (n = 0; n < test.numInstances(); n++) {
+	single = classifier.distributionForInstance(test.instance(n));
+	assertEquals("batch prediction differs (" + getClassTypeString(i) 
+	    + " class)", Utils.arrayToString(single), Utils.arrayToString(batch[n]));
+	assertEquals("chunked prediction differs (" + getClassTypeString(i) 
+	    + " class)", Utils.arrayToString(single), Utils.arrayToString(chunked[n]));
+      }
+    }
+  }
+
   /**
    * Builds a model using the current classifier using the first
    * half of the current data for training, and generates a bunch of
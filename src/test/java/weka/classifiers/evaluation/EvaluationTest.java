@@ -0,0 +1,155 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.evaluation;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import weka.classifiers.Classifier;
+import weka.classifiers.evaluation.output.prediction.PlainText;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.REPTree;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.test.TestData;
+
+/**
+ * Tests the cross-validation of Evaluation. Run from the command line with:<p/>
+ * java weka.classifiers.evaluation.EvaluationTest
+ *
+ * @version $Revision: 9500 $
+ */
+public class EvaluationTest
+  extends TestCase {
+
+  /**
+   * Constructs the <code>EvaluationTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public EvaluationTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Cross-validates the classifier with the given number of execution slots.
+   *
+   * @param classifier the classifier to evaluate
+   * @param data the data to use
+   * @param numSlots the number of execution slots
+   * @return the evaluation
+   * @throws Exception if evaluation fails
+   */
+  protected Evaluation crossValidate(Classifier classifier, Instances data,
+      int numSlots) throws Exception {
+    Evaluation	result;
+
+    result = new Evaluation(data);
+    result.setNumExecutionSlots(numSlots);
+    result.crossValidateModel(classifier, data, 10, new Random(42));
+
+    return result;
+  }
+
+  /**
+   * Compares the sequential and the parallel cross-validation.
+   *
+   * @param classifier the classifier to evaluate
+   * @param data the data to use
+   * @throws Exception if evaluation fails
+   */
+  protected void compareCrossValidation(Classifier classifier, Instances data)
+    throws Exception {
+    Evaluation	sequential;
+    Evaluation	parallel;
+
+    sequential = crossValidate(classifier, data, 1);
+    parallel   = crossValidate(classifier, data, 4);
+    assertEquals("correct differs", sequential.correct(), parallel.correct(), 0.0);
+    assertEquals("instances differ", sequential.numInstances(), parallel.numInstances(), 0.0);
+    assertEquals("predictions differ", sequential.predictions().size(), parallel.predictions().size());
+    assertEquals("summary differs", sequential.toSummaryString(true), parallel.toSummaryString(true));
+    if (data.classAttribute().isNominal()) {
+      assertEquals("class details differ", sequential.toClassDetailsString(), parallel.toClassDetailsString());
+      assertEquals("matrix differs", sequential.toMatrixString(), parallel.toMatrixString());
+    }
+  }
+
+  /**
+   * Tests the parallel cross-validation with a nominal class.
+   */
+  public void testNominalClass() throws Exception {
+    compareCrossValidation(new J48(),
+        TestData.generate(3, 3, 200, Attribute.NOMINAL, 3));
+  }
+
+  /**
+   * Tests the parallel cross-validation with a numeric class.
+   */
+  public void testNumericClass() throws Exception {
+    compareCrossValidation(new REPTree(),
+        TestData.generate(3, 3, 200, Attribute.NUMERIC, 3));
+  }
+
+  /**
+   * Tests that the printed predictions are the same with the parallel
+   * cross-validation.
+   */
+  public void testPrintedPredictions() throws Exception {
+    Instances		data;
+    String[]		output;
+    StringBuffer	buffer;
+    PlainText		printer;
+    Evaluation		eval;
+
+    data   = TestData.generate(3, 3, 200, Attribute.NOMINAL, 3);
+    output = new String[2];
+    for (int i = 0; i < output.length; i++) {
+      buffer  = new StringBuffer();
+      printer = new PlainText();
+      printer.setBuffer(buffer);
+      eval = new Evaluation(data);
+      eval.setNumExecutionSlots(1 + i * 3);
+      eval.crossValidateModel(new J48(), data, 10, new Random(1), printer);
+      output[i] = buffer.toString() + eval.toSummaryString();
+    }
+    assertEquals("output differs", output[0], output[1]);
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(EvaluationTest.class);
+  }
+
+  /**
+   * For running the test from commandline.
+   *
+   * @param args the commandline arguments - ignored
+   */
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -21,6 +21,10 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.supportVector.RBFKernel;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+import weka.datagenerators.classifiers.regression.MexicanHat;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -44,6 +48,44 @@ public class GaussianProcessesTest
     return new GaussianProcesses();
   }
 
+  /**
+   * Tests that the subset of regressors approximation comes close to the
+   * exact Gaussian process on a smooth function, with both methods of
+   * selecting the inducing points.
+   */
+  public void testApproximation() throws Exception {
+    MexicanHat generator = new MexicanHat();
+    generator.setNumExamples(400);
+    generator.defineDataFormat();
+    Instances data = generator.generateExamples();
+    data.setClassIndex(data.numAttributes() - 1);
+
+    GaussianProcesses exact = new GaussianProcesses();
+    exact.setKernel(new RBFKernel());
+    exact.setNoise(0.1);
+    exact.buildClassifier(data);
+
+    for (int selection = 0; selection < 2; selection++) {
+      GaussianProcesses approx = new GaussianProcesses();
+      approx.setKernel(new RBFKernel());
+      approx.setNoise(0.1);
+      approx.setNumInducingPoints(30);
+      approx.setInducingPointSelection(
+        new SelectedTag(selection, GaussianProcesses.TAGS_SELECTION));
+      approx.buildClassifier(data);
+
+      double diff = 0;
+      for (int i = 0; i < data.numInstances(); i++) {
+        diff += Math.abs(exact.classifyInstance(data.instance(i))
+                         - approx.classifyInstance(data.instance(i)));
+        double sd = approx.getStandardDeviation(data.instance(i));
+        assertTrue("standard deviation", (sd > 0) && !Double.isNaN(sd));
+      }
+      assertEquals("mean difference in predictions (selection " + selection + ")",
+                   0, diff / data.numInstances(), 0.01);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(GaussianProcessesTest.class);
   }
@@ -21,6 +21,10 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.instance.NonSparseToSparse;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +45,29 @@ public class LogisticTest extends AbstractClassifierTest {
     return new Logistic();
   }
 
+  /**
+   * Tests that multi-threaded training and training on sparse data give
+   * the same model as the default (up to rounding).
+   */
+  public void testSlotsAndSparseData() throws Exception {
+    Instances data = TestData.generate(2, 4, 200, 3);
+    NonSparseToSparse filter = new NonSparseToSparse();
+    filter.setInputFormat(data);
+    Instances sparse = Filter.useFilter(data, filter);
+
+    double[][][] dists = new double[3][][];
+    for (int i = 0; i < dists.length; i++) {
+      Logistic logistic = new Logistic();
+      logistic.setNumExecutionSlots((i == 1) ? 3 : 1);
+      logistic.buildClassifier((i == 2) ? sparse : data);
+      dists[i] = TestData.distributions(logistic, data);
+    }
+    for (int i = 1; i < dists.length; i++) {
+      TestData.assertEqualDistributions("probabilities differ",
+	  dists[0], dists[i], 1e-6);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(LogisticTest.class);
   }
@@ -21,6 +21,8 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +44,27 @@ public class MultilayerPerceptronTest extends AbstractClassifierTest {
     return new MultilayerPerceptron();
   }
 
+  /**
+   * Tests that mini-batches give the same network, no matter how many
+   * threads process their instances.
+   */
+  public void testMiniBatch() throws Exception {
+    Instances data = TestData.generate(2, 4, 200, 3);
+
+    double[][][] dists = new double[2][][];
+    for (int i = 0; i < dists.length; i++) {
+      MultilayerPerceptron mlp = new MultilayerPerceptron();
+      mlp.setHiddenLayers("4,3");
+      mlp.setTrainingTime(20);
+      mlp.setMiniBatchSize(7);
+      mlp.setNumExecutionSlots(1 + 2 * i);
+      mlp.buildClassifier(data);
+      dists[i] = TestData.distributions(mlp, data);
+    }
+    TestData.assertEqualDistributions("probabilities differ",
+	dists[0], dists[1], 0.0);
+  }
+
   public static Test suite() {
     return new TestSuite(MultilayerPerceptronTest.class);
   }
@@ -21,6 +21,8 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -46,6 +48,59 @@ public class SGDTest extends AbstractClassifierTest {
     return p;
   }
 
+  /**
+   * Tests that training with several threads that average their weights is
+   * reproducible.
+   */
+  public void testParallel() throws Exception {
+    Instances data = TestData.generate(2, 4, 300);
+
+    double[][] weights = new double[2][];
+    for (int i = 0; i < weights.length; i++) {
+      SGD sgd = new SGD();
+      sgd.setEpochs(20);
+      sgd.setMiniBatchSize(5);
+      sgd.setNumExecutionSlots(3);
+      sgd.buildClassifier(data);
+      weights[i] = sgd.getWeights();
+    }
+    for (int i = 0; i < weights[0].length; i++) {
+      assertEquals("weights differ", weights[0][i], weights[1][i], 0.0);
+    }
+  }
+
+  /**
+   * Tests that the unsynchronized updates (Hogwild) learn a linearly
+   * separable concept and give an updateable model.
+   */
+  public void testHogwild() throws Exception {
+    Instances data = TestData.generate(0, 4, 300);
+    double mean = 0;
+    for (int i = 0; i < data.numInstances(); i++) {
+      mean += data.instance(i).value(0) + data.instance(i).value(1);
+    }
+    mean /= data.numInstances();
+    for (int i = 0; i < data.numInstances(); i++) {
+      double sum = data.instance(i).value(0) + data.instance(i).value(1);
+      data.instance(i).setClassValue((sum > mean) ? 1 : 0);
+    }
+
+    SGD sgd = new SGD();
+    sgd.setEpochs(20);
+    sgd.setNumExecutionSlots(3);
+    sgd.setHogwild(true);
+    sgd.buildClassifier(data);
+    sgd.updateClassifier(data.instance(0));
+    int correct = 0;
+    for (int i = 0; i < data.numInstances(); i++) {
+      if (sgd.classifyInstance(data.instance(i)) == data.instance(i).classValue()) {
+        correct++;
+      }
+    }
+    assertTrue("training accuracy too low: " + correct + "/" + data.numInstances(),
+        correct >= 0.95 * data.numInstances());
+  }
+
   public static Test suite() {
     return new TestSuite(SGDTest.class);
   }
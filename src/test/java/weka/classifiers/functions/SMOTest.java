@@ -21,6 +21,9 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.supportVector.RBFKernel;
+import weka.core.Instances;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +44,50 @@ public class SMOTest extends AbstractClassifierTest {
     return new SMO();
   }
 
+  /**
+   * Tests that training the pairwise machines and batch prediction in
+   * parallel give exactly the same probabilities as the sequential code.
+   */
+  public void testParallel() throws Exception {
+    Instances data = TestData.generate(2, 4, 300, 5);
+
+    double[][][] dists = new double[2][][];
+    for (int i = 0; i < dists.length; i++) {
+      SMO smo = new SMO();
+      smo.setKernel(new RBFKernel());
+      smo.setBuildLogisticModels(true);
+      smo.setNumFolds(3);
+      smo.setNumExecutionSlots(1 + 2 * i);
+      smo.buildClassifier(data);
+      dists[i] = smo.distributionsForInstances(data);
+    }
+    TestData.assertEqualDistributions("probabilities differ",
+	dists[0], dists[1], 0.0);
+  }
+
+  /**
+   * Tests that the pairwise machines sharing a kernel cache give the same
+   * probabilities, no matter in which order they fill the cache.
+   */
+  public void testSharedKernelCache() throws Exception {
+    Instances data = TestData.generate(2, 4, 300, 5);
+
+    double[][][] dists = new double[2][][];
+    for (int i = 0; i < dists.length; i++) {
+      SMO smo = new SMO();
+      RBFKernel kernel = new RBFKernel();
+      kernel.setCacheSizeMB(1);
+      smo.setKernel(kernel);
+      smo.setNumExecutionSlots(1 + 2 * i);
+      smo.buildClassifier(data);
+      assertTrue("no cache statistics",
+	  smo.toString().indexOf("Kernel cache:") > -1);
+      dists[i] = smo.distributionsForInstances(data);
+    }
+    TestData.assertEqualDistributions("probabilities differ",
+	dists[0], dists[1], 0.0);
+  }
+
   public static Test suite() {
     return new TestSuite(SMOTest.class);
   }
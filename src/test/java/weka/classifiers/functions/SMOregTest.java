@@ -19,8 +19,14 @@
 
 package weka.classifiers.functions;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.supportVector.RBFKernel;
+import weka.core.Attribute;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +47,27 @@ public class SMOregTest extends AbstractClassifierTest {
     return new SMOreg();
   }
 
+  /**
+   * Tests that the model reports the hits of the kernel cache, which are
+   * only added to the cache when the kernel's view of it is released.
+   */
+  public void testKernelCacheStatistics() throws Exception {
+    RBFKernel kernel = new RBFKernel();
+    kernel.setCacheSizeMB(10);
+    SMOreg smo = new SMOreg();
+    smo.setKernel(kernel);
+    smo.buildClassifier(TestData.generate(0, 4, 100, Attribute.NUMERIC, 2));
+
+    Matcher matcher =
+      Pattern.compile("Kernel cache: .*, (\\d+) hits, (\\d+) misses")
+      .matcher(smo.toString());
+    assertTrue("no kernel cache statistics", matcher.find());
+    assertTrue("no kernel cache hits: " + matcher.group(),
+	Long.parseLong(matcher.group(1)) > 0);
+    assertTrue("no kernel cache misses: " + matcher.group(),
+	Long.parseLong(matcher.group(2)) > 0);
+  }
+
   public static Test suite() {
     return new TestSuite(SMOregTest.class);
   }
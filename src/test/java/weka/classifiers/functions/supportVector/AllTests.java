@@ -39,6 +39,7 @@ public class AllTests
     TestSuite result = new TestSuite();
 
     result.addTest(suite("weka.classifiers.functions.supportVector.Kernel"));
+    result.addTest(KernelCacheTest.suite());
     // more...
     
     return result;
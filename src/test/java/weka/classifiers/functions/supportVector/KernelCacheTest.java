@@ -0,0 +1,139 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions.supportVector;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests KernelCache. Run from the command line with:<p/>
+ * java weka.classifiers.functions.supportVector.KernelCacheTest
+ *
+ * @version $Revision: 9500 $
+ */
+public class KernelCacheTest
+  extends TestCase {
+
+  /**
+   * Constructs the <code>KernelCacheTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public KernelCacheTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Tests that the lower triangle is stored if it fits into the budget.
+   */
+  public void testFullMatrix() {
+    KernelCache cache = new KernelCache(100, KernelCache.MEGABYTE);
+    assertTrue("full matrix expected", cache.isFullMatrix());
+
+    KernelCache.View view = cache.newView(null);
+    assertTrue("empty cache", Double.isNaN(view.get(3, 7)));
+    view.put(3, 7, 0.0);
+    assertEquals("symmetric", 0.0, view.get(7, 3), 0.0);
+    view.put(5, 5, -1.5);
+    assertEquals("diagonal", -1.5, view.get(5, 5), 0.0);
+    view.release();
+    assertEquals("hits", 2, cache.getHits());
+    assertEquals("misses", 1, cache.getMisses());
+  }
+
+  /**
+   * Tests that only the given number of rows is kept and that the least
+   * recently used rows are evicted.
+   */
+  public void testRows() {
+    KernelCache cache = new KernelCache(1000, 2 * 1000 * 8);
+    assertFalse("rows expected", cache.isFullMatrix());
+
+    KernelCache.View view = cache.newView(null);
+    view.put(1, 10, 1.0);
+    view.put(2, 10, 2.0);
+    view.put(3, 10, 3.0);
+    assertEquals("number of rows", 2, cache.getNumRows());
+    assertEquals("evictions", 1, cache.getEvictions());
+
+    // the view still holds the last two rows
+    assertEquals("row 3", 3.0, view.get(3, 10), 0.0);
+    assertEquals("row 2", 2.0, view.get(2, 10), 0.0);
+    assertTrue("row 1 evicted", Double.isNaN(view.get(1, 10)));
+  }
+
+  /**
+   * Tests that releasing a view drops its rows and adds its statistics to
+   * the cache.
+   */
+  public void testRelease() {
+    KernelCache cache = new KernelCache(1000, 2 * 1000 * 8);
+    KernelCache.View first = cache.newView(null);
+    KernelCache.View second = cache.newView(null);
+
+    first.put(1, 10, 1.0);
+    first.get(1, 10);
+    first.get(1, 11);
+    second.get(1, 10);
+    assertEquals("no hits before release", 0, cache.getHits());
+
+    first.release();
+    assertNull("row released", first.m_Row1);
+    assertNull("row released", first.m_Row2);
+    assertEquals("hits", 1, cache.getHits());
+    assertEquals("misses", 1, cache.getMisses());
+
+    second.release();
+    second.release();
+    assertEquals("hits", 2, cache.getHits());
+    assertEquals("misses", 1, cache.getMisses());
+  }
+
+  /**
+   * Tests that views with different indices share the values.
+   */
+  public void testSharedViews() {
+    KernelCache cache = new KernelCache(10, KernelCache.MEGABYTE);
+    KernelCache.View first = cache.newView(new int[]{0, 2, 4, 6, 8});
+    KernelCache.View second = cache.newView(new int[]{4, 5, 6});
+
+    first.put(2, 3, 42.0);
+    assertEquals("index", 6, second.index(2));
+    assertEquals("shared value", 42.0, second.get(0, 2), 0.0);
+    assertTrue("not cached", Double.isNaN(second.get(0, 1)));
+
+    try {
+      cache.newView(new int[]{10});
+      fail("index out of range not detected");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(KernelCacheTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
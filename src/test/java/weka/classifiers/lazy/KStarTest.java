@@ -21,6 +21,8 @@ package weka.classifiers.lazy;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +43,26 @@ public class KStarTest extends AbstractClassifierTest {
     return new KStar();
   }
 
+  /**
+   * Tests that batch prediction with several threads and with unlimited
+   * caches gives the same distributions as the default.
+   */
+  public void testBatchPrediction() throws Exception {
+    Instances data = TestData.generate(2, 4, 100, 3);
+
+    KStar kstar = new KStar();
+    kstar.buildClassifier(data);
+    double[][] expected = TestData.distributions(kstar, data);
+
+    kstar = new KStar();
+    kstar.setNumExecutionSlots(3);
+    kstar.setCacheSizeMB(0);
+    kstar.buildClassifier(data);
+    double[][] actual = kstar.distributionsForInstances(data);
+    TestData.assertEqualDistributions("probabilities differ",
+	expected, actual, 0.0);
+  }
+
   public static Test suite() {
     return new TestSuite(KStarTest.class);
   }
@@ -21,6 +21,11 @@ package weka.classifiers.meta;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.classifiers.trees.J48;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +46,45 @@ public class CVParameterSelectionTest extends AbstractClassifierTest {
     return new CVParameterSelection();
   }
 
+  /**
+   * Checks that the same parameters are selected, whether the grid is
+   * evaluated sequentially or concurrently.
+   */
+  public void testNumExecutionSlots() {
+    TestInstances	test;
+    Instances		data;
+    CVParameterSelection	cvps;
+    String[]		sequential;
+    String[]		parallel;
+
+    test = new TestInstances();
+    test.setNumNominal(4);
+    test.setNumNumeric(4);
+    test.setNumInstances(200);
+    test.setClassType(Attribute.NOMINAL);
+    try {
+      data = test.generate();
+
+      cvps = new CVParameterSelection();
+      cvps.setClassifier(new J48());
+      cvps.addCVParameter("C 0.1 0.5 5");
+      cvps.addCVParameter("M 1 10 10");
+      cvps.buildClassifier(data);
+      sequential = cvps.getBestClassifierOptions();
+
+      cvps.setNumExecutionSlots(3);
+      cvps.buildClassifier(data);
+      parallel = cvps.getBestClassifierOptions();
+    }
+    catch (Exception e) {
+      fail("Problem selecting parameters: " + e);
+      return;
+    }
+
+    assertEquals("Selected options differ", 
+	Utils.joinOptions(sequential), Utils.joinOptions(parallel));
+  }
+
   public static Test suite() {
     return new TestSuite(CVParameterSelectionTest.class);
   }
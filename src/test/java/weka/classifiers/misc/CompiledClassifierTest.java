@@ -0,0 +1,154 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.misc;
+
+import weka.classifiers.AbstractClassifierTest;
+import weka.classifiers.Classifier;
+import weka.classifiers.meta.LogitBoost;
+import weka.classifiers.rules.OneR;
+import weka.classifiers.rules.ZeroR;
+import weka.classifiers.trees.DecisionStump;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.REPTree;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+import weka.test.TestData;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests CompiledClassifier. Run from the command line with:<p/>
+ * java weka.classifiers.misc.CompiledClassifierTest
+ *
+ * @version $Revision: 9500 $
+ */
+public class CompiledClassifierTest
+  extends AbstractClassifierTest {
+
+  public CompiledClassifierTest(String name) {
+    super(name);
+  }
+
+  /** Creates a default CompiledClassifier */
+  public Classifier getClassifier() {
+    return new CompiledClassifier();
+  }
+
+  /**
+   * Checks that the model gets compiled and makes the same predictions as
+   * the base classifier, and that the class distributions are those of
+   * the base classifier.
+   *
+   * @param base	the base classifier
+   * @param data	the data to use
+   * @throws Exception	if training or testing fails
+   */
+  protected void performTest(Classifier base, Instances data) throws Exception {
+    CompiledClassifier	classifier;
+
+    classifier = new CompiledClassifier();
+    classifier.setClassifier(base);
+    classifier.buildClassifier(data);
+    assertTrue("not compiled: " + classifier.m_CompilationError,
+	classifier.isCompiled());
+    for (int i = 0; i < data.numInstances(); i++)
+      assertEquals("prediction #" + (i+1) + " differs",
+	  base.classifyInstance(data.instance(i)),
+	  classifier.classifyInstance(data.instance(i)), 0.0);
+    TestData.assertEqualDistributions("distributions differ",
+	TestData.distributions(base, data),
+	TestData.distributions(classifier, data), 0.0);
+
+    // compiled again after deserialization
+    classifier = (CompiledClassifier) new SerializedObject(classifier).getObject();
+    assertTrue("not compiled after deserialization",
+	classifier.isCompiled());
+  }
+
+  /**
+   * Tests the compiled J48 model.
+   */
+  public void testCompiledJ48() throws Exception {
+    performTest(new J48(), TestData.generate(3, 3, 200, Attribute.NOMINAL, 2));
+  }
+
+  /**
+   * Tests the compiled J48 model with binary splits.
+   */
+  public void testCompiledJ48BinarySplits() throws Exception {
+    J48		base;
+
+    base = new J48();
+    base.setBinarySplits(true);
+    performTest(base, TestData.generate(3, 3, 200, Attribute.NOMINAL, 3));
+  }
+
+  /**
+   * Tests the compiled REPTree model with a numeric class.
+   */
+  public void testCompiledREPTree() throws Exception {
+    performTest(new REPTree(),
+	TestData.generate(3, 3, 200, Attribute.NUMERIC, 2));
+  }
+
+  /**
+   * Tests the compiled OneR model.
+   */
+  public void testCompiledOneR() throws Exception {
+    performTest(new OneR(), TestData.generate(3, 0, 200, Attribute.NOMINAL, 3));
+    performTest(new OneR(), TestData.generate(0, 3, 200, Attribute.NOMINAL, 3));
+  }
+
+  /**
+   * Tests the compiled DecisionStump model.
+   */
+  public void testCompiledDecisionStump() throws Exception {
+    Instances	data;
+
+    data = TestData.generate(3, 3, 200, Attribute.NOMINAL, 2);
+    TestData.setMissingValues(data, 5, 1.0);
+    performTest(new DecisionStump(), data);
+  }
+
+  /**
+   * Tests the compiled ZeroR model.
+   */
+  public void testCompiledZeroR() throws Exception {
+    performTest(new ZeroR(), TestData.generate(3, 3, 200, Attribute.NOMINAL, 2));
+  }
+
+  /**
+   * Tests the compiled LogitBoost model (with DecisionStump).
+   */
+  public void testCompiledLogitBoost() throws Exception {
+    performTest(new LogitBoost(),
+	TestData.generate(3, 3, 200, Attribute.NOMINAL, 3));
+  }
+
+  public static Test suite() {
+    return new TestSuite(CompiledClassifierTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -21,6 +21,8 @@ package weka.classifiers.rules;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +43,24 @@ public class PARTTest extends AbstractClassifierTest {
     return new PART();
   }
 
+  /**
+   * Tests that presorting the data doesn't change the decision lists,
+   * including data with missing values and fractional weights.
+   */
+  public void testPresort() throws Exception {
+    Instances data = TestData.generate(2, 4, 500);
+    TestData.setMissingValues(data, 7, 0.5);
+
+    String[] models = new String[2];
+    for (int i = 0; i < models.length; i++) {
+      PART classifier = new PART();
+      classifier.setPresort(i == 1);
+      classifier.buildClassifier(new Instances(data));
+      models[i] = classifier.toString();
+    }
+    assertEquals("decision lists differ", models[0], models[1]);
+  }
+
   public static Test suite() {
     return new TestSuite(PARTTest.class);
   }
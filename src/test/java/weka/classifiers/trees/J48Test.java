@@ -21,6 +21,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -41,6 +43,24 @@ public class J48Test extends AbstractClassifierTest {
     return new J48();
   }
 
+  /**
+   * Tests that presorting the data doesn't change the trees, including
+   * data with missing values and fractional weights.
+   */
+  public void testPresort() throws Exception {
+    Instances data = TestData.generate(2, 4, 500);
+    TestData.setMissingValues(data, 7, 0.5);
+
+    String[] models = new String[2];
+    for (int i = 0; i < models.length; i++) {
+      J48 classifier = new J48();
+      classifier.setPresort(i == 1);
+      classifier.buildClassifier(new Instances(data));
+      models[i] = classifier.toString();
+    }
+    assertEquals("trees differ", models[0], models[1]);
+  }
+
   public static Test suite() {
     return new TestSuite(J48Test.class);
   }
@@ -21,6 +21,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -44,6 +46,24 @@ public class RandomTreeTest
     return new RandomTree();
   }
 
+  /**
+   * Tests that trees built in parallel are the same for any number of
+   * execution slots greater than one.
+   */
+  public void testParallel() throws Exception {
+    Instances data = TestData.generate(3, 5, 4000);
+    TestData.setMissingValues(data, 7, 1.0);
+
+    String[] trees = new String[2];
+    for (int i = 0; i < trees.length; i++) {
+      RandomTree tree = new RandomTree();
+      tree.setNumExecutionSlots(2 + 2 * i);
+      tree.buildClassifier(data);
+      trees[i] = tree.toString();
+    }
+    assertEquals("trees differ", trees[0], trees[1]);
+  }
+
   public static Test suite() {
     return new TestSuite(RandomTreeTest.class);
   }
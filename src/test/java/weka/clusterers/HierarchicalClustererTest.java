@@ -21,6 +21,9 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.SelectedTag;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -44,6 +47,57 @@ public class HierarchicalClustererTest
     return new HierarchicalClusterer();
   }
 
+  /**
+   * Builds a clusterer with the given settings and returns the cluster
+   * assignments of the data.
+   */
+  protected int[] cluster(Instances data, int linkType, int slots,
+      boolean floatDistances) throws Exception {
+    HierarchicalClusterer clusterer = new HierarchicalClusterer();
+    clusterer.setNumClusters(3);
+    clusterer.setLinkType(
+        new SelectedTag(linkType, HierarchicalClusterer.TAGS_LINK_TYPE));
+    clusterer.setNumExecutionSlots(slots);
+    clusterer.setFloatDistances(floatDistances);
+    clusterer.buildClusterer(data);
+    int[] result = new int[data.numInstances()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = clusterer.clusterInstance(data.instance(i));
+    }
+    return result;
+  }
+
+  /**
+   * Tests that the number of execution slots does not change the clusters
+   * of any link type, and that single precision distances give the same
+   * clusters as double precision ones.
+   */
+  public void testSlotsAndFloatDistances() throws Exception {
+    TestInstances generator = new TestInstances();
+    generator.setNumNominal(0);
+    generator.setNumNumeric(4);
+    generator.setNumInstances(100);
+    generator.setNoClass(true);
+    Instances data = generator.generate();
+
+    for (int i = 0; i < HierarchicalClusterer.TAGS_LINK_TYPE.length; i++) {
+      int linkType = HierarchicalClusterer.TAGS_LINK_TYPE[i].getID();
+      int[] expected = cluster(data, linkType, 1, false);
+      int[] actual = cluster(data, linkType, 3, false);
+      for (int n = 0; n < expected.length; n++) {
+        assertEquals("clusters differ for link type " + linkType,
+            expected[n], actual[n]);
+      }
+      if (linkType == HierarchicalClusterer.COMPLETE) {
+        actual = cluster(data, linkType, 3, true);
+        for (int n = 0; n < expected.length; n++) {
+          assertEquals("clusters differ with float distances",
+              expected[n], actual[n]);
+        }
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(HierarchicalClustererTest.class);
   }
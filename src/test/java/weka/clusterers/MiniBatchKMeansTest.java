@@ -0,0 +1,100 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.clusterers;
+
+import weka.clusterers.AbstractClustererTest;
+import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.TestInstances;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests MiniBatchKMeans. Run from the command line with:<p/>
+ * java weka.clusterers.MiniBatchKMeansTest
+ *
+ * @version $Revision: 9500 $
+ */
+public class MiniBatchKMeansTest 
+  extends AbstractClustererTest {
+
+  public MiniBatchKMeansTest(String name) { 
+    super(name);  
+  }
+
+  /** Creates a default MiniBatchKMeans */
+  public Clusterer getClusterer() {
+    return new MiniBatchKMeans();
+  }
+
+  /**
+   * Trains incrementally with the given number of execution slots and
+   * returns the cluster assignments of the data.
+   */
+  protected int[] clusterIncrementally(Instances data, int slots)
+    throws Exception {
+    MiniBatchKMeans clusterer = new MiniBatchKMeans();
+    clusterer.setNumClusters(4);
+    clusterer.setBatchSize(50);
+    clusterer.setNumExecutionSlots(slots);
+    clusterer.buildClusterer(new Instances(data, 0));
+    for (int i = 0; i < data.numInstances(); i++) {
+      clusterer.updateClusterer(data.instance(i));
+    }
+    clusterer.updateFinished();
+    assertEquals("number of clusters", 4, clusterer.numberOfClusters());
+    assertEquals("distance calculations", 4 * data.numInstances(),
+        clusterer.getDistanceCalculations());
+
+    int[] result = new int[data.numInstances()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = clusterer.clusterInstance(data.instance(i));
+    }
+    return result;
+  }
+
+  /**
+   * Tests incremental training, whose result must not depend on the number
+   * of execution slots.
+   */
+  public void testIncrementalTraining() throws Exception {
+    TestInstances generator = new TestInstances();
+    generator.setNumNominal(1);
+    generator.setNumNumeric(3);
+    generator.setNumInstances(225);
+    generator.setNoClass(true);
+    Instances data = generator.generate();
+
+    int[] expected = clusterIncrementally(data, 1);
+    int[] actual = clusterIncrementally(data, 3);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("clusters differ", expected[i], actual[i]);
+    }
+  }
+
+  public static Test suite() {
+    return new TestSuite(MiniBatchKMeansTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
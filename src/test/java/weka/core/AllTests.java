@@ -57,6 +57,9 @@ public class AllTests
     // converters
     suite.addTest(weka.core.converters.AllTests.suite());
     
+    // matrix
+    suite.addTest(weka.core.matrix.ParallelOperationsTest.suite());
+    
     // neighboursearch
     suite.addTest(weka.core.neighboursearch.AllTests.suite());
     
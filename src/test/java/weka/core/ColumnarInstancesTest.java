@@ -0,0 +1,259 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests ColumnarInstances. Run from the command line with:<p/>
+ * java weka.core.ColumnarInstancesTest
+ *
+ * @version $Revision: 9500 $
+ */
+public class ColumnarInstancesTest
+  extends TestCase {
+
+  /** the test instances to work with. */
+  protected Instances m_Instances;
+
+  /**
+   * Constructs the <code>ColumnarInstancesTest</code>.
+   *
+   * @param name 	the name of the test
+   */
+  public ColumnarInstancesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Instances = DataSource.read(ClassLoader.getSystemResourceAsStream("weka/core/data/InstancesTest.arff"));
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void tearDown() throws Exception {
+    m_Instances = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns the test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ColumnarInstancesTest.class);
+  }
+
+  /**
+   * Compares the content of the two datasets.
+   *
+   * @param expected	the expected data
+   * @param actual	the data to check
+   */
+  protected void assertSameData(Instances expected, Instances actual) {
+    assertEquals("# of instances differ", expected.numInstances(), actual.numInstances());
+    assertEquals("# of attributes differ", expected.numAttributes(), actual.numAttributes());
+    for (int i = 0; i < expected.numInstances(); i++) {
+      assertEquals("weight of instance #" + (i+1) + " differs",
+	  expected.instance(i).weight(), actual.instance(i).weight(), 0.0);
+      assertTrue("instance #" + (i+1) + " differs",
+	  Arrays.equals(expected.instance(i).toDoubleArray(), actual.instance(i).toDoubleArray()));
+    }
+  }
+
+  /**
+   * Tests the conversion from a regular dataset and back.
+   */
+  public void testCopy() {
+    Instances	columnar;
+
+    columnar = new ColumnarInstances(m_Instances);
+    assertSameData(m_Instances, columnar);
+
+    assertSameData(m_Instances, new Instances(columnar));
+    assertSameData(new Instances(m_Instances, 5, 10), new Instances(columnar, 5, 10));
+  }
+
+  /**
+   * Tests the write-through of the row views.
+   */
+  public void testWriteThrough() {
+    Instances	columnar;
+    Instance	inst;
+
+    columnar = new ColumnarInstances(m_Instances);
+    inst = columnar.instance(3);
+    inst.setWeight(2.5);
+    inst.setValue(2, 42.0);
+    inst.setMissing(1);
+    m_Instances.instance(3).setWeight(2.5);
+    m_Instances.instance(3).setValue(2, 42.0);
+    m_Instances.instance(3).setMissing(1);
+    assertSameData(m_Instances, columnar);
+
+    // copies are detached
+    inst = (Instance) columnar.instance(0).copy();
+    inst.setValue(2, -1.0);
+    assertEquals("copy is not detached", m_Instances.instance(0).value(2), columnar.instance(0).value(2), 0.0);
+  }
+
+  /**
+   * Tests the methods that reorder the data.
+   */
+  public void testReorder() {
+    Instances	columnar;
+
+    columnar = new ColumnarInstances(m_Instances);
+    for (int i = 0; i < m_Instances.numAttributes(); i++) {
+      m_Instances.sort(i);
+      columnar.sort(i);
+      assertSameData(m_Instances, columnar);
+    }
+
+    m_Instances.randomize(new Random(1));
+    columnar.randomize(new Random(1));
+    assertSameData(m_Instances, columnar);
+
+    m_Instances.setClassIndex(4);
+    columnar.setClassIndex(4);
+    m_Instances.stratify(3);
+    columnar.stratify(3);
+    assertSameData(m_Instances, columnar);
+    assertSameData(m_Instances.trainCV(3, 1), columnar.trainCV(3, 1));
+    assertSameData(m_Instances.testCV(3, 1), columnar.testCV(3, 1));
+  }
+
+  /**
+   * Tests adding, replacing and removing instances.
+   */
+  public void testModification() {
+    Instances	columnar;
+
+    columnar = new ColumnarInstances(m_Instances, 0);
+    for (int i = m_Instances.numInstances() - 1; i >= 0; i--) {
+      columnar.add(0, m_Instances.instance(i));
+    }
+    assertSameData(m_Instances, columnar);
+
+    m_Instances.set(2, m_Instances.instance(7));
+    columnar.set(2, columnar.instance(7));
+    m_Instances.delete(4);
+    columnar.delete(4);
+    m_Instances.remove(0);
+    columnar.remove(0);
+    m_Instances.deleteWithMissing(4);
+    columnar.deleteWithMissing(4);
+    assertSameData(m_Instances, columnar);
+
+    columnar.compactify();
+    assertSameData(m_Instances, columnar);
+
+    columnar.delete();
+    assertEquals("dataset not empty", 0, columnar.numInstances());
+  }
+
+  /**
+   * Tests inserting and deleting attributes.
+   */
+  public void testAttributes() {
+    Instances	columnar;
+
+    columnar = new ColumnarInstances(m_Instances);
+    m_Instances.deleteAttributeAt(1);
+    columnar.deleteAttributeAt(1);
+    assertSameData(m_Instances, columnar);
+
+    m_Instances.insertAttributeAt(new Attribute("inserted"), 2);
+    columnar.insertAttributeAt(new Attribute("inserted"), 2);
+    assertSameData(m_Instances, columnar);
+    columnar.instance(0).setValue(2, 1.5);
+    assertEquals("value not set", 1.5, columnar.instance(0).value(2), 0.0);
+  }
+
+  /**
+   * Tests the statistics computed on single attributes.
+   */
+  public void testStatistics() {
+    Instances	columnar;
+
+    m_Instances.instance(1).setWeight(3.0);
+    columnar = new ColumnarInstances(m_Instances);
+    assertEquals("sum of weights differs", m_Instances.sumOfWeights(), columnar.sumOfWeights(), 0.0);
+    for (int i = 0; i < m_Instances.numAttributes(); i++) {
+      assertEquals("mean/mode of attribute #" + (i+1) + " differs",
+	  m_Instances.meanOrMode(i), columnar.meanOrMode(i), 0.0);
+      assertEquals("stats of attribute #" + (i+1) + " differ",
+	  m_Instances.attributeStats(i).toString(), columnar.attributeStats(i).toString());
+      if (m_Instances.attribute(i).isNumeric()) {
+	assertEquals("variance of attribute #" + (i+1) + " differs",
+	    m_Instances.variance(i), columnar.variance(i), 0.0);
+	for (int k = 1; k <= m_Instances.numInstances(); k++)
+	  assertEquals(k + "th-smallest value of attribute #" + (i+1) + " differs",
+	      m_Instances.kthSmallestValue(i, k), columnar.kthSmallestValue(i, k), 0.0);
+      }
+    }
+  }
+
+  /**
+   * Tests storing numeric attributes as floats.
+   */
+  public void testFloat() {
+    ColumnarInstances	columnar;
+
+    columnar = new ColumnarInstances(m_Instances, true);
+    assertTrue("floats not used", columnar.getUseFloat());
+    for (int i = 0; i < m_Instances.numInstances(); i++) {
+      assertEquals("value of instance #" + (i+1) + " differs",
+	  m_Instances.instance(i).value(2), columnar.instance(i).value(2), 1e-6);
+      assertEquals("missing value of instance #" + (i+1) + " differs",
+	  m_Instances.instance(i).isMissing(5), columnar.instance(i).isMissing(5));
+    }
+    assertTrue("columnar storage not smaller",
+	columnar.estimatedSizeInBytes() < new ColumnarInstances(m_Instances, false).estimatedSizeInBytes());
+  }
+
+  /**
+   * Executes the test from command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests MappedInstances. Run from the command line with:<p/>
+ * java weka.core.MappedInstancesTest
+ *
+ * @version $Revision: 9500 $
+ */
+public class MappedInstancesTest
+  extends TestCase {
+
+  /** the number of instances of the file larger than the heap */
+  public final static int NUM_INSTANCES = 80000;
+
+  /** the number of attributes (without the class) of that file */
+  public final static int NUM_ATTRIBUTES = 100;
+
+  /** the heap of the JVM that copies the data, in megabytes */
+  public final static int HEAP_MB = 32;
+
+  /**
+   * Constructs the <code>MappedInstancesTest</code>.
+   *
+   * @param name 	the name of the test
+   */
+  public MappedInstancesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Copies the given mapped instances file the way classifiers do (copy
+   * constructor, cross-validation split, resampling) and outputs the
+   * number of instances of the copies. Used by testCopiesWithSmallHeap()
+   * in a separate JVM.
+   */
+  public static class CopyMappedInstances {
+
+    /**
+     * Copies the data.
+     *
+     * @param args	the mapped instances file
+     * @throws Exception	if copying fails
+     */
+    public static void main(String[] args) throws Exception {
+      Instances	data;
+      Instances	copy;
+      int	count;
+
+      data  = new MappedInstances(new File(args[0]));
+      copy  = new Instances(data);
+      count = copy.numInstances();
+      copy  = copy.trainCV(2, 0, new Random(1));
+      count += copy.numInstances();
+      copy  = data.resampleWithWeights(new Random(1));
+      count += copy.numInstances();
+      System.out.println(count);
+    }
+  }
+
+  /**
+   * Writes a mapped instances file with binary nominal attributes.
+   *
+   * @param file	the file to write to
+   * @throws Exception	if writing fails
+   */
+  protected void writeFile(File file) throws Exception {
+    ArrayList<Attribute>	atts;
+    ArrayList<String>		labels;
+    Instances			structure;
+    DataOutputStream		out;
+    Random			random;
+    double[]			values;
+    int				i;
+    int				j;
+
+    labels = new ArrayList<String>();
+    labels.add("a");
+    labels.add("b");
+    atts = new ArrayList<Attribute>();
+    for (j = 0; j < NUM_ATTRIBUTES; j++)
+      atts.add(new Attribute("att" + j, labels));
+    atts.add(new Attribute("class", labels));
+    structure = new Instances("mapped", atts, 0);
+    structure.setClassIndex(NUM_ATTRIBUTES);
+
+    out = new DataOutputStream(new BufferedOutputStream(
+	new FileOutputStream(file), 1 << 16));
+    try {
+      MappedInstances.writePreamble(out, structure);
+      random = new Random(1);
+      values = new double[NUM_ATTRIBUTES + 1];
+      for (i = 0; i < NUM_INSTANCES; i++) {
+	for (j = 0; j < values.length; j++)
+	  values[j] = random.nextInt(2);
+	MappedInstances.writeInstance(out, new DenseInstance(1.0, values));
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Tests that copies of a mapped instances file that is larger than the
+   * heap can be made, i.e., that the rows don't get copied onto the heap.
+   * Copies in a separate JVM with a small heap.
+   */
+  public void testCopiesWithSmallHeap() throws Exception {
+    File		file;
+    ProcessBuilder	builder;
+    Process		process;
+    BufferedReader	reader;
+    StringBuffer	output;
+    String		count;
+    String		line;
+
+    file = File.createTempFile("MappedInstancesTest", MappedInstances.FILE_EXTENSION);
+    try {
+      writeFile(file);
+      assertTrue("file not larger than heap", file.length() > HEAP_MB * 1024L * 1024L);
+
+      builder = new ProcessBuilder(
+	  System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+	  "-Xmx" + HEAP_MB + "m",
+	  "-cp", System.getProperty("java.class.path"),
+	  CopyMappedInstances.class.getName(),
+	  file.getAbsolutePath());
+      builder.redirectErrorStream(true);
+      process = builder.start();
+      reader  = new BufferedReader(new InputStreamReader(process.getInputStream()));
+      output  = new StringBuffer();
+      count   = null;
+      while ((line = reader.readLine()) != null) {
+	output.append(line + "\n");
+	count = line;
+      }
+      reader.close();
+      assertEquals("copying failed:\n" + output, 0, process.waitFor());
+      assertEquals("wrong number of copied instances",
+	  "" + (NUM_INSTANCES + NUM_INSTANCES / 2 + NUM_INSTANCES), count);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return 		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(MappedInstancesTest.class);
+  }
+
+  /**
+   * Runs the test from the command line.
+   *
+   * @param args 	ignored
+   */
+  public static void main(String[] args) {
+    TestRunner.run(suite());
+  }
+}
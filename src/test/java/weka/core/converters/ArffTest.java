@@ -19,8 +19,14 @@
 
 package weka.core.converters;
 
+import java.io.StringReader;
+import java.util.Random;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.converters.ArffLoader.ArffReader;
 
 /**
  * Tests ArffLoader/ArffSaver. Run from the command line with:<p/>
@@ -59,6 +65,126 @@ public class ArffTest
     return new ArffSaver();
   }
 
+  /**
+   * tests whether the fast number parsing returns the same values as
+   * Double.parseDouble.
+   */
+  public void testParseDouble() {
+    String[]	numbers;
+    Random	rand;
+    String	number;
+    
+    numbers = new String[]{
+	"0", "-0", "+1", "1.", ".5", "3.14159", "-2.5e-3", "1E10", "1e22", 
+	"1e23", "1e-22", "1e-400", "9007199254740993", "0.1000000000000000055511",
+	"123456789012345678901234567890", "4.9e-324", "1.7976931348623157E308", 
+	"NaN", "-Infinity", "1d", "0x1p3"};
+    for (int i = 0; i < numbers.length; i++)
+      assertEquals("value of '" + numbers[i] + "' differs", 
+	  Double.parseDouble(numbers[i]), 
+	  ArffReader.parseDouble(numbers[i].toCharArray(), 0, numbers[i].length()), 0.0);
+    
+    rand = new Random(1);
+    for (int i = 0; i < 10000; i++) {
+      switch (i % 4) {
+	case 0:  number = "" + rand.nextDouble(); break;
+	case 1:  number = "" + (rand.nextGaussian() * 1e6); break;
+	case 2:  number = "" + (float) rand.nextGaussian(); break;
+	default: number = "" + rand.nextInt(100000) + "." + rand.nextInt(1000000);
+      }
+      assertEquals("value of '" + number + "' differs", 
+	  Double.parseDouble(number), 
+	  ArffReader.parseDouble(number.toCharArray(), 0, number.length()), 0.0);
+    }
+    
+    for (String invalid: new String[]{"", "-", ".", "1e", "1x", "--1"}) {
+      try {
+	ArffReader.parseDouble(invalid.toCharArray(), 0, invalid.length());
+	fail("'" + invalid + "' parsed as number");
+      }
+      catch (NumberFormatException e) {
+	// expected
+      }
+    }
+  }
+
+  /**
+   * tests whether parsing the data in chunks with several threads returns
+   * the same data as the sequential parsing.
+   */
+  public void testParallel() {
+    TestInstances	test;
+    Instances		data;
+    Instances		parallel;
+    ArffReader		reader;
+    
+    try {
+      test = getTestInstances();
+      test.setNumNominal(2);
+      test.setNumNumeric(3);
+      test.setNumDate(1);
+      test.setNumInstances(500);
+      data = test.generate();
+      data.instance(3).setWeight(0.5);
+      data.instance(10).setMissing(0);
+      data = new ArffReader(new StringReader(data.toString())).getData();
+      
+      reader   = new ArffReader(new StringReader(data.toString()), 0);
+      parallel = reader.getStructure();
+      reader.readInstances(parallel, 3, 256);
+      compareDatasets(data, parallel);
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Parallel parsing failed: " + e.toString());
+    }
+  }
+
+  /**
+   * tests whether errors in parallel mode report the correct line.
+   */
+  public void testParallelError() {
+    TestInstances	test;
+    Instances		data;
+    String		arff;
+    ArffReader		reader;
+    String		sequential;
+    String		parallel;
+    
+    sequential = null;
+    parallel   = null;
+    try {
+      test = getTestInstances();
+      test.setNumNumeric(2);
+      test.setNumInstances(300);
+      data = test.generate();
+      arff = data.toString();
+      arff = arff.substring(0, arff.length() - 100) + "x" + arff.substring(arff.length() - 100);
+      
+      try {
+	reader = new ArffReader(new StringReader(arff), 0);
+	reader.readInstances(reader.getStructure(), 1);
+      }
+      catch (Exception e) {
+	sequential = e.getMessage();
+      }
+      try {
+	reader = new ArffReader(new StringReader(arff), 0);
+	reader.readInstances(reader.getStructure(), 3, 256);
+      }
+      catch (Exception e) {
+	parallel = e.getMessage();
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Generating data failed: " + e.toString());
+    }
+    
+    assertNotNull("no error in sequential mode", sequential);
+    assertEquals("error messages differ", sequential, parallel);
+  }
+
   /**
    * returns a test suite
    * 
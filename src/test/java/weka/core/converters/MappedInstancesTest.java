@@ -0,0 +1,186 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.converters;
+
+import java.io.File;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.MappedInstance;
+import weka.core.MappedInstances;
+import weka.core.SerializedObject;
+import weka.core.TestInstances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests MappedInstancesLoader/MappedInstancesSaver. Run from the command line with:<p/>
+ * java weka.core.converters.MappedInstancesTest
+ *
+ * @version $Revision: 9500 $
+ */
+public class MappedInstancesTest
+  extends AbstractFileConverterTest {
+
+  /**
+   * Constructs the <code>MappedInstancesTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public MappedInstancesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * returns the loader used in the tests
+   *
+   * @return the configured loader
+   */
+  public AbstractLoader getLoader() {
+    return new MappedInstancesLoader();
+  }
+
+  /**
+   * returns the saver used in the tests
+   *
+   * @return the configured saver
+   */
+  public AbstractSaver getSaver() {
+    return new MappedInstancesSaver();
+  }
+
+  /**
+   * returns the test data generator, with numeric and date attributes and
+   * missing values
+   *
+   * @return 	the configured test data generator
+   */
+  protected TestInstances getTestInstances() {
+    TestInstances	result;
+
+    result = super.getTestInstances();
+    result.setNumNumeric(2);
+    result.setNumDate(1);
+    result.setNumInstances(50);
+
+    return result;
+  }
+
+  /**
+   * tests the streaming conversion and modifications of the mapped data.
+   */
+  public void testConvert() {
+    Instances	data;
+    File	file;
+
+    try {
+      m_Instances.instance(3).setWeight(0.5);
+      m_Instances.instance(7).setMissing(1);
+      file = new File(m_ExportFilename);
+      assertEquals("number of converted instances differs",
+	  m_Instances.numInstances(), MappedInstances.convert(new DataSource(m_Instances), file));
+
+      data = new MappedInstances(file);
+      compareDatasets(m_Instances, data);
+
+      // changes are visible, but not written back
+      data.instance(0).setWeight(2.0);
+      data.sort(1);
+      m_Instances.instance(0).setWeight(2.0);
+      m_Instances.sort(1);
+      compareDatasets(m_Instances, data);
+      assertEquals("file has been modified", 1.0, new MappedInstances(file).instance(0).weight(), 0.0);
+
+      // loaded via the loader
+      m_Loader.setSource(file);
+      data = m_Loader.getDataSet();
+      assertTrue("data not mapped", data instanceof MappedInstances);
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Conversion failed: " + e.toString());
+    }
+  }
+
+  /**
+   * tests that copies of the rows stay in the file until they get changed.
+   */
+  public void testCopies() {
+    Instances	data;
+    Instances	copy;
+    Instance	inst;
+    File	file;
+
+    try {
+      file = new File(m_ExportFilename);
+      MappedInstances.convert(new DataSource(m_Instances), file);
+      data = new MappedInstances(file);
+
+      copy = new Instances(data);
+      compareDatasets(data, copy);
+      assertTrue("row copied onto heap", copy.instance(0) instanceof MappedInstance);
+      assertFalse("values copied onto heap", ((MappedInstance) copy.instance(0)).isMaterialized());
+      compareDatasets(data.trainCV(5, 0), copy.trainCV(5, 0));
+
+      // changes only affect the copy
+      inst = copy.instance(1);
+      inst.setWeight(3.0);
+      inst.setValue(0, inst.isMissing(0) ? 0 : 1 - inst.value(0));
+      assertTrue("values not copied onto heap", ((MappedInstance) inst).isMaterialized());
+      assertEquals("weight of mapped data changed", m_Instances.instance(1).weight(), data.instance(1).weight(), 0.0);
+      assertEquals("value of mapped data changed", m_Instances.instance(1).toString(), data.instance(1).toString());
+
+      // serialized as DenseInstance
+      copy = (Instances) new SerializedObject(new Instances(data)).getObject();
+      compareDatasets(data, copy);
+
+      try {
+	data.instance(0).setValue(0, 0);
+	fail("values of mapped data can be changed");
+      }
+      catch (UnsupportedOperationException e) {
+	// expected
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Copying failed: " + e.toString());
+    }
+  }
+
+  /**
+   * returns a test suite
+   *
+   * @return the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(MappedInstancesTest.class);
+  }
+
+  /**
+   * for running the test from commandline
+   *
+   * @param args the commandline arguments - ignored
+   */
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.matrix;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests that the blocked/parallel matrix operations give exactly the same
+ * results as the sequential code. Run from the command line with:<p/>
+ * java weka.core.matrix.ParallelOperationsTest
+ *
+ * @version $Revision: 9500 $
+ */
+public class ParallelOperationsTest
+  extends TestCase {
+
+  /** the threshold before the test */
+  protected int m_Threshold;
+
+  /** the number of threads before the test */
+  protected int m_NumThreads;
+
+  /**
+   * Constructs the <code>ParallelOperationsTest</code>.
+   *
+   * @param name 	the name of the test class
+   */
+  public ParallelOperationsTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Threshold  = ParallelOperations.getThreshold();
+    m_NumThreads = ParallelOperations.getNumThreads();
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void tearDown() throws Exception {
+    ParallelOperations.setThreshold(m_Threshold);
+    ParallelOperations.setNumThreads(m_NumThreads);
+
+    super.tearDown();
+  }
+
+  /**
+   * Generates a random matrix.
+   *
+   * @param m		the number of rows
+   * @param n		the number of columns
+   * @param seed	the seed for the random numbers
+   * @return		the matrix
+   */
+  protected Matrix random(int m, int n, long seed) {
+    Matrix	result;
+    Random	rand;
+    int		i;
+    int		j;
+
+    result = new Matrix(m, n);
+    rand   = new Random(seed);
+    for (i = 0; i < m; i++) {
+      for (j = 0; j < n; j++)
+	result.set(i, j, rand.nextGaussian());
+    }
+
+    return result;
+  }
+
+  /**
+   * Switches between the sequential and the parallel code.
+   *
+   * @param numThreads	the number of threads, 0 for the sequential code
+   */
+  protected void setParallel(int numThreads) {
+    if (numThreads == 0) {
+      ParallelOperations.setThreshold(Integer.MAX_VALUE);
+    }
+    else {
+      ParallelOperations.setThreshold(0);
+      ParallelOperations.setNumThreads(numThreads);
+    }
+  }
+
+  /**
+   * Asserts that two matrices are identical.
+   *
+   * @param msg		the message for failures
+   * @param expected	the expected matrix
+   * @param actual	the actual matrix
+   */
+  protected void assertIdentical(String msg, Matrix expected, Matrix actual) {
+    int		i;
+    int		j;
+
+    assertEquals(msg + ": rows", expected.getRowDimension(), actual.getRowDimension());
+    assertEquals(msg + ": columns", expected.getColumnDimension(), actual.getColumnDimension());
+    for (i = 0; i < expected.getRowDimension(); i++) {
+      for (j = 0; j < expected.getColumnDimension(); j++)
+	assertEquals(msg + ": (" + i + "," + j + ")", expected.get(i, j), actual.get(i, j), 0.0);
+    }
+  }
+
+  /**
+   * Tests the multiplication, with dimensions that are not multiples of the
+   * block size.
+   */
+  public void testTimes() {
+    Matrix	A;
+    Matrix	B;
+    Matrix	expected;
+
+    A = random(150, 130, 1);
+    B = random(130, 70, 2);
+    setParallel(0);
+    expected = A.times(B);
+    setParallel(1);
+    assertIdentical("1 thread", expected, A.times(B));
+    setParallel(4);
+    assertIdentical("4 threads", expected, A.times(B));
+  }
+
+  /**
+   * Tests the Cholesky decomposition and solving with it.
+   */
+  public void testCholesky() {
+    Matrix			A;
+    Matrix			B;
+    CholeskyDecomposition	expected;
+    CholeskyDecomposition	actual;
+
+    A = random(200, 150, 3);
+    A = A.times(A.transpose()).plus(Matrix.identity(200, 200));
+    B = random(200, 30, 4);
+    setParallel(0);
+    expected = A.chol();
+    assertTrue("SPD", expected.isSPD());
+    for (int numThreads = 1; numThreads <= 4; numThreads += 3) {
+      setParallel(numThreads);
+      actual = A.chol();
+      assertTrue("SPD", actual.isSPD());
+      assertIdentical("L", expected.getL(), actual.getL());
+      assertIdentical("solve", expected.solve(B), actual.solve(B));
+    }
+
+    // not symmetric
+    A.set(0, 199, A.get(0, 199) + 1);
+    setParallel(4);
+    assertFalse("not symmetric", A.chol().isSPD());
+  }
+
+  /**
+   * Tests the LU decomposition, also for non-square matrices.
+   */
+  public void testLU() {
+    Matrix		A;
+    Matrix		B;
+    LUDecomposition	expected;
+    LUDecomposition	actual;
+
+    for (int[] dims: new int[][]{{180, 180}, {200, 150}}) {
+      A = random(dims[0], dims[1], 5);
+      setParallel(0);
+      expected = A.lu();
+      setParallel(4);
+      actual = A.lu();
+      assertIdentical("L", expected.getL(), actual.getL());
+      assertIdentical("U", expected.getU(), actual.getU());
+      for (int i = 0; i < dims[0]; i++)
+	assertEquals("pivot", expected.getPivot()[i], actual.getPivot()[i]);
+    }
+
+    A = random(180, 180, 6);
+    B = random(180, 20, 7);
+    setParallel(0);
+    Matrix X = A.solve(B);
+    Matrix inv = A.inverse();
+    setParallel(4);
+    assertIdentical("solve", X, A.solve(B));
+    assertIdentical("inverse", inv, A.inverse());
+  }
+
+  /**
+   * Tests the QR decomposition.
+   */
+  public void testQR() {
+    Matrix		A;
+    QRDecomposition	expected;
+    QRDecomposition	actual;
+
+    A = random(200, 150, 8);
+    setParallel(0);
+    expected = A.qr();
+    setParallel(4);
+    actual = A.qr();
+    assertIdentical("R", expected.getR(), actual.getR());
+    assertIdentical("Q", expected.getQ(), actual.getQ());
+  }
+
+  public static Test suite() {
+    return new TestSuite(ParallelOperationsTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
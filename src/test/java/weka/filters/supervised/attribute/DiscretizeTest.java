@@ -23,6 +23,7 @@ import weka.core.Attribute;
 import weka.core.Instances;
 import weka.filters.AbstractFilterTest;
 import weka.filters.Filter;
+import weka.test.TestData;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -140,6 +141,32 @@ public class DiscretizeTest extends AbstractFilterTest {
     assertEquals(Attribute.NOMINAL, result.attribute(2).type());
   }
 
+  public void testNumExecutionSlots() throws Exception {
+    Instances data = TestData.generate(2, 10, 200, 3);
+
+    Discretize serial = new Discretize();
+    serial.setInputFormat(data);
+    Filter.useFilter(data, serial);
+    Discretize parallel = new Discretize();
+    parallel.setNumExecutionSlots(3);
+    parallel.setInputFormat(data);
+    Filter.useFilter(data, parallel);
+    for (int i = 0; i < data.numAttributes(); i++) {
+      double[] expected = serial.getCutPoints(i);
+      double[] actual = parallel.getCutPoints(i);
+      if (expected == null) {
+        assertNull("cutpoints differ for attribute " + i, actual);
+      } else {
+        assertNotNull("cutpoints differ for attribute " + i, actual);
+        assertEquals("cutpoints differ for attribute " + i, 
+            expected.length, actual.length);
+        for (int j = 0; j < expected.length; j++)
+          assertEquals("cutpoints differ for attribute " + i, 
+              expected[j], actual[j], 0.0);
+      }
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(DiscretizeTest.class);
   }
@@ -0,0 +1,152 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Copyright (C) 2012 University of Waikato
+ */
+
+package weka.test;
+
+import junit.framework.Assert;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
+
+/**
+ * <code>TestData</code> generates the datasets and compares the outputs
+ * of the tests that check whether an alternative way of training or
+ * predicting (several threads, presorting, ...) gives the same results
+ * as the default one.
+ *
+ * @version $Revision: 9500 $
+ */
+public class TestData {
+
+  /**
+   * Generates a dataset with a binary nominal class as the last attribute.
+   *
+   * @param numNominal the number of nominal attributes
+   * @param numNumeric the number of numeric attributes
+   * @param numInstances the number of instances
+   * @return the generated data
+   * @throws Exception if the generation fails
+   */
+  public static Instances generate(int numNominal, int numNumeric,
+      int numInstances) throws Exception {
+
+    return generate(numNominal, numNumeric, numInstances, 2);
+  }
+
+  /**
+   * Generates a dataset with a nominal class as the last attribute.
+   *
+   * @param numNominal the number of nominal attributes
+   * @param numNumeric the number of numeric attributes
+   * @param numInstances the number of instances
+   * @param numClasses the number of class values
+   * @return the generated data
+   * @throws Exception if the generation fails
+   */
+  public static Instances generate(int numNominal, int numNumeric,
+      int numInstances, int numClasses) throws Exception {
+
+    return generate(numNominal, numNumeric, numInstances, Attribute.NOMINAL,
+	numClasses);
+  }
+
+  /**
+   * Generates a dataset with the class as the last attribute.
+   *
+   * @param numNominal the number of nominal attributes
+   * @param numNumeric the number of numeric attributes
+   * @param numInstances the number of instances
+   * @param classType the type of the class attribute
+   * @param numClasses the number of class values (nominal class only)
+   * @return the generated data
+   * @throws Exception if the generation fails
+   */
+  public static Instances generate(int numNominal, int numNumeric,
+      int numInstances, int classType, int numClasses) throws Exception {
+
+    TestInstances generator = new TestInstances();
+    generator.setNumNominal(numNominal);
+    generator.setNumNumeric(numNumeric);
+    generator.setNumInstances(numInstances);
+    generator.setClassType(classType);
+    generator.setNumClasses(numClasses);
+    generator.setClassIndex(TestInstances.CLASS_IS_LAST);
+
+    return generator.generate();
+  }
+
+  /**
+   * Sets one value of every step-th instance to missing, cycling through
+   * the attributes other than the class, and assigns the given weight to
+   * these instances.
+   *
+   * @param data the data to modify
+   * @param step the distance between the modified instances
+   * @param weight the weight of the modified instances
+   */
+  public static void setMissingValues(Instances data, int step,
+      double weight) {
+
+    for (int i = 0; i < data.numInstances(); i += step) {
+      data.instance(i).setMissing(i % (data.numAttributes() - 1));
+      data.instance(i).setWeight(weight);
+    }
+  }
+
+  /**
+   * Returns the class distributions the classifier predicts for the
+   * instances, one instance at a time.
+   *
+   * @param classifier the built classifier
+   * @param data the instances to predict
+   * @return the distributions
+   * @throws Exception if the prediction fails
+   */
+  public static double[][] distributions(Classifier classifier,
+      Instances data) throws Exception {
+
+    double[][] result = new double[data.numInstances()][];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = classifier.distributionForInstance(data.instance(i));
+    }
+
+    return result;
+  }
+
+  /**
+   * Asserts that the class distributions are equal.
+   *
+   * @param message the message of the failure
+   * @param expected the expected distributions
+   * @param actual the actual distributions
+   * @param delta the allowed difference between the probabilities
+   */
+  public static void assertEqualDistributions(String message,
+      double[][] expected, double[][] actual, double delta) {
+
+    Assert.assertEquals(message, expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      Assert.assertEquals(message, expected[i].length, actual[i].length);
+      for (int j = 0; j < expected[i].length; j++) {
+	Assert.assertEquals(message, expected[i][j], actual[i][j], delta);
+      }
+    }
+  }
+}